@@ -0,0 +1,106 @@
+package cn.edu.bjut.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import cn.edu.bjut.estimators.IEstimator;
+
+/*
+ * Time to convergence of the estimators from a random initialization: every
+ * invocation samples until the relative improvement of the log-likelihood
+ * over the last `every` sweeps falls below `tolerance`, at most `cap` sweeps.
+ * The sweeps counter reports the number of sweeps that took, the nloglik
+ * counter the negated log-likelihood reached, so that samplers that mix differently
+ * (e.g., coAT-blocked against coAT-legacy) are compared by the wall time and
+ * the quality at which they stop rather than by the cost of a sweep only.
+ *
+ * Author: XU, Shuo (pzczxs@gmail.com)
+ * */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+public class ConvergenceBenchmark {
+	@Param({ "coAT-blocked", "coAT-legacy" })
+	public String sampler;
+
+	@Param({ "50" })
+	public int K;
+
+	@Param({ Corpora.ZIPF, Corpora.NIPS })
+	public String corpus;
+
+	@Param({ "1" })
+	public int nthreads;
+
+	@Param({ "10" })
+	public int every;
+
+	@Param({ "1e-3" })
+	public double tolerance;
+
+	@Param({ "1000" })
+	public int cap;
+
+	private String filebase;
+	private IEstimator estimator;
+
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.EVENTS)
+	public static class Counters {
+		public long sweeps;
+		public double nloglik;
+
+		@Setup(Level.Iteration)
+		public void reset() {
+			sweeps = 0;
+			nloglik = 0;
+		}
+	}
+
+	@Setup(Level.Trial)
+	public void setUpTrial() throws IOException {
+		Corpora.quiet();
+		filebase = Corpora.filebase(corpus);
+	}
+
+	@Setup(Level.Invocation)
+	public void setUp() {
+		estimator = Corpora.estimator(sampler, filebase, K, nthreads);
+	}
+
+	@Benchmark
+	public void converge(final Counters counters) {
+		double last = estimator.loglik();
+		int sweeps = 0;
+		while (sweeps < cap) {
+			estimator.estimate(every);
+			sweeps += every;
+
+			final double loglik = estimator.loglik();
+			final double improvement = (loglik - last) / Math.abs(last);
+			last = loglik;
+			if (improvement < tolerance) {
+				break;
+			}
+		}
+		counters.sweeps += sweeps;
+		counters.nloglik = -last;
+	}
+}
@@ -0,0 +1,128 @@
+package cn.edu.bjut.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.Properties;
+
+import cn.edu.bjut.corpus.Corpus;
+import cn.edu.bjut.estimators.ATEstimator;
+import cn.edu.bjut.estimators.IEstimator;
+import cn.edu.bjut.estimators.LDAEstimator;
+import cn.edu.bjut.estimators.coATEstimator;
+import cn.edu.bjut.parameters.ATParameter;
+import cn.edu.bjut.parameters.LDAParameter;
+import cn.edu.bjut.parameters.coATParameter;
+
+/*
+ * The corpora of the benchmarks, selected by name:
+ *
+ * nips: the bundled data/nips/nips.test corpus with its authors, the only
+ * tokenized part of data/nips (override the path with -Dgtm.nips=filebase).
+ *
+ * zipf: a ZipfCorpus of 2000 documents of about 100 tokens each over 5000
+ * words and 500 authors, generated with a fixed seed into java.io.tmpdir on
+ * first use (override the size with -Dgtm.zipf.docs and -Dgtm.zipf.terms).
+ *
+ * Author: XU, Shuo (pzczxs@gmail.com)
+ * */
+public final class Corpora {
+	public final static String NIPS = "nips";
+	public final static String ZIPF = "zipf";
+
+	public final static long SEED = 20240101L;
+
+	private Corpora() {
+	}
+
+	/*
+	 * @return the filebase of the corpus with the given name
+	 * */
+	public static synchronized String filebase(final String name) throws IOException {
+		if (NIPS.equals(name)) {
+			String filebase = System.getProperty("gtm.nips", "data/nips/nips.test");
+			if (!new File(filebase + ".corpus").exists()) {
+				// run from the benchmarks directory
+				filebase = "../" + filebase;
+			}
+			if (!new File(filebase + ".corpus").exists()) {
+				throw new IOException("The bundled corpus data/nips/nips.test is not found, "
+						+ "run the benchmarks from the project directory or set -Dgtm.nips.");
+			}
+			return filebase;
+		}
+
+		if (ZIPF.equals(name)) {
+			final int M = Integer.getInteger("gtm.zipf.docs", 2000);
+			final int V = Integer.getInteger("gtm.zipf.terms", 5000);
+			final File dir = new File(System.getProperty("java.io.tmpdir"), "gtm-zipf-" + M + "-" + V + "-" + SEED);
+			final String filebase = new File(dir, "zipf").getPath();
+			if (!new File(filebase + ".test.authors").exists()) {
+				new ZipfCorpus(V, 50, 500, 100, SEED).write(filebase, M, M / 10);
+			}
+			return filebase;
+		}
+
+		throw new IllegalArgumentException("Unknown corpus: " + name);
+	}
+
+	/*
+	 * @return the filebase of the held-out documents of the corpus with the
+	 * given name; nips has no separate held-out part and is inferred on itself
+	 * */
+	public static String heldOut(final String name) throws IOException {
+		final String filebase = filebase(name);
+
+		return NIPS.equals(name) ? filebase : filebase + ".test";
+	}
+
+	/*
+	 * @return the number of tokens of filebase.corpus
+	 * */
+	public static int numWords(final String filebase) {
+		return new Corpus(filebase + ".corpus").getNumWords();
+	}
+
+	/*
+	 * an initialized estimator of the given sampler: LDA-gibbs, LDA-sparse,
+	 * LDA-alias, AT-gibbs, AT-blocked, AT-sparse, coAT-blocked or coAT-legacy
+	 * */
+	public static IEstimator estimator(final String sampler, final String filebase, final int K, final int nthreads) {
+		final Properties properties = new Properties();
+		properties.setProperty("ntopics", Integer.toString(K));
+		properties.setProperty("nthreads", Integer.toString(nthreads));
+
+		final IEstimator estimator;
+		if (sampler.startsWith("LDA-")) {
+			properties.setProperty("sampler", sampler.substring("LDA-".length()));
+			estimator = new LDAEstimator(filebase, SEED, new LDAParameter(properties));
+		} else if (sampler.startsWith("AT-")) {
+			properties.setProperty("sampler", sampler.substring("AT-".length()));
+			estimator = new ATEstimator(filebase, SEED, new ATParameter(properties));
+		} else if (sampler.startsWith("coAT-")) {
+			properties.setProperty("sampler", sampler.substring("coAT-".length()));
+			estimator = new coATEstimator(filebase, SEED, new coATParameter(properties));
+		} else {
+			throw new IllegalArgumentException("Unknown sampler: " + sampler);
+		}
+		estimator.init();
+
+		return estimator;
+	}
+
+	/*
+	 * silence the progress output of the estimators and corpora
+	 * */
+	public static void quiet() {
+		System.setOut(new PrintStream(new OutputStream() {
+			@Override
+			public void write(final int b) {
+			}
+
+			@Override
+			public void write(final byte[] b, final int off, final int len) {
+			}
+		}));
+	}
+}
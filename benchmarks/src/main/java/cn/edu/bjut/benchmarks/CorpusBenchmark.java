@@ -0,0 +1,58 @@
+package cn.edu.bjut.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import cn.edu.bjut.corpus.Corpus;
+import cn.edu.bjut.corpus.ILabelCorpus;
+import cn.edu.bjut.corpus.LabelCorpus;
+
+/*
+ * Time to load a corpus from its text files: Corpus.read of the tokens alone
+ * and a LabelCorpus with the authors, as the AT and coAT estimators load it.
+ *
+ * Author: XU, Shuo (pzczxs@gmail.com)
+ * */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CorpusBenchmark {
+	@Param({ Corpora.ZIPF, Corpora.NIPS })
+	public String corpus;
+
+	private String filebase;
+
+	@Setup
+	public void setUp() throws IOException {
+		Corpora.quiet();
+		filebase = Corpora.filebase(corpus);
+	}
+
+	@Benchmark
+	public Corpus read() {
+		final Corpus c = new Corpus();
+		c.read(filebase + ".corpus");
+
+		return c;
+	}
+
+	@Benchmark
+	public int[][] readWithAuthors() {
+		return new LabelCorpus(filebase).getDocLabels(ILabelCorpus.LAUTHORS);
+	}
+}
@@ -0,0 +1,100 @@
+package cn.edu.bjut.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import cn.edu.bjut.corpus.Corpus;
+import cn.edu.bjut.estimators.LDAEstimator;
+import cn.edu.bjut.inferencers.LDADocumentInferencer;
+import cn.edu.bjut.inferencers.LDAInferencer;
+import cn.edu.bjut.parameters.LDAParameter;
+
+/*
+ * Inference on the held-out documents (Corpora.heldOut) of a corpus with an
+ * LDA model trained for 50 iterations during setup: the perplexity
+ * LDAInferencer.ppx, one Gibbs iteration of LDAInferencer.inference over all
+ * held-out documents, and LDADocumentInferencer.infer of a single document
+ * with the Gibbs and with the alias (Metropolis-Hastings) sampler.
+ *
+ * Author: XU, Shuo (pzczxs@gmail.com)
+ * */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class InferenceBenchmark {
+	@Param({ "50" })
+	public int K;
+
+	@Param({ Corpora.ZIPF, Corpora.NIPS })
+	public String corpus;
+
+	@Param({ "1", "4" })
+	public int nthreads;
+
+	private LDAInferencer inferencer;
+	private LDADocumentInferencer documentInferencer;
+	private LDADocumentInferencer aliasInferencer;
+	private int[] document;
+	private double[] vartheta;
+
+	@Setup
+	public void setUp() throws IOException {
+		Corpora.quiet();
+		final String filebase = Corpora.filebase(corpus);
+		final String test = Corpora.heldOut(corpus);
+
+		final LDAEstimator estimator = (LDAEstimator) Corpora.estimator("LDA-gibbs", filebase, K, 1);
+		estimator.estimate(50);
+		estimator.getParameter().setNThreads(nthreads);
+
+		inferencer = new LDAInferencer(test, Corpora.SEED, estimator);
+		inferencer.init();
+		inferencer.inference(10);
+
+		documentInferencer = new LDADocumentInferencer(Corpora.SEED, estimator);
+		final LDAParameter alias = new LDAParameter(K);
+		alias.setSampler(LDAParameter.SAMPLER_ALIAS);
+		aliasInferencer = new LDADocumentInferencer(Corpora.SEED, estimator.getTrainedModel(), alias);
+		document = new Corpus(test + ".corpus").getDocWords(0);
+		vartheta = new double[K];
+	}
+
+	@Benchmark
+	public double ppx() {
+		return inferencer.ppx();
+	}
+
+	@Benchmark
+	public void inferenceSweep() {
+		inferencer.inference(1);
+	}
+
+	@Benchmark
+	public double[] inferDocument() {
+		documentInferencer.infer(document, document.length, vartheta);
+
+		return vartheta;
+	}
+
+	@Benchmark
+	public double[] inferDocumentAlias() {
+		aliasInferencer.infer(document, document.length, vartheta);
+
+		return vartheta;
+	}
+}
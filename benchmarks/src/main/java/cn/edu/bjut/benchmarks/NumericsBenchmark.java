@@ -0,0 +1,147 @@
+package cn.edu.bjut.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import cn.edu.bjut.utils.DirichletEstimation;
+import cn.edu.bjut.utils.Gamma;
+import cn.edu.bjut.utils.LgammaCache;
+import cn.edu.bjut.utils.RandomSamplers;
+import cn.edu.bjut.utils.Vectors;
+import cn.edu.bjut.utils.XoshiroRandom;
+
+/*
+ * The special functions of Gamma over 1024 arguments per invocation, the
+ * lookup of an LgammaCache for comparison, and the hyperparameter estimators
+ * of DirichletEstimation on M x K Polya counts: the digamma fixpoint
+ * estimateAlphaMap against the histogram fixpoint estimateAlpha(nmk, alpha,
+ * nthreads).
+ *
+ * Author: XU, Shuo (pzczxs@gmail.com)
+ * */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class NumericsBenchmark {
+	private final static int N = 1024;
+
+	@Param({ "2000" })
+	public int M;
+
+	@Param({ "50" })
+	public int K;
+
+	private double[] x; // arguments in (0, 100)
+	private int[] counts; // counts for the lgamma cache
+	private LgammaCache cache;
+
+	private int[][] nmk;
+	private int[] nm;
+
+	@Setup
+	public void setUp() {
+		final XoshiroRandom rand = new XoshiroRandom(Corpora.SEED);
+		x = new double[N];
+		counts = new int[N];
+		for (int i = 0; i < N; i++) {
+			x[i] = 100 * rand.nextDouble() + 1e-3;
+			counts[i] = rand.nextInt(64);
+		}
+		cache = new LgammaCache(0.1);
+
+		// Polya counts of M documents of 100 tokens each
+		final RandomSamplers rs = new RandomSamplers(rand);
+		final double[] alpha = new double[K];
+		for (int k = 0; k < K; k++) {
+			alpha[k] = 0.02 + 0.2 * rand.nextDouble();
+		}
+		nmk = new int[M][];
+		nm = new int[M];
+		for (int m = 0; m < M; m++) {
+			nmk[m] = rs.randMultFreqs(rs.randDir(alpha), 100);
+			nm[m] = Vectors.sum(nmk[m]);
+		}
+	}
+
+	@Benchmark
+	public double digamma() {
+		double sum = 0;
+		for (int i = 0; i < N; i++) {
+			sum += Gamma.digamma(x[i]);
+		}
+		return sum;
+	}
+
+	@Benchmark
+	public double trigamma() {
+		double sum = 0;
+		for (int i = 0; i < N; i++) {
+			sum += Gamma.trigamma(x[i]);
+		}
+		return sum;
+	}
+
+	@Benchmark
+	public double lgamma() {
+		double sum = 0;
+		for (int i = 0; i < N; i++) {
+			sum += Gamma.lgamma(x[i]);
+		}
+		return sum;
+	}
+
+	@Benchmark
+	public double lgammaCache() {
+		double sum = 0;
+		for (int i = 0; i < N; i++) {
+			sum += cache.get(counts[i]);
+		}
+		return sum;
+	}
+
+	@Benchmark
+	public double invdigamma() {
+		double sum = 0;
+		for (int i = 0; i < N; i++) {
+			sum += Gamma.invdigamma(Math.log(x[i]));
+		}
+		return sum;
+	}
+
+	@Benchmark
+	public double[] estimateAlphaMap() {
+		return DirichletEstimation.estimateAlphaMap(nmk, nm, Vectors.ones(K, 0.1), 0, 0);
+	}
+
+	@Benchmark
+	public double[] estimateAlphaHistogram() {
+		final double[] alpha = Vectors.ones(K, 0.1);
+		DirichletEstimation.estimateAlpha(nmk, alpha, 1);
+
+		return alpha;
+	}
+
+	@Benchmark
+	public double estimateSymmetricAlphaMap() {
+		return DirichletEstimation.estimateAlphaMap(nmk, nm, 0.1, 1.0, 0.0);
+	}
+
+	@Benchmark
+	public double estimateSymmetricAlphaHistogram() {
+		return DirichletEstimation.estimateAlphaMap(nmk, nm, 0.1, 1.0, 0.0, 1);
+	}
+}
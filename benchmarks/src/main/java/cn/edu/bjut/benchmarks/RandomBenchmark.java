@@ -0,0 +1,120 @@
+package cn.edu.bjut.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import cn.edu.bjut.utils.AliasTable;
+import cn.edu.bjut.utils.CokusRandom;
+import cn.edu.bjut.utils.Sampling;
+import cn.edu.bjut.utils.XoshiroRandom;
+
+/*
+ * Cost of one draw from a discrete distribution over K outcomes with the
+ * variants used by the samplers: the linear scans of CokusRandom.nextDiscrete
+ * (normalized, and unnormalized with a given sum), XoshiroRandom.nextDiscrete,
+ * the binary search over prefix sums of Sampling.sample and an AliasTable.
+ * The weights follow a Zipf law in random order, like the topic weights of a
+ * word in a trained model.
+ *
+ * Author: XU, Shuo (pzczxs@gmail.com)
+ * */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RandomBenchmark {
+	@Param({ "10", "100", "1000" })
+	public int K;
+
+	private double[] weights; // unnormalized
+	private double[] probs; // normalized
+	private double[] cdf; // prefix sums of weights
+	private double sum;
+	private AliasTable table;
+
+	private CokusRandom cokus;
+	private XoshiroRandom xoshiro;
+
+	@Setup
+	public void setUp() {
+		xoshiro = new XoshiroRandom(Corpora.SEED);
+		cokus = new CokusRandom(Corpora.SEED);
+
+		weights = new double[K];
+		for (int k = 0; k < K; k++) {
+			weights[k] = 1.0 / (k + 1);
+		}
+		for (int k = K - 1; k > 0; k--) {
+			final int j = xoshiro.nextInt(k + 1);
+			final double tmp = weights[k];
+			weights[k] = weights[j];
+			weights[j] = tmp;
+		}
+
+		cdf = new double[K];
+		sum = 0;
+		for (int k = 0; k < K; k++) {
+			sum += weights[k];
+			cdf[k] = sum;
+		}
+		probs = new double[K];
+		for (int k = 0; k < K; k++) {
+			probs[k] = weights[k] / sum;
+		}
+		table = new AliasTable(weights);
+	}
+
+	@Benchmark
+	public int cokusNextDiscrete() {
+		return cokus.nextDiscrete(probs);
+	}
+
+	@Benchmark
+	public int cokusNextDiscreteSum() {
+		return cokus.nextDiscrete(weights, sum);
+	}
+
+	@Benchmark
+	public int xoshiroNextDiscreteSum() {
+		return xoshiro.nextDiscrete(weights, sum);
+	}
+
+	@Benchmark
+	public int sampleLinear() {
+		return Sampling.sampleLinear(weights, K, sum, xoshiro);
+	}
+
+	@Benchmark
+	public int sampleBinarySearch() {
+		return Sampling.sample(cdf, K, xoshiro);
+	}
+
+	@Benchmark
+	public int aliasTable() {
+		return table.sample(xoshiro);
+	}
+
+	/*
+	 * the prefix sums have to be rebuilt whenever the weights change, as in
+	 * the collapsed Gibbs sampler
+	 * */
+	@Benchmark
+	public int cumulateAndSample() {
+		System.arraycopy(weights, 0, cdf, 0, K);
+		Sampling.cumulate(cdf, K);
+		return Sampling.sample(cdf, K, xoshiro);
+	}
+}
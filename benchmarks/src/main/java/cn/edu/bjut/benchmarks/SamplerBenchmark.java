@@ -0,0 +1,77 @@
+package cn.edu.bjut.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import cn.edu.bjut.estimators.IEstimator;
+
+/*
+ * Per-token sampling throughput of the estimators across the number of
+ * topics K. Every invocation is one Gibbs sweep over the corpus; the tokens
+ * counter reports the sampled tokens per second. The chain keeps running
+ * from invocation to invocation, so the measurement covers the sparse counts
+ * of a burnt-in chain rather than of the random initialization.
+ *
+ * Author: XU, Shuo (pzczxs@gmail.com)
+ * */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SamplerBenchmark {
+	@Param({ "LDA-gibbs", "LDA-sparse", "LDA-alias", "AT-gibbs", "AT-blocked", "AT-sparse", "coAT-blocked", "coAT-legacy" })
+	public String sampler;
+
+	@Param({ "20", "100", "500" })
+	public int K;
+
+	@Param({ Corpora.ZIPF, Corpora.NIPS })
+	public String corpus;
+
+	@Param({ "1" })
+	public int nthreads;
+
+	private IEstimator estimator;
+	private int W;
+
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.OPERATIONS)
+	public static class Tokens {
+		public long tokens;
+
+		@Setup(Level.Iteration)
+		public void reset() {
+			tokens = 0;
+		}
+	}
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		Corpora.quiet();
+		final String filebase = Corpora.filebase(corpus);
+		W = Corpora.numWords(filebase);
+		estimator = Corpora.estimator(sampler, filebase, K, nthreads);
+	}
+
+	@Benchmark
+	public void sweep(final Tokens counter) {
+		estimator.estimate(1);
+		counter.tokens += W;
+	}
+}
@@ -0,0 +1,193 @@
+package cn.edu.bjut.benchmarks;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+import cn.edu.bjut.utils.AliasTable;
+import cn.edu.bjut.utils.XoshiroRandom;
+
+/*
+ * Generator of synthetic corpora in the format of data/nips, so that the
+ * benchmarks run offline on corpora of any size and give the same corpus for
+ * the same arguments.
+ *
+ * Every topic is a Zipf distribution p(r) ~ 1/r^s over its own random
+ * ranking of the vocabulary, so the word frequencies of the whole corpus are
+ * heavy-tailed like those of real text. Every author prefers two topics. A
+ * document gets one to four authors and a length uniform in [N/2, 3N/2], and
+ * every token is drawn from a random preferred topic of its authors.
+ *
+ * The generator writes filebase.corpus and filebase.authors, and the held-out
+ * documents into filebase.test.corpus and filebase.test.authors.
+ *
+ * Author: XU, Shuo (pzczxs@gmail.com)
+ * */
+public class ZipfCorpus {
+	public final static double EXPONENT_DEFAULT = 1.07;
+
+	private final int V;
+	private final int K;
+	private final int A;
+	private final int N;
+	private final double exponent;
+	private final XoshiroRandom rand;
+
+	private final AliasTable[] topics; // size: K
+	private final int[][] ranking; // size: K x V, word of rank r of topic k
+	private final int[][] preferred; // size: A x 2
+
+	public ZipfCorpus(final int V, final int K, final int A, final int N,
+			final double exponent, final long seed) {
+		this.V = V;
+		this.K = K;
+		this.A = A;
+		this.N = N;
+		this.exponent = exponent;
+		this.rand = new XoshiroRandom(seed);
+
+		final double[] weights = new double[V];
+		for (int r = 0; r < V; r++) {
+			weights[r] = 1.0 / Math.pow(r + 1, exponent);
+		}
+
+		this.topics = new AliasTable[K];
+		this.ranking = new int[K][];
+		for (int k = 0; k < K; k++) {
+			topics[k] = new AliasTable(weights);
+			ranking[k] = permutation(V);
+		}
+
+		this.preferred = new int[A][2];
+		for (int a = 0; a < A; a++) {
+			preferred[a][0] = rand.nextInt(K);
+			preferred[a][1] = rand.nextInt(K);
+		}
+	}
+
+	public ZipfCorpus(final int V, final int K, final int A, final int N, final long seed) {
+		this(V, K, A, N, EXPONENT_DEFAULT, seed);
+	}
+
+	/*
+	 * write M training documents to filebase.* and Mtest held-out documents
+	 * to filebase.test.*
+	 * */
+	public void write(final String filebase, final int M, final int Mtest) throws IOException {
+		final File parent = new File(filebase).getAbsoluteFile().getParentFile();
+		if (parent != null) {
+			parent.mkdirs();
+		}
+
+		write(filebase + ".corpus", filebase + ".authors", M);
+		write(filebase + ".test.corpus", filebase + ".test.authors", Mtest);
+	}
+
+	private void write(final String corpus, final String authors, final int M) throws IOException {
+		final PrintWriter cw = new PrintWriter(new BufferedWriter(new FileWriter(corpus), 1 << 16));
+		final PrintWriter aw = new PrintWriter(new BufferedWriter(new FileWriter(authors), 1 << 16));
+
+		final int[] a = new int[4];
+		final StringBuilder line = new StringBuilder();
+		for (int m = 0; m < M; m++) {
+			final int Am = 1 + rand.nextInt(Math.min(4, A));
+			for (int i = 0; i < Am; i++) {
+				a[i] = distinctAuthor(a, i);
+			}
+
+			final int Nm = N / 2 + rand.nextInt(N + 1);
+			line.setLength(0);
+			for (int n = 0; n < Nm; n++) {
+				final int k = preferred[a[rand.nextInt(Am)]][rand.nextInt(2)];
+				final int t = ranking[k][topics[k].sample(rand)];
+				if (n > 0) {
+					line.append(' ');
+				}
+				line.append(t);
+			}
+			cw.println(line);
+
+			line.setLength(0);
+			for (int i = 0; i < Am; i++) {
+				if (i > 0) {
+					line.append(' ');
+				}
+				line.append(a[i]);
+			}
+			aw.println(line);
+		}
+
+		cw.close();
+		aw.close();
+	}
+
+	/*
+	 * a random author different from a[0..i)
+	 * */
+	private int distinctAuthor(final int[] a, final int i) {
+		while (true) {
+			final int candidate = rand.nextInt(A);
+			boolean distinct = true;
+			for (int j = 0; j < i; j++) {
+				distinct &= a[j] != candidate;
+			}
+			if (distinct) {
+				return candidate;
+			}
+		}
+	}
+
+	private int[] permutation(final int n) {
+		final int[] perm = new int[n];
+		for (int i = 0; i < n; i++) {
+			perm[i] = i;
+		}
+		for (int i = n - 1; i > 0; i--) {
+			final int j = rand.nextInt(i + 1);
+			final int tmp = perm[i];
+			perm[i] = perm[j];
+			perm[j] = tmp;
+		}
+
+		return perm;
+	}
+
+	public int getNTerms() {
+		return this.V;
+	}
+
+	public int getNTopics() {
+		return this.K;
+	}
+
+	public int getNAuthors() {
+		return this.A;
+	}
+
+	public double getExponent() {
+		return this.exponent;
+	}
+
+	/*
+	 * usage: ZipfCorpus filebase [M [V [K [A [N [seed]]]]]]
+	 * */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1) {
+			System.err.println("usage: ZipfCorpus filebase [M [V [K [A [N [seed]]]]]]");
+			System.exit(-1);
+		}
+
+		final String filebase = args[0];
+		final int M = (args.length > 1)? Integer.parseInt(args[1]): 10000;
+		final int V = (args.length > 2)? Integer.parseInt(args[2]): 20000;
+		final int K = (args.length > 3)? Integer.parseInt(args[3]): 50;
+		final int A = (args.length > 4)? Integer.parseInt(args[4]): 2000;
+		final int N = (args.length > 5)? Integer.parseInt(args[5]): 100;
+		final long seed = (args.length > 6)? Long.parseLong(args[6]): 20240101L;
+
+		new ZipfCorpus(V, K, A, N, seed).write(filebase, M, Math.max(1, M / 10));
+		System.out.println("done.");
+	}
+}
@@ -4,18 +4,22 @@ import java.io.BufferedReader;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
 import java.util.Random;
 import java.util.StringTokenizer;
-import java.util.Vector;
 
 import cn.edu.bjut.utils.CokusRandom;
+import cn.edu.bjut.utils.IRaggedArray;
+import cn.edu.bjut.utils.PackedRaggedArray;
 import cn.edu.bjut.utils.RandomSamplers;
 
 public class Corpus implements ICorpus, ISplitCorpus {
 
+	// the documents of a corpus built from Document objects until its words 
+	// are packed, null otherwise
 	protected Document[] docs;
+	// the packed words of all documents, which replace docs, see pack()
+	protected PackedRaggedArray words;
 	protected int numTerms;
 
 	private int readLimit = -1;
@@ -49,58 +53,106 @@ public class Corpus implements ICorpus, ISplitCorpus {
 		this.numTerms = numTerms;
 	}
 
+	/**
+	 * read a corpus in the text format straight into packed words. The file is 
+	 * read twice, first to count the tokens of every document and the terms and 
+	 * then to pack the tokens, so that no int[] is held per document, see 
+	 * MappedCorpus.convert()
+	 * 
+	 * @param fname
+	 */
 	public void read(final String fname) {
-		List<Document> docsList = new ArrayList<Document>();
+		int[] lengths = new int[1024];
+		int M = 0, nt = 0;
 
 		BufferedReader reader = null;
 		try {
+			// first pass: document lengths and vocabulary size
 			reader = new BufferedReader(new InputStreamReader(new FileInputStream(fname)));
-
-			// read corpus
-			int nd = 0, nt = 0;
 			for (String line; (line = reader.readLine()) != null;) {
 				StringTokenizer tknr = new StringTokenizer(line, " \t\r\n");
 
-				final int N = tknr.countTokens();
-				Vector<Integer> words = new Vector<Integer>();
-
-				for (int n = 0; n < N; n++) {
+				if (M == lengths.length) {
+					lengths = Arrays.copyOf(lengths, 2 * M);
+				}
+				lengths[M] = tknr.countTokens();
+				while (tknr.hasMoreTokens()) {
 					final int w = Integer.parseInt(tknr.nextToken());
-					words.add(w);
 					if (w >= nt) {
 						nt = w + 1;
 					}
 				} // end for each word
 
-				docsList.add(new Document(words));
-
-				if (nd % 1000 == 0) {
-					System.out.println(nd);
+				if (M % 1000 == 0) {
+					System.out.println(M);
 				}
-				nd++;
+				M++;
 
 				// stop if read limit reached
-				if (this.readLimit >= 0 && nd >= this.readLimit) {
+				if (this.readLimit >= 0 && M >= this.readLimit) {
 					break;
 				}
 			} // end for each document
+			reader.close();
+
+			// second pass: pack the tokens
+			final PackedRaggedArray packed = new PackedRaggedArray(Arrays.copyOf(lengths, M), Math.max(nt - 1, 0));
+			reader = new BufferedReader(new InputStreamReader(new FileInputStream(fname)));
+			for (int m = 0; m < M; m++) {
+				StringTokenizer tknr = new StringTokenizer(reader.readLine(), " \t\r\n");
+
+				for (int n = 0; n < lengths[m]; n++) {
+					packed.set(m, n, Integer.parseInt(tknr.nextToken()));
+				}
+			}
 
 			reader.close();
-			this.docs = docsList.toArray(new Document[docsList.size()]);
+			this.docs = null;
+			this.words = packed;
 			this.numTerms = nt;
 		} catch (Exception e) {
 			System.err.println("Error while reading corpus:" + e.getMessage());
 			e.printStackTrace();
 		} finally {
 			try {
-				reader.close();
+				if (reader != null) {
+					reader.close();
+				}
 			} catch (IOException e) {
 				e.printStackTrace();
 			}
 		}
 	}
 
+	/**
+	 * pack the words of the documents, if not done yet, and release the 
+	 * documents, so that every token is held once with ceil(log2(numTerms)) 
+	 * bits
+	 */
+	protected void pack() {
+		if (this.words != null || this.docs == null) {
+			return;
+		}
+
+		this.words = new PackedRaggedArray(getDocWords(), Math.max(numTerms - 1, 0));
+		this.docs = null;
+	}
+
+	/**
+	 * turn the packed words back into documents, before one of them is 
+	 * replaced
+	 */
+	protected void unpack() {
+		if (this.words == null) {
+			return;
+		}
+
+		this.docs = getDocs();
+		this.words = null;
+	}
+
 	public void setDoc(final Document doc, final int idx) {
+		unpack();
 		if (idx < 0 || idx >= docs.length) {
 			throw new IndexOutOfBoundsException("idx: " + idx);
 		}
@@ -108,12 +160,34 @@ public class Corpus implements ICorpus, ISplitCorpus {
 		docs[idx] = doc;
 	}
 
+	/**
+	 * @return the documents, which are copies of the packed words once the 
+	 *         corpus is packed
+	 */
 	public Document[] getDocs() {
-		return this.docs;
+		if (this.words == null) {
+			return this.docs;
+		}
+
+		Document[] documents = new Document[words.getNumRows()];
+		for (int m = 0; m < documents.length; m++) {
+			documents[m] = getDoc(m);
+		}
+
+		return documents;
 	}
 
+	/**
+	 * @param idx
+	 * @return document idx, a copy of its packed words once the corpus is 
+	 *         packed
+	 */
 	public Document getDoc(final int idx) {
-		return this.docs[idx];
+		if (this.words == null) {
+			return this.docs[idx];
+		}
+
+		return new Document(words.getRow(idx));
 	}
 
 	@Override
@@ -123,15 +197,15 @@ public class Corpus implements ICorpus, ISplitCorpus {
 
 	@Override
 	public int getNumDocs() {
-		return this.docs.length;
+		return (this.words != null) ? words.getNumRows() : this.docs.length;
 	}
 
 	@Override
 	public int getNumWords() {
 		int count = 0;
 
-		for (int m = 0; m < docs.length; m++) {
-			count += docs[m].getWords().length;
+		for (int m = 0; m < getNumDocs(); m++) {
+			count += getNumWords(m);
 		}
 
 		return count;
@@ -139,40 +213,72 @@ public class Corpus implements ICorpus, ISplitCorpus {
 
 	@Override
 	public int getNumWords(final int m) {
-		if (m < 0 || m >= docs.length) {
+		if (m < 0 || m >= getNumDocs()) {
 			throw new IndexOutOfBoundsException("m: " + m);
 		}
 
-		return docs[m].getWords().length;
+		return (this.words != null) ? words.length(m) : docs[m].getWords().length;
 	}
 
+	/**
+	 * @return the words of all documents, copies of the packed words once the 
+	 *         corpus is packed
+	 */
 	@Override
 	public int[][] getDocWords() {
-		int[][] words = new int[docs.length][];
+		int[][] w = new int[getNumDocs()][];
 
-		for (int m = 0; m < docs.length; m++) {
-			words[m] = docs[m].getWords();
+		for (int m = 0; m < w.length; m++) {
+			w[m] = getDocWords(m);
 		}
 
-		return words;
+		return w;
 	}
 
+	/**
+	 * @return the words of document m, a copy of its packed words once the 
+	 *         corpus is packed
+	 */
 	@Override
 	public int[] getDocWords(final int m) {
-		if (m < 0 || m >= docs.length) {
+		if (m < 0 || m >= getNumDocs()) {
 			throw new IndexOutOfBoundsException("m: " + m);
 		}
 
-		return docs[m].getWords();
+		return (this.words != null) ? words.getRow(m) : docs[m].getWords();
+	}
+
+	/**
+	 * pack the words of all documents into one contiguous buffer with 
+	 * ceil(log2(numTerms)) bits per token, which then replaces the documents, 
+	 * see pack()
+	 * 
+	 * @return the packed token-to-word array, indexed by (m, n), shared with 
+	 *         the corpus and not to be modified
+	 */
+	@Override
+	public PackedRaggedArray getPackedDocWords() {
+		pack();
+
+		return this.words;
+	}
+
+	/**
+	 * @return the packed words, see getPackedDocWords()
+	 */
+	@Override
+	public IRaggedArray getWordArray() {
+		return getPackedDocWords();
 	}
 
 	public void setDocs(Document[] documents) {
 		this.docs = documents;
+		this.words = null;
 	}
 
 	@Override
 	public void split(final int nfold, final long seed) {
-		final int M = docs.length;
+		final int M = getNumDocs();
 		this.nfold = nfold;
 
 		Random rand = new CokusRandom(seed);
@@ -190,16 +296,16 @@ public class Corpus implements ICorpus, ISplitCorpus {
 		assert split < nfold && split >= 0; 
 		
 		final int testM = starts[split + 1] - starts[split];
-		Document[] trainDocs = new Document[docs.length - testM];
+		Document[] trainDocs = new Document[getNumDocs() - testM];
 		
 		// before test split
 		for (int m = 0; m < starts[split]; m++) {
-			trainDocs[m] = docs[perm[m]];
+			trainDocs[m] = getDoc(perm[m]);
 		}
 		
 		// after test split
-		for (int m = starts[split + 1]; m < docs.length; m++) {
-			trainDocs[m] = docs[perm[m]];
+		for (int m = starts[split + 1]; m < getNumDocs(); m++) {
+			trainDocs[m] = getDoc(perm[m]);
 		}
 		
 		return new Corpus(trainDocs, numTerms);
@@ -213,7 +319,7 @@ public class Corpus implements ICorpus, ISplitCorpus {
 		Document[] testDocs = new Document[testM];
 
 		for (int m = starts[split]; m < starts[split + 1]; m++) {
-			testDocs[m] = docs[perm[m]];
+			testDocs[m] = getDoc(perm[m]);
 			origDocIds[1][m] = perm[m];
 		}
 
@@ -225,7 +331,7 @@ public class Corpus implements ICorpus, ISplitCorpus {
 		final int testM = starts[split + 1] - starts[split];
 		
 		origDocIds = new int[2][]; 
-		origDocIds[0] = new int[docs.length - testM]; // 0: train corpus; 
+		origDocIds[0] = new int[getNumDocs() - testM]; // 0: train corpus; 
 		origDocIds[1] = new int[testM]; // 1: test corpus
 		
 		int mtrain = 0;
@@ -236,7 +342,7 @@ public class Corpus implements ICorpus, ISplitCorpus {
 		}
 
 		// after test split
-		for (int m = starts[split + 1]; m < docs.length; m++) {
+		for (int m = starts[split + 1]; m < getNumDocs(); m++) {
 			origDocIds[0][mtrain] = perm[m];
 			mtrain++;
 		}
@@ -252,7 +358,7 @@ public class Corpus implements ICorpus, ISplitCorpus {
 	@Override
 	public String toString() {
 		StringBuffer b = new StringBuffer();
-		b.append("Corpus {numDocs = " + docs.length + ", numTerms = " + numTerms + "}");
+		b.append("Corpus {numDocs = " + getNumDocs() + ", numTerms = " + numTerms + "}");
 
 		return b.toString();
 	}
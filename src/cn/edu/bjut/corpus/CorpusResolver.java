@@ -19,7 +19,7 @@ public class CorpusResolver {
 
 	public final String[] EXTENSIONS = { "docs", "vocab", "authors.key", "labels.key", "pubs.key", "docnames" };
 
-	private Map<String, Integer> termids = null;
+	private volatile Map<String, Integer> termids = null;
 	private Map<String, Integer> authorids = null; 
 	private String[][] data = new String[EXTENSIONS.length][];
 		
@@ -102,14 +102,41 @@ public class CorpusResolver {
 	 * @return
 	 */
 	public int getTermId(String term) {
-	    if (this.termids == null) {
-	    	this.termids = new HashMap<String, Integer>();
-	        for (int i = 0; i < this.data[1].length; i++) {
-	        	this.termids.put(this.data[1][i], i);
+	    return termIds().get(term);
+	}
+
+	/**
+	 * find id for string term without failing on unknown terms, e.g., for
+	 * the tokens of a new document; safe to call from several threads
+	 * 
+	 * @param term
+	 * @return the id, or -1 if the term is not in the vocabulary
+	 */
+	public int findTermId(String term) {
+	    final Integer id = termIds().get(term);
+	    return (id != null)? id: -1;
+	}
+	
+	/*
+	 * the term index is built once on first use; volatile, so that readers 
+	 * on other threads see it fully built without taking the lock
+	 * */
+	private Map<String, Integer> termIds() {
+	    Map<String, Integer> ids = this.termids;
+	    if (ids == null) {
+	        synchronized (this) {
+	            if (this.termids == null) {
+	                final Map<String, Integer> map = new HashMap<String, Integer>();
+	                for (int i = 0; i < this.data[1].length; i++) {
+	                	map.put(this.data[1][i], i);
+	                }
+	                this.termids = map;
+	            }
+	            ids = this.termids;
 	        }
 	    }
 	    
-	    return this.termids.get(term);
+	    return ids;
 	}
 
 	/**
@@ -0,0 +1,277 @@
+package cn.edu.bjut.corpus;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * DisjointDocLabels partitions the documents of a corpus into P subsets of
+ * about equal weight such that as few labels (e.g., authors or co-author
+ * pairs) as possible occur in more than one subset. The rows of the
+ * label-topic counts of a label that occurs in a single subset can then be
+ * sampled by one thread without any merging; only the shared labels need
+ * the changes of several threads to be added up.
+ *
+ * The labels are the vertices of a graph in which the labels of a document
+ * are connected. Its connected components are independent and are assigned
+ * whole to the lightest subset, the heaviest first. A component that does
+ * not fit into the lightest subset is split by linear deterministic greedy
+ * streaming: each of its documents goes to the subset that already holds
+ * most of its labels, discounted by the fill of the subset, unless it is
+ * full. Documents without
+ * labels fill up the lightest subsets at the end.
+ *
+ * Reference: Isabelle Stanton and Gabriel Kliot, 2012. Streaming Graph
+ * Partitioning for Large Distributed Graphs. Proceedings of the 18th ACM
+ * SIGKDD International Conference on Knowledge Discovery and Data Mining, pp.
+ * 1222-1230.
+ *
+ * @author XU, Shuo (pzczxs@gmail.com)
+ */
+public class DisjointDocLabels {
+	/**
+	 * documents of each subset, int[p][i] -> m in ascending order
+	 */
+	private int[][] docs;
+
+	/**
+	 * labels of each subset, int[p][i] -> l in ascending order
+	 */
+	private int[][] labels;
+
+	/**
+	 * the subsets of label l are parts[offsets[l]..offsets[l+1])
+	 */
+	private int[] offsets;
+	private int[] parts;
+
+	/**
+	 * @param labels
+	 *            int[m][i] -> label of document m in [0, L)
+	 * @param L
+	 *            number of labels
+	 * @param weights
+	 *            weight of each document, e.g., its number of tokens
+	 * @param P
+	 *            number of subsets
+	 */
+	public DisjointDocLabels(final int[][] labels, final int L, final int[] weights, final int P) {
+		final int M = labels.length;
+
+		// connected components of the labels
+		final int[] root = new int[L];
+		for (int l = 0; l < L; l++) {
+			root[l] = l;
+		}
+		for (int m = 0; m < M; m++) {
+			for (int i = 1; i < labels[m].length; i++) {
+				final int a = find(root, labels[m][0]);
+				final int b = find(root, labels[m][i]);
+				if (a != b) {
+					root[Math.max(a, b)] = Math.min(a, b);
+				}
+			}
+		}
+
+		// documents of each component, grouped by counting sort
+		long total = 0;
+		final long[] cweight = new long[L];
+		final int[] csize = new int[L + 1];
+		for (int m = 0; m < M; m++) {
+			total += weights[m];
+			if (labels[m].length > 0) {
+				final int c = find(root, labels[m][0]);
+				cweight[c] += weights[m];
+				csize[c + 1]++;
+			}
+		}
+		for (int c = 0; c < L; c++) {
+			csize[c + 1] += csize[c];
+		}
+		final int[] cdocs = new int[csize[L]];
+		final int[] next = Arrays.copyOf(csize, L);
+		for (int m = 0; m < M; m++) {
+			if (labels[m].length > 0) {
+				cdocs[next[find(root, labels[m][0])]++] = m;
+			}
+		}
+
+		// the heaviest components first
+		int C = 0;
+		for (int c = 0; c < L; c++) {
+			if (csize[c + 1] > csize[c]) {
+				C++;
+			}
+		}
+		final Integer[] sorted = new Integer[C];
+		C = 0;
+		for (int c = 0; c < L; c++) {
+			if (csize[c + 1] > csize[c]) {
+				sorted[C++] = c;
+			}
+		}
+		Arrays.sort(sorted, new Comparator<Integer>() {
+			@Override
+			public int compare(final Integer a, final Integer b) {
+				final long wa = cweight[a], wb = cweight[b];
+				return wa > wb ? -1 : (wa < wb ? 1 : a.compareTo(b));
+			}
+		});
+
+		final double capacity = Math.max(1.0, (double) total / P);
+		final long[] load = new long[P];
+		final int[] part = new int[M];
+		final int[] home = new int[L]; // subset of the first document of a label
+		Arrays.fill(home, -1);
+		final int[] votes = new int[P];
+		for (int i = 0; i < C; i++) {
+			final int c = sorted[i];
+			final int lightest = lightest(load);
+			if (load[lightest] + cweight[c] <= capacity) {
+				for (int j = csize[c]; j < csize[c + 1]; j++) {
+					part[cdocs[j]] = lightest;
+				}
+				load[lightest] += cweight[c];
+				continue;
+			}
+
+			// split the component by greedy streaming
+			for (int j = csize[c]; j < csize[c + 1]; j++) {
+				final int m = cdocs[j];
+				Arrays.fill(votes, 0);
+				for (int l : labels[m]) {
+					if (home[l] >= 0) {
+						votes[home[l]]++;
+					}
+				}
+				int best = lightest(load);
+				double score = votes[best] * (1 - load[best] / capacity);
+				for (int p = 0; p < P; p++) {
+					if (load[p] >= capacity) {
+						continue; // full
+					}
+					final double s = votes[p] * (1 - load[p] / capacity);
+					if (s > score || (s == score && load[p] < load[best])) {
+						best = p;
+						score = s;
+					}
+				}
+				part[m] = best;
+				load[best] += weights[m];
+				for (int l : labels[m]) {
+					if (home[l] < 0) {
+						home[l] = best;
+					}
+				}
+			}
+		}
+		for (int m = 0; m < M; m++) {
+			if (labels[m].length == 0) {
+				part[m] = lightest(load);
+				load[part[m]] += weights[m];
+			}
+		}
+
+		// documents of each subset
+		final int[] size = new int[P];
+		for (int m = 0; m < M; m++) {
+			size[part[m]]++;
+		}
+		docs = new int[P][];
+		for (int p = 0; p < P; p++) {
+			docs[p] = new int[size[p]];
+		}
+		Arrays.fill(size, 0);
+		for (int m = 0; m < M; m++) {
+			docs[part[m]][size[part[m]]++] = m;
+		}
+
+		// labels of each subset and subsets of each label
+		final boolean[][] seen = new boolean[P][L];
+		final int[] count = new int[P];
+		offsets = new int[L + 1];
+		for (int m = 0; m < M; m++) {
+			for (int l : labels[m]) {
+				if (!seen[part[m]][l]) {
+					seen[part[m]][l] = true;
+					count[part[m]]++;
+					offsets[l + 1]++;
+				}
+			}
+		}
+		for (int l = 0; l < L; l++) {
+			offsets[l + 1] += offsets[l];
+		}
+		this.labels = new int[P][];
+		parts = new int[offsets[L]];
+		for (int p = 0; p < P; p++) {
+			this.labels[p] = new int[count[p]];
+			count[p] = 0;
+		}
+		final int[] fill = Arrays.copyOf(offsets, L);
+		for (int l = 0; l < L; l++) {
+			for (int p = 0; p < P; p++) {
+				if (seen[p][l]) {
+					this.labels[p][count[p]++] = l;
+					parts[fill[l]++] = p;
+				}
+			}
+		}
+	}
+
+	private static int find(final int[] root, int l) {
+		while (root[l] != l) {
+			root[l] = root[root[l]];
+			l = root[l];
+		}
+		return l;
+	}
+
+	private static int lightest(final long[] load) {
+		int p = 0;
+		for (int q = 1; q < load.length; q++) {
+			if (load[q] < load[p]) {
+				p = q;
+			}
+		}
+		return p;
+	}
+
+	/**
+	 * @return the documents of each subset, int[p][i] -> m
+	 */
+	public int[][] getDisjointDocuments() {
+		return docs;
+	}
+
+	/**
+	 * @return the labels that occur in each subset, int[p][i] -> l
+	 */
+	public int[][] getLabels() {
+		return labels;
+	}
+
+	/**
+	 * @return the subsets of label l are getParts()[getOffsets()[l] ..
+	 *         getOffsets()[l+1])
+	 */
+	public int[] getOffsets() {
+		return offsets;
+	}
+
+	public int[] getParts() {
+		return parts;
+	}
+
+	/**
+	 * @return the number of labels that occur in more than one subset
+	 */
+	public int getNumShared() {
+		int shared = 0;
+		for (int l = 0; l + 1 < offsets.length; l++) {
+			if (offsets[l + 1] - offsets[l] > 1) {
+				shared++;
+			}
+		}
+		return shared;
+	}
+}
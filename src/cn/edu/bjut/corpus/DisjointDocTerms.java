@@ -20,10 +20,11 @@
  */
 package cn.edu.bjut.corpus;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 
-import cn.edu.bjut.utils.ArrayUtils;
+import cn.edu.bjut.utils.IRaggedArray;
 import cn.edu.bjut.utils.IndexQuickSort;
+import cn.edu.bjut.utils.PackedRaggedArray;
 import cn.edu.bjut.utils.Vectors;
 
 /**
@@ -40,7 +41,7 @@ public class DisjointDocTerms {
 		int P = 2;
 		// ParNumCorpus nc = new ParNumCorpus("./nips/nips.corpus");
 		Corpus nc = new Corpus("./berry95/berry95.corpus");
-		int[][] w = nc.getDocWords();
+		IRaggedArray w = nc.getWordArray();
 		DisjointDocTerms dj = new DisjointDocTerms(w, nc.getNumTerms());
 		int[][] mm = dj.getDisjointDocuments(P);
 		System.out.println("disjoint document sets");
@@ -53,19 +54,20 @@ public class DisjointDocTerms {
 			System.out.println(Vectors.print(tt[p]));
 		}
 		System.out.println("disjoint token sequences");
-		int[][][] ww = dj.getDisjointTokens(P);
+		PackedRaggedArray[] ww = dj.getDisjointTokens(P);
 		for (int p = 0; p < P; p++) {
 			System.out.println("corpus " + p);
 			for (int m = 0; m < nc.getNumDocs(); m++) {
-				System.out.println(Vectors.print(ww[p][m]));
+				System.out.println(Vectors.print(ww[p].getRow(m)));
 			}
 		}
 	}
 
 	/**
-	 * original corpus
+	 * original corpus, read through getWordArray() so that a MappedCorpus is 
+	 * not copied onto the heap
 	 */
-	private int[][] w;
+	private IRaggedArray w;
 
 	/**
 	 * number of terms
@@ -74,7 +76,7 @@ public class DisjointDocTerms {
 
 	// //////////////////////
 
-	public DisjointDocTerms(int[][] w, int V) {
+	public DisjointDocTerms(IRaggedArray w, int V) {
 		this.w = w;
 		this.V = V;
 	}
@@ -88,7 +90,7 @@ public class DisjointDocTerms {
 	public int[][] getDisjointDocuments(int P) {
 		int[][] pm = new int[P][];
 		int[] dd = alignDocs(P);
-		int M = w.length;
+		int M = w.getNumRows();
 		int size = M / P;
 		int plus = M % P;
 		for (int p = 0; p < P; p++) {
@@ -110,53 +112,59 @@ public class DisjointDocTerms {
 	 * @return int[q][i] -> t
 	 */
 	public int[][] getDisjointTerms(int P) {
+		int[] pt = alignTerms(P);
+		int[] size = new int[P];
+		for (int t = 0; t < V; t++) {
+			size[pt[t]]++;
+		}
 		int[][] qt = new int[P][];
-		int size = V / P;
-		int plus = V % P;
 		for (int q = 0; q < P; q++) {
-			qt[q] = new int[size + (q < plus ? 1 : 0)];
-			for (int i = 0; i < qt[q].length; i++) {
-				qt[q][i] = q + i * P;
-			}
+			qt[q] = new int[size[q]];
+		}
+		int[] ii = new int[P];
+		for (int t = 0; t < V; t++) {
+			int q = pt[t];
+			qt[q][ii[q]] = t;
+			ii[q]++;
 		}
 		return qt;
 	}
 
 	/**
-	 * get the set of disjoint words for a corpus
+	 * get the set of disjoint words for a corpus, the token positions of block 
+	 * q in document m are row m of element q, packed with as many bits as the 
+	 * longest document needs
 	 * 
-	 * @param w
-	 *            int[m][n] -> t
-	 * @return int[q][m][i] -> n
+	 * @param P
+	 * @return PackedRaggedArray[q] with (m, i) -> n
 	 */
-	@SuppressWarnings("unchecked")
-	public int[][][] getDisjointTokens(int P) {
-		int M = w.length;
+	public PackedRaggedArray[] getDisjointTokens(int P) {
+		int M = w.getNumRows();
 		int[] pt = alignTerms(P);
 		// processor-specific sampling sequences
-		ArrayList[][] wpm = new ArrayList[P][M];
-
+		int[][] size = new int[P][M];
+		int maxN = 0;
 		for (int m = 0; m < M; m++) {
-			for (int q = 0; q < P; q++) {
-				wpm[q][m] = new ArrayList<Integer>();
-			}
-			for (int n = 0; n < w[m].length; n++) {
-				wpm[pt[w[m][n]]][m].add(n);
+			maxN = Math.max(maxN, w.length(m));
+			for (int n = 0; n < w.length(m); n++) {
+				size[pt[w.get(m, n)]][m]++;
 			}
 		}
 
-		int[][][] pp = new int[P][M][];
+		PackedRaggedArray[] pp = new PackedRaggedArray[P];
+		for (int q = 0; q < P; q++) {
+			pp[q] = new PackedRaggedArray(size[q], Math.max(maxN - 1, 0));
+		}
+		int[] ii = new int[P];
 		for (int m = 0; m < M; m++) {
-			for (int q = 0; q < P; q++) {
-				if (wpm[q][m].size() > 0) {
-					pp[q][m] = (int[]) ArrayUtils.asPrimitiveArray(wpm[q][m]);
-				} else {
-					pp[q][m] = new int[0];
-				}
+			Arrays.fill(ii, 0);
+			for (int n = 0; n < w.length(m); n++) {
+				int q = pt[w.get(m, n)];
+				pp[q].set(m, ii[q], n);
+				ii[q]++;
 			}
 		}
 		return pp;
-
 	}
 
 	/**
@@ -166,9 +174,29 @@ public class DisjointDocTerms {
 	 */
 	private int[] alignTerms(int P) {
 		int[] pt = new int[V];
-		// sorted term frequencies: use ids from NumCorpus
-		for (int t = 0; t < pt.length; t++) {
-			pt[t] = t % P;
+		// calculate term frequencies
+		int[] nt = new int[V];
+		for (int m = 0; m < w.getNumRows(); m++) {
+			for (int n = 0; n < w.length(m); n++) {
+				nt[w.get(m, n)]++;
+			}
+		}
+		// sort term frequencies
+		int[] idxt = IndexQuickSort.sort(nt);
+		IndexQuickSort.reverse(idxt);
+		// greedily associate the most frequent remaining term with the
+		// partition that carries the fewest tokens so far, which keeps the
+		// partitions balanced on Zipfian vocabularies
+		long[] load = new long[P];
+		for (int i = 0; i < V; i++) {
+			int q = 0;
+			for (int p = 1; p < P; p++) {
+				if (load[p] < load[q]) {
+					q = p;
+				}
+			}
+			pt[idxt[i]] = q;
+			load[q] += nt[idxt[i]];
 		}
 		return pt;
 	}
@@ -186,12 +214,12 @@ public class DisjointDocTerms {
 	 * @return
 	 */
 	private int[] alignDocs(int P) {
-		int M = w.length;
+		int M = w.getNumRows();
 		int[] pm = new int[M];
 		// calculate document lengths
 		int[] nm = new int[M];
 		for (int m = 0; m < M; m++) {
-			nm[m] = w[m].length;
+			nm[m] = w.length(m);
 		}
 		// sort document lengths
 		int[] idxm = IndexQuickSort.sort(nm);
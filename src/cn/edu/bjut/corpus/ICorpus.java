@@ -1,5 +1,8 @@
 package cn.edu.bjut.corpus;
 
+import cn.edu.bjut.utils.IRaggedArray;
+import cn.edu.bjut.utils.PackedRaggedArray;
+
 public interface ICorpus {
 
     int getNumTerms();
@@ -13,4 +16,12 @@ public interface ICorpus {
     int[][] getDocWords();
     
     int[] getDocWords(final int m);
+    
+    PackedRaggedArray getPackedDocWords();
+    
+    /**
+     * @return the word ids of the tokens, indexed by (m, n), without a copy 
+     * where the corpus allows it
+     */
+    IRaggedArray getWordArray();
 }
@@ -4,11 +4,15 @@ import java.io.BufferedReader;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import cn.edu.bjut.utils.LongIntHashMap;
 import cn.edu.bjut.utils.Relation;
 
 public class LabelCorpus extends Corpus implements ILabelCorpus {
@@ -30,10 +34,28 @@ public class LabelCorpus extends Corpus implements ILabelCorpus {
 
 	private String dataFilebase = null;
 
+	/**
+	 * co-author pair ids of each document
+	 */
 	private int[][] coauthor;
-	private Map<Relation<Integer>, Integer> coauthor2id;
+	/**
+	 * pair id of the key LongIntHashMap.key(a, b) of two authors
+	 */
+	private LongIntHashMap coauthor2id;
+	/**
+	 * the authors of pair r are coauthorFirst[r] &lt; coauthorSecond[r]
+	 */
+	private int[] coauthorFirst;
+	private int[] coauthorSecond;
+	/**
+	 * the documents of pair r are coauthorDocs[coauthorOffsets[r]..coauthorOffsets[r+1])
+	 */
+	private int[] coauthorOffsets;
+	private int[] coauthorDocs;
+	/**
+	 * boxed view of the co-author pairs for getId2Coauthor(), built on demand
+	 */
 	private Map<Integer, Relation<Integer>> id2coauthor;
-	private Map<Relation<Integer>, List<Integer>> coauthorDocs;
 
 	/**
 	 * 
@@ -72,6 +94,7 @@ public class LabelCorpus extends Corpus implements ILabelCorpus {
 	 */
 	public LabelCorpus(Corpus corp) {
 		this.docs = corp.docs;
+		this.words = corp.words;
 		this.numTerms = corp.numTerms;
 		init();
 	}
@@ -94,48 +117,69 @@ public class LabelCorpus extends Corpus implements ILabelCorpus {
 		return this.labels[kind];
 	}
 
+	/**
+	 * number the co-author pairs in the order of their first occurrence, with
+	 * the pairs packed into long keys and the documents of every pair in
+	 * compressed rows, so that no object is created per pair or occurrence
+	 */
 	private void buildCoauthor() {
 		int[][] a = getDocLabels(ILabelCorpus.LAUTHORS);
 
-		this.coauthor2id = new HashMap<Relation<Integer>, Integer>();
-		this.id2coauthor = new HashMap<Integer, Relation<Integer>>();
+		long W = 0;
+		for (int m = 0; m < a.length; m++) {
+			W += (long) a[m].length * (a[m].length - 1) / 2;
+		}
+		if (W > Integer.MAX_VALUE) {
+			throw new IllegalStateException("Too many co-author pairs: " + W);
+		}
+
+		this.coauthor2id = new LongIntHashMap();
 		this.coauthor = new int[a.length][];
-		this.coauthorDocs = new HashMap<Relation<Integer>, List<Integer>>();
+		int[] first = new int[16];
+		int[] second = new int[16];
+		int[] count = new int[16];
 
-		int count = 0;
+		int R = 0;
 		for (int m = 0; m < a.length; m++) {
 			int Am = a[m].length;
 			this.coauthor[m] = new int[Am * (Am - 1) / 2];
 			int rm = 0;
 			for (int i = 0; i < Am; i++) {
 				for (int j = i + 1; j < Am; j++) {
-					Relation<Integer> r;
-					if (a[m][i] < a[m][j]) {
-						r = new Relation<Integer>(a[m][i], a[m][j]);
-					} else {
-						r = new Relation<Integer>(a[m][j], a[m][i]);
-					}
-
-					int id;
-					if (this.coauthor2id.containsKey(r)) {
-						id = this.coauthor2id.get(r);
-
-						List<Integer> docs = this.coauthorDocs.get(r);
-						docs.add(m);
-						this.coauthorDocs.put(r, docs);
-					} else {
-						id = count++;
-						this.coauthor2id.put(r, id);
-						this.id2coauthor.put(id, r);
-						List<Integer> docs = new ArrayList<Integer>();
-						docs.add(m);
-						this.coauthorDocs.put(r, docs);
+					final long key = LongIntHashMap.key(a[m][i], a[m][j]);
+					int id = this.coauthor2id.get(key, -1);
+					if (id < 0) {
+						id = R++;
+						this.coauthor2id.put(key, id);
+						if (id == first.length) {
+							first = Arrays.copyOf(first, id << 1);
+							second = Arrays.copyOf(second, id << 1);
+							count = Arrays.copyOf(count, id << 1);
+						}
+						first[id] = Math.min(a[m][i], a[m][j]);
+						second[id] = Math.max(a[m][i], a[m][j]);
 					}
+					count[id]++;
 
 					this.coauthor[m][rm++] = id;
 				}
 			}
 		}
+		this.coauthorFirst = Arrays.copyOf(first, R);
+		this.coauthorSecond = Arrays.copyOf(second, R);
+
+		// documents of each pair in ascending order
+		this.coauthorOffsets = new int[R + 1];
+		for (int r = 0; r < R; r++) {
+			this.coauthorOffsets[r + 1] = this.coauthorOffsets[r] + count[r];
+		}
+		this.coauthorDocs = new int[(int) W];
+		final int[] next = Arrays.copyOf(this.coauthorOffsets, R);
+		for (int m = 0; m < a.length; m++) {
+			for (int r : this.coauthor[m]) {
+				this.coauthorDocs[next[r]++] = m;
+			}
+		}
 	}
 
 	/**
@@ -150,7 +194,7 @@ public class LabelCorpus extends Corpus implements ILabelCorpus {
 	}
 	
 	public int[] getDocCoauthor(final int m) {
-		if (m < 0 || m >= docs.length) {
+		if (m < 0 || m >= getNumDocs()) {
 			throw new IndexOutOfBoundsException("m: " + m);
 		}
 		
@@ -169,7 +213,7 @@ public class LabelCorpus extends Corpus implements ILabelCorpus {
 			buildCoauthor();
 		}
 
-		return this.coauthor2id.size();
+		return this.coauthorFirst.length;
 	}
 
 	/**
@@ -191,7 +235,8 @@ public class LabelCorpus extends Corpus implements ILabelCorpus {
 	}
 
 	/**
-	 * resolve the numeric coauthor id
+	 * resolve the numeric coauthor id into a newly allocated relation, see 
+	 * getCoauthorFirst() and getCoauthorSecond() for per-token use
 	 * 
 	 * @param r
 	 * @return
@@ -201,40 +246,148 @@ public class LabelCorpus extends Corpus implements ILabelCorpus {
 			buildCoauthor();
 		}
 
-		return this.id2coauthor.get(r);
+		return new Relation<Integer>(this.coauthorFirst[r], this.coauthorSecond[r]);
+	}
+
+	/**
+	 * @param r
+	 * @return the smaller author id of the co-author pair r
+	 */
+	public int getCoauthorFirst(int r) {
+		if (this.coauthor == null) {
+			buildCoauthor();
+		}
+
+		return this.coauthorFirst[r];
+	}
+
+	/**
+	 * @param r
+	 * @return the larger author id of the co-author pair r
+	 */
+	public int getCoauthorSecond(int r) {
+		if (this.coauthor == null) {
+			buildCoauthor();
+		}
+
+		return this.coauthorSecond[r];
 	}
 
 	/**
-	 * return the co-authored documents by the coauthor id r
+	 * return the id of the co-author pair of the authors a and b
+	 * 
+	 * @param a
+	 * @param b
+	 * @return the id, or -1 if a and b have no document in common
+	 */
+	public int getCoauthorId(int a, int b) {
+		if (this.coauthor == null) {
+			buildCoauthor();
+		}
+
+		return this.coauthor2id.get(LongIntHashMap.key(a, b), -1);
+	}
+
+	/**
+	 * return the number of documents co-authored by the coauthor id r
 	 * 
 	 * @param r
 	 * @return
 	 */
-	public List<Integer> getCoauthorDocs(int r) {
+	public int getCoauthorDocCount(int r) {
+		if (this.coauthor == null) {
+			buildCoauthor();
+		}
+
+		return this.coauthorOffsets[r + 1] - this.coauthorOffsets[r];
+	}
+
+	/**
+	 * copy the documents co-authored by the coauthor id r into dst, which
+	 * holds at least getCoauthorDocCount(r) elements
+	 * 
+	 * @param r
+	 * @param dst
+	 * @return the number of documents copied
+	 */
+	public int getCoauthorDocs(int r, int[] dst) {
 		if (this.coauthor == null) {
 			buildCoauthor();
 		}
 
-		Relation<Integer> coauthor = this.id2coauthor.get(r);
+		final int n = this.coauthorOffsets[r + 1] - this.coauthorOffsets[r];
+		System.arraycopy(this.coauthorDocs, this.coauthorOffsets[r], dst, 0, n);
 
-		return this.coauthorDocs.get(coauthor);
+		return n;
 	}
 
 	/**
-	 * return the co-authored documents by the coauthor r
+	 * return the co-authored documents by the coauthor id r as a read-only
+	 * view that boxes every element on access; a compatibility shim, use
+	 * getCoauthorDocs(r, dst) in loops
 	 * 
 	 * @param r
 	 * @return
 	 */
-	public List<Integer> getCoauthorDocs(Relation<Integer> r) {
+	public List<Integer> getCoauthorDocs(int r) {
 		if (this.coauthor == null) {
 			buildCoauthor();
 		}
 
-		return this.coauthorDocs.get(r);
+		final int offset = this.coauthorOffsets[r];
+		final int size = this.coauthorOffsets[r + 1] - offset;
+		final int[] docs = this.coauthorDocs;
+		return new AbstractList<Integer>() {
+			@Override
+			public Integer get(int i) {
+				if (i < 0 || i >= size) {
+					throw new IndexOutOfBoundsException("index: " + i + ", size: " + size);
+				}
+				return docs[offset + i];
+			}
+
+			@Override
+			public int size() {
+				return size;
+			}
+		};
 	}
 
+	/**
+	 * return the co-authored documents by the coauthor r, a compatibility
+	 * shim like getCoauthorDocs(int)
+	 * 
+	 * @param r
+	 * @return
+	 */
+	public List<Integer> getCoauthorDocs(Relation<Integer> r) {
+		int id = getCoauthorId(r.getFirst(), r.getSecond());
+
+		return id < 0 ? null : getCoauthorDocs(id);
+	}
+
+	/**
+	 * return the co-author pairs by their ids as a read-only map, built once
+	 * on the first call; a compatibility shim that holds a boxed relation per
+	 * pair, use getCoauthorFirst(r) and getCoauthorSecond(r) in loops. The
+	 * relations are shared by all callers and must not be modified.
+	 * 
+	 * @return
+	 */
 	public Map<Integer, Relation<Integer>> getId2Coauthor() {
+		if (this.coauthor == null) {
+			buildCoauthor();
+		}
+
+		if (this.id2coauthor == null) {
+			Map<Integer, Relation<Integer>> id2coauthor = new HashMap<Integer, Relation<Integer>>(
+					2 * this.coauthorFirst.length);
+			for (int r = 0; r < this.coauthorFirst.length; r++) {
+				id2coauthor.put(r, getCoauthor(r));
+			}
+			this.id2coauthor = Collections.unmodifiableMap(id2coauthor);
+		}
+
 		return this.id2coauthor;
 	}
 
@@ -340,7 +493,7 @@ public class LabelCorpus extends Corpus implements ILabelCorpus {
 			}
 			
 			// after test split
-			for (int m = starts[split + 1]; m < docs.length; m++) {
+			for (int m = starts[split + 1]; m < getNumDocs(); m++) {
 				trainLabels[type][mtrain] = this.labels[type][perm[m]];
 				trainLabelsW[type] += trainLabels[type][mtrain].length;
 				mtrain++;
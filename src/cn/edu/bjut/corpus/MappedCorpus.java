@@ -0,0 +1,334 @@
+package cn.edu.bjut.corpus;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.StringTokenizer;
+
+import cn.edu.bjut.utils.ArrayIo;
+import cn.edu.bjut.utils.IRaggedArray;
+import cn.edu.bjut.utils.PackedRaggedArray;
+
+/**
+ * MappedCorpus reads a corpus from the binary corpus format by mapping the
+ * file into memory with FileChannel.map, so that opening it costs next to
+ * nothing and the tokens are shared across processes through the page cache.
+ *
+ * The binary format (big-endian) consists of
+ * <pre>
+ * header:  int magic ("GTMC"), int version, int M, int V, long N
+ * offsets: long[M+1], the tokens of document m are [offsets[m], offsets[m+1])
+ * tokens:  int[N], the word ids of all documents one after another
+ * </pre>
+ * A binary corpus is created from the text format of Corpus (one document per
+ * line with whitespace-separated word ids) with
+ * <pre>
+ * java cn.edu.bjut.corpus.MappedCorpus filebase.corpus filebase.bcorpus
+ * </pre>
+ * The document names in filebase.docs are not part of the binary format and
+ * are still resolved by CorpusResolver.
+ *
+ * A MappedCorpus is itself the IRaggedArray of its words, which the
+ * estimators read through getWordArray() straight from the mapping; only
+ * getDocWords() and getPackedDocWords() copy tokens onto the heap.
+ *
+ * @author XU, Shuo (pzczxs@gmail.com)
+ */
+public class MappedCorpus implements ICorpus, IRaggedArray {
+	public final static String SUFFIX = ".bcorpus";
+	public final static int MAGIC = 0x47544D43; // "GTMC"
+	public final static int VERSION = 1;
+
+	private final static int HEADER_BYTES = 24;
+	// a single mapping is limited to 2 GB, so tokens are mapped in segments of 2^28
+	private final static int SEGMENT_SHIFT = 28;
+	private final static long SEGMENT_MASK = (1L << SEGMENT_SHIFT) - 1;
+
+	private int numDocs;
+	private int numTerms;
+	private long numTokens;
+	private long[] offsets; // read onto the heap, M+1 longs
+	private IntBuffer[] tokens;
+
+	public MappedCorpus(final String fname) {
+		read(fname);
+	}
+
+	public static void main(String[] args) {
+		if (args.length != 2) {
+			System.err.println("Usage: java cn.edu.bjut.corpus.MappedCorpus <text corpus> <binary corpus>");
+			System.exit(-1);
+		}
+
+		convert(args[0], args[1]);
+	}
+
+	public void read(final String fname) {
+		RandomAccessFile file = null;
+		try {
+			file = new RandomAccessFile(fname, "r");
+			final FileChannel channel = file.getChannel();
+
+			final ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES);
+			if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+				throw new IOException(fname + " is not a binary corpus of version " + VERSION + ".");
+			}
+			numDocs = header.getInt();
+			numTerms = header.getInt();
+			numTokens = header.getLong();
+
+			final LongBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_BYTES,
+					8L * (numDocs + 1)).asLongBuffer();
+			offsets = new long[numDocs + 1];
+			mapped.get(offsets);
+
+			final long base = HEADER_BYTES + 8L * (numDocs + 1);
+			final int nsegments = (int) ((numTokens + SEGMENT_MASK) >>> SEGMENT_SHIFT);
+			tokens = new IntBuffer[nsegments];
+			for (int s = 0; s < nsegments; s++) {
+				final long start = (long) s << SEGMENT_SHIFT;
+				final long length = Math.min(SEGMENT_MASK + 1, numTokens - start);
+				tokens[s] = channel.map(FileChannel.MapMode.READ_ONLY,
+						base + 4 * start, 4 * length).asIntBuffer();
+			}
+		} catch (IOException e) {
+			System.err.println("Error while reading corpus:" + e.getMessage());
+			e.printStackTrace();
+		} finally {
+			try {
+				// the mappings stay valid after the file is closed
+				if (file != null) {
+					file.close();
+				}
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	/**
+	 * convert a corpus in the text format into the binary format. The text
+	 * file is read twice, first to count the tokens of every document and then
+	 * to copy them, so the memory needed does not depend on its size. The
+	 * binary corpus is written to a temporary file first, which then replaces
+	 * binaryFile, so that a failure never leaves a truncated corpus behind, see
+	 * LDAEstimator.checkpoint().
+	 *
+	 * @param textFile
+	 * @param binaryFile
+	 */
+	public static void convert(final String textFile, final String binaryFile) {
+		// first pass: document lengths and vocabulary size
+		int[] lengths = new int[1024];
+		int M = 0, V = 0;
+		long N = 0;
+		BufferedReader reader = null;
+		try {
+			reader = new BufferedReader(new InputStreamReader(new FileInputStream(textFile)));
+			for (String line; (line = reader.readLine()) != null;) {
+				final StringTokenizer tknr = new StringTokenizer(line, " \t\r\n");
+				if (M == lengths.length) {
+					lengths = Arrays.copyOf(lengths, 2 * M);
+				}
+				lengths[M] = tknr.countTokens();
+				while (tknr.hasMoreTokens()) {
+					final int w = Integer.parseInt(tknr.nextToken());
+					if (w >= V) {
+						V = w + 1;
+					}
+				}
+				N += lengths[M];
+				M++;
+			}
+		} catch (IOException e) {
+			System.err.println("Error while reading corpus:" + e.getMessage());
+			e.printStackTrace();
+			return;
+		} catch (NumberFormatException e) {
+			System.err.println("Error while reading corpus:" + e.getMessage());
+			e.printStackTrace();
+			return;
+		} finally {
+			closeReader(reader);
+		}
+
+		// second pass: header, offsets and tokens
+		final File tmp = new File(binaryFile + ".tmp");
+		DataOutputStream out = null;
+		reader = null;
+		try {
+			final FileOutputStream fos = new FileOutputStream(tmp);
+			out = new DataOutputStream(new BufferedOutputStream(fos, 1 << 16));
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(M);
+			out.writeInt(V);
+			out.writeLong(N);
+			long offset = 0;
+			for (int m = 0; m < M; m++) {
+				out.writeLong(offset);
+				offset += lengths[m];
+			}
+			out.writeLong(offset);
+
+			reader = new BufferedReader(new InputStreamReader(new FileInputStream(textFile)));
+			long n = 0;
+			for (String line; (line = reader.readLine()) != null;) {
+				final StringTokenizer tknr = new StringTokenizer(line, " \t\r\n");
+				while (tknr.hasMoreTokens()) {
+					out.writeInt(Integer.parseInt(tknr.nextToken()));
+					n++;
+				}
+			}
+			if (n != N) {
+				throw new IOException(textFile + " has changed while converting it.");
+			}
+			out.flush();
+			fos.getFD().sync();
+			out.close();
+			out = null;
+
+			ArrayIo.replaceFile(tmp, new File(binaryFile));
+		} catch (IOException e) {
+			System.err.println("Error while writing corpus:" + e.getMessage());
+			e.printStackTrace();
+		} catch (NumberFormatException e) {
+			System.err.println("Error while writing corpus:" + e.getMessage());
+			e.printStackTrace();
+		} finally {
+			closeReader(reader);
+			if (out != null) {
+				try {
+					out.close();
+				} catch (IOException e) {
+					// the conversion has failed already
+				}
+			}
+			tmp.delete();
+		}
+	}
+
+	private static void closeReader(final BufferedReader reader) {
+		if (reader != null) {
+			try {
+				reader.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	/**
+	 * @param m
+	 * @param n
+	 * @return the word id of token n in document m
+	 */
+	public int getWord(final int m, final int n) {
+		final long i = offsets[m] + n;
+
+		return tokens[(int) (i >>> SEGMENT_SHIFT)].get((int) (i & SEGMENT_MASK));
+	}
+
+	@Override
+	public int getNumRows() {
+		return this.numDocs;
+	}
+
+	@Override
+	public int length(final int m) {
+		return (int) (offsets[m + 1] - offsets[m]);
+	}
+
+	@Override
+	public int get(final int m, final int n) {
+		return getWord(m, n);
+	}
+
+	@Override
+	public int getNumTerms() {
+		return this.numTerms;
+	}
+
+	@Override
+	public int getNumDocs() {
+		return this.numDocs;
+	}
+
+	@Override
+	public int getNumWords() {
+		return (int) Math.min(numTokens, Integer.MAX_VALUE);
+	}
+
+	@Override
+	public int getNumWords(final int m) {
+		if (m < 0 || m >= numDocs) {
+			throw new IndexOutOfBoundsException("m: " + m);
+		}
+
+		return (int) (offsets[m + 1] - offsets[m]);
+	}
+
+	@Override
+	public int[][] getDocWords() {
+		int[][] words = new int[numDocs][];
+
+		for (int m = 0; m < numDocs; m++) {
+			words[m] = getDocWords(m);
+		}
+
+		return words;
+	}
+
+	@Override
+	public int[] getDocWords(final int m) {
+		int[] words = new int[getNumWords(m)];
+
+		for (int n = 0; n < words.length; n++) {
+			words[n] = getWord(m, n);
+		}
+
+		return words;
+	}
+
+	@Override
+	public PackedRaggedArray getPackedDocWords() {
+		final int[] lengths = new int[numDocs];
+		for (int m = 0; m < numDocs; m++) {
+			lengths[m] = getNumWords(m);
+		}
+
+		final PackedRaggedArray words = new PackedRaggedArray(lengths, Math.max(numTerms - 1, 0));
+		for (int m = 0; m < numDocs; m++) {
+			for (int n = 0; n < lengths[m]; n++) {
+				words.set(m, n, getWord(m, n));
+			}
+		}
+
+		return words;
+	}
+
+	/**
+	 * @return this corpus, whose words are read from the mapping
+	 */
+	@Override
+	public IRaggedArray getWordArray() {
+		return this;
+	}
+
+	@Override
+	public String toString() {
+		return "MappedCorpus {numDocs = " + numDocs + ", numTerms = " + numTerms +
+				", numTokens = " + numTokens + "}";
+	}
+}
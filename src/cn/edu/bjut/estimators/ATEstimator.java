@@ -1,17 +1,39 @@
 package cn.edu.bjut.estimators;
 
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import cn.edu.bjut.corpus.CorpusResolver;
+import cn.edu.bjut.corpus.DisjointDocLabels;
 import cn.edu.bjut.corpus.ILabelCorpus;
 import cn.edu.bjut.corpus.LabelCorpus;
+import cn.edu.bjut.inferencers.TrainedModel;
 import cn.edu.bjut.parameters.ATParameter;
-import cn.edu.bjut.utils.CokusRandom;
+import cn.edu.bjut.utils.ArrayIo;
+import cn.edu.bjut.utils.CountMatrix;
+import cn.edu.bjut.utils.DirichletEstimation;
+import cn.edu.bjut.utils.FPlusTree;
+import cn.edu.bjut.utils.IRaggedArray;
 import cn.edu.bjut.utils.IntegerDoublePair;
+import cn.edu.bjut.utils.LogLikelihood;
+import cn.edu.bjut.utils.ModelWriter;
+import cn.edu.bjut.utils.PackedRaggedArray;
+import cn.edu.bjut.utils.ParallelFor;
+import cn.edu.bjut.utils.Sampling;
+import cn.edu.bjut.utils.SparseCountMatrix;
+import cn.edu.bjut.utils.Vectors;
+import cn.edu.bjut.utils.XoshiroRandom;
 
 /*
  * Gibbs sampling algorithm for Author-Topic (AT) model. 
@@ -30,23 +52,37 @@ import cn.edu.bjut.utils.IntegerDoublePair;
  * Author: XU, Shuo (pzczxs@gmail.com)
  * */
 public class ATEstimator implements IEstimator {
+	private final static int CONVERGED = 3; // evaluations in a row below param.getConvergence() to stop
+	
 	private String filebase; 
 	private LabelCorpus corpus;
 	private ATParameter param;
 	private int V;
 	private int A; 
+	private int maxAuthors; // maximal number of authors of a document
 
-	private CokusRandom rand;
+	private XoshiroRandom rand;
+	private XoshiroRandom[] rands; // streams of the parallel workers, see streams()
+	private ExecutorService pool; // threads of the parallel workers during estimate()
 
-	private int[][] nak; // size: A x K
+	private SparseCountMatrix nak; // size: A x K, non-zero topics only
 	private int[] na; // size: A
-	private int[][] nkt; // size: K x V
+	private CountMatrix ntk; // size: V x K, word-major
 	private int[] nk; // size: K
 
-	private int[][] z;
-	private int[][] x; 
+	private IRaggedArray words; // size: M x Nm, packed or memory-mapped
+	private PackedRaggedArray z; // size: M x Nm, packed to ceil(log2 K) bits
+	private PackedRaggedArray x; // size: M x Nm, packed to ceil(log2 A) bits
+
+	private int iteration; // number of Gibbs iterations done
+	private TrainedModel model; // frozen model of the current state, built on demand
+	private LogLikelihood likelihood; // built on demand
+	private double lastLoglik = Double.NaN; // at the last evaluation in sweepDone()
+	private int settled; // evaluations in a row below param.getConvergence()
 
-	private double Kalpha; // K*alpha
+	private double[] alpha; // size: K, asymmetric once optimized
+	private double beta; 
+	private double Kalpha; // sum of alpha
 	private double Vbeta; // V*beta
 	
 	public ATEstimator(final String filebase, final long seed, final ATParameter param) {
@@ -56,17 +92,138 @@ public class ATEstimator implements IEstimator {
 		this.param = param;
 		this.V = corpus.getNumTerms();
 		this.A = corpus.getLabelsV(ILabelCorpus.LAUTHORS); 
+		this.maxAuthors = corpus.getLabelsMaxN(ILabelCorpus.LAUTHORS); 
+		this.words = corpus.getWordArray(); 
 
+		this.alpha = new double[param.getNTopics()]; 
+		Arrays.fill(alpha, param.getAlpha()); 
+		this.beta = param.getBeta(); 
 		this.Kalpha = param.getNTopics() * param.getAlpha();
 		this.Vbeta = V * param.getBeta();
 
-		this.rand = new CokusRandom(seed);
+		this.rand = new XoshiroRandom(seed);
 	}
 	
 	public ATEstimator(final String filebase, final long seed) {
 		this(filebase, seed, new ATParameter());
 	}
 	
+	/*
+	 * copy constructor for snapshot(), the corpus and the parameters are shared
+	 * */
+	private ATEstimator(final ATEstimator src) {
+		this.filebase = src.filebase; 
+		this.corpus = src.corpus; 
+		this.param = src.param; 
+		this.V = src.V; 
+		this.A = src.A; 
+		this.maxAuthors = src.maxAuthors; 
+		this.words = src.words; 
+		this.rand = src.rand; 
+		this.alpha = src.alpha.clone(); 
+		this.beta = src.beta; 
+		this.Kalpha = src.Kalpha; 
+		this.Vbeta = src.Vbeta; 
+		this.iteration = src.iteration; 
+		
+		allocate(); 
+		nak.copyFrom(src.nak); 
+		ntk.copyFrom(src.ntk); 
+		System.arraycopy(src.na, 0, na, 0, na.length); 
+		System.arraycopy(src.nk, 0, nk, 0, nk.length); 
+		z.copyFrom(src.z); 
+		x.copyFrom(src.x); 
+	}
+	
+	/*
+	 * a copy of the current state that can be printed while this estimator 
+	 * keeps sampling; it shares the random number generator and is not meant 
+	 * to be sampled itself
+	 * */
+	public ATEstimator snapshot() {
+		return new ATEstimator(this); 
+	}
+	
+	/*
+	 * print vartheta, varphi and the assignments of a snapshot of the current 
+	 * state on a background thread, skipping null files; get() on the returned 
+	 * future waits for the output and rethrows a failed write
+	 * */
+	public Future<Void> printInBackground(final File vartheta, final File varphi, final File assign) {
+		final ATEstimator snapshot = snapshot(); 
+		
+		return ModelWriter.inBackground(new Callable<Void>() {
+			@Override
+			public Void call() throws IOException {
+				if (vartheta != null) {
+					final ModelWriter writer = ModelWriter.open(vartheta); 
+					try {
+						snapshot.printVartheta(writer); 
+					} finally {
+						writer.close(); 
+					}
+				}
+				if (varphi != null) {
+					final ModelWriter writer = ModelWriter.open(varphi); 
+					try {
+						snapshot.printVarphi(writer); 
+					} finally {
+						writer.close(); 
+					}
+				}
+				if (assign != null) {
+					final ModelWriter writer = ModelWriter.open(assign); 
+					try {
+						snapshot.printAssign(writer); 
+					} finally {
+						writer.close(); 
+					}
+				}
+
+				return null; 
+			}
+		}); 
+	}
+	
+	/*
+	 * the frozen model of the current state for inference; it is built once 
+	 * and shared by all inferencers until the state changes again
+	 * */
+	public TrainedModel getTrainedModel() {
+		if (model == null) {
+			model = new TrainedModel(ntk, nk, beta, nak, na, alpha); 
+		}
+		
+		return model; 
+	}
+	
+	/*
+	 * the log joint likelihood log p(w, z, x) of the current state, up to 
+	 * the constant probability of the choice of authors, evaluated over the 
+	 * non-zero counts only, see LogLikelihood; the V x K word-topic cells are 
+	 * evaluated on the first call only, after which the samplers track their 
+	 * changes, see track()
+	 * */
+	@Override
+	public double loglik() {
+		if (likelihood == null) {
+			likelihood = new LogLikelihood(); 
+		}
+		
+		return likelihood.words(ntk, nk, beta) + likelihood.topics(nak, alpha); 
+	}
+	
+	/*
+	 * add the changes of the word-topic cells that a sweep has collected by 
+	 * LogLikelihood.moved(), or that a merge has returned, to the tracked 
+	 * log-likelihood
+	 * */
+	private void track(final double cells) {
+		if (likelihood != null) {
+			likelihood.add(cells); 
+		}
+	}
+	
 	public ATParameter getParameter() {
 		return this.param; 
 	}
@@ -75,104 +232,940 @@ public class ATEstimator implements IEstimator {
 	public void init() {
 		final int M = corpus.getNumDocs(); 
 		final int K = param.getNTopics(); 
-		final int[][] w = corpus.getDocWords(); 
 		final int[][] a = corpus.getDocLabels(ILabelCorpus.LAUTHORS); 
 		
-		// allocate
-		nak = new int[A][K];
+		allocate(); 
+		// initialize
+		for (int m = 0; m < M; m++) {
+			for (int n = 0; n < words.length(m); n++) {
+				z.set(m, n, rand.nextInt(K));
+				x.set(m, n, a[m][rand.nextInt(a[m].length)]);
+			}
+		}
+		count(); 
+		iteration = 0; 
+		model = null; 
+	}
+	
+	private void allocate() {
+		final int K = param.getNTopics(); 
+		
+		nak = new SparseCountMatrix(A, K);
 		na = new int[A];
-		nkt = new int[K][V];
+		ntk = new CountMatrix(V, K);
 		nk = new int[K];
-		z = new int[M][];
-		x = new int[M][];
+		z = new PackedRaggedArray(words, K - 1);
+		x = new PackedRaggedArray(words, Math.max(A - 1, 0));
+		likelihood = null; // it tracks the former counts
+	}
+	
+	/*
+	 * fill the count matrices from the assignments z and x
+	 * */
+	private void count() {
+		final int M = corpus.getNumDocs(); 
 		
-		// initialize
 		for (int m = 0; m < M; m++) {
-			z[m] = new int[w[m].length];
-			x[m] = new int[w[m].length];
-			for (int n = 0; n < w[m].length; n++) {
-				final int t = w[m][n];
-				final int k = rand.nextInt(K);
-				final int idx = rand.nextInt(a[m].length);
-				final int i = a[m][idx];
-				
-				z[m][n] = k;
-				x[m][n] = i;
-				nak[i][k]++;
+			for (int n = 0; n < words.length(m); n++) {
+				final int k = z.get(m, n);
+				final int i = x.get(m, n);
+				nak.inc(i, k);
 				na[i]++;
-				nkt[k][t]++;
+				ntk.inc(words.get(m, n), k);
 				nk[k]++;
 			}
 		}
 	}
+	
+	/*
+	 * called after every Gibbs iteration, optimizes alpha and beta every 
+	 * param.getOptimize() iterations after param.getOptBurnin(), writes a 
+	 * checkpoint every param.getCheckpoint() iterations and prints the 
+	 * log-likelihood every param.getLikelihood() iterations
+	 * 
+	 * @return true once the relative change of the log-likelihood has stayed 
+	 * below param.getConvergence() for CONVERGED evaluations in a row, i.e., 
+	 * the sampler should stop; a single small or negative change is noise
+	 * */
+	private boolean sweepDone() {
+		iteration++; 
+		model = null; 
+		if (param.getOptimize() > 0 && iteration >= param.getOptBurnin() 
+				&& iteration % param.getOptimize() == 0) {
+			optimizeHyperparameters(); 
+		}
+		if (param.getCheckpoint() > 0 && iteration % param.getCheckpoint() == 0) {
+			checkpoint(new File(filebase + ".AT.checkpoint")); 
+		}
+		
+		final int every = param.getLikelihood(); 
+		if (every <= 0 || iteration % every != 0) {
+			return false; 
+		}
+		
+		final double loglik = loglik(); 
+		System.out.println("iter: " + iteration + ", loglik: " + loglik); 
+		final double improvement = (loglik - lastLoglik) / Math.abs(lastLoglik); 
+		lastLoglik = loglik; 
+		settled = (Math.abs(improvement) < param.getConvergence())? settled + 1: 0; 
+		
+		return param.getConvergence() > 0 && settled >= CONVERGED; 
+	}
+	
+	/*
+	 * Fixed-point updates of the asymmetric alpha of the authors and the 
+	 * symmetric beta from histograms of the counts, see 
+	 * LDAEstimator.optimizeHyperparameters(). 
+	 * */
+	private void optimizeHyperparameters() {
+		DirichletEstimation.estimateAlphaHist(nak.columnHistograms(), nak.rowSumHistogram(), alpha, 
+				(pool != null)? param.getNThreads(): 1, pool); 
+		beta = DirichletEstimation.estimateAlphaHist(ntk.histogram(), CountMatrix.histogram(nk), V, beta); 
+		Kalpha = Vectors.sum(alpha); 
+		Vbeta = V * beta; 
+		System.out.println("iter: " + iteration + ", mean alpha: " + Kalpha / alpha.length + ", beta: " + beta); 
+	}
+	
+	/*
+	 * The checkpoint holds a header of the model name, V, M, A and the number 
+	 * of topics, then the number of iterations, the states of the random 
+	 * number generator and of the streams of the parallel workers, alpha and 
+	 * beta, and the packed assignments z and x; the count matrices are rebuilt 
+	 * from the assignments on resume. See LDAEstimator.checkpoint(). 
+	 * */
+	@Override
+	public void checkpoint(final File f) {
+		final File tmp = new File(f.getPath() + ".tmp"); 
+		DataOutputStream os = null; 
+		try {
+			final FileOutputStream fos = new FileOutputStream(tmp); 
+			os = new DataOutputStream(new BufferedOutputStream(fos, 1 << 16)); 
+			os.writeUTF("AT"); 
+			os.writeInt(V); 
+			os.writeInt(corpus.getNumDocs()); 
+			os.writeInt(A); 
+			os.writeInt(param.getNTopics()); 
+			os.writeInt(iteration); 
+			rand.writeState(os); 
+			os.writeInt((rands != null)? rands.length: 0); 
+			for (int p = 0; rands != null && p < rands.length; p++) {
+				rands[p].writeState(os); 
+			}
+			for (int k = 0; k < alpha.length; k++) {
+				os.writeDouble(alpha[k]); 
+			}
+			os.writeDouble(beta); 
+			z.write(os); 
+			x.write(os); 
+			os.flush(); 
+			fos.getFD().sync(); 
+			os.close(); 
+			os = null; 
+			
+			ArrayIo.replaceFile(tmp, f); 
+		} catch (IOException e) {
+			System.err.println("Error while writing checkpoint:" + e.getMessage());
+			e.printStackTrace(); 
+		} finally {
+			if (os != null) {
+				try {
+					os.close(); 
+				} catch (IOException e) {
+					// the checkpoint has failed already
+				}
+			}
+			tmp.delete(); 
+		}
+	}
+	
+	/*
+	 * @return true if the header of the checkpoint read from is belongs to 
+	 * an AT model of this corpus with the same number of topics
+	 * */
+	private boolean checkHeader(final DataInputStream is) throws IOException {
+		return "AT".equals(is.readUTF()) && is.readInt() == V 
+				&& is.readInt() == corpus.getNumDocs() && is.readInt() == A 
+				&& is.readInt() == param.getNTopics(); 
+	}
+	
+	@Override
+	public boolean canResume(final File f) {
+		if (!f.exists()) {
+			return false; 
+		}
+		
+		DataInputStream is = null; 
+		try {
+			is = ArrayIo.openInputStream(f.getPath()); 
+			return checkHeader(is); 
+		} catch (IOException e) {
+			return false; 
+		} finally {
+			if (is != null) {
+				try {
+					ArrayIo.closeInputStream(is); 
+				} catch (IOException e) {
+					e.printStackTrace(); 
+				}
+			}
+		}
+	}
+	
+	@Override
+	public int resume(final File f) {
+		try {
+			final DataInputStream is = ArrayIo.openInputStream(f.getPath()); 
+			if (!checkHeader(is)) {
+				throw new IOException(f + " is not a checkpoint of an AT model of this corpus with " 
+						+ param.getNTopics() + " topics."); 
+			}
+			iteration = is.readInt(); 
+			rand.readState(is); 
+			rands = null; 
+			final int P = is.readInt(); 
+			if (P > 0) {
+				rands = new XoshiroRandom[P]; 
+				for (int p = 0; p < P; p++) {
+					rands[p] = new XoshiroRandom(0); 
+					rands[p].readState(is); 
+				}
+			}
+			for (int k = 0; k < alpha.length; k++) {
+				alpha[k] = is.readDouble(); 
+			}
+			beta = is.readDouble(); 
+			Kalpha = Vectors.sum(alpha); 
+			Vbeta = V * beta; 
+			allocate(); 
+			z.read(is); 
+			x.read(is); 
+			ArrayIo.closeInputStream(is); 
+		} catch (IOException e) {
+			System.err.println("Error while reading checkpoint:" + e.getMessage());
+			e.printStackTrace(); 
+			System.exit(-1); 
+		}
+		count(); 
+		model = null; 
+		
+		return iteration; 
+	}
 
 	@Override
 	public void estimate(final int niter) {
+		if (param.getNThreads() > 1) {
+			pool = Executors.newFixedThreadPool(param.getNThreads()); 
+			try {
+				estimateParallel(niter); 
+			} finally {
+				pool.shutdown(); 
+				pool = null; 
+			}
+		} else if (ATParameter.SAMPLER_SPARSE.equals(param.getSampler())) {
+			estimateSparse(niter); 
+		} else {
+			estimateGibbs(niter); 
+		}
+	}
+	
+	private void estimateGibbs(final int niter) {
 		final int M = corpus.getNumDocs(); 
+		final double[] pp = scratch(); 
+		final int[] nad = new int[maxAuthors * param.getNTopics()]; 
+		
+		for (int iter = 0; iter < niter; iter++) {
+			System.out.println("iter: " + iter);
+			double cells = 0; 
+			for (int m = 0; m < M; m++) {
+				cells += sample(m, nak, na, ntk, nk, rand, pp, nad); 
+			} // m
+			track(cells); 
+			if (sweepDone()) {
+				break; 
+			}
+		} // iter
+	}
+	
+	/*
+	 * a scratch buffer of the sampler of param.getSampler() that is large 
+	 * enough for every document, sized by the maximal number of authors
+	 * */
+	private double[] scratch() {
 		final int K = param.getNTopics(); 
-		final int[][] w = corpus.getDocWords(); 
-		final int[][] a = corpus.getDocLabels(ILabelCorpus.LAUTHORS); 
-		final double alpha = param.getAlpha(); 
-		final double beta = param.getBeta(); 
+		
+		if (ATParameter.SAMPLER_BLOCKED.equals(param.getSampler())) {
+			return new double[Math.max(maxAuthors, K) + maxAuthors]; 
+		}
+		return new double[maxAuthors * K]; 
+	}
+	
+	/*
+	 * one sweep over document m with the sampler of param.getSampler(), pp is 
+	 * a scratch buffer from scratch() and nad an all-zero buffer of size 
+	 * maxAuthors x K, into which the rows of nak of the authors of the document 
+	 * are expanded during the sweep
+	 * 
+	 * @return the change of the tracked log-likelihood, see track()
+	 * */
+	private double sample(final int m, final SparseCountMatrix nak, final int[] na, 
+			final CountMatrix ntk, final int[] nk, final XoshiroRandom rand, final double[] pp, 
+			final int[] nad) {
+		final int K = param.getNTopics(); 
+		final int[] a = corpus.getDocLabels(ILabelCorpus.LAUTHORS)[m]; 
+		
+		for (int jj = 0; jj < a.length; jj++) {
+			nak.addRowTo(a[jj], nad, jj * K); 
+		}
+		final double cells; 
+		if (ATParameter.SAMPLER_BLOCKED.equals(param.getSampler())) {
+			cells = sampleBlocked(m, nak, na, ntk, nk, rand, pp, nad); 
+		} else {
+			cells = sampleGibbs(m, nak, na, ntk, nk, rand, pp, nad); 
+		}
+		for (int jj = 0; jj < a.length; jj++) {
+			nak.clearRowIn(a[jj], nad, jj * K); 
+		}
+		
+		return cells; 
+	}
+	
+	/*
+	 * add delta to the dense counts nad of author i and topic k at every 
+	 * position of i among the authors a of a document
+	 * */
+	private static void addDense(final int[] nad, final int[] a, final int i, final int k, 
+			final int K, final int delta) {
+		for (int jj = 0; jj < a.length; jj++) {
+			if (a[jj] == i) {
+				nad[jj * K + k] += delta; 
+			}
+		}
+	}
+	
+	/*
+	 * one collapsed Gibbs sweep over document m against the given author-topic 
+	 * and topic-word counts, drawing author and topic jointly from a_m x K 
+	 * weights; the rows of nak of the authors of the document are given 
+	 * densely by nad
+	 * */
+	private double sampleGibbs(final int m, final SparseCountMatrix nak, final int[] na, 
+			final CountMatrix ntk, final int[] nk, final XoshiroRandom rand, final double[] pp, 
+			final int[] nad) {
+		final int K = param.getNTopics(); 
+		final int[] a = corpus.getDocLabels(ILabelCorpus.LAUTHORS)[m]; 
+		
+		double cells = 0; 
+		for (int n = 0; n < words.length(m); n++) {
+			final int k = z.get(m, n);
+			final int t = words.get(m, n);
+			final int i = x.get(m, n); 
+			
+			// decrement
+			nak.dec(i, k);
+			addDense(nad, a, i, k, K, -1); 
+			na[i]--; 
+			ntk.dec(t, k);
+			nk[k]--;
+			
+			// compute weights over the contiguous topic counts of word t
+			final int[] wcounts = ntk.getData(t); 
+			final int wt = ntk.offset(t); 
+			double psum = 0;
+			for (int kk = 0; kk < K; kk++) {
+				final double tmp = (wcounts[wt + kk] + beta) / (nk[kk] + Vbeta);
+				
+				for (int ii = 0; ii < a.length; ii++) {
+					final int idx = kk*a.length + ii; 
+					final int aid = a[ii]; 
+					psum += (nad[ii*K + kk] + alpha[kk]) / (na[aid] + Kalpha) * tmp;
+					pp[idx] = psum;
+				}
+			}
+			
+			// sample by binary search over the prefix sums
+			final int idx = Sampling.sample(pp, a.length * K, rand); 
+			
+			final int kk = idx / a.length; 
+			final int ii = a[idx % a.length]; 
+			
+			// reassign and increment
+			z.set(m, n, kk);
+			x.set(m, n, ii); 
+			nak.inc(ii, kk);
+			addDense(nad, a, ii, kk, K, 1); 
+			na[ii]++; 
+			ntk.inc(t, kk);
+			nk[kk]++;
+			if (kk != k && likelihood != null) {
+				cells += likelihood.moved(ntk.get(t, k), ntk.get(t, kk)); 
+			}
+		} // n
+		
+		return cells; 
+	}
+	
+	/*
+	 * Blocked Gibbs sweep over document m that replaces the joint draw of 
+	 * author and topic by two conditional draws per token: the author given 
+	 * the current topic k, 
+	 *     p(x = a | z = k) ~ (nak + alpha) / (na + Kalpha), 
+	 * over the authors of the document, then the topic given the new author a, 
+	 *     p(z = k | x = a) ~ (nak + alpha) * (nkt + beta) / (nk + Vbeta), 
+	 * in which na + Kalpha is constant. A token costs O(a_m + K) instead of 
+	 * O(a_m * K). The prefix sums of either draw take pp[0, max(a_m, K)), the 
+	 * normalizers 1 / (na + Kalpha) of the authors of the document are cached 
+	 * behind them and updated with na. Both draws read nak from its dense rows 
+	 * nad. 
+	 * */
+	private double sampleBlocked(final int m, final SparseCountMatrix nak, final int[] na, 
+			final CountMatrix ntk, final int[] nk, final XoshiroRandom rand, final double[] pp, 
+			final int[] nad) {
+		final int K = param.getNTopics(); 
+		final int[] a = corpus.getDocLabels(ILabelCorpus.LAUTHORS)[m]; 
+		final int off = Math.max(maxAuthors, K); 
+		double cells = 0; 
+		
+		for (int ii = 0; ii < a.length; ii++) {
+			pp[off + ii] = 1.0 / (na[a[ii]] + Kalpha); 
+		}
+		
+		for (int n = 0; n < words.length(m); n++) {
+			final int k = z.get(m, n);
+			final int t = words.get(m, n);
+			final int i = x.get(m, n); 
+			int pos = 0; 
+			while (a[pos] != i) {
+				pos++; 
+			}
+			
+			// decrement
+			nak.dec(i, k);
+			addDense(nad, a, i, k, K, -1); 
+			na[i]--; 
+			ntk.dec(t, k);
+			nk[k]--;
+			pp[off + pos] = 1.0 / (na[i] + Kalpha); 
+			
+			// author given topic k
+			int ii = 0; 
+			if (a.length > 1) {
+				double psum = 0; 
+				for (int jj = 0; jj < a.length; jj++) {
+					psum += (nad[jj*K + k] + alpha[k]) * pp[off + jj]; 
+					pp[jj] = psum; 
+				}
+				ii = Sampling.sample(pp, a.length, rand); 
+			}
+			final int aid = a[ii]; 
+			
+			// topic given author aid over the contiguous topic counts of word t
+			final int[] wcounts = ntk.getData(t); 
+			final int wt = ntk.offset(t); 
+			final int ak = ii * K; 
+			double psum = 0; 
+			for (int kk = 0; kk < K; kk++) {
+				psum += (nad[ak + kk] + alpha[kk]) * (wcounts[wt + kk] + beta) / (nk[kk] + Vbeta); 
+				pp[kk] = psum; 
+			}
+			final int kk = Sampling.sample(pp, K, rand); 
+			
+			// reassign and increment
+			z.set(m, n, kk);
+			x.set(m, n, aid); 
+			nak.inc(aid, kk);
+			addDense(nad, a, aid, kk, K, 1); 
+			na[aid]++; 
+			ntk.inc(t, kk);
+			nk[kk]++;
+			pp[off + ii] = 1.0 / (na[aid] + Kalpha); 
+			if (kk != k && likelihood != null) {
+				cells += likelihood.moved(ntk.get(t, k), ntk.get(t, kk)); 
+			}
+		} // n
+		
+		return cells; 
+	}
+	
+	private void estimateSparse(final int niter) {
+		final int M = corpus.getNumDocs(); 
+		final SparseSweep sweep = new SparseSweep(nak, na, ntk, nk, rand); 
+		sweep.rebuild(); 
 		
 		for (int iter = 0; iter < niter; iter++) {
 			System.out.println("iter: " + iter);
+			sweep.prepare(); 
+			double cells = 0; 
+			for (int m = 0; m < M; m++) {
+				cells += sweep.sample(m); 
+			} // m
+			track(cells); 
+			if (sweepDone()) {
+				break; 
+			}
+		} // iter
+	}
+	
+	/*
+	 * SparseLDA-style sampler for the AT model. With g_a = 1/(na+Kalpha), the 
+	 * weight of author a and topic k, g_a*(nak+alpha_k)*(nkt+beta)/(nk+Vbeta), 
+	 * splits into a smoothing bucket g_a*alpha_k*beta/(nk+Vbeta), an author 
+	 * bucket g_a*nak*beta/(nk+Vbeta) over the non-zero topics of a, and a 
+	 * topic-word bucket (nak+alpha_k)*g_a*nkt/(nk+Vbeta) over the non-zero 
+	 * topics of the word t. Summed over the authors of a document, their masses 
+	 * are G*s, sum_a g_a*r_a and sum_k nkt*(h_k+alpha_k*G)/(nk+Vbeta) with 
+	 * G = sum_a g_a, h_k = sum_a g_a*nak. s is kept over the sweep, r_a, h_k and 
+	 * G over a document, and a token only touches the authors of its document, 
+	 * the non-zero topics of its author and those of its word. The smoothing 
+	 * weights alpha_k*beta/(nk+Vbeta) behind s change in two topics per token 
+	 * and are kept in an FPlusTree, which updates and draws in O(log K). 
+	 * 
+	 * The sweep runs against the given counts, so that every worker of 
+	 * estimateParallel() can hold one over its private copies. 
+	 * 
+	 * Reference: Limin Yao, David Mimno, and Andrew McCallum, 2009. Efficient 
+	 * Methods for Topic Model Inference on Streaming Document Collections. 
+	 * Proceedings of the 15th ACM SIGKDD International Conference on Knowledge 
+	 * Discovery and Data Mining, pp. 937-946. 
+	 * */
+	private final class SparseSweep {
+		private final SparseCountMatrix nak; 
+		private final int[] na; 
+		private final CountMatrix ntk; 
+		private final int[] nk; 
+		private final XoshiroRandom rand; 
+		
+		private final int[][] tk; // non-zero topics of each word, by descending count
+		private final int[] tkn; 
+		
+		private final FPlusTree smooth; // smoothing weights alpha_k*beta/(nk+Vbeta), s is their mass
+		private int[] a; // authors of the current document
+		private final double[] g; // size: maxAuthors, 1/(na+Kalpha) of each author
+		private final double[] r; // size: maxAuthors, sum_k nak*beta/(nk+Vbeta) of each author
+		private double G; // sum of g
+		private final double[] h; // size: K, sum_a g_a*nak
+		private final int[] nz; // size: K, non-zero topics of an author
+		private final int[] nad; // size: maxAuthors x K, dense rows of nak of the authors of the current document
+		private final double[] qq; // size: max(maxAuthors, K)
+		
+		SparseSweep(final SparseCountMatrix nak, final int[] na, final CountMatrix ntk, 
+				final int[] nk, final XoshiroRandom rand) {
+			final int M = corpus.getNumDocs(); 
+			final int K = param.getNTopics(); 
+			
+			this.nak = nak; 
+			this.na = na; 
+			this.ntk = ntk; 
+			this.nk = nk; 
+			this.rand = rand; 
+			
+			final int[] nt = new int[V]; 
 			for (int m = 0; m < M; m++) {
-				double[] pp = new double[a[m].length * K]; 
+				for (int n = 0; n < words.length(m); n++) {
+					nt[words.get(m, n)]++; 
+				}
+			}
+			tk = new int[V][]; 
+			tkn = new int[V]; 
+			for (int t = 0; t < V; t++) {
+				tk[t] = new int[Math.min(K, nt[t])]; 
+			}
+			
+			g = new double[maxAuthors]; 
+			r = new double[maxAuthors]; 
+			h = new double[K]; 
+			nz = new int[K]; 
+			nad = new int[maxAuthors * K]; 
+			qq = new double[Math.max(maxAuthors, K)]; 
+			smooth = new FPlusTree(K); 
+		}
+		
+		/*
+		 * rebuild the word lists from the counts, once they have been changed 
+		 * from outside
+		 * */
+		void rebuild() {
+			final int K = param.getNTopics(); 
+			
+			for (int t = 0; t < V; t++) {
+				tkn[t] = 0; 
+				for (int k = 0; k < K; k++) {
+					if (ntk.get(t, k) > 0) {
+						tk[t][tkn[t]] = k; 
+						moveUp(tk[t], tkn[t]++, t); 
+					}
+				}
+			}
+		}
+		
+		/*
+		 * the smoothing mass before a sweep, alpha and beta may have changed
+		 * */
+		void prepare() {
+			final int K = param.getNTopics(); 
+			
+			final double[] w = new double[K]; 
+			for (int k = 0; k < K; k++) {
+				w[k] = alpha[k] * beta / (nk[k] + Vbeta); 
+			}
+			smooth.build(w, K); 
+		}
+		
+		/*
+		 * @return the change of the tracked log-likelihood, see track()
+		 * */
+		double sample(final int m) {
+			final int K = param.getNTopics(); 
+			double cells = 0; 
+			
+			// author buckets
+			a = corpus.getDocLabels(ILabelCorpus.LAUTHORS)[m]; 
+			Arrays.fill(h, 0); 
+			G = 0; 
+			for (int jj = 0; jj < a.length; jj++) {
+				nak.addRowTo(a[jj], nad, jj * K); 
+				g[jj] = 1.0 / (na[a[jj]] + Kalpha); 
+				G += g[jj]; 
+				r[jj] = 0; 
+				final int len = nak.nonZeros(a[jj], nz); 
+				for (int l = 0; l < len; l++) {
+					final int k = nz[l]; 
+					final int c = nad[jj*K + k]; 
+					r[jj] += c * beta / (nk[k] + Vbeta); 
+					h[k] += g[jj] * c; 
+				}
+			}
+			
+			for (int n = 0; n < words.length(m); n++) {
+				final int k = z.get(m, n);
+				final int t = words.get(m, n);
+				final int i = x.get(m, n); 
 				
-				for (int n = 0; n < w[m].length; n++) {
-					final int k = z[m][n];
-					final int t = w[m][n];
-					final int i = x[m][n]; 
-					
-					// decrement
-					nak[i][k]--;
-					na[i]--; 
-					nkt[k][t]--;
-					nk[k]--;
-					
-					// compute weights
-					double psum = 0;
-					for (int kk = 0; kk < K; kk++) {
-						final double tmp = (nkt[kk][t] + beta) / (nk[kk] + Vbeta);
-						
-						for (int ii = 0; ii < a[m].length; ii++) {
-							final int idx = kk*a[m].length + ii; 
-							final int aid = a[m][ii]; 
-							pp[idx] = (nak[aid][kk] + alpha) / (na[aid] + Kalpha) * tmp; 
-							psum += pp[idx];
+				// decrement
+				final double denom = nk[k] + Vbeta; 
+				nak.dec(i, k);
+				addDense(nad, a, i, k, K, -1); 
+				na[i]--; 
+				ntk.dec(t, k);
+				nk[k]--;
+				changed(i, k, -1, denom); 
+				if (moveDown(tk[t], tkn[t], k, t) == 0) {
+					tkn[t]--; 
+				}
+				
+				// topic-word bucket
+				final int[] list = tk[t]; 
+				final int len = tkn[t]; 
+				final int[] wcounts = ntk.getData(t); 
+				final int wt = ntk.offset(t); 
+				double q = 0; 
+				for (int l = 0; l < len; l++) {
+					final int kk = list[l]; 
+					qq[l] = (h[kk] + alpha[kk] * G) * wcounts[wt + kk] / (nk[kk] + Vbeta); 
+					q += qq[l]; 
+				}
+				double rsum = 0; 
+				for (int jj = 0; jj < a.length; jj++) {
+					rsum += g[jj] * r[jj]; 
+				}
+				
+				// sample the topic and the author of its bucket
+				final double s = smooth.getMass(); 
+				double u = rand.nextDouble() * (G * s + rsum + q); 
+				int kk = -1; 
+				int ii = -1; 
+				if (u < q) {
+					for (int l = 0; l < len; l++) {
+						u -= qq[l]; 
+						if (u <= 0) {
+							kk = list[l]; 
+							break; 
 						}
 					}
+					if (kk < 0) {
+						kk = list[len - 1]; 
+					}
 					
-					// sample
-					final int idx = rand.nextDiscrete(pp, psum); 
+					// author given topic kk
+					double psum = 0; 
+					for (int jj = 0; jj < a.length; jj++) {
+						psum += g[jj] * (nad[jj*K + kk] + alpha[kk]); 
+						qq[jj] = psum; 
+					}
+					ii = Sampling.sample(qq, a.length, rand); 
+				} else if ((u -= q) < rsum) {
+					ii = a.length - 1; 
+					for (int jj = 0; jj < a.length; jj++) {
+						u -= g[jj] * r[jj]; 
+						if (u <= 0) {
+							ii = jj; 
+							u += g[jj] * r[jj]; 
+							break; 
+						}
+					}
 					
-					final int kk = idx / a[m].length; 
-					final int ii = a[m][idx % a[m].length]; 
+					// topic of the author bucket of a[ii]
+					u /= g[ii]; 
+					final int nnz = nak.nonZeros(a[ii], nz); 
+					for (int l = 0; l < nnz; l++) {
+						kk = nz[l]; 
+						u -= nad[ii*K + kk] * beta / (nk[kk] + Vbeta); 
+						if (u <= 0) {
+							break; 
+						}
+					}
+					if (kk < 0) {
+						// a rounding residue of an author without counts, 
+						// fall back to its smoothing bucket
+						kk = smooth.sample(rand.nextDouble() * s); 
+					}
+				} else {
+					u -= rsum; 
+					ii = a.length - 1; 
+					for (int jj = 0; jj < a.length; jj++) {
+						u -= g[jj] * s; 
+						if (u <= 0) {
+							ii = jj; 
+							u += g[jj] * s; 
+							break; 
+						}
+					}
 					
-					// reassign and increment
-					z[m][n] = kk;
-					x[m][n] = ii; 
-					nak[ii][kk]++;
-					na[ii]++; 
-					nkt[kk][t]++;
-					nk[kk]++;
-				} // n
-			} // m
+					kk = smooth.sample(u / g[ii]); 
+				}
+				final int aid = a[ii]; 
+				
+				// reassign and increment
+				final double olddenom = nk[kk] + Vbeta; 
+				z.set(m, n, kk);
+				x.set(m, n, aid); 
+				nak.inc(aid, kk);
+				addDense(nad, a, aid, kk, K, 1); 
+				na[aid]++; 
+				ntk.inc(t, kk);
+				nk[kk]++;
+				changed(aid, kk, 1, olddenom); 
+				if (ntk.get(t, kk) == 1) {
+					list[tkn[t]] = kk; 
+					moveUp(list, tkn[t]++, t); 
+				} else {
+					moveUp(list, indexOf(list, tkn[t], kk), t); 
+				}
+				if (kk != k && likelihood != null) {
+					cells += likelihood.moved(ntk.get(t, k), ntk.get(t, kk)); 
+				}
+			} // n
+			
+			for (int jj = 0; jj < a.length; jj++) {
+				nak.clearRowIn(a[jj], nad, jj * K); 
+			}
+			
+			return cells; 
+		}
+		
+		/*
+		 * update s, r, h, g and G after nak(i, k), na[i] and nk[k] have been 
+		 * changed by delta, denom is the former nk[k]+Vbeta
+		 * */
+		private void changed(final int i, final int k, final int delta, final double denom) {
+			final int K = param.getNTopics(); 
+			final double newdenom = nk[k] + Vbeta; 
+			smooth.set(k, alpha[k] * beta / newdenom); 
+			
+			for (int jj = 0; jj < a.length; jj++) {
+				final int c = nad[jj*K + k]; 
+				final int old = a[jj] == i ? c - delta : c; 
+				r[jj] += c * beta / newdenom - old * beta / denom; 
+				
+				if (a[jj] == i) {
+					// the count of k under the former normalizer, then the new normalizer
+					h[k] += delta * g[jj]; 
+					final double gi = 1.0 / (na[i] + Kalpha); 
+					final double dg = gi - g[jj]; 
+					g[jj] = gi; 
+					G += dg; 
+					final int len = nak.nonZeros(i, nz); 
+					for (int l = 0; l < len; l++) {
+						h[nz[l]] += dg * nad[jj*K + nz[l]]; 
+					}
+				}
+			}
+		}
+		
+		/*
+		 * restore the descending order of list[0..i] by ntk(t, .) after the 
+		 * count of topic list[i] has been incremented, see LDAEstimator
+		 * */
+		private void moveUp(final int[] list, int i, final int t) {
+			final int k = list[i]; 
+			while (i > 0 && ntk.get(t, list[i - 1]) < ntk.get(t, k)) {
+				list[i] = list[i - 1]; 
+				i--; 
+			}
+			list[i] = k; 
+		}
+		
+		/*
+		 * restore the descending order of list[0..len) by ntk(t, .) after the 
+		 * count of topic k has been decremented, and return its new count
+		 * */
+		private int moveDown(final int[] list, final int len, final int k, final int t) {
+			int i = indexOf(list, len, k); 
+			while (i + 1 < len && ntk.get(t, list[i + 1]) > ntk.get(t, k)) {
+				list[i] = list[i + 1]; 
+				i++; 
+			}
+			list[i] = k; 
+			
+			return ntk.get(t, k); 
+		}
+	}
+	
+	private static int indexOf(final int[] list, final int len, final int k) {
+		for (int i = 0; i < len; i++) {
+			if (list[i] == k) {
+				return i; 
+			}
+		}
+		
+		return -1; 
+	}
+	
+	/*
+	 * the random streams of P parallel workers, split off rand on first use and 
+	 * kept across calls of estimate(), checkpoint() and resume(), see 
+	 * LDAEstimator.streams()
+	 * */
+	private XoshiroRandom[] streams(final int P) {
+		if (rands == null || rands.length != P) {
+			rands = rand.split(P); 
+		}
+		
+		return rands; 
+	}
+	
+	/*
+	 * Approximate distributed sampling in the manner of AD-LDA. The documents 
+	 * are split into nthreads partitions, each swept by its own thread against 
+	 * private copies of nak, na, ntk and nk. The partitions are chosen by 
+	 * DisjointDocLabels such that few authors have documents in more than one 
+	 * of them. A thread copies only the rows of nak of the authors of its 
+	 * documents; at the end of every iteration, the rows of the authors of a 
+	 * single partition are taken over from its copy, and only those of the 
+	 * shared authors are merged from the changes of several copies, together 
+	 * with the topic-word counts. 
+	 * 
+	 * Reference: David Newman, Arthur Asuncion, Padhraic Smyth, and Max 
+	 * Welling, 2009. Distributed Algorithms for Topic Models. Journal of 
+	 * Machine Learning Research, Vol. 10, pp. 1801-1828. 
+	 * */
+	private void estimateParallel(final int niter) {
+		final int K = param.getNTopics(); 
+		final int P = param.getNThreads(); 
+		
+		final int M = corpus.getNumDocs(); 
+		final int[] lengths = new int[M]; 
+		for (int m = 0; m < M; m++) {
+			lengths[m] = words.length(m); 
+		}
+		final DisjointDocLabels partition = new DisjointDocLabels(corpus.getDocLabels(ILabelCorpus.LAUTHORS), A, lengths, P); 
+		final int[][] docs = partition.getDisjointDocuments(); 
+		final int[][] authors = partition.getLabels(); 
+		System.out.println("authors shared by partitions: " + partition.getNumShared() + " of " + A); 
+		
+		final SparseCountMatrix[] nakp = new SparseCountMatrix[P]; 
+		final int[][] nap = new int[P][A]; 
+		final CountMatrix[] ntkp = new CountMatrix[P]; 
+		final int[][] nkp = new int[P][K]; 
+		final XoshiroRandom[] rands = streams(P); 
+		final boolean sparse = ATParameter.SAMPLER_SPARSE.equals(param.getSampler()); 
+		final double[][] pps = new double[P][]; 
+		final int[][] nads = new int[P][]; 
+		final SparseSweep[] sweeps = new SparseSweep[P]; 
+		final double[] cells = new double[P]; 
+		for (int p = 0; p < P; p++) {
+			nakp[p] = new SparseCountMatrix(A, K); 
+			ntkp[p] = new CountMatrix(V, K); 
+			if (sparse) {
+				sweeps[p] = new SparseSweep(nakp[p], nap[p], ntkp[p], nkp[p], rands[p]); 
+			} else {
+				pps[p] = scratch(); 
+				nads[p] = new int[maxAuthors * K]; 
+			}
+		}
+		
+		final ParallelFor sweep = new ParallelFor(P, pool) {
+			@Override
+			public void process(final int p, final int thread) {
+				nakp[p].copyRows(nak, authors[p]); 
+				System.arraycopy(na, 0, nap[p], 0, A); 
+				ntkp[p].copyFrom(ntk); 
+				System.arraycopy(nk, 0, nkp[p], 0, K); 
+				
+				if (sparse) {
+					sweeps[p].rebuild(); 
+					sweeps[p].prepare(); 
+					for (int i = 0; i < docs[p].length; i++) {
+						sweeps[p].sample(docs[p][i]); 
+					}
+				} else {
+					for (int i = 0; i < docs[p].length; i++) {
+						sample(docs[p][i], nakp[p], nap[p], ntkp[p], nkp[p], rands[p], pps[p], nads[p]); 
+					}
+				}
+			}
+		}; 
+		// blocks [0, P) merge the topic-word counts, blocks [P, 2P) the author-topic counts; 
+		// the changes of the copies are lost on the tracked log-likelihood, which follows the merge
+		final ParallelFor merge = new ParallelFor(P, pool) {
+			@Override
+			public void process(final int block, final int thread) {
+				if (block < P) {
+					cells[block] = ntk.merge(ntkp, (int) ((long) V * block / P), (int) ((long) V * (block + 1) / P), 
+							(likelihood != null)? likelihood.getTrackedCache(): null); 
+				} else {
+					final int b = block - P; 
+					nak.merge(nakp, partition.getOffsets(), partition.getParts(), 
+							(int) ((long) A * b / P), (int) ((long) A * (b + 1) / P)); 
+				}
+			}
+		}; 
+		
+		for (int iter = 0; iter < niter; iter++) {
+			System.out.println("iter: " + iter);
+			sweep.loop(P); 
+			merge.loop(2 * P); 
+			mergeSums(nk, nkp); 
+			mergeSums(na, nap); 
+			track(Vectors.sum(cells)); 
+			if (sweepDone()) {
+				break; 
+			}
 		} // iter
 	}
 	
+	/*
+	 * add the changes of the private copies to the global row sums
+	 * */
+	private static void mergeSums(final int[] sums, final int[][] sumCopies) {
+		for (int i = 0; i < sums.length; i++) {
+			int sum = sums[i]; 
+			for (int p = 0; p < sumCopies.length; p++) {
+				sum += sumCopies[p][i] - sums[i]; 
+			}
+			sums[i] = sum; 
+		}
+	}
+	
 	/*
 	 * @flag = true: log
 	 * */
 	public double[][] getVartheta(final boolean flag) {
 		final int K = param.getNTopics();
-		final double alpha = param.getAlpha();
 
 		double[][] vartheta = new double[A][K];
 		for (int i = 0; i < A; i++) {
 			for (int k = 0; k < K; k++) {
-				vartheta[i][k] = (nak[i][k] + alpha) / (na[i] + Kalpha);
+				vartheta[i][k] = (nak.get(i, k) + alpha[k]) / (na[i] + Kalpha);
 				
 				if (flag) {
 					vartheta[i][k] = Math.log(vartheta[i][k]); 
@@ -192,11 +1185,10 @@ public class ATEstimator implements IEstimator {
 	 * */
 	public double[] getVartheta(final int i, final boolean flag) {
 		final int K = param.getNTopics();
-		final double alpha = param.getAlpha();
 
 		double[] vartheta = new double[K];
 		for (int k = 0; k < K; k++) {
-			vartheta[k] = (nak[i][k] + alpha) / (na[i] + Kalpha);
+			vartheta[k] = (nak.get(i, k) + alpha[k]) / (na[i] + Kalpha);
 			
 			if (flag) {
 				vartheta[k] = Math.log(vartheta[k]); 
@@ -214,9 +1206,8 @@ public class ATEstimator implements IEstimator {
 	 * @flag = true: log
 	 * */
 	public double getVartheta(final int i, final int k, final boolean flag) {
-		final double alpha = param.getAlpha();
 
-		double vartheta = (nak[i][k] + alpha) / (na[i] + Kalpha); 
+		double vartheta = (nak.get(i, k) + alpha[k]) / (na[i] + Kalpha); 
 		if (flag) {
 			vartheta = Math.log(vartheta); 
 			if (Double.isNaN(vartheta)) {
@@ -233,12 +1224,11 @@ public class ATEstimator implements IEstimator {
 	 * */
 	public double[][] getVarphi(final boolean flag) {
 		final int K = param.getNTopics(); 
-		final double beta = param.getBeta(); 
 		
 		double[][] varphi = new double[K][V]; 
-		for (int k = 0; k < K; k++) {
-			for (int v = 0; v < V; v++) {
-				varphi[k][v] = (nkt[k][v] + beta) / (nk[k] + Vbeta); 
+		for (int v = 0; v < V; v++) {
+			for (int k = 0; k < K; k++) {
+				varphi[k][v] = (ntk.get(v, k) + beta) / (nk[k] + Vbeta); 
 				
 				if (flag) {
 					varphi[k][v] = Math.log(varphi[k][v]); 
@@ -257,9 +1247,8 @@ public class ATEstimator implements IEstimator {
 	 * @flag = true: log
 	 * */
 	public double getVarphi(final int k, final int v, final boolean flag) {
-		final double beta = param.getBeta(); 
 		
-		double varphi = (nkt[k][v] + beta) / (nk[k] + Vbeta); 
+		double varphi = (ntk.get(v, k) + beta) / (nk[k] + Vbeta); 
 		if (flag) {
 			varphi = Math.log(varphi); 
 			if (Double.isNaN(varphi)) {
@@ -288,7 +1277,7 @@ public class ATEstimator implements IEstimator {
 		for (int k = 0; k < K; k++) {
 			IntegerDoublePair[] unigrams = new IntegerDoublePair[V];
 			for (int v = 0; v < V; v++) {
-				unigrams[v] = new IntegerDoublePair(v, (double)nkt[k][v]); 
+				unigrams[v] = new IntegerDoublePair(v, (double)ntk.get(v, k)); 
 			}
 			Arrays.sort(unigrams); 
 			
@@ -318,7 +1307,7 @@ public class ATEstimator implements IEstimator {
 		for (int k = 0; k < K; k++) {
 			IntegerDoublePair[] authors = new IntegerDoublePair[A];
 			for (int i = 0; i < A; i++) {
-				authors[i] = new IntegerDoublePair(i, (double)nak[i][k] / na[i]); 
+				authors[i] = new IntegerDoublePair(i, (double)nak.get(i, k) / na[i]); 
 			}
 			Arrays.sort(authors); 
 			
@@ -331,23 +1320,37 @@ public class ATEstimator implements IEstimator {
 	
 	public void printVartheta(final File f) {
 		try {
-			PrintWriter writer = new PrintWriter(new FileWriter(f));
-			printVartheta(writer);
-			writer.close();
+			final ModelWriter writer = ModelWriter.open(f);
+			try {
+				printVartheta(writer);
+			} finally {
+				writer.close();
+			}
 		} catch (IOException e) {
 			e.printStackTrace(); 
 		}
 	}
 
 	public void printVartheta(final PrintWriter pw) {
-		final int K = param.getNTopics();
-		final double alpha = param.getAlpha();
+		try {
+			final ModelWriter writer = new ModelWriter(pw);
+			printVartheta(writer);
+			writer.flush();
+		} catch (IOException e) {
+			e.printStackTrace(); 
+		}
+	}
+
+	public void printVartheta(final ModelWriter writer) throws IOException {
+		final int K = param.getNTopics(); 
+		final int[] row = new int[K]; 
 		
+		writer.beginTriplets(A, K); 
 		for (int i = 0; i < A; i++) {
+			nak.getRow(i, row); 
 			for (int k = 0; k < K; k++) {
-				if (nak[i][k] != 0) {
-					final double vartheta = (nak[i][k] + alpha) / (na[i] + Kalpha);
-					pw.println(i + " " + k + " " + nak[i][k] + " " + na[i] + " " + vartheta); 
+				if (row[k] != 0) {
+					writer.triplet(i, k, row[k], na[i], (row[k] + alpha[k]) / (na[i] + Kalpha)); 
 				}
 			}
 		}
@@ -355,23 +1358,36 @@ public class ATEstimator implements IEstimator {
 	
 	public void printVarphi(final File f) {
 		try {
-			PrintWriter writer = new PrintWriter(new FileWriter(f));
-			printVarphi(writer);
-			writer.close();
+			final ModelWriter writer = ModelWriter.open(f);
+			try {
+				printVarphi(writer);
+			} finally {
+				writer.close();
+			}
 		} catch (IOException e) {
 			e.printStackTrace(); 
 		}
 	}
-	
+
 	public void printVarphi(final PrintWriter pw) {
+		try {
+			final ModelWriter writer = new ModelWriter(pw);
+			printVarphi(writer);
+			writer.flush();
+		} catch (IOException e) {
+			e.printStackTrace(); 
+		}
+	}
+
+	public void printVarphi(final ModelWriter writer) throws IOException {
 		final int K = param.getNTopics(); 
-		final double beta = param.getBeta(); 
 		
+		writer.beginTriplets(K, V); 
 		for (int k = 0; k < K; k++) {
 			for (int v = 0; v < V; v++) {
-				if (nkt[k][v] != 0) {
-					final double varphi = (nkt[k][v] + beta) / (nk[k] + Vbeta); 
-					pw.println(k + " " + v + " " + nkt[k][v] + " " + nk[k] + " " + varphi); 
+				final int count = ntk.get(v, k); 
+				if (count != 0) {
+					writer.triplet(k, v, count, nk[k], (count + beta) / (nk[k] + Vbeta)); 
 				}
 			}
 		}
@@ -403,7 +1419,7 @@ public class ATEstimator implements IEstimator {
 			final int[] w = corpus.getDocWords(m); 
 			
 			for (int n = 0; n < w.length; n++) {
-				nmk[z[m][n]]++; 
+				nmk[z.get(m, n)]++; 
 			}
 			
 			for (int k = 0; k < K; k++) {
@@ -418,9 +1434,12 @@ public class ATEstimator implements IEstimator {
 	@Override
 	public void printAssign(final File f) {
 		try {
-			PrintWriter writer = new PrintWriter(new FileWriter(f));
-			printAssign(writer);
-			writer.close();
+			final ModelWriter writer = ModelWriter.open(f);
+			try {
+				printAssign(writer);
+			} finally {
+				writer.close();
+			}
 		} catch (IOException e) {
 			e.printStackTrace(); 
 		}
@@ -428,15 +1447,25 @@ public class ATEstimator implements IEstimator {
 
 	@Override
 	public void printAssign(final PrintWriter pw) {
+		try {
+			final ModelWriter writer = new ModelWriter(pw);
+			printAssign(writer);
+			writer.flush();
+		} catch (IOException e) {
+			e.printStackTrace(); 
+		}
+	}
+
+	public void printAssign(final ModelWriter writer) throws IOException {
 		final int M = corpus.getNumDocs(); 
 		
+		writer.beginAssign(M, 3); 
 		for (int m = 0; m < M; m++) {
-			final int[] w = corpus.getDocWords(m); 
-			
-			for (int n = 0; n < w.length; n++) {
-				pw.print(w[n] + ":" + z[m][n] + ":" + x[m][n] + " "); 
+			writer.beginDoc(words.length(m)); 
+			for (int n = 0; n < words.length(m); n++) {
+				writer.token(words.get(m, n), z.get(m, n), x.get(m, n)); 
 			}
-			pw.println(); 
+			writer.endDoc(); 
 		}
 	}
 }
@@ -22,6 +22,41 @@ public interface IEstimator {
      */
     public void estimate(final int niter);
     
+    /**
+     * write the complete state of the Markov chain, i.e., the assignments, the 
+     * state of the random number generator and the number of iterations done, 
+     * to a file; the file is replaced atomically
+     * 
+     * @param f 
+     * 		checkpoint file
+     */
+    public void checkpoint(final File f); 
+    
+    /**
+     * restore the state of the Markov chain from a checkpoint instead of 
+     * calling init()
+     * 
+     * @param f 
+     * 		checkpoint file
+     * @return number of Gibbs iterations done before the checkpoint
+     */
+    public int resume(final File f); 
+    
+    /**
+     * @param f 
+     * 		checkpoint file
+     * @return true if f exists and is a checkpoint of the same model on the 
+     * same corpus with the same number of topics, i.e., resume(f) can 
+     * restore it
+     */
+    public boolean canResume(final File f); 
+    
+    /**
+     * @return the log joint likelihood of the words and the assignments of 
+     * the current state, e.g., to monitor convergence
+     */
+    public double loglik(); 
+    
     public void printAssign(final File f); 
     
     public void printAssign(final PrintWriter pw); 
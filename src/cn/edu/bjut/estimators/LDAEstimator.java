@@ -1,16 +1,41 @@
 package cn.edu.bjut.estimators;
 
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import cn.edu.bjut.corpus.Corpus;
 import cn.edu.bjut.corpus.CorpusResolver;
+import cn.edu.bjut.corpus.DisjointDocTerms;
+import cn.edu.bjut.corpus.ICorpus;
+import cn.edu.bjut.corpus.MappedCorpus;
+import cn.edu.bjut.inferencers.TrainedModel;
 import cn.edu.bjut.parameters.LDAParameter;
-import cn.edu.bjut.utils.CokusRandom;
+import cn.edu.bjut.utils.AliasTable;
+import cn.edu.bjut.utils.ArrayIo;
+import cn.edu.bjut.utils.CountMatrix;
+import cn.edu.bjut.utils.DirichletEstimation;
+import cn.edu.bjut.utils.FPlusTree;
+import cn.edu.bjut.utils.IRaggedArray;
 import cn.edu.bjut.utils.IntegerDoublePair;
+import cn.edu.bjut.utils.LogLikelihood;
+import cn.edu.bjut.utils.ModelWriter;
+import cn.edu.bjut.utils.PackedRaggedArray;
+import cn.edu.bjut.utils.ParallelFor;
+import cn.edu.bjut.utils.Sampling;
+import cn.edu.bjut.utils.SparseCountMatrix;
+import cn.edu.bjut.utils.Vectors;
+import cn.edu.bjut.utils.XoshiroRandom;
 
 /*
  * Gibbs sampling algorithm for Latent Dirichlet Allocation (LDA) model. 
@@ -28,39 +53,172 @@ import cn.edu.bjut.utils.IntegerDoublePair;
  * Author: XU, Shuo (pzczxs@gmail.com)
  * */
 public class LDAEstimator implements IEstimator {
+	private final static int CONVERGED = 3; // evaluations in a row below param.getConvergence() to stop
+	
 	private String filebase; 
-	private Corpus corpus;
+	private ICorpus corpus;
 	private LDAParameter param;
 	private int V;
 
-	private CokusRandom rand;
+	private XoshiroRandom rand;
+	private XoshiroRandom[] rands; // streams of the parallel workers, see streams()
+	private ExecutorService pool; // threads of the parallel workers during estimate()
 
-	private int[][] nmk; // size: M x K
-	private int[][] nkt; // size: K x V
+	private SparseCountMatrix nmk; // size: M x K, non-zero topics only
+	private CountMatrix ntk; // size: V x K, word-major
 	private int[] nk; // size: K
 
-	private int[][] z;
+	private IRaggedArray words; // size: M x Nm, packed or memory-mapped
+	private PackedRaggedArray z; // size: M x Nm, packed to ceil(log2 K) bits
+
+	private int iteration; // number of Gibbs iterations done
+	private TrainedModel model; // frozen model of the current state, built on demand
+	private LogLikelihood likelihood; // built on demand
+	private double lastLoglik = Double.NaN; // at the last evaluation in sweepDone()
+	private int settled; // evaluations in a row below param.getConvergence()
 
-	private double Kalpha; // K*alpha
+	private double[] alpha; // size: K, asymmetric once optimized
+	private double beta; 
+	private double Kalpha; // sum of alpha
 	private double Vbeta; // V*beta
 	
 	public LDAEstimator(final String filebase, final long seed, final LDAParameter param) {
 		this.filebase = filebase;
 
-		this.corpus = new Corpus(filebase + ".corpus");
+		// prefer the memory-mapped binary corpus if it has been converted
+		if (new File(filebase + MappedCorpus.SUFFIX).exists()) {
+			this.corpus = new MappedCorpus(filebase + MappedCorpus.SUFFIX);
+		} else {
+			this.corpus = new Corpus(filebase + ".corpus");
+		}
 		this.param = param;
 		this.V = corpus.getNumTerms();
+		this.words = corpus.getWordArray();
 
+		this.alpha = new double[param.getNTopics()]; 
+		Arrays.fill(alpha, param.getAlpha()); 
+		this.beta = param.getBeta(); 
 		this.Kalpha = param.getNTopics() * param.getAlpha();
 		this.Vbeta = V * param.getBeta();
 
-		this.rand = new CokusRandom(seed);
+		this.rand = new XoshiroRandom(seed);
 	}
 	
 	public LDAEstimator(final String filebase, final long seed) {
 		this(filebase, seed, new LDAParameter());
 	}
 	
+	/*
+	 * copy constructor for snapshot(), the corpus and the parameters are shared
+	 * */
+	private LDAEstimator(final LDAEstimator src) {
+		this.filebase = src.filebase; 
+		this.corpus = src.corpus; 
+		this.param = src.param; 
+		this.V = src.V; 
+		this.words = src.words; 
+		this.rand = src.rand; 
+		this.alpha = src.alpha.clone(); 
+		this.beta = src.beta; 
+		this.Kalpha = src.Kalpha; 
+		this.Vbeta = src.Vbeta; 
+		this.iteration = src.iteration; 
+		
+		allocate(); 
+		nmk.copyFrom(src.nmk); 
+		ntk.copyFrom(src.ntk); 
+		System.arraycopy(src.nk, 0, nk, 0, nk.length); 
+		z.copyFrom(src.z); 
+	}
+	
+	/*
+	 * a copy of the current state that can be printed while this estimator 
+	 * keeps sampling; it shares the random number generator and is not meant 
+	 * to be sampled itself
+	 * */
+	public LDAEstimator snapshot() {
+		return new LDAEstimator(this); 
+	}
+	
+	/*
+	 * print vartheta, varphi and the assignments of a snapshot of the current 
+	 * state on a background thread, skipping null files; get() on the returned 
+	 * future waits for the output and rethrows a failed write
+	 * */
+	public Future<Void> printInBackground(final File vartheta, final File varphi, final File assign) {
+		final LDAEstimator snapshot = snapshot(); 
+		
+		return ModelWriter.inBackground(new Callable<Void>() {
+			@Override
+			public Void call() throws IOException {
+				if (vartheta != null) {
+					final ModelWriter writer = ModelWriter.open(vartheta); 
+					try {
+						snapshot.printVartheta(writer); 
+					} finally {
+						writer.close(); 
+					}
+				}
+				if (varphi != null) {
+					final ModelWriter writer = ModelWriter.open(varphi); 
+					try {
+						snapshot.printVarphi(writer); 
+					} finally {
+						writer.close(); 
+					}
+				}
+				if (assign != null) {
+					final ModelWriter writer = ModelWriter.open(assign); 
+					try {
+						snapshot.printAssign(writer); 
+					} finally {
+						writer.close(); 
+					}
+				}
+
+				return null; 
+			}
+		}); 
+	}
+	
+	/*
+	 * the frozen model of the current state for inference; it is built once 
+	 * and shared by all inferencers until the state changes again
+	 * */
+	public TrainedModel getTrainedModel() {
+		if (model == null) {
+			model = new TrainedModel(ntk, nk, beta, alpha); 
+		}
+		
+		return model; 
+	}
+	
+	/*
+	 * the log joint likelihood log p(w, z) of the current state, evaluated 
+	 * over the non-zero counts only, see LogLikelihood; the V x K word-topic 
+	 * cells are evaluated on the first call only, after which the samplers 
+	 * track their changes, see track()
+	 * */
+	@Override
+	public double loglik() {
+		if (likelihood == null) {
+			likelihood = new LogLikelihood(); 
+		}
+		
+		return likelihood.words(ntk, nk, beta) + likelihood.topics(nmk, alpha); 
+	}
+	
+	/*
+	 * add the changes of the word-topic cells that a sweep has collected by 
+	 * LogLikelihood.moved(), or that a merge has returned, to the tracked 
+	 * log-likelihood
+	 * */
+	private void track(final double cells) {
+		if (likelihood != null) {
+			likelihood.add(cells); 
+		}
+	}
+	
 	public LDAParameter getParameter() {
 		return this.param; 
 	}
@@ -69,81 +227,888 @@ public class LDAEstimator implements IEstimator {
 	public void init() {
 		final int M = corpus.getNumDocs(); 
 		final int K = param.getNTopics(); 
-		final int[][] w = corpus.getDocWords(); 
 		
-		// allocate
-		nmk = new int[M][K];
-		nkt = new int[K][V];
-		nk = new int[K];
-		z = new int[M][];
+		allocate(); 
 		// initialize
 		for (int m = 0; m < M; m++) {
-			z[m] = new int[w[m].length];
-			for (int n = 0; n < w[m].length; n++) {
-				final int k = rand.nextInt(K);
-				z[m][n] = k;
-				nmk[m][k]++;
-				nkt[k][w[m][n]]++;
+			for (int n = 0; n < words.length(m); n++) {
+				z.set(m, n, rand.nextInt(K));
+			}
+		}
+		count(); 
+		iteration = 0; 
+		model = null; 
+	}
+	
+	private void allocate() {
+		final int M = corpus.getNumDocs(); 
+		final int K = param.getNTopics(); 
+		
+		nmk = new SparseCountMatrix(M, K);
+		ntk = new CountMatrix(V, K);
+		nk = new int[K];
+		z = new PackedRaggedArray(words, K - 1);
+		likelihood = null; // it tracks the former counts
+	}
+	
+	/*
+	 * fill the count matrices from the topic assignments z
+	 * */
+	private void count() {
+		final int M = corpus.getNumDocs(); 
+		
+		for (int m = 0; m < M; m++) {
+			for (int n = 0; n < words.length(m); n++) {
+				final int k = z.get(m, n);
+				nmk.inc(m, k);
+				ntk.inc(words.get(m, n), k);
 				nk[k]++;
 			}
 		}
 	}
+	
+	/*
+	 * called after every Gibbs iteration, optimizes alpha and beta every 
+	 * param.getOptimize() iterations after param.getOptBurnin(), writes a 
+	 * checkpoint every param.getCheckpoint() iterations and prints the 
+	 * log-likelihood every param.getLikelihood() iterations
+	 * 
+	 * @return true once the relative change of the log-likelihood has stayed 
+	 * below param.getConvergence() for CONVERGED evaluations in a row, i.e., 
+	 * the sampler should stop; a single small or negative change is noise
+	 * */
+	private boolean sweepDone() {
+		iteration++; 
+		model = null; 
+		if (param.getOptimize() > 0 && iteration >= param.getOptBurnin() 
+				&& iteration % param.getOptimize() == 0) {
+			optimizeHyperparameters(); 
+		}
+		if (param.getCheckpoint() > 0 && iteration % param.getCheckpoint() == 0) {
+			checkpoint(new File(filebase + ".LDA.checkpoint")); 
+		}
+		
+		final int every = param.getLikelihood(); 
+		if (every <= 0 || iteration % every != 0) {
+			return false; 
+		}
+		
+		final double loglik = loglik(); 
+		System.out.println("iter: " + iteration + ", loglik: " + loglik); 
+		final double improvement = (loglik - lastLoglik) / Math.abs(lastLoglik); 
+		lastLoglik = loglik; 
+		settled = (Math.abs(improvement) < param.getConvergence())? settled + 1: 0; 
+		
+		return param.getConvergence() > 0 && settled >= CONVERGED; 
+	}
+	
+	/*
+	 * Fixed-point updates of the asymmetric alpha (with a Gamma(1.001, 1) 
+	 * prior on every alpha_k) and the symmetric beta from histograms of the 
+	 * counts, see DirichletEstimation.estimateAlphaHist. Building the 
+	 * histograms is one pass over the non-zero counts, after which an 
+	 * iteration of the fixed point costs O(K * maxcount) instead of O(M * K) 
+	 * digamma evaluations. 
+	 * */
+	private void optimizeHyperparameters() {
+		DirichletEstimation.estimateAlphaHist(nmk.columnHistograms(), nmk.rowSumHistogram(), alpha, 
+				(pool != null)? param.getNThreads(): 1, pool); 
+		beta = DirichletEstimation.estimateAlphaHist(ntk.histogram(), CountMatrix.histogram(nk), V, beta); 
+		Kalpha = Vectors.sum(alpha); 
+		Vbeta = V * beta; 
+		System.out.println("iter: " + iteration + ", mean alpha: " + Kalpha / alpha.length + ", beta: " + beta); 
+	}
+	
+	/*
+	 * The checkpoint holds a header of the model name, the corpus dimensions 
+	 * V and M and the number of topics, which resume() and canResume() check 
+	 * against this estimator, then the number of iterations, the states of the 
+	 * random number generator and of the streams of the parallel workers, see 
+	 * streams(), the hyperparameters alpha and beta, which are 
+	 * optimized during estimate, and the packed topic assignments; the count 
+	 * matrices are rebuilt from the assignments on resume. It is written to a 
+	 * temporary file first, which then replaces f, so that a crash while 
+	 * writing never destroys the previous checkpoint; the temporary file is 
+	 * removed if writing fails. 
+	 * */
+	@Override
+	public void checkpoint(final File f) {
+		final File tmp = new File(f.getPath() + ".tmp"); 
+		DataOutputStream os = null; 
+		try {
+			final FileOutputStream fos = new FileOutputStream(tmp); 
+			os = new DataOutputStream(new BufferedOutputStream(fos, 1 << 16)); 
+			os.writeUTF("LDA"); 
+			os.writeInt(V); 
+			os.writeInt(corpus.getNumDocs()); 
+			os.writeInt(param.getNTopics()); 
+			os.writeInt(iteration); 
+			rand.writeState(os); 
+			os.writeInt((rands != null)? rands.length: 0); 
+			for (int p = 0; rands != null && p < rands.length; p++) {
+				rands[p].writeState(os); 
+			}
+			for (int k = 0; k < alpha.length; k++) {
+				os.writeDouble(alpha[k]); 
+			}
+			os.writeDouble(beta); 
+			z.write(os); 
+			os.flush(); 
+			fos.getFD().sync(); 
+			os.close(); 
+			os = null; 
+			
+			ArrayIo.replaceFile(tmp, f); 
+		} catch (IOException e) {
+			System.err.println("Error while writing checkpoint:" + e.getMessage());
+			e.printStackTrace(); 
+		} finally {
+			if (os != null) {
+				try {
+					os.close(); 
+				} catch (IOException e) {
+					// the checkpoint has failed already
+				}
+			}
+			tmp.delete(); 
+		}
+	}
+	
+	/*
+	 * @return true if the header of the checkpoint read from is belongs to 
+	 * an LDA model of this corpus with the same number of topics
+	 * */
+	private boolean checkHeader(final DataInputStream is) throws IOException {
+		return "LDA".equals(is.readUTF()) && is.readInt() == V 
+				&& is.readInt() == corpus.getNumDocs() 
+				&& is.readInt() == param.getNTopics(); 
+	}
+	
+	@Override
+	public boolean canResume(final File f) {
+		if (!f.exists()) {
+			return false; 
+		}
+		
+		DataInputStream is = null; 
+		try {
+			is = ArrayIo.openInputStream(f.getPath()); 
+			return checkHeader(is); 
+		} catch (IOException e) {
+			return false; 
+		} finally {
+			if (is != null) {
+				try {
+					ArrayIo.closeInputStream(is); 
+				} catch (IOException e) {
+					e.printStackTrace(); 
+				}
+			}
+		}
+	}
+	
+	@Override
+	public int resume(final File f) {
+		try {
+			final DataInputStream is = ArrayIo.openInputStream(f.getPath()); 
+			if (!checkHeader(is)) {
+				throw new IOException(f + " is not a checkpoint of an LDA model of this corpus with " 
+						+ param.getNTopics() + " topics."); 
+			}
+			iteration = is.readInt(); 
+			rand.readState(is); 
+			rands = null; 
+			final int P = is.readInt(); 
+			if (P > 0) {
+				rands = new XoshiroRandom[P]; 
+				for (int p = 0; p < P; p++) {
+					rands[p] = new XoshiroRandom(0); 
+					rands[p].readState(is); 
+				}
+			}
+			for (int k = 0; k < alpha.length; k++) {
+				alpha[k] = is.readDouble(); 
+			}
+			beta = is.readDouble(); 
+			Kalpha = Vectors.sum(alpha); 
+			Vbeta = V * beta; 
+			allocate(); 
+			z.read(is); 
+			ArrayIo.closeInputStream(is); 
+		} catch (IOException e) {
+			System.err.println("Error while reading checkpoint:" + e.getMessage());
+			e.printStackTrace(); 
+			System.exit(-1); 
+		}
+		count(); 
+		model = null; 
+		
+		return iteration; 
+	}
 
+	/*
+	 * the sparse and alias samplers are single-threaded, LDAParameter turns 
+	 * them into gibbs when nthreads > 1. The parallel samplers and the 
+	 * optimization of alpha in between share one pool of nthreads threads. 
+	 * */
 	@Override
 	public void estimate(final int niter) {
+		if (param.getNThreads() > 1) {
+			pool = Executors.newFixedThreadPool(param.getNThreads()); 
+			try {
+				if (LDAParameter.PARALLEL_DIAGONAL.equals(param.getParallel())) {
+					estimateDiagonal(niter); 
+				} else {
+					estimateParallel(niter); 
+				}
+			} finally {
+				pool.shutdown(); 
+				pool = null; 
+			}
+		} else if (LDAParameter.SAMPLER_SPARSE.equals(param.getSampler())) {
+			estimateSparse(niter); 
+		} else if (LDAParameter.SAMPLER_ALIAS.equals(param.getSampler())) {
+			estimateAlias(niter); 
+		} else {
+			estimateGibbs(niter); 
+		}
+	}
+	
+	private void estimateGibbs(final int niter) {
 		final int M = corpus.getNumDocs(); 
 		final int K = param.getNTopics(); 
-		final int[][] w = corpus.getDocWords(); 
-		final double alpha = param.getAlpha(); 
-		final double beta = param.getBeta(); 
 		
 		double[] pp = new double[K];
+		int[] ndk = new int[K];
+		for (int iter = 0; iter < niter; iter++) {
+			System.out.println("iter: " + iter);
+			double cells = 0; 
+			for (int m = 0; m < M; m++) {
+				cells += sampleGibbs(m, ntk, nk, ndk, pp, rand); 
+			} // m
+			track(cells); 
+			if (sweepDone()) {
+				break; 
+			}
+		} // i
+	}
+	
+	/*
+	 * one collapsed Gibbs sweep over document m against the given topic-word 
+	 * counts; ndk and pp are scratch buffers of size K, the sparse topic 
+	 * counts of the document are expanded into ndk during the sweep
+	 * 
+	 * @return the change of the tracked log-likelihood, see track()
+	 * */
+	private double sampleGibbs(final int m, final CountMatrix ntk, final int[] nk, 
+			final int[] ndk, final double[] pp, final XoshiroRandom rand) {
+		double cells = 0; 
+		nmk.getRow(m, ndk); 
+		for (int n = 0; n < z.length(m); n++) {
+			cells += sampleToken(m, n, ndk, ntk, nk, pp, rand); 
+		} // n
+		nmk.setRow(m, ndk); 
+		
+		return cells; 
+	}
+	
+	/*
+	 * one collapsed Gibbs update of token n in document m, whose topic counts 
+	 * are given densely by ndk
+	 * 
+	 * @return the change of the tracked log-likelihood, see track()
+	 * */
+	private double sampleToken(final int m, final int n, final int[] ndk, final CountMatrix ntk, 
+			final int[] nk, final double[] pp, final XoshiroRandom rand) {
+		final int K = param.getNTopics(); 
+		final int k = z.get(m, n);
+		final int t = words.get(m, n);
+		
+		// the topic counts of word t are a contiguous stripe
+		final int[] wcounts = ntk.getData(t); 
+		final int wt = ntk.offset(t); 
+		
+		// decrement
+		ndk[k]--;
+		wcounts[wt + k]--;
+		nk[k]--;
+		
+		// compute the prefix sums of the weights
+		double psum = 0;
+		for (int kk = 0; kk < K; kk++) {
+			psum += (ndk[kk] + alpha[kk]) * //
+					(wcounts[wt + kk] + beta) / (nk[kk] + Vbeta);
+			pp[kk] = psum;
+		}
+		
+		// sample by binary search
+		final int kk = Sampling.sample(pp, K, rand); 
+		
+		// reassign and increment
+		z.set(m, n, kk);
+		ndk[kk]++;
+		wcounts[wt + kk]++;
+		nk[kk]++;
+		
+		return (kk != k && likelihood != null)? likelihood.moved(wcounts[wt + k], wcounts[wt + kk]): 0; 
+	}
+	
+	/*
+	 * the random streams of P parallel workers, split off rand on first use and 
+	 * kept across calls of estimate(), checkpoint() and resume(), so that a 
+	 * resumed run continues the chains of the workers where they stopped
+	 * */
+	private XoshiroRandom[] streams(final int P) {
+		if (rands == null || rands.length != P) {
+			rands = rand.split(P); 
+		}
+		
+		return rands; 
+	}
+	
+	/*
+	 * Approximate distributed LDA (AD-LDA). The documents are split into 
+	 * nthreads partitions of balanced length, and each partition is swept by 
+	 * its own thread against a private copy of ntk and nk. The copies are 
+	 * merged back into the global counts at the end of every iteration. 
+	 * 
+	 * Reference: David Newman, Arthur Asuncion, Padhraic Smyth, and Max 
+	 * Welling, 2009. Distributed Algorithms for Topic Models. Journal of 
+	 * Machine Learning Research, Vol. 10, pp. 1801-1828. 
+	 * */
+	private void estimateParallel(final int niter) {
+		final int K = param.getNTopics(); 
+		final int P = param.getNThreads(); 
+		
+		final int[][] docs = new DisjointDocTerms(words, V).getDisjointDocuments(P); 
+		final CountMatrix[] ntkp = new CountMatrix[P]; 
+		final int[][] nkp = new int[P][K]; 
+		final int[][] ndkp = new int[P][K]; 
+		final double[][] pp = new double[P][K]; 
+		final XoshiroRandom[] rands = streams(P); 
+		final double[] cells = new double[P]; 
+		for (int p = 0; p < P; p++) {
+			ntkp[p] = new CountMatrix(V, K); 
+		}
+		
+		final ParallelFor sweep = new ParallelFor(P, pool) {
+			@Override
+			public void process(final int p, final int thread) {
+				ntkp[p].copyFrom(ntk); 
+				System.arraycopy(nk, 0, nkp[p], 0, K); 
+				
+				for (int i = 0; i < docs[p].length; i++) {
+					sampleGibbs(docs[p][i], ntkp[p], nkp[p], ndkp[p], pp[p], rands[p]); 
+				}
+			}
+		}; 
+		// every thread merges a contiguous block of words, the changes of the 
+		// copies are lost on the tracked log-likelihood, which follows the merge
+		final ParallelFor merge = new ParallelFor(P, pool) {
+			@Override
+			public void process(final int p, final int thread) {
+				cells[p] = ntk.merge(ntkp, (int) ((long) V * p / P), (int) ((long) V * (p + 1) / P), 
+						(likelihood != null)? likelihood.getTrackedCache(): null); 
+			}
+		}; 
+		
+		for (int iter = 0; iter < niter; iter++) {
+			System.out.println("iter: " + iter);
+			sweep.loop(P); 
+			merge.loop(P); 
+			mergeSums(nk, nkp); 
+			track(Vectors.sum(cells)); 
+			if (sweepDone()) {
+				break; 
+			}
+		} // i
+	}
+	
+	/*
+	 * Exact parallel LDA by diagonal scheduling. Documents and terms are both 
+	 * split into nthreads disjoint blocks, and every iteration runs nthreads 
+	 * epochs. In epoch e, thread p samples only those tokens of its document 
+	 * block p whose terms fall into term block (p + e) mod nthreads, so no two 
+	 * threads ever touch the same row of nmk or the same row of ntk, and 
+	 * both are updated in place without locks. Only the topic totals nk are 
+	 * shared; each thread keeps a private copy that is reconciled after every 
+	 * epoch. Term blocks are balanced by token count, see DisjointDocTerms. 
+	 * 
+	 * Reference: Feng Yan, Ningyi Xu, and Yuan Qi, 2009. Parallel Inference 
+	 * for Latent Dirichlet Allocation on Graphics Processing Units. Advances 
+	 * in Neural Information Processing Systems 22, pp. 2134-2142. 
+	 * */
+	private void estimateDiagonal(final int niter) {
+		final int K = param.getNTopics(); 
+		final int P = param.getNThreads(); 
+		
+		final DisjointDocTerms disjoint = new DisjointDocTerms(words, V); 
+		final int[][] docs = disjoint.getDisjointDocuments(P); 
+		final PackedRaggedArray[] tokens = disjoint.getDisjointTokens(P); 
+		final int[][] nkp = new int[P][K]; 
+		final int[][] ndkp = new int[P][K]; 
+		final double[][] pp = new double[P][K]; 
+		final XoshiroRandom[] rands = streams(P); 
+		final int[] epoch = new int[1]; 
+		final double[] cells = new double[P]; 
+		
+		final ParallelFor sweep = new ParallelFor(P, pool) {
+			@Override
+			public void process(final int p, final int thread) {
+				final PackedRaggedArray ns = tokens[(p + epoch[0]) % P]; 
+				System.arraycopy(nk, 0, nkp[p], 0, K); 
+				
+				for (int i = 0; i < docs[p].length; i++) {
+					final int m = docs[p][i]; 
+					if (ns.length(m) == 0) {
+						continue; 
+					}
+					nmk.getRow(m, ndkp[p]); 
+					for (int j = 0; j < ns.length(m); j++) {
+						cells[p] += sampleToken(m, ns.get(m, j), ndkp[p], ntk, nkp[p], pp[p], rands[p]); 
+					}
+					nmk.setRow(m, ndkp[p]); 
+				}
+			}
+		}; 
+		
+		for (int iter = 0; iter < niter; iter++) {
+			System.out.println("iter: " + iter);
+			for (epoch[0] = 0; epoch[0] < P; epoch[0]++) {
+				sweep.loop(P); 
+				
+				mergeSums(nk, nkp); 
+			}
+			track(Vectors.sum(cells)); 
+			Arrays.fill(cells, 0); 
+			if (sweepDone()) {
+				break; 
+			}
+		} // i
+	}
+	
+	/*
+	 * add the changes of the private copies to the global topic totals
+	 * */
+	private static void mergeSums(final int[] sums, final int[][] sumCopies) {
+		for (int i = 0; i < sums.length; i++) {
+			int sum = sums[i]; 
+			for (int p = 0; p < sumCopies.length; p++) {
+				sum += sumCopies[p][i] - sums[i]; 
+			}
+			sums[i] = sum; 
+		}
+	}
+	
+	/*
+	 * SparseLDA sampler. The weight of topic k is decomposed into a smoothing 
+	 * bucket alpha_k*beta/(nk+Vbeta), a document bucket nmk*beta/(nk+Vbeta) and 
+	 * a topic-word bucket (nmk+alpha_k)*ntk/(nk+Vbeta). The smoothing and the 
+	 * document masses are updated incrementally, and the topic-word mass is 
+	 * only summed over the non-zero topics of the current word. The smoothing 
+	 * weights change in two topics per token and are kept in an FPlusTree, so 
+	 * that updating and drawing from them take O(log K). 
+	 * 
+	 * Reference: Limin Yao, David Mimno, and Andrew McCallum, 2009. Efficient 
+	 * Methods for Topic Model Inference on Streaming Document Collections. 
+	 * Proceedings of the 15th ACM SIGKDD International Conference on Knowledge 
+	 * Discovery and Data Mining, pp. 937-946. 
+	 * */
+	private void estimateSparse(final int niter) {
+		final int M = corpus.getNumDocs(); 
+		final int K = param.getNTopics(); 
+		
+		// non-zero topics of each word, sorted by descending count
+		final int[][] tk = new int[V][]; 
+		final int[] tkn = new int[V]; 
+		final int[] nt = new int[V]; 
+		for (int m = 0; m < M; m++) {
+			for (int n = 0; n < words.length(m); n++) {
+				nt[words.get(m, n)]++; 
+			}
+		}
+		for (int t = 0; t < V; t++) {
+			tk[t] = new int[Math.min(K, nt[t])]; 
+		}
+		for (int t = 0; t < V; t++) {
+			for (int k = 0; k < K; k++) {
+				if (ntk.get(t, k) > 0) {
+					tk[t][tkn[t]] = k; 
+					moveUp(tk[t], tkn[t]++, t); 
+				}
+			}
+		}
+		
+		// non-zero topics of the current document and their dense counts
+		final int[] dk = new int[K]; 
+		final int[] dpos = new int[K]; 
+		final int[] ndk = new int[K]; 
+		Arrays.fill(dpos, -1); 
+		
+		final double[] coef = new double[K]; // (nmk+alpha)/(nk+Vbeta)
+		final double[] qq = new double[K]; 
+		final FPlusTree smooth = new FPlusTree(K); 
 		for (int iter = 0; iter < niter; iter++) {
 			System.out.println("iter: " + iter);
+			
+			// smoothing bucket
+			for (int k = 0; k < K; k++) {
+				qq[k] = alpha[k] * beta / (nk[k] + Vbeta); 
+				coef[k] = alpha[k] / (nk[k] + Vbeta); 
+			}
+			smooth.build(qq, K); 
+			
+			double cells = 0; 
 			for (int m = 0; m < M; m++) {
-				for (int n = 0; n < w[m].length; n++) {
-					final int k = z[m][n];
-					final int t = w[m][n];
+				// document bucket
+				nmk.getRow(m, ndk); 
+				int dkn = nmk.nonZeros(m, dk); 
+				for (int i = 0; i < dkn; i++) {
+					dpos[dk[i]] = i; 
+				}
+				double r = 0; 
+				for (int i = 0; i < dkn; i++) {
+					final int k = dk[i]; 
+					r += ndk[k] * beta / (nk[k] + Vbeta); 
+					coef[k] = (ndk[k] + alpha[k]) / (nk[k] + Vbeta); 
+				}
+				
+				for (int n = 0; n < words.length(m); n++) {
+					final int k = z.get(m, n);
+					final int t = words.get(m, n);
 					
 					// decrement
-					nmk[m][k]--;
-					nkt[k][t]--;
+					double denom = nk[k] + Vbeta; 
+					r -= ndk[k] * beta / denom; 
+					ndk[k]--;
+					ntk.dec(t, k);
 					nk[k]--;
+					denom = nk[k] + Vbeta; 
+					smooth.set(k, alpha[k] * beta / denom); 
+					r += ndk[k] * beta / denom; 
+					coef[k] = (ndk[k] + alpha[k]) / denom; 
 					
-					// compute weights
-					double psum = 0;
-					for (int kk = 0; kk < K; kk++) {
-						pp[kk] = (nmk[m][kk] + alpha) * //
-								(nkt[kk][t] + beta) / (nk[kk] + Vbeta);
-						psum += pp[kk];
+					if (ndk[k] == 0) {
+						final int last = dk[--dkn]; 
+						dk[dpos[k]] = last; 
+						dpos[last] = dpos[k]; 
+						dpos[k] = -1; 
+					}
+					if (moveDown(tk[t], tkn[t], k, t) == 0) {
+						tkn[t]--; 
+					}
+					
+					// topic-word bucket
+					final int[] list = tk[t]; 
+					final int len = tkn[t]; 
+					final int[] wcounts = ntk.getData(t); 
+					final int wt = ntk.offset(t); 
+					double q = 0; 
+					for (int i = 0; i < len; i++) {
+						final int kk = list[i]; 
+						qq[i] = coef[kk] * wcounts[wt + kk]; 
+						q += qq[i]; 
 					}
 					
 					// sample
-					final int kk = rand.nextDiscrete(pp, psum); 
+					double u = rand.nextDouble() * (smooth.getMass() + r + q); 
+					int kk = -1; 
+					if (u < q) {
+						for (int i = 0; i < len; i++) {
+							u -= qq[i]; 
+							if (u <= 0) {
+								kk = list[i]; 
+								break; 
+							}
+						}
+						if (kk < 0) {
+							kk = list[len - 1]; 
+						}
+					} else if ((u -= q) < r) {
+						for (int i = 0; i < dkn; i++) {
+							u -= ndk[dk[i]] * beta / (nk[dk[i]] + Vbeta); 
+							if (u <= 0) {
+								kk = dk[i]; 
+								break; 
+							}
+						}
+						if (kk < 0) {
+							kk = dk[dkn - 1]; 
+						}
+					} else {
+						kk = smooth.sample(u - r); 
+					}
 					
 					// reassign and increment
-					this.z[m][n] = kk;
-					this.nmk[m][kk]++;
-					this.nkt[kk][t]++;
+					denom = nk[kk] + Vbeta; 
+					r -= ndk[kk] * beta / denom; 
+					z.set(m, n, kk);
+					ndk[kk]++;
+					ntk.inc(t, kk);
 					this.nk[kk]++;
+					denom = nk[kk] + Vbeta; 
+					smooth.set(kk, alpha[kk] * beta / denom); 
+					r += ndk[kk] * beta / denom; 
+					coef[kk] = (ndk[kk] + alpha[kk]) / denom; 
+					
+					if (ndk[kk] == 1) {
+						dpos[kk] = dkn; 
+						dk[dkn++] = kk; 
+					}
+					if (ntk.get(t, kk) == 1) {
+						list[tkn[t]] = kk; 
+						moveUp(list, tkn[t]++, t); 
+					} else {
+						moveUp(list, indexOf(list, tkn[t], kk), t); 
+					}
+					if (kk != k && likelihood != null) {
+						cells += likelihood.moved(ntk.get(t, k), ntk.get(t, kk)); 
+					}
 				} // n
+				
+				nmk.setRow(m, ndk); 
+				
+				// leave only the smoothing part for the next document
+				for (int i = 0; i < dkn; i++) {
+					final int k = dk[i]; 
+					dpos[k] = -1; 
+					coef[k] = alpha[k] / (nk[k] + Vbeta); 
+				}
 			} // m
+			track(cells); 
+			if (sweepDone()) {
+				break; 
+			}
 		} // i
 	}
 	
+	/*
+	 * Metropolis-Hastings sampler with alias tables. Each step draws a topic 
+	 * from the word proposal (ntk+beta)/(nk+Vbeta), then from the document 
+	 * proposal nmk+alpha_k, and accepts it against the true conditional. The word 
+	 * proposal is served by stale alias tables over the non-zero topics of each 
+	 * word plus one table for the smoothing part beta/(nk+Vbeta). A table is 
+	 * rebuilt once it has served aliasrefresh (default: K) draws, so the cost 
+	 * per token is amortized O(1). The document proposal needs no table: it 
+	 * picks the topic of a random token of the document, or a topic drawn from 
+	 * alpha (uniform while alpha is symmetric). 
+	 * 
+	 * References: 
+	 * [1] Aaron Q. Li, Amr Ahmed, Sujith Ravi, and Alexander J. Smola, 2014. 
+	 * Reducing the Sampling Complexity of Topic Models. Proceedings of the 20th 
+	 * ACM SIGKDD International Conference on Knowledge Discovery and Data 
+	 * Mining, pp. 891-900. 
+	 * [2] Jinhui Yuan, Fei Gao, Qirong Ho, et al., 2015. LightLDA: Big Topic 
+	 * Models on Modest Computer Clusters. Proceedings of the 24th International 
+	 * Conference on World Wide Web, pp. 1351-1361. 
+	 * */
+	private void estimateAlias(final int niter) {
+		final int M = corpus.getNumDocs(); 
+		final int K = param.getNTopics(); 
+		final int nmh = param.getMhSteps(); 
+		final int refresh = (param.getAliasRefresh() > 0)? param.getAliasRefresh(): K; 
+		
+		// sparse part of the word proposals, built lazily
+		final AliasTable[] wtables = new AliasTable[V]; 
+		final int[][] wtopics = new int[V][]; 
+		final double[][] wweights = new double[V][]; 
+		final int[] wserved = new int[V]; 
+		Arrays.fill(wserved, refresh); 
+		
+		// smoothing part of the word proposals
+		final AliasTable btable = new AliasTable(K); 
+		final double[] bweights = new double[K]; 
+		int bserved = refresh; 
+		
+		final int[] ndk = new int[K]; 
+		final double[] asums = new double[K]; // prefix sums of alpha
+		for (int iter = 0; iter < niter; iter++) {
+			System.out.println("iter: " + iter);
+			final boolean symmetric = Vectors.min(alpha) == Vectors.max(alpha); 
+			double sum = 0; 
+			for (int kk = 0; kk < K; kk++) {
+				sum += alpha[kk]; 
+				asums[kk] = sum; 
+			}
+			double cells = 0; 
+			for (int m = 0; m < M; m++) {
+				final int Nm = words.length(m); 
+				nmk.getRow(m, ndk); 
+				
+				for (int n = 0; n < Nm; n++) {
+					final int k = z.get(m, n);
+					final int t = words.get(m, n);
+					
+					// decrement
+					ndk[k]--;
+					ntk.dec(t, k);
+					nk[k]--;
+					
+					// refresh stale proposals
+					if (wserved[t] >= refresh) {
+						buildWordTable(t, wtables, wtopics, wweights); 
+						wserved[t] = 0; 
+					}
+					if (bserved >= refresh) {
+						for (int kk = 0; kk < K; kk++) {
+							bweights[kk] = beta / (nk[kk] + Vbeta); 
+						}
+						btable.build(bweights, K); 
+						bserved = 0; 
+					}
+					final AliasTable wtable = wtables[t]; 
+					
+					int s = k; 
+					double ps = (ndk[s] + alpha[s]) * (ntk.get(t, s) + beta) / (nk[s] + Vbeta); 
+					for (int step = 0; step < nmh; step++) {
+						// word proposal
+						int c; 
+						if (rand.nextDouble() * (wtable.getMass() + btable.getMass()) < wtable.getMass()) {
+							c = wtopics[t][wtable.sample(rand)]; 
+						} else {
+							c = btable.sample(rand); 
+						}
+						wserved[t]++; 
+						bserved++; 
+						if (c != s) {
+							final double pc = (ndk[c] + alpha[c]) * (ntk.get(t, c) + beta) / (nk[c] + Vbeta); 
+							final double qs = wordProposal(t, s, wtopics, wweights, wtable.size()) + bweights[s]; 
+							final double qc = wordProposal(t, c, wtopics, wweights, wtable.size()) + bweights[c]; 
+							if (rand.nextDouble() * ps * qc < pc * qs) {
+								s = c; 
+								ps = pc; 
+							}
+						}
+						
+						// document proposal, counting the current token
+						if (rand.nextDouble() * (Nm + Kalpha) < Nm) {
+							c = z.get(m, rand.nextInt(Nm)); 
+						} else if (symmetric) {
+							c = rand.nextInt(K); 
+						} else {
+							c = Sampling.sample(asums, K, rand); 
+						}
+						if (c != s) {
+							final double pc = (ndk[c] + alpha[c]) * (ntk.get(t, c) + beta) / (nk[c] + Vbeta); 
+							final double qs = ndk[s] + alpha[s] + ((s == k)? 1: 0); 
+							final double qc = ndk[c] + alpha[c] + ((c == k)? 1: 0); 
+							if (rand.nextDouble() * ps * qc < pc * qs) {
+								s = c; 
+								ps = pc; 
+							}
+						}
+					}
+					
+					// reassign and increment
+					z.set(m, n, s);
+					ndk[s]++;
+					ntk.inc(t, s);
+					this.nk[s]++;
+					if (s != k && likelihood != null) {
+						cells += likelihood.moved(ntk.get(t, k), ntk.get(t, s)); 
+					}
+				} // n
+				nmk.setRow(m, ndk); 
+			} // m
+			track(cells); 
+			if (sweepDone()) {
+				break; 
+			}
+		} // i
+	}
+	
+	/*
+	 * rebuild the alias table over the non-zero topics of word t with the 
+	 * weights ntk/(nk+Vbeta); the topics are kept in ascending order
+	 * */
+	private void buildWordTable(final int t, final AliasTable[] wtables, 
+			final int[][] wtopics, final double[][] wweights) {
+		final int K = param.getNTopics(); 
+		
+		int nnz = 0; 
+		for (int k = 0; k < K; k++) {
+			if (ntk.get(t, k) > 0) {
+				nnz++; 
+			}
+		}
+		if (wtables[t] == null || wtopics[t].length < nnz) {
+			wtables[t] = new AliasTable(nnz); 
+			wtopics[t] = new int[nnz]; 
+			wweights[t] = new double[nnz]; 
+		}
+		
+		int i = 0; 
+		for (int k = 0; k < K; k++) {
+			if (ntk.get(t, k) > 0) {
+				wtopics[t][i] = k; 
+				wweights[t][i] = ntk.get(t, k) / (nk[k] + Vbeta); 
+				i++; 
+			}
+		}
+		wtables[t].build(wweights[t], nnz); 
+	}
+	
+	/*
+	 * stale weight of topic k in the sparse part of the proposal of word t
+	 * */
+	private static double wordProposal(final int t, final int k, final int[][] wtopics, 
+			final double[][] wweights, final int nnz) {
+		final int i = Arrays.binarySearch(wtopics[t], 0, nnz, k); 
+		
+		return (i >= 0)? wweights[t][i]: 0.0; 
+	}
+	
+	private static int indexOf(final int[] list, final int len, final int k) {
+		for (int i = 0; i < len; i++) {
+			if (list[i] == k) {
+				return i; 
+			}
+		}
+		
+		return -1; 
+	}
+	
+	/*
+	 * restore the descending order of list[0..i] by ntk(t, .) after the count 
+	 * of topic list[i] has been incremented
+	 * */
+	private void moveUp(final int[] list, int i, final int t) {
+		final int k = list[i]; 
+		while (i > 0 && ntk.get(t, list[i - 1]) < ntk.get(t, k)) {
+			list[i] = list[i - 1]; 
+			i--; 
+		}
+		list[i] = k; 
+	}
+	
+	/*
+	 * restore the descending order of list[0..len) by ntk(t, .) after the 
+	 * count of topic k has been decremented, and return its new count. A topic 
+	 * whose count drops to zero ends up at the tail of the list. 
+	 * */
+	private int moveDown(final int[] list, final int len, final int k, final int t) {
+		int i = indexOf(list, len, k); 
+		while (i + 1 < len && ntk.get(t, list[i + 1]) > ntk.get(t, k)) {
+			list[i] = list[i + 1]; 
+			i++; 
+		}
+		list[i] = k; 
+		
+		return ntk.get(t, k); 
+	}
+	
 	/*
 	 * @flag = true: log
 	 * */
 	public double[][] getVartheta(final boolean flag) {
 		final int M = corpus.getNumDocs();
 		final int K = param.getNTopics();
-		final double alpha = param.getAlpha();
 
 		double[][] vartheta = new double[M][K];
 		for (int m = 0; m < M; m++) {
-			final int Nm = corpus.getDocWords(m).length;
+			final int Nm = corpus.getNumWords(m);
 			for (int k = 0; k < K; k++) {
-				vartheta[m][k] = (nmk[m][k] + alpha) / (Nm + Kalpha);
+				vartheta[m][k] = (nmk.get(m, k) + alpha[k]) / (Nm + Kalpha);
 				
 				if (flag) {
 					vartheta[m][k] = Math.log(vartheta[m][k]); 
@@ -163,12 +1128,11 @@ public class LDAEstimator implements IEstimator {
 	 * */
 	public double[] getVartheta(final int m, final boolean flag) {
 		final int K = param.getNTopics();
-		final double alpha = param.getAlpha();
 
 		double[] vartheta = new double[K];
-		final int Nm = corpus.getDocWords(m).length;
+		final int Nm = corpus.getNumWords(m);
 		for (int k = 0; k < K; k++) {
-			vartheta[k] = (nmk[m][k] + alpha) / (Nm + Kalpha);
+			vartheta[k] = (nmk.get(m, k) + alpha[k]) / (Nm + Kalpha);
 			
 			if (flag) {
 				vartheta[k] = Math.log(vartheta[k]); 
@@ -186,10 +1150,9 @@ public class LDAEstimator implements IEstimator {
 	 * @flag = true: log
 	 * */
 	public double getVartheta(final int m, final int k, final boolean flag) {
-		final double alpha = param.getAlpha();
-		final int Nm = corpus.getDocWords(m).length;
+		final int Nm = corpus.getNumWords(m);
 
-		double vartheta = (nmk[m][k] + alpha) / (Nm + Kalpha); 
+		double vartheta = (nmk.get(m, k) + alpha[k]) / (Nm + Kalpha); 
 		if (flag) {
 			vartheta = Math.log(vartheta); 
 			if (Double.isNaN(vartheta)) {
@@ -206,12 +1169,11 @@ public class LDAEstimator implements IEstimator {
 	 * */
 	public double[][] getVarphi(final boolean flag) {
 		final int K = param.getNTopics(); 
-		final double beta = param.getBeta(); 
 		
 		double[][] varphi = new double[K][V]; 
-		for (int k = 0; k < K; k++) {
-			for (int v = 0; v < V; v++) {
-				varphi[k][v] = (nkt[k][v] + beta) / (nk[k] + Vbeta); 
+		for (int v = 0; v < V; v++) {
+			for (int k = 0; k < K; k++) {
+				varphi[k][v] = (ntk.get(v, k) + beta) / (nk[k] + Vbeta); 
 				
 				if (flag) {
 					varphi[k][v] = Math.log(varphi[k][v]); 
@@ -230,9 +1192,8 @@ public class LDAEstimator implements IEstimator {
 	 * @flag = true: log
 	 * */
 	public double getVarphi(final int k, final int v, final boolean flag) {
-		final double beta = param.getBeta(); 
 		
-		double varphi = (nkt[k][v] + beta) / (nk[k] + Vbeta); 
+		double varphi = (ntk.get(v, k) + beta) / (nk[k] + Vbeta); 
 		if (flag) {
 			varphi = Math.log(varphi); 
 			if (Double.isNaN(varphi)) {
@@ -261,7 +1222,7 @@ public class LDAEstimator implements IEstimator {
 		for (int k = 0; k < K; k++) {
 			IntegerDoublePair[] unigrams = new IntegerDoublePair[V];
 			for (int v = 0; v < V; v++) {
-				unigrams[v] = new IntegerDoublePair(v, (double)nkt[k][v]); 
+				unigrams[v] = new IntegerDoublePair(v, (double)ntk.get(v, k)); 
 			}
 			Arrays.sort(unigrams); 
 			
@@ -288,12 +1249,11 @@ public class LDAEstimator implements IEstimator {
 		final CorpusResolver cr = new CorpusResolver(filebase); 
 		final int M = corpus.getNumDocs(); 
 		final int K = param.getNTopics(); 
-		final int[][] w = corpus.getDocWords(); 
 		
 		for (int k = 0; k < K; k++) {
 			IntegerDoublePair[] docs = new IntegerDoublePair[M];
 			for (int m = 0; m < M; m++) {
-				docs[m] = new IntegerDoublePair(m, (double)nmk[m][k] / w[m].length); 
+				docs[m] = new IntegerDoublePair(m, (double)nmk.get(m, k) / corpus.getNumWords(m)); 
 			}
 			Arrays.sort(docs); 
 			
@@ -306,25 +1266,39 @@ public class LDAEstimator implements IEstimator {
 	
 	public void printVartheta(final File f) {
 		try {
-			PrintWriter writer = new PrintWriter(new FileWriter(f));
-			printVartheta(writer);
-			writer.close();
+			final ModelWriter writer = ModelWriter.open(f);
+			try {
+				printVartheta(writer);
+			} finally {
+				writer.close();
+			}
 		} catch (IOException e) {
 			e.printStackTrace(); 
 		}
 	}
 
 	public void printVartheta(final PrintWriter pw) {
-		final int M = corpus.getNumDocs();
-		final int K = param.getNTopics();
-		final double alpha = param.getAlpha();
+		try {
+			final ModelWriter writer = new ModelWriter(pw);
+			printVartheta(writer);
+			writer.flush();
+		} catch (IOException e) {
+			e.printStackTrace(); 
+		}
+	}
+
+	public void printVartheta(final ModelWriter writer) throws IOException {
+		final int M = corpus.getNumDocs(); 
+		final int K = param.getNTopics(); 
+		final int[] row = new int[K]; 
 		
+		writer.beginTriplets(M, K); 
 		for (int m = 0; m < M; m++) {
-			final int Nm = corpus.getDocWords(m).length;
+			final int Nm = corpus.getNumWords(m); 
+			nmk.getRow(m, row); 
 			for (int k = 0; k < K; k++) {
-				if (nmk[m][k] != 0) {
-					final double vartheta = (nmk[m][k] + alpha) / (Nm + Kalpha);
-					pw.println(m + " " + k + " " + nmk[m][k] + " " + Nm + " " + vartheta); 
+				if (row[k] != 0) {
+					writer.triplet(m, k, row[k], Nm, (row[k] + alpha[k]) / (Nm + Kalpha)); 
 				}
 			}
 		}
@@ -332,23 +1306,36 @@ public class LDAEstimator implements IEstimator {
 	
 	public void printVarphi(final File f) {
 		try {
-			PrintWriter writer = new PrintWriter(new FileWriter(f));
-			printVarphi(writer);
-			writer.close();
+			final ModelWriter writer = ModelWriter.open(f);
+			try {
+				printVarphi(writer);
+			} finally {
+				writer.close();
+			}
 		} catch (IOException e) {
 			e.printStackTrace(); 
 		}
 	}
-	
+
 	public void printVarphi(final PrintWriter pw) {
+		try {
+			final ModelWriter writer = new ModelWriter(pw);
+			printVarphi(writer);
+			writer.flush();
+		} catch (IOException e) {
+			e.printStackTrace(); 
+		}
+	}
+
+	public void printVarphi(final ModelWriter writer) throws IOException {
 		final int K = param.getNTopics(); 
-		final double beta = param.getBeta(); 
 		
+		writer.beginTriplets(K, V); 
 		for (int k = 0; k < K; k++) {
 			for (int v = 0; v < V; v++) {
-				if (nkt[k][v] != 0) {
-					final double varphi = (nkt[k][v] + beta) / (nk[k] + Vbeta); 
-					pw.println(k + " " + v + " " + nkt[k][v] + " " + nk[k] + " " + varphi); 
+				final int count = ntk.get(v, k); 
+				if (count != 0) {
+					writer.triplet(k, v, count, nk[k], (count + beta) / (nk[k] + Vbeta)); 
 				}
 			}
 		}
@@ -357,9 +1344,12 @@ public class LDAEstimator implements IEstimator {
 	@Override
 	public void printAssign(final File f) {
 		try {
-			PrintWriter writer = new PrintWriter(new FileWriter(f));
-			printAssign(writer);
-			writer.close();
+			final ModelWriter writer = ModelWriter.open(f);
+			try {
+				printAssign(writer);
+			} finally {
+				writer.close();
+			}
 		} catch (IOException e) {
 			e.printStackTrace(); 
 		}
@@ -367,15 +1357,25 @@ public class LDAEstimator implements IEstimator {
 
 	@Override
 	public void printAssign(final PrintWriter pw) {
+		try {
+			final ModelWriter writer = new ModelWriter(pw);
+			printAssign(writer);
+			writer.flush();
+		} catch (IOException e) {
+			e.printStackTrace(); 
+		}
+	}
+
+	public void printAssign(final ModelWriter writer) throws IOException {
 		final int M = corpus.getNumDocs(); 
 		
+		writer.beginAssign(M, 2); 
 		for (int m = 0; m < M; m++) {
-			final int[] w = corpus.getDocWords(m); 
-			
-			for (int n = 0; n < w.length; n++) {
-				pw.print(w[n] + ":" + z[m][n] + " "); 
+			writer.beginDoc(words.length(m)); 
+			for (int n = 0; n < words.length(m); n++) {
+				writer.token(words.get(m, n), z.get(m, n)); 
 			}
-			pw.println(); 
+			writer.endDoc(); 
 		}
 	}
 }
@@ -1,17 +1,37 @@
 package cn.edu.bjut.estimators;
 
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import cn.edu.bjut.corpus.CorpusResolver;
+import cn.edu.bjut.corpus.DisjointDocLabels;
 import cn.edu.bjut.corpus.LabelCorpus;
+import cn.edu.bjut.inferencers.TrainedModel;
 import cn.edu.bjut.parameters.coATParameter;
-import cn.edu.bjut.utils.CokusRandom;
+import cn.edu.bjut.utils.ArrayIo;
+import cn.edu.bjut.utils.CountMatrix;
+import cn.edu.bjut.utils.DirichletEstimation;
+import cn.edu.bjut.utils.IRaggedArray;
 import cn.edu.bjut.utils.IntegerDoublePair;
-import cn.edu.bjut.utils.Relation;
+import cn.edu.bjut.utils.LogLikelihood;
+import cn.edu.bjut.utils.ModelWriter;
+import cn.edu.bjut.utils.PackedRaggedArray;
+import cn.edu.bjut.utils.ParallelFor;
+import cn.edu.bjut.utils.Sampling;
+import cn.edu.bjut.utils.SparseCountMatrix;
+import cn.edu.bjut.utils.Vectors;
+import cn.edu.bjut.utils.XoshiroRandom;
 
 /*
  * Gibbs sampling algorithm for co-Author-Topic (coAT) model. 
@@ -24,23 +44,37 @@ import cn.edu.bjut.utils.Relation;
  * Author: XU, Shuo (pzczxs@gmail.com)
  * */
 public class coATEstimator implements IEstimator {
+	private final static int CONVERGED = 3; // evaluations in a row below param.getConvergence() to stop
+	
 	private String filebase;
 	private LabelCorpus corpus;
 	private coATParameter param;
 	private int V;
 	private int R;
+	private int maxPairs; // maximal number of co-author pairs of a document
 
-	private CokusRandom rand;
+	private XoshiroRandom rand;
+	private XoshiroRandom[] rands; // streams of the parallel workers, see streams()
+	private ExecutorService pool; // threads of the parallel workers during estimate()
 
-	private int[][] nrk; // size: R x K
+	private SparseCountMatrix nrk; // size: R x K, non-zero topics only
 	private int[] nr; // size: R
-	private int[][] nkt; // size: K x V
+	private CountMatrix ntk; // size: V x K, word-major
 	private int[] nk; // size: K
 
-	private int[][] z;
-	private int[][] xy;
+	private IRaggedArray words; // size: M x Nm, packed or memory-mapped
+	private PackedRaggedArray z; // size: M x Nm, packed to ceil(log2 K) bits
+	private PackedRaggedArray xy; // size: M x Nm, packed to ceil(log2 R) bits
+
+	private int iteration; // number of Gibbs iterations done
+	private TrainedModel model; // frozen model of the current state, built on demand
+	private LogLikelihood likelihood; // built on demand
+	private double lastLoglik = Double.NaN; // at the last evaluation in sweepDone()
+	private int settled; // evaluations in a row below param.getConvergence()
 
-	private double Kalpha; // K*alpha
+	private double[] alpha; // size: K, asymmetric once optimized
+	private double beta;
+	private double Kalpha; // sum of alpha
 	private double Vbeta; // V*beta
 
 	public coATEstimator(final String filebase, final long seed, final coATParameter param) {
@@ -50,17 +84,140 @@ public class coATEstimator implements IEstimator {
 		this.param = param;
 		this.V = corpus.getNumTerms();
 		this.R = corpus.getCoauthorV();
+		for (int[] pairs : corpus.getDocCoauthor()) {
+			this.maxPairs = Math.max(this.maxPairs, pairs.length);
+		}
+		this.words = corpus.getWordArray();
 
+		this.alpha = new double[param.getNTopics()];
+		Arrays.fill(alpha, param.getAlpha());
+		this.beta = param.getBeta();
 		this.Kalpha = param.getNTopics() * param.getAlpha();
 		this.Vbeta = V * param.getBeta();
 
-		this.rand = new CokusRandom(seed);
+		this.rand = new XoshiroRandom(seed);
 	}
 
 	public coATEstimator(final String filebase, final long seed) {
 		this(filebase, seed, new coATParameter());
 	}
 
+	/*
+	 * copy constructor for snapshot(), the corpus and the parameters are shared
+	 * */
+	private coATEstimator(final coATEstimator src) {
+		this.filebase = src.filebase;
+		this.corpus = src.corpus;
+		this.param = src.param;
+		this.V = src.V;
+		this.R = src.R;
+		this.maxPairs = src.maxPairs;
+		this.words = src.words;
+		this.rand = src.rand;
+		this.alpha = src.alpha.clone();
+		this.beta = src.beta;
+		this.Kalpha = src.Kalpha;
+		this.Vbeta = src.Vbeta;
+		this.iteration = src.iteration;
+		
+		allocate();
+		nrk.copyFrom(src.nrk);
+		ntk.copyFrom(src.ntk);
+		System.arraycopy(src.nr, 0, nr, 0, nr.length);
+		System.arraycopy(src.nk, 0, nk, 0, nk.length);
+		z.copyFrom(src.z);
+		xy.copyFrom(src.xy);
+	}
+	
+	/*
+	 * a copy of the current state that can be printed while this estimator 
+	 * keeps sampling; it shares the random number generator and is not meant 
+	 * to be sampled itself
+	 * */
+	public coATEstimator snapshot() {
+		return new coATEstimator(this);
+	}
+	
+	/*
+	 * print vartheta, varphi and the assignments of a snapshot of the current 
+	 * state on a background thread, skipping null files; get() on the returned 
+	 * future waits for the output and rethrows a failed write
+	 * */
+	public Future<Void> printInBackground(final File vartheta, final File varphi, final File assign) {
+		final coATEstimator snapshot = snapshot();
+		
+		return ModelWriter.inBackground(new Callable<Void>() {
+			@Override
+			public Void call() throws IOException {
+				if (vartheta != null) {
+					final ModelWriter writer = ModelWriter.open(vartheta);
+					try {
+						snapshot.printVartheta(writer);
+					} finally {
+						writer.close();
+					}
+				}
+				if (varphi != null) {
+					final ModelWriter writer = ModelWriter.open(varphi);
+					try {
+						snapshot.printVarphi(writer);
+					} finally {
+						writer.close();
+					}
+				}
+				if (assign != null) {
+					final ModelWriter writer = ModelWriter.open(assign);
+					try {
+						snapshot.printAssign(writer);
+					} finally {
+						writer.close();
+					}
+				}
+
+				return null;
+			}
+		});
+	}
+	
+	/*
+	 * the frozen model of the current state for inference; it is built once 
+	 * and shared by all inferencers until the state changes again
+	 * */
+	public TrainedModel getTrainedModel() {
+		if (model == null) {
+			model = new TrainedModel(ntk, nk, beta, nrk, nr, alpha);
+		}
+		
+		return model;
+	}
+	
+	/*
+	 * the log joint likelihood log p(w, z, xy) of the current state, up to 
+	 * the constant probability of the choice of co-author pairs, evaluated 
+	 * over the non-zero counts only, see LogLikelihood; the V x K word-topic 
+	 * cells are evaluated on the first call only, after which the samplers 
+	 * track their changes, see track()
+	 * */
+	@Override
+	public double loglik() {
+		if (likelihood == null) {
+			likelihood = new LogLikelihood();
+		}
+		
+		return likelihood.words(ntk, nk, beta) + likelihood.topics(nrk, alpha);
+	}
+	
+	/*
+	 * add the changes of the word-topic cells that a sweep has collected by 
+	 * LogLikelihood.moved(), or that a merge has returned, to the tracked 
+	 * log-likelihood
+	 * */
+	private void track(final double cells) {
+		if (likelihood != null) {
+			likelihood.add(cells);
+		}
+	}
+	
 	public coATParameter getParameter() {
 		return this.param;
 	}
@@ -69,127 +226,571 @@ public class coATEstimator implements IEstimator {
 	public void init() {
 		final int M = corpus.getNumDocs();
 		final int K = param.getNTopics();
-		final int[][] w = corpus.getDocWords();
 		final int[][] coauthor = corpus.getDocCoauthor();
-
-		// allocate
-		nrk = new int[R][K];
+		
+		allocate();
+		// initialize
+		for (int m = 0; m < M; m++) {
+			if (coauthor[m].length == 0) {
+				continue;
+			}
+			
+			for (int n = 0; n < words.length(m); n++) {
+				z.set(m, n, rand.nextInt(K));
+				xy.set(m, n, coauthor[m][rand.nextInt(coauthor[m].length)]);
+			}
+		}
+		count();
+		iteration = 0;
+		model = null;
+	}
+	
+	private void allocate() {
+		final int K = param.getNTopics();
+		
+		nrk = new SparseCountMatrix(R, K);
 		nr = new int[R];
-		nkt = new int[K][V];
+		ntk = new CountMatrix(V, K);
 		nk = new int[K];
-		z = new int[M][];
-		xy = new int[M][];
-		// initialize
+		z = new PackedRaggedArray(words, K - 1);
+		xy = new PackedRaggedArray(words, Math.max(R - 1, 0));
+		likelihood = null; // it tracks the former counts
+	}
+	
+	/*
+	 * fill the count matrices from the assignments z and xy
+	 * */
+	private void count() {
+		final int M = corpus.getNumDocs();
+		final int[][] coauthor = corpus.getDocCoauthor();
+		
 		for (int m = 0; m < M; m++) {
 			if (coauthor[m].length == 0) {
 				continue;
 			}
 			
-			this.z[m] = new int[w[m].length];
-			this.xy[m] = new int[w[m].length];
-			for (int n = 0; n < w[m].length; n++) {
-				final int t = w[m][n];
-				final int k = rand.nextInt(K);
-				final int idx = rand.nextInt(coauthor[m].length);
-				final int r = coauthor[m][idx];
-				
-				z[m][n] = k;
-				xy[m][n] = r;
-				nrk[r][k]++;
+			for (int n = 0; n < words.length(m); n++) {
+				final int k = z.get(m, n);
+				final int r = xy.get(m, n);
+				nrk.inc(r, k);
 				nr[r]++;
-				nkt[k][t]++;
+				ntk.inc(words.get(m, n), k);
 				nk[k]++;
 			}
 		}
 	}
+	
+	/*
+	 * called after every Gibbs iteration, optimizes alpha and beta every 
+	 * param.getOptimize() iterations after param.getOptBurnin(), writes a 
+	 * checkpoint every param.getCheckpoint() iterations and prints the 
+	 * log-likelihood every param.getLikelihood() iterations
+	 * 
+	 * @return true once the relative change of the log-likelihood has stayed 
+	 * below param.getConvergence() for CONVERGED evaluations in a row, i.e., 
+	 * the sampler should stop; a single small or negative change is noise
+	 * */
+	private boolean sweepDone() {
+		iteration++;
+		model = null;
+		if (param.getOptimize() > 0 && iteration >= param.getOptBurnin()
+				&& iteration % param.getOptimize() == 0) {
+			optimizeHyperparameters();
+		}
+		if (param.getCheckpoint() > 0 && iteration % param.getCheckpoint() == 0) {
+			checkpoint(new File(filebase + ".coAT.checkpoint"));
+		}
+		
+		final int every = param.getLikelihood();
+		if (every <= 0 || iteration % every != 0) {
+			return false;
+		}
+		
+		final double loglik = loglik();
+		System.out.println("iter: " + iteration + ", loglik: " + loglik);
+		final double improvement = (loglik - lastLoglik) / Math.abs(lastLoglik);
+		lastLoglik = loglik;
+		settled = (Math.abs(improvement) < param.getConvergence()) ? settled + 1 : 0;
+		
+		return param.getConvergence() > 0 && settled >= CONVERGED;
+	}
+	
+	/*
+	 * Fixed-point updates of the asymmetric alpha of the co-author pairs and 
+	 * the symmetric beta from histograms of the counts, see 
+	 * LDAEstimator.optimizeHyperparameters(). 
+	 * */
+	private void optimizeHyperparameters() {
+		DirichletEstimation.estimateAlphaHist(nrk.columnHistograms(), nrk.rowSumHistogram(), alpha,
+				(pool != null)? param.getNThreads(): 1, pool);
+		beta = DirichletEstimation.estimateAlphaHist(ntk.histogram(), CountMatrix.histogram(nk), V, beta);
+		Kalpha = Vectors.sum(alpha);
+		Vbeta = V * beta;
+		System.out.println("iter: " + iteration + ", mean alpha: " + Kalpha / alpha.length + ", beta: " + beta);
+	}
+	
+	/*
+	 * The checkpoint holds a header of the model name, V, M, R and the number 
+	 * of topics, then the number of iterations, the states of the random 
+	 * number generator and of the streams of the parallel workers, alpha and 
+	 * beta, and the packed assignments z and xy; the count matrices are rebuilt 
+	 * from the assignments on resume. See LDAEstimator.checkpoint(). 
+	 * */
+	@Override
+	public void checkpoint(final File f) {
+		final File tmp = new File(f.getPath() + ".tmp");
+		DataOutputStream os = null;
+		try {
+			final FileOutputStream fos = new FileOutputStream(tmp);
+			os = new DataOutputStream(new BufferedOutputStream(fos, 1 << 16));
+			os.writeUTF("coAT");
+			os.writeInt(V);
+			os.writeInt(corpus.getNumDocs());
+			os.writeInt(R);
+			os.writeInt(param.getNTopics());
+			os.writeInt(iteration);
+			rand.writeState(os);
+			os.writeInt((rands != null)? rands.length: 0);
+			for (int p = 0; rands != null && p < rands.length; p++) {
+				rands[p].writeState(os);
+			}
+			for (int k = 0; k < alpha.length; k++) {
+				os.writeDouble(alpha[k]);
+			}
+			os.writeDouble(beta);
+			z.write(os);
+			xy.write(os);
+			os.flush();
+			fos.getFD().sync();
+			os.close();
+			os = null;
+			
+			ArrayIo.replaceFile(tmp, f);
+		} catch (IOException e) {
+			System.err.println("Error while writing checkpoint:" + e.getMessage());
+			e.printStackTrace();
+		} finally {
+			if (os != null) {
+				try {
+					os.close();
+				} catch (IOException e) {
+					// the checkpoint has failed already
+				}
+			}
+			tmp.delete();
+		}
+	}
+	
+	/*
+	 * @return true if the header of the checkpoint read from is belongs to 
+	 * a coAT model of this corpus with the same number of topics
+	 * */
+	private boolean checkHeader(final DataInputStream is) throws IOException {
+		return "coAT".equals(is.readUTF()) && is.readInt() == V 
+				&& is.readInt() == corpus.getNumDocs() && is.readInt() == R 
+				&& is.readInt() == param.getNTopics();
+	}
+	
+	@Override
+	public boolean canResume(final File f) {
+		if (!f.exists()) {
+			return false;
+		}
+		
+		DataInputStream is = null;
+		try {
+			is = ArrayIo.openInputStream(f.getPath());
+			return checkHeader(is);
+		} catch (IOException e) {
+			return false;
+		} finally {
+			if (is != null) {
+				try {
+					ArrayIo.closeInputStream(is);
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
+		}
+	}
+	
+	@Override
+	public int resume(final File f) {
+		try {
+			final DataInputStream is = ArrayIo.openInputStream(f.getPath());
+			if (!checkHeader(is)) {
+				throw new IOException(f + " is not a checkpoint of a coAT model of this corpus with " 
+						+ param.getNTopics() + " topics.");
+			}
+			iteration = is.readInt();
+			rand.readState(is);
+			rands = null;
+			final int P = is.readInt();
+			if (P > 0) {
+				rands = new XoshiroRandom[P];
+				for (int p = 0; p < P; p++) {
+					rands[p] = new XoshiroRandom(0);
+					rands[p].readState(is);
+				}
+			}
+			for (int k = 0; k < alpha.length; k++) {
+				alpha[k] = is.readDouble();
+			}
+			beta = is.readDouble();
+			Kalpha = Vectors.sum(alpha);
+			Vbeta = V * beta;
+			allocate();
+			z.read(is);
+			xy.read(is);
+			ArrayIo.closeInputStream(is);
+		} catch (IOException e) {
+			System.err.println("Error while reading checkpoint:" + e.getMessage());
+			e.printStackTrace();
+			System.exit(-1);
+		}
+		count();
+		model = null;
+		
+		return iteration;
+	}
 
 	@Override
 	public void estimate(final int niter) {
+		if (param.getNThreads() > 1) {
+			pool = Executors.newFixedThreadPool(param.getNThreads()); 
+			try {
+				estimateParallel(niter); 
+			} finally {
+				pool.shutdown(); 
+				pool = null; 
+			}
+		} else {
+			estimateGibbs(niter); 
+		}
+	}
+	
+	private void estimateGibbs(final int niter) {
 		final int M = corpus.getNumDocs();
-		final int K = param.getNTopics();
-		final int[][] w = corpus.getDocWords();
-		final int[][] coauthor = corpus.getDocCoauthor();
-		final double alpha = param.getAlpha();
-		final double beta = param.getBeta();
 
-		double[] pp = new double[K];
+		final double[] pp = scratch();
+		final int[] nrd = new int[param.getNTopics()];
 		for (int iter = 0; iter < niter; iter++) {
 			System.out.println("iter: " + iter);
+			double cells = 0;
 			for (int m = 0; m < M; m++) {
-				if (coauthor[m].length == 0) {
-					continue;
+				cells += sample(m, nrk, nr, ntk, nk, pp, nrd, rand);
+			} // m
+			track(cells);
+			if (sweepDone()) {
+				break;
+			}
+		} // iter
+	}
+	
+	/*
+	 * a scratch buffer of the sampler of param.getSampler() that is large 
+	 * enough for every document
+	 * */
+	private double[] scratch() {
+		final int K = param.getNTopics();
+		
+		if (coATParameter.SAMPLER_LEGACY.equals(param.getSampler())) {
+			return new double[K];
+		}
+		return new double[Math.max(maxPairs, K) + maxPairs];
+	}
+	
+	/*
+	 * one sweep over document m with the sampler of param.getSampler(), pp is 
+	 * a scratch buffer from scratch() and nrd an all-zero buffer of size K, 
+	 * which is left all-zero
+	 * 
+	 * @return the change of the tracked log-likelihood, see track()
+	 * */
+	private double sample(final int m, final SparseCountMatrix nrk, final int[] nr, 
+			final CountMatrix ntk, final int[] nk, final double[] pp, final int[] nrd, 
+			final XoshiroRandom rand) {
+		if (coATParameter.SAMPLER_LEGACY.equals(param.getSampler())) {
+			return sampleGibbs(m, nrk, nr, ntk, nk, pp, nrd, rand);
+		}
+		return sampleBlocked(m, nrk, nr, ntk, nk, pp, nrd, rand);
+	}
+	
+	/*
+	 * Blocked Gibbs sweep over document m in two conditional draws per token: 
+	 * the co-author pair given the current topic k, 
+	 *     p(xy = r | z = k) ~ (nrk + alpha) / (nr + Kalpha), 
+	 * over the pairs of the document, then the topic given the new pair r, 
+	 *     p(z = k | xy = r) ~ (nrk + alpha) * (nkt + beta) / (nk + Vbeta), 
+	 * in which nr + Kalpha is constant. The prefix sums of either draw take 
+	 * pp[0, max(maxPairs, K)), the normalizers 1 / (nr + Kalpha) of the pairs 
+	 * of the document are cached behind them and updated with nr, see 
+	 * ATEstimator.sampleBlocked(). The topic draw reads the row of rr from 
+	 * nrd[0, K), into which it is expanded before and cleared again after 
+	 * the draw, touching only its non-zero entries. 
+	 * */
+	private double sampleBlocked(final int m, final SparseCountMatrix nrk, final int[] nr, 
+			final CountMatrix ntk, final int[] nk, final double[] pp, final int[] nrd, 
+			final XoshiroRandom rand) {
+		final int K = param.getNTopics();
+		final int[] coauthor = corpus.getDocCoauthor(m);
+		final int off = Math.max(maxPairs, K);
+		
+		if (coauthor.length == 0) {
+			return 0;
+		}
+		double cells = 0;
+		
+		for (int ii = 0; ii < coauthor.length; ii++) {
+			pp[off + ii] = 1.0 / (nr[coauthor[ii]] + Kalpha);
+		}
+		
+		for (int n = 0; n < words.length(m); n++) {
+			final int k = z.get(m, n);
+			final int t = words.get(m, n);
+			final int r = xy.get(m, n);
+			int pos = 0;
+			while (coauthor[pos] != r) {
+				pos++;
+			}
+			
+			// decrement
+			nrk.dec(r, k);
+			nr[r]--;
+			ntk.dec(t, k);
+			nk[k]--;
+			pp[off + pos] = 1.0 / (nr[r] + Kalpha);
+			
+			// co-author pair given topic k
+			int ii = 0;
+			if (coauthor.length > 1) {
+				double rsum = 0;
+				for (int jj = 0; jj < coauthor.length; jj++) {
+					rsum += (nrk.get(coauthor[jj], k) + alpha[k]) * pp[off + jj];
+					pp[jj] = rsum;
 				}
+				ii = Sampling.sample(pp, coauthor.length, rand);
+			}
+			final int rr = coauthor[ii];
+			
+			// topic given pair rr over its dense counts and the contiguous 
+			// stripe of word t
+			nrk.addRowTo(rr, nrd, 0);
+			final int[] wcounts = ntk.getData(t);
+			final int wt = ntk.offset(t);
+			double psum = 0;
+			for (int kk = 0; kk < K; kk++) {
+				psum += (nrd[kk] + alpha[kk]) * (wcounts[wt + kk] + beta) / (nk[kk] + Vbeta);
+				pp[kk] = psum;
+			}
+			final int kk = Sampling.sample(pp, K, rand);
+			nrk.clearRowIn(rr, nrd, 0);
+			
+			// reassign and increment
+			z.set(m, n, kk);
+			xy.set(m, n, rr);
+			nrk.inc(rr, kk);
+			nr[rr]++;
+			ntk.inc(t, kk);
+			nk[kk]++;
+			pp[off + ii] = 1.0 / (nr[rr] + Kalpha);
+			if (kk != k && likelihood != null) {
+				cells += likelihood.moved(ntk.get(t, k), ntk.get(t, kk));
+			}
+		} // n
+		
+		return cells;
+	}
+	
+	/*
+	 * The former Gibbs sweep over document m, kept as sampler=legacy to 
+	 * reproduce earlier results: it weighs the co-author pairs by the counts 
+	 * of the pairs with ids 0, 1, ... instead of their own, and draws the topic 
+	 * for the old pair r instead of the new one; pp is a scratch buffer of 
+	 * size K, and the row of r is copied into nrd[0, K), which is cleared 
+	 * at the end
+	 * */
+	private double sampleGibbs(final int m, final SparseCountMatrix nrk, final int[] nr, 
+			final CountMatrix ntk, final int[] nk, final double[] pp, final int[] nrd, 
+			final XoshiroRandom rand) {
+		final int[] coauthor = corpus.getDocCoauthor(m);
+		
+		if (coauthor.length == 0) {
+			return 0;
+		}
+		double cells = 0;
 
-				double[] pr = new double[coauthor[m].length];
-
-				for (int n = 0; n < w[m].length; n++) {
-					// decrement
-					final int k = z[m][n];
-					final int t = w[m][n];
-					final int r = xy[m][n];
-					nrk[r][k]--;
-					nr[r]--;
-					nkt[k][t]--;
-					nk[k]--;
-
-					// compute weights for co-authors
-					double rsum = 0;
-					for (int rr = 0; rr < pr.length; rr++) {
-						pr[rr] = (nrk[rr][k] + alpha) / (nr[rr] + Kalpha);
-						rsum += pr[rr];
-					}
-					// sample for co-authors
-					double u = this.rand.nextDouble() * rsum;
-					rsum = 0;
-					int rr = 0;
-					for (rr = 0; rr < pr.length; rr++) {
-						rsum += pr[rr];
-						if (u <= rsum) {
-							break;
-						}
-					}
-					rr = coauthor[m][rr];
+		double[] pr = new double[coauthor.length];
 
-					// compute weights for topics
-					double psum = 0;
-					for (int kk = 0; kk < pp.length; kk++) {
-						pp[kk] = (nrk[r][kk] + alpha) / (nr[r] + Kalpha) * (nkt[kk][t] + beta) / (nk[kk] + Vbeta);
-						psum += pp[kk];
-					}
-					// sample for topics
-					u = this.rand.nextDouble() * psum;
-					psum = 0;
-					int kk = 0;
-					for (kk = 0; kk < pp.length; kk++) {
-						psum += pp[kk];
-						if (u <= psum) {
-							break;
-						}
-					}
+		for (int n = 0; n < words.length(m); n++) {
+			// decrement
+			final int k = z.get(m, n);
+			final int t = words.get(m, n);
+			final int r = xy.get(m, n);
+			nrk.dec(r, k);
+			nr[r]--;
+			ntk.dec(t, k);
+			nk[k]--;
 
-					// reassign and increment
-					z[m][n] = kk;
-					xy[m][n] = rr;
-					nrk[rr][kk]++;
-					nr[rr]++;
-					nkt[kk][t]++;
-					nk[kk]++;
-				} // n
-			} // m
+			// compute weights for co-authors
+			double rsum = 0;
+			for (int rr = 0; rr < pr.length; rr++) {
+				rsum += (nrk.get(rr, k) + alpha[k]) / (nr[rr] + Kalpha);
+				pr[rr] = rsum;
+			}
+			// sample for co-authors
+			final int rr = coauthor[Sampling.sample(pr, pr.length, rand)];
+
+			// compute weights for topics over the dense counts of co-author r 
+			// and the contiguous stripe of word t
+			nrk.getRow(r, nrd); 
+			final int[] wcounts = ntk.getData(t); 
+			final int wt = ntk.offset(t); 
+			double psum = 0;
+			for (int kk = 0; kk < pp.length; kk++) {
+				psum += (nrd[kk] + alpha[kk]) / (nr[r] + Kalpha) * (wcounts[wt + kk] + beta) / (nk[kk] + Vbeta);
+				pp[kk] = psum;
+			}
+			// sample for topics
+			final int kk = Sampling.sample(pp, pp.length, rand);
+
+			// reassign and increment
+			z.set(m, n, kk);
+			xy.set(m, n, rr);
+			nrk.inc(rr, kk);
+			nr[rr]++;
+			ntk.inc(t, kk);
+			nk[kk]++;
+			if (kk != k && likelihood != null) {
+				cells += likelihood.moved(ntk.get(t, k), ntk.get(t, kk));
+			}
+		} // n
+		Arrays.fill(nrd, 0, pp.length, 0);
+		
+		return cells;
+	}
+	
+	/*
+	 * the random streams of P parallel workers, split off rand on first use and 
+	 * kept across calls of estimate(), checkpoint() and resume(), see 
+	 * LDAEstimator.streams()
+	 * */
+	private XoshiroRandom[] streams(final int P) {
+		if (rands == null || rands.length != P) {
+			rands = rand.split(P);
+		}
+		
+		return rands;
+	}
+	
+	/*
+	 * Approximate distributed sampling in the manner of AD-LDA. The documents 
+	 * are split into nthreads partitions, each swept by its own thread against 
+	 * private copies of nrk, nr, ntk and nk, which are merged back into the 
+	 * global counts at the end of every iteration. The partitions are chosen by 
+	 * DisjointDocLabels over the co-author pairs, the rows of nrk, such that few 
+	 * pairs have documents in more than one of them. A thread copies only the 
+	 * rows of the pairs of its documents, and only the rows of the shared pairs 
+	 * are merged from the changes of several copies. 
+	 * 
+	 * Reference: David Newman, Arthur Asuncion, Padhraic Smyth, and Max 
+	 * Welling, 2009. Distributed Algorithms for Topic Models. Journal of 
+	 * Machine Learning Research, Vol. 10, pp. 1801-1828. 
+	 * */
+	private void estimateParallel(final int niter) {
+		final int K = param.getNTopics(); 
+		final int P = param.getNThreads(); 
+		
+		final int M = corpus.getNumDocs(); 
+		final int[][] coauthor = corpus.getDocCoauthor(); 
+		final int[] lengths = new int[M]; 
+		for (int m = 0; m < M; m++) {
+			lengths[m] = coauthor[m].length == 0 ? 0 : words.length(m); 
+		}
+		final DisjointDocLabels partition = new DisjointDocLabels(coauthor, R, lengths, P); 
+		final int[][] docs = partition.getDisjointDocuments(); 
+		final int[][] pairs = partition.getLabels(); 
+		System.out.println("co-author pairs shared by partitions: " + partition.getNumShared() + " of " + R); 
+		
+		final SparseCountMatrix[] nrkp = new SparseCountMatrix[P]; 
+		final int[][] nrp = new int[P][R]; 
+		final CountMatrix[] ntkp = new CountMatrix[P]; 
+		final int[][] nkp = new int[P][K]; 
+		final double[][] pp = new double[P][]; 
+		final int[][] nrd = new int[P][K]; 
+		final XoshiroRandom[] rands = streams(P); 
+		final double[] cells = new double[P]; 
+		for (int p = 0; p < P; p++) {
+			nrkp[p] = new SparseCountMatrix(R, K); 
+			ntkp[p] = new CountMatrix(V, K); 
+			pp[p] = scratch(); 
+		}
+		
+		final ParallelFor sweep = new ParallelFor(P, pool) {
+			@Override
+			public void process(final int p, final int thread) {
+				nrkp[p].copyRows(nrk, pairs[p]); 
+				System.arraycopy(nr, 0, nrp[p], 0, R); 
+				ntkp[p].copyFrom(ntk); 
+				System.arraycopy(nk, 0, nkp[p], 0, K); 
+				
+				for (int i = 0; i < docs[p].length; i++) {
+					sample(docs[p][i], nrkp[p], nrp[p], ntkp[p], nkp[p], pp[p], nrd[p], rands[p]); 
+				}
+			}
+		}; 
+		// blocks [0, P) merge the topic-word counts, blocks [P, 2P) the co-author-topic counts; 
+		// the changes of the copies are lost on the tracked log-likelihood, which follows the merge
+		final ParallelFor merge = new ParallelFor(P, pool) {
+			@Override
+			public void process(final int block, final int thread) {
+				if (block < P) {
+					cells[block] = ntk.merge(ntkp, (int) ((long) V * block / P), (int) ((long) V * (block + 1) / P), 
+							(likelihood != null)? likelihood.getTrackedCache(): null); 
+				} else {
+					final int b = block - P; 
+					nrk.merge(nrkp, partition.getOffsets(), partition.getParts(), 
+							(int) ((long) R * b / P), (int) ((long) R * (b + 1) / P)); 
+				}
+			}
+		}; 
+		
+		for (int iter = 0; iter < niter; iter++) {
+			System.out.println("iter: " + iter);
+			sweep.loop(P); 
+			merge.loop(2 * P); 
+			mergeSums(nk, nkp); 
+			mergeSums(nr, nrp); 
+			track(Vectors.sum(cells)); 
+			if (sweepDone()) {
+				break;
+			}
 		} // iter
 	}
 	
+	/*
+	 * add the changes of the private copies to the global row sums
+	 * */
+	private static void mergeSums(final int[] sums, final int[][] sumCopies) {
+		for (int i = 0; i < sums.length; i++) {
+			int sum = sums[i]; 
+			for (int p = 0; p < sumCopies.length; p++) {
+				sum += sumCopies[p][i] - sums[i]; 
+			}
+			sums[i] = sum; 
+		}
+	}
+	
 	/*
 	 * @flag = true: log
 	 * */
 	public double[][] getVartheta(final boolean flag) {
 		final int K = param.getNTopics();
-		final double alpha = param.getAlpha();
 
 		double[][] vartheta = new double[R][K];
 		for (int i = 0; i < R; i++) {
 			for (int k = 0; k < K; k++) {
-				vartheta[i][k] = (nrk[i][k] + alpha) / (nr[i] + Kalpha);
+				vartheta[i][k] = (nrk.get(i, k) + alpha[k]) / (nr[i] + Kalpha);
 				
 				if (flag) {
 					vartheta[i][k] = Math.log(vartheta[i][k]); 
@@ -209,11 +810,10 @@ public class coATEstimator implements IEstimator {
 	 * */
 	public double[] getVartheta(final int i, final boolean flag) {
 		final int K = param.getNTopics();
-		final double alpha = param.getAlpha();
 
 		double[] vartheta = new double[K];
 		for (int k = 0; k < K; k++) {
-			vartheta[k] = (nrk[i][k] + alpha) / (nr[i] + Kalpha);
+			vartheta[k] = (nrk.get(i, k) + alpha[k]) / (nr[i] + Kalpha);
 			
 			if (flag) {
 				vartheta[k] = Math.log(vartheta[k]); 
@@ -231,9 +831,8 @@ public class coATEstimator implements IEstimator {
 	 * @flag = true: log
 	 * */
 	public double getVartheta(final int i, final int k, final boolean flag) {
-		final double alpha = param.getAlpha();
 
-		double vartheta = (nrk[i][k] + alpha) / (nr[i] + Kalpha); 
+		double vartheta = (nrk.get(i, k) + alpha[k]) / (nr[i] + Kalpha); 
 		if (flag) {
 			vartheta = Math.log(vartheta); 
 			if (Double.isNaN(vartheta)) {
@@ -250,12 +849,11 @@ public class coATEstimator implements IEstimator {
 	 * */
 	public double[][] getVarphi(final boolean flag) {
 		final int K = param.getNTopics(); 
-		final double beta = param.getBeta(); 
 		
 		double[][] varphi = new double[K][V]; 
-		for (int k = 0; k < K; k++) {
-			for (int v = 0; v < V; v++) {
-				varphi[k][v] = (nkt[k][v] + beta) / (nk[k] + Vbeta); 
+		for (int v = 0; v < V; v++) {
+			for (int k = 0; k < K; k++) {
+				varphi[k][v] = (ntk.get(v, k) + beta) / (nk[k] + Vbeta); 
 				
 				if (flag) {
 					varphi[k][v] = Math.log(varphi[k][v]); 
@@ -274,9 +872,8 @@ public class coATEstimator implements IEstimator {
 	 * @flag = true: log
 	 * */
 	public double getVarphi(final int k, final int v, final boolean flag) {
-		final double beta = param.getBeta(); 
 		
-		double varphi = (nkt[k][v] + beta) / (nk[k] + Vbeta); 
+		double varphi = (ntk.get(v, k) + beta) / (nk[k] + Vbeta); 
 		if (flag) {
 			varphi = Math.log(varphi); 
 			if (Double.isNaN(varphi)) {
@@ -305,7 +902,7 @@ public class coATEstimator implements IEstimator {
 		for (int k = 0; k < K; k++) {
 			IntegerDoublePair[] unigrams = new IntegerDoublePair[V];
 			for (int v = 0; v < V; v++) {
-				unigrams[v] = new IntegerDoublePair(v, (double)nkt[k][v]); 
+				unigrams[v] = new IntegerDoublePair(v, (double)ntk.get(v, k)); 
 			}
 			Arrays.sort(unigrams); 
 			
@@ -335,37 +932,51 @@ public class coATEstimator implements IEstimator {
 		for (int k = 0; k < K; k++) {
 			IntegerDoublePair[] coauthors = new IntegerDoublePair[R];
 			for (int i = 0; i < R; i++) {
-				coauthors[i] = new IntegerDoublePair(i, (double)nrk[i][k] / nr[i]); 
+				coauthors[i] = new IntegerDoublePair(i, (double)nrk.get(i, k) / nr[i]); 
 			}
 			Arrays.sort(coauthors); 
 			
 			pw.write("Topic " + k + "th:\n"); 
 			for (int i = 0; i < Math.min(R, param.getTcoauthors()); i++) {
-				final Relation<Integer> r = corpus.getCoauthor(coauthors[i].getFirst()); 
-				pw.write("\t(" + cr.getAuthor(r.getFirst()) + "," + cr.getAuthor(r.getSecond()) + ")\t" + coauthors[i].getSecond() + "\n");
+				final int r = coauthors[i].getFirst(); 
+				pw.write("\t(" + cr.getAuthor(corpus.getCoauthorFirst(r)) + "," + cr.getAuthor(corpus.getCoauthorSecond(r)) + ")\t" + coauthors[i].getSecond() + "\n");
 			}
 		}
 	}
 	
 	public void printVartheta(final File f) {
 		try {
-			PrintWriter writer = new PrintWriter(new FileWriter(f));
-			printVartheta(writer);
-			writer.close();
+			final ModelWriter writer = ModelWriter.open(f);
+			try {
+				printVartheta(writer);
+			} finally {
+				writer.close();
+			}
 		} catch (IOException e) {
-			e.printStackTrace(); 
+			e.printStackTrace();
 		}
 	}
 
 	public void printVartheta(final PrintWriter pw) {
+		try {
+			final ModelWriter writer = new ModelWriter(pw);
+			printVartheta(writer);
+			writer.flush();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	public void printVartheta(final ModelWriter writer) throws IOException {
 		final int K = param.getNTopics();
-		final double alpha = param.getAlpha();
+		final int[] row = new int[K];
 		
+		writer.beginTriplets(R, K);
 		for (int i = 0; i < R; i++) {
+			nrk.getRow(i, row);
 			for (int k = 0; k < K; k++) {
-				if (nrk[i][k] != 0) {
-					final double vartheta = (nrk[i][k] + alpha) / (nr[i] + Kalpha);
-					pw.println(i + " " + k + " " + nrk[i][k] + " " + nr[i] + " " + vartheta); 
+				if (row[k] != 0) {
+					writer.triplet(i, k, row[k], nr[i], (row[k] + alpha[k]) / (nr[i] + Kalpha));
 				}
 			}
 		}
@@ -373,23 +984,36 @@ public class coATEstimator implements IEstimator {
 	
 	public void printVarphi(final File f) {
 		try {
-			PrintWriter writer = new PrintWriter(new FileWriter(f));
-			printVarphi(writer);
-			writer.close();
+			final ModelWriter writer = ModelWriter.open(f);
+			try {
+				printVarphi(writer);
+			} finally {
+				writer.close();
+			}
 		} catch (IOException e) {
-			e.printStackTrace(); 
+			e.printStackTrace();
 		}
 	}
-	
+
 	public void printVarphi(final PrintWriter pw) {
-		final int K = param.getNTopics(); 
-		final double beta = param.getBeta(); 
+		try {
+			final ModelWriter writer = new ModelWriter(pw);
+			printVarphi(writer);
+			writer.flush();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	public void printVarphi(final ModelWriter writer) throws IOException {
+		final int K = param.getNTopics();
 		
+		writer.beginTriplets(K, V);
 		for (int k = 0; k < K; k++) {
 			for (int v = 0; v < V; v++) {
-				if (nkt[k][v] != 0) {
-					final double varphi = (nkt[k][v] + beta) / (nk[k] + Vbeta); 
-					pw.println(k + " " + v + " " + nkt[k][v] + " " + nk[k] + " " + varphi); 
+				final int count = ntk.get(v, k);
+				if (count != 0) {
+					writer.triplet(k, v, count, nk[k], (count + beta) / (nk[k] + Vbeta));
 				}
 			}
 		}
@@ -398,9 +1022,12 @@ public class coATEstimator implements IEstimator {
 	@Override
 	public void printAssign(final File f) {
 		try {
-			PrintWriter writer = new PrintWriter(new FileWriter(f));
-			printAssign(writer);
-			writer.close();
+			final ModelWriter writer = ModelWriter.open(f);
+			try {
+				printAssign(writer);
+			} finally {
+				writer.close();
+			}
 		} catch (IOException e) {
 			e.printStackTrace();
 		}
@@ -408,20 +1035,32 @@ public class coATEstimator implements IEstimator {
 
 	@Override
 	public void printAssign(final PrintWriter pw) {
-		final int M = corpus.getNumDocs();
+		try {
+			final ModelWriter writer = new ModelWriter(pw);
+			printAssign(writer);
+			writer.flush();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
 
+	public void printAssign(final ModelWriter writer) throws IOException {
+		final int M = corpus.getNumDocs();
+		
+		writer.beginAssign(M, 4);
 		for (int m = 0; m < M; m++) {
-			final int[] coauthor = corpus.getDocCoauthor(m); 
-			if (coauthor.length == 0) {
-				pw.println();
-				continue; 
+			if (corpus.getDocCoauthor(m).length == 0) {
+				writer.beginDoc(0);
+				writer.endDoc();
+				continue;
 			}
 			
-			final int[] w = corpus.getDocWords(m);
-			for (int n = 0; n < w.length; n++) {
-				pw.print(w[n] + ":" + z[m][n] + ":" + corpus.getCoauthor(xy[m][n]) + " ");
+			writer.beginDoc(words.length(m));
+			for (int n = 0; n < words.length(m); n++) {
+				final int r = xy.get(m, n);
+				writer.token(words.get(m, n), z.get(m, n), corpus.getCoauthorFirst(r), corpus.getCoauthorSecond(r));
 			}
-			pw.println();
+			writer.endDoc();
 		}
 	}
 
@@ -1,7 +1,6 @@
 package cn.edu.bjut.inferencers;
 
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.io.PrintWriter;
 
@@ -9,7 +8,10 @@ import cn.edu.bjut.corpus.ILabelCorpus;
 import cn.edu.bjut.corpus.LabelCorpus;
 import cn.edu.bjut.estimators.ATEstimator;
 import cn.edu.bjut.parameters.ATParameter;
-import cn.edu.bjut.utils.CokusRandom;
+import cn.edu.bjut.utils.ModelWriter;
+import cn.edu.bjut.utils.ParallelFor;
+import cn.edu.bjut.utils.Sampling;
+import cn.edu.bjut.utils.XoshiroRandom;
 
 /*
  * Gibbs sampling algorithm for Author-Topic (AT) model. 
@@ -30,19 +32,28 @@ import cn.edu.bjut.utils.CokusRandom;
 public class ATInferencer implements IInferencer, IPerplexity {
 	private LabelCorpus corpus;
 	private ATParameter param;
-	private ATEstimator estimator;
+	private TrainedModel model;
 
-	private CokusRandom rand;
+	private long seed;
+	private XoshiroRandom[] rands; // size: M, one random stream per document
 
 	private int[][] z;
 	private int[][] x; 
 
 	public ATInferencer(final String filebase, final long seed, final ATEstimator estimator) {
-		this.estimator = estimator;
-		this.param = estimator.getParameter();
+		this(filebase, seed, estimator.getTrainedModel(), estimator.getParameter());
+	}
+
+	/*
+	 * infer with a frozen trained model, which may be shared with other 
+	 * inferencers
+	 * */
+	public ATInferencer(final String filebase, final long seed, final TrainedModel model, final ATParameter param) {
+		this.model = model;
+		this.param = param;
 		this.corpus = new LabelCorpus(filebase);
 
-		this.rand = new CokusRandom(seed);
+		this.seed = seed;
 	}
 
 	@Override
@@ -55,9 +66,11 @@ public class ATInferencer implements IInferencer, IPerplexity {
 		// allocate
 		z = new int[M][];
 		x = new int[M][];
+		rands = new XoshiroRandom[M]; 
 		
 		// initialize
 		for (int m = 0; m < M; m++) {
+			final XoshiroRandom rand = rands[m] = XoshiroRandom.forStream(seed, m); 
 			z[m] = new int[w[m].length];
 			x[m] = new int[w[m].length];
 			for (int n = 0; n < w[m].length; n++) {
@@ -71,87 +84,118 @@ public class ATInferencer implements IInferencer, IPerplexity {
 		}
 	}
 
+	/*
+	 * Given the trained model, the chains of the documents are independent, so 
+	 * every document runs all niter iterations at once with its own random 
+	 * stream, and with nthreads > 1 the documents are spread over a pool of 
+	 * threads with their own scratch buffers. The result of a document depends 
+	 * on the seed and its index only, not on the number of threads. 
+	 * */
 	@Override
-	public void inference(int niter) {
+	public void inference(final int niter) {
 		final int M = corpus.getNumDocs(); 
 		final int K = param.getNTopics(); 
-		final int[][] w = corpus.getDocWords(); 
-		final int[][] a = corpus.getDocLabels(ILabelCorpus.LAUTHORS); 
+		final int P = param.getNThreads(); 
+		final int maxN = corpus.getLabelsMaxN(ILabelCorpus.LAUTHORS); 
 		
-		final double[][] varphi = estimator.getVarphi(false);
-		final double[][] vartheta = estimator.getVartheta(false); 
+		if (P <= 1) {
+			final double[] pp = new double[maxN * K]; 
+			for (int m = 0; m < M; m++) {
+				sampleDocument(m, niter, pp); 
+			}
+			return; 
+		}
+		
+		final double[][] pp = new double[P][maxN * K]; 
+		// not niter: inside ParallelFor, that name is its own loop bound 
+		final int sweeps = niter; 
+		final ParallelFor docs = new ParallelFor(P) {
+			@Override
+			public void process(final int m, final int thread) {
+				sampleDocument(m, sweeps, pp[thread]); 
+			}
+		}; 
+		docs.loopOnce(M); 
+	}
+	
+	/*
+	 * niter Gibbs iterations over document m; pp is a scratch buffer of at 
+	 * least |a_m| x K
+	 * */
+	private void sampleDocument(final int m, final int niter, final double[] pp) {
+		final int K = param.getNTopics(); 
+		final int[] w = corpus.getDocWords(m); 
+		final int[] a = corpus.getDocLabels(ILabelCorpus.LAUTHORS)[m]; 
+		final float[] phi = model.getPhi();
+		final float[] theta = model.getTheta(); 
+		final XoshiroRandom rand = rands[m]; 
 		
 		for (int iter = 0; iter < niter; iter++) {
-			System.out.println("iter: " + iter);
-			for (int m = 0; m < M; m++) {
-				double[] pp = new double[a[m].length * K]; 
+			for (int n = 0; n < w.length; n++) {
+				final int wt = model.offset(w[n]); 
 				
-				for (int n = 0; n < w[m].length; n++) {
-					final int t = w[m][n];
-					
-					// compute weights
-					double psum = 0;
-					for (int kk = 0; kk < K; kk++) {
-						for (int ii = 0; ii < a[m].length; ii++) {
-							final int idx = kk*a[m].length + ii; 
-							final int aid = a[m][ii]; 
-							pp[idx] = vartheta[aid][kk] * varphi[kk][t]; 
-							psum += pp[idx];
-						}
+				// compute weights
+				double psum = 0;
+				for (int kk = 0; kk < K; kk++) {
+					for (int ii = 0; ii < a.length; ii++) {
+						final int idx = kk*a.length + ii; 
+						psum += theta[a[ii] * K + kk] * phi[wt + kk];
+						pp[idx] = psum;
 					}
-					
-					// sample
-					final int idx = rand.nextDiscrete(pp, psum); 
-					
-					final int kk = idx / a[m].length; 
-					final int ii = a[m][idx % a[m].length]; 
-					
-					// reassign
-					z[m][n] = kk;
-					x[m][n] = ii; 
-				} // n
-			} // m
+				}
+				
+				// sample by binary search over the prefix sums
+				final int idx = Sampling.sample(pp, a.length * K, rand); 
+				
+				// reassign
+				z[m][n] = idx / a.length;
+				x[m][n] = a[idx % a.length]; 
+			} // n
 		} // iter
 	}
 
+	/*
+	 * documents in parallel with nthreads > 1, see PerplexityEvaluator; the 
+	 * topic mixture of a document is the average vartheta of its authors
+	 * */
 	@Override
 	public double ppx() {
-		final int M = corpus.getNumDocs();
 		final int K = param.getNTopics();
-		final int[][] a = corpus.getDocLabels(ILabelCorpus.LAUTHORS); 
-		
-		final double[][] varphi = estimator.getVarphi(false);
-		final double[][] vartheta = estimator.getVartheta(false); 
+		final int[][] a = corpus.getDocLabels(ILabelCorpus.LAUTHORS);
+		final float[] theta = model.getTheta(); 
 		
-		double loglik = 0;
-		int W = 0; 
-		for (int m = 0; m < M; m++) {
-			final int[] w = corpus.getDocWords(m); 
-			final int Nm = w.length; 
-
-			for (int n = 0; n < w.length; n++) {
-				double sum = 0;
+		final PerplexityEvaluator evaluator = new PerplexityEvaluator(model, param.getNThreads()) {
+			@Override
+			protected boolean mixture(final int m, final double[] mix) {
 				for (int k = 0; k < K; k++) {
-					for (int i = 0; i < a[m].length; i++) {
-						sum += varphi[k][w[n]] * vartheta[a[m][i]][k]; 
+					mix[k] = 0; 
+				}
+				for (int i = 0; i < a[m].length; i++) {
+					final int offset = a[m][i] * K; 
+					for (int k = 0; k < K; k++) {
+						mix[k] += theta[offset + k]; 
 					}
 				}
-				loglik += Math.log(sum);
+				for (int k = 0; k < K; k++) {
+					mix[k] /= a[m].length; 
+				}
+				return true; 
 			}
-			loglik -=  Nm * Math.log(a[m].length); 
-			
-			W += Nm; 
-		}
+		}; 
+		evaluator.evaluate(corpus); 
 		
-		return Math.exp(-loglik / W);
+		return evaluator.ppx();
 	}
 
 	@Override
 	public void printAssign(final File f) {
 		try {
-			PrintWriter writer = new PrintWriter(new FileWriter(f));
-			printAssign(writer);
-			writer.close();
+			final ModelWriter writer = ModelWriter.open(f);
+			try {
+				printAssign(writer);
+			} finally {
+				writer.close();
+			}
 		} catch (IOException e) {
 			e.printStackTrace();
 		}
@@ -159,15 +203,26 @@ public class ATInferencer implements IInferencer, IPerplexity {
 
 	@Override
 	public void printAssign(final PrintWriter pw) {
-		final int M = corpus.getNumDocs();
+		try {
+			final ModelWriter writer = new ModelWriter(pw);
+			printAssign(writer);
+			writer.flush();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
 
+	public void printAssign(final ModelWriter writer) throws IOException {
+		final int M = corpus.getNumDocs();
+		
+		writer.beginAssign(M, 3);
 		for (int m = 0; m < M; m++) {
 			final int[] w = corpus.getDocWords(m);
-
+			writer.beginDoc(w.length);
 			for (int n = 0; n < w.length; n++) {
-				pw.print(w[n] + ":" + z[m][n] + ":" + x[m][n] + " ");
+				writer.token(w[n], z[m][n], x[m][n]);
 			}
-			pw.println();
+			writer.endDoc();
 		}
 	}
 
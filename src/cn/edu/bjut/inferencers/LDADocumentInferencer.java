@@ -0,0 +1,307 @@
+package cn.edu.bjut.inferencers;
+
+import cn.edu.bjut.corpus.CorpusResolver;
+import cn.edu.bjut.estimators.LDAEstimator;
+import cn.edu.bjut.parameters.LDAParameter;
+import cn.edu.bjut.utils.AliasTable;
+import cn.edu.bjut.utils.LatencyHistogram;
+import cn.edu.bjut.utils.Sampling;
+import cn.edu.bjut.utils.XoshiroRandom;
+
+/*
+ * In-memory inference of the topic distribution vartheta of one document at a
+ * time, e.g., for tagging the documents of an online service as they arrive.
+ * Unlike LDAInferencer, no corpus file is involved: a document is given as an
+ * int[] of word ids or as raw tokens that are resolved by a CorpusResolver.
+ *
+ * One instance can serve any number of threads. Every thread gets its own
+ * scratch state (topic counts, assignments, weights and random stream) on
+ * first use, which grows only with the longest document seen, so inference
+ * allocates nothing in the steady state. The random stream is reseeded for
+ * every document, hence the same document always gets the same result.
+ *
+ * The Gibbs sampler runs at most queryiter iterations and stops early once
+ * the fraction of the topic counts changed by an iteration falls below
+ * querytol (see LDAParameter). With sampler=alias, a token is not drawn from
+ * its K weights but by mhsteps Metropolis-Hastings steps as in
+ * LDAEstimator.estimateAlias(), whose word proposals come from the alias
+ * tables of the TrainedModel in O(1). As the model is frozen, these tables
+ * are exact and never need a refresh. The latency of every call is recorded
+ * in a LatencyHistogram, e.g., getLatency().quantile(0.99) is the p99 in ns.
+ *
+ * Author: XU, Shuo (pzczxs@gmail.com)
+ * */
+public class LDADocumentInferencer {
+	private final TrainedModel model;
+	private final LDAParameter param;
+	private final long seed;
+
+	private final boolean mh; // sampler=alias
+	private final boolean symmetric; // alpha is symmetric
+	private final double[] asums; // size: K, prefix sums of alpha
+
+	private final LatencyHistogram latency;
+	private final ThreadLocal<Scratch> scratch;
+
+	/*
+	 * the per-thread state of the sampler
+	 * */
+	private final static class Scratch {
+		private final XoshiroRandom rand;
+		private final int[] nk; // size: K
+		private final int[] prev; // size: K, nk after the previous iteration
+		private final double[] pp; // size: K
+		private int[] words; // known words of the current document
+		private int[] z;
+
+		private Scratch(final int K, final long seed) {
+			this.rand = new XoshiroRandom(seed);
+			this.nk = new int[K];
+			this.prev = new int[K];
+			this.pp = new double[K];
+			this.words = new int[256];
+			this.z = new int[256];
+		}
+
+		private void ensureCapacity(final int N) {
+			if (words.length < N) {
+				final int capacity = Math.max(N, words.length << 1);
+				words = new int[capacity];
+				z = new int[capacity];
+			}
+		}
+	}
+
+	public LDADocumentInferencer(final long seed, final LDAEstimator estimator) {
+		this(seed, estimator.getTrainedModel(), estimator.getParameter());
+	}
+
+	public LDADocumentInferencer(final long seed, final TrainedModel model, final LDAParameter param) {
+		this.model = model;
+		this.param = param;
+		this.seed = seed;
+
+		final double[] alpha = model.getAlpha();
+		this.mh = LDAParameter.SAMPLER_ALIAS.equals(param.getSampler());
+		this.asums = new double[alpha.length];
+		boolean symmetric = true;
+		double sum = 0;
+		for (int k = 0; k < alpha.length; k++) {
+			symmetric &= (alpha[k] == alpha[0]);
+			sum += alpha[k];
+			asums[k] = sum;
+		}
+		this.symmetric = symmetric;
+
+		this.latency = new LatencyHistogram();
+		this.scratch = new ThreadLocal<Scratch>() {
+			@Override
+			protected Scratch initialValue() {
+				return new Scratch(model.getNTopics(), seed);
+			}
+		};
+	}
+
+	/*
+	 * @return vartheta of the document with the words w
+	 * */
+	public double[] infer(final int[] w) {
+		final double[] vartheta = new double[model.getNTopics()];
+		infer(w, w.length, vartheta);
+
+		return vartheta;
+	}
+
+	/*
+	 * infer vartheta (size: K) of the document with the words w[0..len); ids
+	 * outside the vocabulary of the model are ignored
+	 *
+	 * @return the number of Gibbs iterations run
+	 * */
+	public int infer(final int[] w, final int len, final double[] vartheta) {
+		final long start = System.nanoTime();
+		final int V = model.getNTerms();
+
+		final Scratch s = scratch.get();
+		s.ensureCapacity(len);
+		int N = 0;
+		for (int n = 0; n < len; n++) {
+			if (w[n] >= 0 && w[n] < V) {
+				s.words[N++] = w[n];
+			}
+		}
+
+		final int iters = sample(s, N, vartheta);
+		latency.record(System.nanoTime() - start);
+
+		return iters;
+	}
+
+	/*
+	 * infer vartheta (size: K) of the document with the raw tokens, which are
+	 * resolved into word ids by resolver; unknown tokens are ignored
+	 *
+	 * @return the number of Gibbs iterations run
+	 * */
+	public int infer(final String[] tokens, final CorpusResolver resolver, final double[] vartheta) {
+		final long start = System.nanoTime();
+		final int V = model.getNTerms();
+
+		final Scratch s = scratch.get();
+		s.ensureCapacity(tokens.length);
+		int N = 0;
+		for (int n = 0; n < tokens.length; n++) {
+			final int t = resolver.findTermId(tokens[n]);
+			if (t >= 0 && t < V) {
+				s.words[N++] = t;
+			}
+		}
+
+		final int iters = sample(s, N, vartheta);
+		latency.record(System.nanoTime() - start);
+
+		return iters;
+	}
+
+	private int sample(final Scratch s, final int N, final double[] vartheta) {
+		final int K = model.getNTopics();
+		final double[] alpha = model.getAlpha();
+		final int niter = param.getQueryIter();
+		final double tol = param.getQueryTol();
+		final float[] phi = model.getPhi();
+
+		final XoshiroRandom rand = s.rand;
+		final int[] words = s.words;
+		final int[] z = s.z;
+		final int[] nk = s.nk;
+		final int[] prev = s.prev;
+		final double[] pp = s.pp;
+
+		// initialize
+		rand.setSeed(seed);
+		for (int k = 0; k < K; k++) {
+			nk[k] = 0;
+		}
+		for (int n = 0; n < N; n++) {
+			final int k = rand.nextInt(K);
+			z[n] = k;
+			nk[k]++;
+		}
+
+		int iter = 0;
+		while (N > 0 && iter < niter) {
+			System.arraycopy(nk, 0, prev, 0, K);
+
+			for (int n = 0; n < N; n++) {
+				final int k = z[n];
+				final int wt = model.offset(words[n]);
+
+				// decrement
+				nk[k]--;
+
+				final int kk;
+				if (mh) {
+					kk = sampleMh(s, N, words[n], k);
+				} else {
+					// compute weights
+					double psum = 0;
+					for (int kt = 0; kt < K; kt++) {
+						psum += (nk[kt] + alpha[kt]) * phi[wt + kt];
+						pp[kt] = psum;
+					}
+
+					// sample by binary search over the prefix sums
+					kk = Sampling.sample(pp, K, rand);
+				}
+
+				// reassign and increment
+				z[n] = kk;
+				nk[kk]++;
+			} // n
+			iter++;
+
+			// early stop once the topic counts have settled
+			if (tol > 0) {
+				int changed = 0;
+				for (int k = 0; k < K; k++) {
+					changed += Math.abs(nk[k] - prev[k]);
+				}
+				if (changed < tol * 2 * N) {
+					break;
+				}
+			}
+		}
+
+		double norm = N;
+		for (int k = 0; k < K; k++) {
+			norm += alpha[k];
+		}
+		for (int k = 0; k < K; k++) {
+			vartheta[k] = (nk[k] + alpha[k]) / norm;
+		}
+
+		return iter;
+	}
+
+	/*
+	 * mhsteps pairs of Metropolis-Hastings steps for a token of word t whose
+	 * topic k has been removed from nk, against the conditional
+	 * (nk+alpha_k)*p(t|k): the word proposal p(t|k) from the alias table of t
+	 * is accepted with (nk+alpha) of the proposed over that of the current
+	 * topic, and the document proposal picks the topic of a random token of
+	 * the document (counting the current one) or a topic drawn from alpha
+	 * */
+	private int sampleMh(final Scratch s, final int N, final int t, final int k) {
+		final int K = model.getNTopics();
+		final double[] alpha = model.getAlpha();
+		final float[] phi = model.getPhi();
+		final int wt = model.offset(t);
+		final AliasTable wtable = model.getWordTable(t);
+		final int nmh = param.getMhSteps();
+		final double Kalpha = asums[K - 1];
+
+		final XoshiroRandom rand = s.rand;
+		final int[] nk = s.nk;
+
+		int cur = k;
+		for (int step = 0; step < nmh; step++) {
+			// word proposal
+			int c = wtable.sample(rand);
+			if (c != cur && rand.nextDouble() * (nk[cur] + alpha[cur]) < nk[c] + alpha[c]) {
+				cur = c;
+			}
+
+			// document proposal, counting the current token
+			if (rand.nextDouble() * (N + Kalpha) < N) {
+				c = s.z[rand.nextInt(N)];
+			} else if (symmetric) {
+				c = rand.nextInt(K);
+			} else {
+				c = Sampling.sample(asums, K, rand);
+			}
+			if (c != cur) {
+				final double ps = (nk[cur] + alpha[cur]) * phi[wt + cur];
+				final double pc = (nk[c] + alpha[c]) * phi[wt + c];
+				final double qs = nk[cur] + alpha[cur] + ((cur == k) ? 1 : 0);
+				final double qc = nk[c] + alpha[c] + ((c == k) ? 1 : 0);
+				if (rand.nextDouble() * ps * qc < pc * qs) {
+					cur = c;
+				}
+			}
+		}
+
+		return cur;
+	}
+
+	/*
+	 * @return the latency of all infer calls so far, including the resolution
+	 * of raw tokens
+	 * */
+	public LatencyHistogram getLatency() {
+		return this.latency;
+	}
+
+	public TrainedModel getModel() {
+		return this.model;
+	}
+}
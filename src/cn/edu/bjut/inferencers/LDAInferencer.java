@@ -1,14 +1,17 @@
 package cn.edu.bjut.inferencers;
 
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.io.PrintWriter;
 
 import cn.edu.bjut.corpus.Corpus;
 import cn.edu.bjut.estimators.LDAEstimator;
 import cn.edu.bjut.parameters.LDAParameter;
-import cn.edu.bjut.utils.CokusRandom;
+import cn.edu.bjut.utils.ModelWriter;
+import cn.edu.bjut.utils.ParallelFor;
+import cn.edu.bjut.utils.Sampling;
+import cn.edu.bjut.utils.Vectors;
+import cn.edu.bjut.utils.XoshiroRandom;
 
 /*
  * Gibbs sampling algorithm for Latent Dirichlet Allocation (LDA) model. 
@@ -28,22 +31,33 @@ import cn.edu.bjut.utils.CokusRandom;
 public class LDAInferencer implements IInferencer, IPerplexity {
 	private Corpus corpus; 
 	private LDAParameter param; 
-	private LDAEstimator estimator; 
+	private TrainedModel model; 
 	
-	private CokusRandom rand; 
+	private long seed; 
+	private XoshiroRandom[] rands; // size: M, one random stream per document
 	
 	private int[][] nmk; // size: M x K
 	private int[][] z;
 	
+	private double[] alpha; // size: K, as trained
 	private double Kalpha; 
 	
 	public LDAInferencer(final String filebase, final long seed, final LDAEstimator estimator) {
-		this.estimator = estimator; 
-		this.param = estimator.getParameter();
+		this(filebase, seed, estimator.getTrainedModel(), estimator.getParameter()); 
+	}
+
+	/*
+	 * infer with a frozen trained model, which may be shared with other 
+	 * inferencers
+	 * */
+	public LDAInferencer(final String filebase, final long seed, final TrainedModel model, final LDAParameter param) {
+		this.model = model; 
+		this.param = param;
 		this.corpus = new Corpus(filebase + ".corpus"); 
 		
-		this.rand = new CokusRandom(seed); 
-		this.Kalpha = param.getNTopics() * param.getAlpha(); 
+		this.seed = seed; 
+		this.alpha = model.getAlpha(); 
+		this.Kalpha = Vectors.sum(alpha); 
 	}
 
 	@Override
@@ -55,82 +69,106 @@ public class LDAInferencer implements IInferencer, IPerplexity {
 		// allocate
 		nmk = new int[M][K];
 		z = new int[M][];
+		rands = new XoshiroRandom[M]; 
 
 		// initialize
 		for (int m = 0; m < M; m++) {
+			rands[m] = XoshiroRandom.forStream(seed, m); 
 			z[m] = new int[w[m].length];
 			for (int n = 0; n < w[m].length; n++) {
-				final int k = this.rand.nextInt(K);
+				final int k = rands[m].nextInt(K);
 				z[m][n] = k;
 				nmk[m][k]++;
 			}
 		}
 	}
 
+	/*
+	 * Given the trained model, the chains of the documents are independent, so 
+	 * every document runs all niter iterations at once with its own random 
+	 * stream, and with nthreads > 1 the documents are spread over a pool of 
+	 * threads with their own scratch buffers. The result of a document depends 
+	 * on the seed and its index only, not on the number of threads. 
+	 * */
 	@Override
 	public void inference(final int niter) {
 		final int M = corpus.getNumDocs(); 
 		final int K = param.getNTopics(); 
-		final int[][] w = corpus.getDocWords(); 
-		final double alpha = param.getAlpha(); 
+		final int P = param.getNThreads(); 
 		
-		final double[][] varphi = estimator.getVarphi(false);
+		if (P <= 1) {
+			final double[] pp = new double[K]; 
+			for (int m = 0; m < M; m++) {
+				sampleDocument(m, niter, pp); 
+			}
+			return; 
+		}
+		
+		final double[][] pp = new double[P][K]; 
+		// not niter: inside ParallelFor, that name is its own loop bound 
+		final int sweeps = niter; 
+		final ParallelFor docs = new ParallelFor(P) {
+			@Override
+			public void process(final int m, final int thread) {
+				sampleDocument(m, sweeps, pp[thread]); 
+			}
+		}; 
+		docs.loopOnce(M); 
+	}
+	
+	/*
+	 * niter Gibbs iterations over document m; pp is a scratch buffer of size K
+	 * */
+	private void sampleDocument(final int m, final int niter, final double[] pp) {
+		final int K = param.getNTopics(); 
+		final int[] w = corpus.getDocWords(m); 
+		final float[] phi = model.getPhi();
+		final XoshiroRandom rand = rands[m]; 
 		
-		double[] pp = new double[K];
 		for (int iter = 0; iter < niter; iter++) {
-			System.out.println("iter: " + iter);
-			for (int m = 0; m < M; m++) {
-				for (int n = 0; n < w[m].length; n++) {
-					final int k = z[m][n];
-					final int t = w[m][n];
-					
-					// decrement
-					nmk[m][k]--;
-					
-					// compute weights
-					double psum = 0;
-					for (int kk = 0; kk < pp.length; kk++) {
-						pp[kk] = (nmk[m][kk] + alpha) * varphi[kk][t];
-						psum += pp[kk];
-					}
-					
-					// sample
-					final int kk = rand.nextDiscrete(pp, psum); 
-					
-					// reassign and increment
-					z[m][n] = kk;
-					nmk[m][kk]++; 
-				} // n
-			} // m
-		} // i
+			for (int n = 0; n < w.length; n++) {
+				final int k = z[m][n];
+				final int wt = model.offset(w[n]); 
+				
+				// decrement
+				nmk[m][k]--;
+				
+				// compute weights
+				double psum = 0;
+				for (int kk = 0; kk < K; kk++) {
+					psum += (nmk[m][kk] + alpha[kk]) * phi[wt + kk];
+					pp[kk] = psum;
+				}
+				
+				// sample by binary search over the prefix sums
+				final int kk = Sampling.sample(pp, K, rand); 
+				
+				// reassign and increment
+				z[m][n] = kk;
+				nmk[m][kk]++; 
+			} // n
+		} // iter
 	}
 	
+	/*
+	 * documents in parallel with nthreads > 1, see PerplexityEvaluator
+	 * */
 	@Override
 	public double ppx() {
-		final int M = corpus.getNumDocs();
-		final int K = param.getNTopics();
 		
-		final double[][] varphi = estimator.getVarphi(false);
-		
-		double loglik = 0;
-		int W = 0; 
-		for (int m = 0; m < M; m++) {
-			final int[] w = corpus.getDocWords(m); 
-			final double[] vartheta = getVartheta(m, false);
-			final int Nm = w.length; 
-			
-			for (int n = 0; n < Nm; n++) {
-				double sum = 0.0;
-				for (int k = 0; k < K; k++) {
-					sum += vartheta[k] * varphi[k][w[n]];
+		final PerplexityEvaluator evaluator = new PerplexityEvaluator(model, param.getNThreads()) {
+			@Override
+			protected boolean mixture(final int m, final double[] mix) {
+				final double norm = corpus.getNumWords(m) + Kalpha; 
+				for (int k = 0; k < mix.length; k++) {
+					mix[k] = (nmk[m][k] + alpha[k]) / norm; 
 				}
-				loglik += Math.log(sum);
+				return true; 
 			}
-			
-			W += Nm; 
-		}
+		}; 
+		evaluator.evaluate(corpus); 
 		
-		return Math.exp(-loglik / W);
+		return evaluator.ppx(); 
 	}
 
 	/*
@@ -139,13 +177,12 @@ public class LDAInferencer implements IInferencer, IPerplexity {
 	public double[][] getVartheta(final boolean flag) {
 		final int M = corpus.getNumDocs();
 		final int K = param.getNTopics();
-		final double alpha = param.getAlpha();
 
 		double[][] vartheta = new double[M][K];
 		for (int m = 0; m < M; m++) {
-			final int Nm = corpus.getDocWords(m).length;
+			final int Nm = corpus.getNumWords(m);
 			for (int k = 0; k < K; k++) {
-				vartheta[m][k] = (nmk[m][k] + alpha) / (Nm + Kalpha);
+				vartheta[m][k] = (nmk[m][k] + alpha[k]) / (Nm + Kalpha);
 				
 				if (flag) {
 					vartheta[m][k] = Math.log(vartheta[m][k]); 
@@ -165,12 +202,11 @@ public class LDAInferencer implements IInferencer, IPerplexity {
 	 * */
 	public double[] getVartheta(final int m, final boolean flag) {
 		final int K = param.getNTopics();
-		final double alpha = param.getAlpha();
 
 		double[] vartheta = new double[K];
-		final int Nm = corpus.getDocWords(m).length;
+		final int Nm = corpus.getNumWords(m);
 		for (int k = 0; k < K; k++) {
-			vartheta[k] = (nmk[m][k] + alpha) / (Nm + Kalpha);
+			vartheta[k] = (nmk[m][k] + alpha[k]) / (Nm + Kalpha);
 			
 			if (flag) {
 				vartheta[k] = Math.log(vartheta[k]); 
@@ -188,10 +224,9 @@ public class LDAInferencer implements IInferencer, IPerplexity {
 	 * @flag = true: log
 	 * */
 	public double getVartheta(final int m, final int k, final boolean flag) {
-		final double alpha = param.getAlpha();
-		final int Nm = corpus.getDocWords(m).length;
+		final int Nm = corpus.getNumWords(m);
 
-		double vartheta = (nmk[m][k] + alpha) / (Nm + Kalpha); 
+		double vartheta = (nmk[m][k] + alpha[k]) / (Nm + Kalpha); 
 		if (flag) {
 			vartheta = Math.log(vartheta); 
 			if (Double.isNaN(vartheta)) {
@@ -206,9 +241,12 @@ public class LDAInferencer implements IInferencer, IPerplexity {
 	@Override
 	public void printAssign(final File f) {
 		try {
-			PrintWriter writer = new PrintWriter(new FileWriter(f));
-			printAssign(writer);
-			writer.close();
+			final ModelWriter writer = ModelWriter.open(f);
+			try {
+				printAssign(writer);
+			} finally {
+				writer.close();
+			}
 		} catch (IOException e) {
 			e.printStackTrace(); 
 		}
@@ -216,15 +254,26 @@ public class LDAInferencer implements IInferencer, IPerplexity {
 
 	@Override
 	public void printAssign(final PrintWriter pw) {
+		try {
+			final ModelWriter writer = new ModelWriter(pw);
+			printAssign(writer);
+			writer.flush();
+		} catch (IOException e) {
+			e.printStackTrace(); 
+		}
+	}
+
+	public void printAssign(final ModelWriter writer) throws IOException {
 		final int M = corpus.getNumDocs(); 
 		
+		writer.beginAssign(M, 2); 
 		for (int m = 0; m < M; m++) {
 			final int[] w = corpus.getDocWords(m); 
-			
+			writer.beginDoc(w.length); 
 			for (int n = 0; n < w.length; n++) {
-				pw.print(w[n] + ":" + z[m][n] + " "); 
+				writer.token(w[n], z[m][n]); 
 			}
-			pw.println(); 
+			writer.endDoc(); 
 		}
 	}
 }
@@ -0,0 +1,111 @@
+package cn.edu.bjut.inferencers;
+
+import cn.edu.bjut.corpus.ICorpus;
+import cn.edu.bjut.utils.ParallelFor;
+import cn.edu.bjut.utils.Vectors;
+
+/*
+ * Held-out log-likelihood and perplexity of a corpus under a trained model,
+ *
+ * log p(w) = sum_m sum_n log sum_k p(k|m) p(w_mn|k).
+ *
+ * A subclass supplies the topic mixture p(k|m) of a document, e.g., vartheta
+ * of the document for LDA or the average vartheta of its authors for AT. The
+ * mixture is computed once per document, so every token costs one dot product
+ * of length K with the contiguous stripe of its word in the word-major varphi
+ * of the TrainedModel (Vectors.dot). With nthreads > 1, the documents are
+ * spread over a pool of threads with their own mixture buffers. The
+ * log-likelihoods of the documents are summed in document order afterwards,
+ * so the result does not depend on the number of threads.
+ *
+ * Author: XU, Shuo (pzczxs@gmail.com)
+ * */
+public abstract class PerplexityEvaluator {
+	protected final TrainedModel model;
+	private final int nthreads;
+
+	private double loglik;
+	private long W;
+
+	public PerplexityEvaluator(final TrainedModel model, final int nthreads) {
+		this.model = model;
+		this.nthreads = Math.max(1, nthreads);
+	}
+
+	/*
+	 * fill mix (size: K) with the topic mixture p(k|m) of document m
+	 *
+	 * @return false if document m is not scored
+	 * */
+	protected abstract boolean mixture(final int m, final double[] mix);
+
+	/*
+	 * evaluate all documents of corpus; then see getLoglik() and ppx()
+	 * */
+	public void evaluate(final ICorpus corpus) {
+		final int M = corpus.getNumDocs();
+		final int K = model.getNTopics();
+		final double[] docLoglik = new double[M];
+		final int[] docWords = new int[M];
+
+		if (nthreads <= 1) {
+			final double[] mix = new double[K];
+			for (int m = 0; m < M; m++) {
+				evaluate(corpus, m, mix, docLoglik, docWords);
+			}
+		} else {
+			final double[][] mix = new double[nthreads][K];
+			final ParallelFor docs = new ParallelFor(nthreads) {
+				@Override
+				public void process(final int m, final int thread) {
+					evaluate(corpus, m, mix[thread], docLoglik, docWords);
+				}
+			};
+			docs.loopOnce(M);
+		}
+
+		loglik = 0;
+		W = 0;
+		for (int m = 0; m < M; m++) {
+			loglik += docLoglik[m];
+			W += docWords[m];
+		}
+	}
+
+	private void evaluate(final ICorpus corpus, final int m, final double[] mix,
+			final double[] docLoglik, final int[] docWords) {
+		if (!mixture(m, mix)) {
+			return;
+		}
+
+		final int K = model.getNTopics();
+		final float[] phi = model.getPhi();
+		final int[] w = corpus.getDocWords(m);
+
+		double sum = 0;
+		for (int n = 0; n < w.length; n++) {
+			sum += Math.log(Vectors.dot(phi, model.offset(w[n]), mix, K));
+		}
+
+		docLoglik[m] = sum;
+		docWords[m] = w.length;
+	}
+
+	/*
+	 * @return the log-likelihood of the scored tokens of the last evaluation
+	 * */
+	public double getLoglik() {
+		return this.loglik;
+	}
+
+	/*
+	 * @return the number of scored tokens of the last evaluation
+	 * */
+	public long getNumWords() {
+		return this.W;
+	}
+
+	public double ppx() {
+		return Math.exp(-loglik / W);
+	}
+}
@@ -0,0 +1,230 @@
+package cn.edu.bjut.inferencers;
+
+import cn.edu.bjut.utils.AliasTable;
+import cn.edu.bjut.utils.CountMatrix;
+import cn.edu.bjut.utils.SparseCountMatrix;
+
+/*
+ * A frozen trained model as needed for inference: the topic-word
+ * distributions varphi and, for the author-topic models, the author
+ * (co-author) topic distributions vartheta. It is built once from the counts
+ * of an estimator and is never modified afterwards, so any number of
+ * inferencers and threads can share it and scoring a new batch of documents
+ * carries no K*V setup cost.
+ *
+ * varphi is stored word-major as floats, i.e., phi[t*K + k] = p(t|k), so the
+ * K topic weights of a word are one contiguous stripe. For every word, the
+ * model also offers an alias table over p(t|k) for constant-time proposals
+ * (see LDADocumentInferencer) and the topk topics of largest p(t|k) in
+ * descending order. Both are built for all words on their first use, so a
+ * model that needs neither does not pay for them.
+ *
+ * Author: XU, Shuo (pzczxs@gmail.com)
+ * */
+public class TrainedModel {
+	public final static int DEFAULT_TOPK = 16;
+
+	private final int K;
+	private final int V;
+	private final int L; // number of authors or co-author pairs, 0 for LDA
+	private final int topk;
+
+	private final double[] alpha; // size: K
+	private final float[] phi; // size: V x K, word-major
+	private final float[] theta; // size: L x K
+	private volatile AliasTable[] tables; // size: V, built on first use
+	private volatile int[] topTopics; // size: V x topk, built on first use
+	private float[] topWeights; // size: V x topk, written before topTopics
+
+	/*
+	 * LDA model: varphi = (ntk + beta) / (nk + V*beta), and the (possibly
+	 * asymmetric) alpha of the documents for inference
+	 * */
+	public TrainedModel(final CountMatrix ntk, final int[] nk, final double beta, final double[] alpha) {
+		this(ntk, nk, beta, null, null, alpha);
+	}
+
+	/*
+	 * author-topic model: varphi as for LDA and vartheta = (nlk + alpha_k) /
+	 * (nl + sum(alpha)) for every author (co-author pair) l
+	 * */
+	public TrainedModel(final CountMatrix ntk, final int[] nk, final double beta,
+			final SparseCountMatrix nlk, final int[] nl, final double[] alpha) {
+		this.K = nk.length;
+		this.V = ntk.getRows();
+		this.L = (nlk == null) ? 0 : nlk.getRows();
+		this.topk = Math.min(K, DEFAULT_TOPK);
+		this.alpha = alpha.clone();
+
+		final double Vbeta = V * beta;
+		this.phi = new float[V * K];
+		for (int t = 0; t < V; t++) {
+			final int[] counts = ntk.getData(t);
+			final int wt = ntk.offset(t);
+			for (int k = 0; k < K; k++) {
+				phi[t * K + k] = (float) ((counts[wt + k] + beta) / (nk[k] + Vbeta));
+			}
+		}
+
+		this.theta = new float[L * K];
+		double Kalpha = 0;
+		for (int k = 0; k < K; k++) {
+			Kalpha += alpha[k];
+		}
+		final int[] row = new int[K];
+		for (int l = 0; l < L; l++) {
+			nlk.getRow(l, row);
+			for (int k = 0; k < K; k++) {
+				theta[l * K + k] = (float) ((row[k] + alpha[k]) / (nl[l] + Kalpha));
+			}
+		}
+	}
+
+	/*
+	 * build the alias tables of all words once, on the first request
+	 * */
+	private synchronized AliasTable[] tables() {
+		if (tables == null) {
+			final AliasTable[] tables = new AliasTable[V];
+			final double[] weights = new double[K];
+			for (int t = 0; t < V; t++) {
+				for (int k = 0; k < K; k++) {
+					weights[k] = phi[t * K + k];
+				}
+				tables[t] = new AliasTable(weights);
+			}
+			this.tables = tables;
+		}
+
+		return tables;
+	}
+
+	/*
+	 * build the top topics of all words once, on the first request
+	 * */
+	private synchronized int[] topTopics() {
+		if (topTopics == null) {
+			final int[] topTopics = new int[V * topk];
+			final float[] topWeights = new float[V * topk];
+			for (int t = 0; t < V; t++) {
+				selectTop(t, topTopics, topWeights);
+			}
+			this.topWeights = topWeights;
+			this.topTopics = topTopics;
+		}
+
+		return topTopics;
+	}
+
+	/*
+	 * keep the topk largest p(t|k) of word t in descending order by
+	 * insertion into a sorted array of size topk
+	 * */
+	private void selectTop(final int t, final int[] topTopics, final float[] topWeights) {
+		final int base = t * topk;
+		int size = 0;
+		for (int k = 0; k < K; k++) {
+			final float w = phi[t * K + k];
+			if (size == topk && w <= topWeights[base + size - 1]) {
+				continue;
+			}
+
+			int i = (size < topk) ? size++ : size - 1;
+			while (i > 0 && topWeights[base + i - 1] < w) {
+				topWeights[base + i] = topWeights[base + i - 1];
+				topTopics[base + i] = topTopics[base + i - 1];
+				i--;
+			}
+			topWeights[base + i] = w;
+			topTopics[base + i] = k;
+		}
+	}
+
+	public int getNTopics() {
+		return this.K;
+	}
+
+	public int getNTerms() {
+		return this.V;
+	}
+
+	/*
+	 * @return the number of authors (co-author pairs), 0 for an LDA model
+	 * */
+	public int getNLabels() {
+		return this.L;
+	}
+
+	/*
+	 * @return alpha (size: K), not to be modified
+	 * */
+	public double[] getAlpha() {
+		return this.alpha;
+	}
+
+	/*
+	 * @return the word-major varphi, the stripe of word t starts at offset(t)
+	 * */
+	public float[] getPhi() {
+		return this.phi;
+	}
+
+	public int offset(final int t) {
+		return t * K;
+	}
+
+	/*
+	 * @return p(t|k)
+	 * */
+	public float phi(final int t, final int k) {
+		return phi[t * K + k];
+	}
+
+	/*
+	 * @return the topic-major theta of the authors (co-author pairs), the
+	 * topics of author l start at l*K
+	 * */
+	public float[] getTheta() {
+		return this.theta;
+	}
+
+	/*
+	 * @return p(k|l) of author (co-author pair) l
+	 * */
+	public float theta(final int l, final int k) {
+		return theta[l * K + k];
+	}
+
+	/*
+	 * @return the alias table over p(t|k), k = 0, ..., K-1, of word t
+	 * */
+	public AliasTable getWordTable(final int t) {
+		final AliasTable[] tables = this.tables;
+
+		return (tables != null) ? tables[t] : tables()[t];
+	}
+
+	public int getTopK() {
+		return this.topk;
+	}
+
+	/*
+	 * @return the i-th most probable topic of word t
+	 * */
+	public int topTopic(final int t, final int i) {
+		final int[] topTopics = this.topTopics;
+
+		return (topTopics != null) ? topTopics[t * topk + i] : topTopics()[t * topk + i];
+	}
+
+	/*
+	 * @return p(t|k) of the i-th most probable topic k of word t
+	 * */
+	public float topWeight(final int t, final int i) {
+		if (topTopics == null) {
+			topTopics();
+		}
+
+		return topWeights[t * topk + i];
+	}
+}
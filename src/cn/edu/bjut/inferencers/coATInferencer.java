@@ -1,14 +1,16 @@
 package cn.edu.bjut.inferencers;
 
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.io.PrintWriter;
 
 import cn.edu.bjut.corpus.LabelCorpus;
 import cn.edu.bjut.estimators.coATEstimator;
 import cn.edu.bjut.parameters.coATParameter;
-import cn.edu.bjut.utils.CokusRandom;
+import cn.edu.bjut.utils.ModelWriter;
+import cn.edu.bjut.utils.ParallelFor;
+import cn.edu.bjut.utils.Sampling;
+import cn.edu.bjut.utils.XoshiroRandom;
 
 /*
  * Gibbs sampling algorithm for co-Author-Topic (coAT) model. 
@@ -23,19 +25,28 @@ import cn.edu.bjut.utils.CokusRandom;
 public class coATInferencer implements IInferencer, IPerplexity {
 	private LabelCorpus corpus;
 	private coATParameter param;
-	private coATEstimator estimator;
+	private TrainedModel model;
 
-	private CokusRandom rand;
+	private long seed;
+	private XoshiroRandom[] rands; // size: M, one random stream per document
 
 	private int[][] z;
 	private int[][] xy; 
 
 	public coATInferencer(final String filebase, final long seed, final coATEstimator estimator) {
-		this.estimator = estimator;
-		this.param = estimator.getParameter();
+		this(filebase, seed, estimator.getTrainedModel(), estimator.getParameter());
+	}
+
+	/*
+	 * infer with a frozen trained model, which may be shared with other 
+	 * inferencers
+	 * */
+	public coATInferencer(final String filebase, final long seed, final TrainedModel model, final coATParameter param) {
+		this.model = model;
+		this.param = param;
 		this.corpus = new LabelCorpus(filebase);
 
-		this.rand = new CokusRandom(seed);
+		this.seed = seed;
 	}
 
 	@Override
@@ -48,6 +59,7 @@ public class coATInferencer implements IInferencer, IPerplexity {
 		// allocate
 		z = new int[M][];
 		xy = new int[M][];
+		rands = new XoshiroRandom[M]; 
 		
 		// initialize
 		for (int m = 0; m < M; m++) {
@@ -55,6 +67,7 @@ public class coATInferencer implements IInferencer, IPerplexity {
 				continue;
 			}
 			
+			final XoshiroRandom rand = rands[m] = XoshiroRandom.forStream(seed, m); 
 			z[m] = new int[w[m].length];
 			xy[m] = new int[w[m].length];
 			for (int n = 0; n < w[m].length; n++) {
@@ -68,116 +81,141 @@ public class coATInferencer implements IInferencer, IPerplexity {
 		}
 	}
 
+	/*
+	 * Given the trained model, the chains of the documents are independent, so 
+	 * every document runs all niter iterations at once with its own random 
+	 * stream, and with nthreads > 1 the documents are spread over a pool of 
+	 * threads with their own scratch buffers. The result of a document depends 
+	 * on the seed and its index only, not on the number of threads. 
+	 * */
 	@Override
 	public void inference(final int niter) {
 		final int M = corpus.getNumDocs();
 		final int K = param.getNTopics();
-		final int[][] w = corpus.getDocWords();
+		final int P = param.getNThreads();
 		final int[][] coauthor = corpus.getDocCoauthor();
 		
-		final double[][] varphi = estimator.getVarphi(false);
-		final double[][] vartheta = estimator.getVartheta(false); 
-
-		double[] pp = new double[K];
-		for (int iter = 0; iter < niter; iter++) {
-			System.out.println("iter: " + iter);
+		int maxR = 0;
+		for (int m = 0; m < M; m++) {
+			maxR = Math.max(maxR, coauthor[m].length);
+		}
+		
+		if (P <= 1) {
+			final double[] pp = new double[K];
+			final double[] pr = new double[maxR];
 			for (int m = 0; m < M; m++) {
-				if (coauthor[m].length == 0) {
-					continue;
-				}
-
-				double[] pr = new double[coauthor[m].length];
-
-				for (int n = 0; n < w[m].length; n++) {
-					final int k = z[m][n];
-					final int t = w[m][n];
-					final int r = xy[m][n];
+				sampleDocument(m, niter, pp, pr);
+			}
+			return;
+		}
+		
+		final double[][] pp = new double[P][K];
+		final double[][] pr = new double[P][maxR];
+		// not niter: inside ParallelFor, that name is its own loop bound
+		final int sweeps = niter;
+		final ParallelFor docs = new ParallelFor(P) {
+			@Override
+			public void process(final int m, final int thread) {
+				sampleDocument(m, sweeps, pp[thread], pr[thread]);
+			}
+		};
+		docs.loopOnce(M);
+	}
+	
+	/*
+	 * niter Gibbs iterations over document m; pp and pr are scratch buffers 
+	 * of size K and at least the number of co-author pairs of the document
+	 * */
+	private void sampleDocument(final int m, final int niter, final double[] pp, final double[] pr) {
+		final int K = param.getNTopics();
+		final int[] w = corpus.getDocWords(m);
+		final int[] coauthor = corpus.getDocCoauthor(m);
+		final float[] phi = model.getPhi();
+		final float[] theta = model.getTheta();
+		final XoshiroRandom rand = rands[m];
+		
+		if (coauthor.length == 0) {
+			return;
+		}
+		
+		for (int iter = 0; iter < niter; iter++) {
+			for (int n = 0; n < w.length; n++) {
+				final int k = z[m][n];
+				final int wt = model.offset(w[n]);
+				final int r = xy[m][n];
 
-					// compute weights for co-authors
-					double rsum = 0;
-					for (int rr = 0; rr < pr.length; rr++) {
-						pr[rr] = vartheta[rr][k]; 
-						rsum += pr[rr];
-					}
-					// sample for co-authors
-					double u = this.rand.nextDouble() * rsum;
-					rsum = 0;
-					int rr = 0;
-					for (rr = 0; rr < pr.length; rr++) {
-						rsum += pr[rr];
-						if (u <= rsum) {
-							break;
-						}
-					}
-					rr = coauthor[m][rr];
+				// compute weights for co-authors
+				double rsum = 0;
+				for (int rr = 0; rr < coauthor.length; rr++) {
+					rsum += theta[rr * K + k];
+					pr[rr] = rsum;
+				}
+				// sample for co-authors
+				final int rr = coauthor[Sampling.sample(pr, coauthor.length, rand)];
 
-					// compute weights for topics
-					double psum = 0;
-					for (int kk = 0; kk < pp.length; kk++) {
-						pp[kk] = vartheta[r][kk] * varphi[kk][t]; 
-						psum += pp[kk];
-					}
-					// sample for topics
-					u = this.rand.nextDouble() * psum;
-					psum = 0;
-					int kk = 0;
-					for (kk = 0; kk < pp.length; kk++) {
-						psum += pp[kk];
-						if (u <= psum) {
-							break;
-						}
-					}
+				// compute weights for topics
+				double psum = 0;
+				for (int kk = 0; kk < K; kk++) {
+					psum += theta[r * K + kk] * phi[wt + kk];
+					pp[kk] = psum;
+				}
+				// sample for topics
+				final int kk = Sampling.sample(pp, K, rand);
 
-					// reassign
-					z[m][n] = kk;
-					xy[m][n] = rr;
-				} // n
-			} // m
+				// reassign
+				z[m][n] = kk;
+				xy[m][n] = rr;
+			} // n
 		} // iter
 	}
 	
+	/*
+	 * documents in parallel with nthreads > 1, see PerplexityEvaluator; the 
+	 * topic mixture of a document is the average vartheta of its co-author 
+	 * pairs, and documents without co-author pairs are not scored
+	 * */
 	@Override
 	public double ppx() {
-		final int M = corpus.getNumDocs();
 		final int K = param.getNTopics();
 		final int[][] coauthor = corpus.getDocCoauthor();
-		
-		final double[][] varphi = estimator.getVarphi(false);
-		final double[][] vartheta = estimator.getVartheta(false); 
-		
-		double loglik = 0;
-		int W = 0; 
-		for (int m = 0; m < M; m++) {
-			if (coauthor[m].length == 0) {
-				continue; 
-			}
-			
-			final int[] w = corpus.getDocWords(m); 
-			final int Nm = w.length; 
+		final float[] theta = model.getTheta(); 
+
+		final PerplexityEvaluator evaluator = new PerplexityEvaluator(model, param.getNThreads()) {
+			@Override
+			protected boolean mixture(final int m, final double[] mix) {
+				if (coauthor[m].length == 0) {
+					return false;
+				}
 
-			for (int n = 0; n < w.length; n++) {
-				double sum = 0;
 				for (int k = 0; k < K; k++) {
-					for (int i = 0; i < coauthor[m].length; i++) {
-						sum += varphi[k][w[n]] * vartheta[coauthor[m][i]][k]; 
+					mix[k] = 0;
+				}
+				for (int i = 0; i < coauthor[m].length; i++) {
+					final int offset = coauthor[m][i] * K;
+					for (int k = 0; k < K; k++) {
+						mix[k] += theta[offset + k];
 					}
 				}
-				loglik += Math.log(sum);
+				for (int k = 0; k < K; k++) {
+					mix[k] /= coauthor[m].length;
+				}
+				return true;
 			}
-			loglik -=  Nm * Math.log(coauthor[m].length); 
-			
-			W += Nm; 
-		}
-		
-		return Math.exp(-loglik / W);
+		};
+		evaluator.evaluate(corpus);
+
+		return evaluator.ppx();
 	}
 
 	@Override
 	public void printAssign(final File f) {
 		try {
-			PrintWriter writer = new PrintWriter(new FileWriter(f));
-			printAssign(writer);
-			writer.close();
+			final ModelWriter writer = ModelWriter.open(f);
+			try {
+				printAssign(writer);
+			} finally {
+				writer.close();
+			}
 		} catch (IOException e) {
 			e.printStackTrace();
 		}
@@ -185,20 +223,33 @@ public class coATInferencer implements IInferencer, IPerplexity {
 
 	@Override
 	public void printAssign(final PrintWriter pw) {
-		final int M = corpus.getNumDocs();
+		try {
+			final ModelWriter writer = new ModelWriter(pw);
+			printAssign(writer);
+			writer.flush();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
 
+	public void printAssign(final ModelWriter writer) throws IOException {
+		final int M = corpus.getNumDocs();
+		
+		writer.beginAssign(M, 4);
 		for (int m = 0; m < M; m++) {
-			final int[] coauthor = corpus.getDocCoauthor(m); 
-			if (coauthor.length == 0) {
-				pw.println();
-				continue; 
+			if (corpus.getDocCoauthor(m).length == 0) {
+				writer.beginDoc(0);
+				writer.endDoc();
+				continue;
 			}
 			
 			final int[] w = corpus.getDocWords(m);
+			writer.beginDoc(w.length);
 			for (int n = 0; n < w.length; n++) {
-				pw.print(w[n] + ":" + z[m][n] + ":" + corpus.getCoauthor(xy[m][n]) + " ");
+				final int r = xy[m][n];
+				writer.token(w[n], z[m][n], corpus.getCoauthorFirst(r), corpus.getCoauthorSecond(r));
 			}
-			pw.println();
+			writer.endDoc();
 		}
 	}
 
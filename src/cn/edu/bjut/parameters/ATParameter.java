@@ -10,12 +10,30 @@ public class ATParameter {
 	private double beta;
 	private int twords;
 	private int tauthors; 
+	private String sampler; 
+	private int nthreads; 
+	private int checkpoint; 
+	private int likelihood; 
+	private double convergence; 
+	private int optimize; 
+	private int optburnin; 
+	
+	public final static String SAMPLER_GIBBS = "gibbs"; 
+	public final static String SAMPLER_BLOCKED = "blocked"; 
+	public final static String SAMPLER_SPARSE = "sparse"; 
 	
 	private final static int NTOPICS_DEFAULT = 100; 
 	private final static double ALPHA_DEFAULT = 0.5; 
 	private final static double BETA_DEFAULT = 0.01;  
 	private final static int TWORDS_DEFAULT = 20; 
 	private final static int TAUTHORS_DEFAULT = 20; 
+	private final static String SAMPLER_DEFAULT = SAMPLER_GIBBS; 
+	private final static int NTHREADS_DEFAULT = 1; 
+	private final static int CHECKPOINT_DEFAULT = 0; 
+	private final static int LIKELIHOOD_DEFAULT = 0; // 0: never
+	private final static double CONVERGENCE_DEFAULT = 0.0; // 0: never stop early
+	private final static int OPTIMIZE_DEFAULT = 0; // 0: keep alpha and beta fixed
+	private final static int OPTBURNIN_DEFAULT = 0; 
 	
 	public ATParameter(final int K, final double alpha, final double beta, 
 			final int twords, final int tauthors) {
@@ -25,6 +43,13 @@ public class ATParameter {
 		this.beta = beta; 
 		this.twords = twords; 
 		this.tauthors = tauthors; 
+		this.sampler = SAMPLER_DEFAULT; 
+		this.nthreads = NTHREADS_DEFAULT; 
+		this.checkpoint = CHECKPOINT_DEFAULT; 
+		this.likelihood = LIKELIHOOD_DEFAULT; 
+		this.convergence = CONVERGENCE_DEFAULT; 
+		this.optimize = OPTIMIZE_DEFAULT; 
+		this.optburnin = OPTBURNIN_DEFAULT; 
 		
 		check(); 
 	}
@@ -95,6 +120,62 @@ public class ATParameter {
  	public void setTauthors(final int tauthors) {
  		this.tauthors = tauthors; 
  	}
+ 	
+ 	public String getSampler() {
+ 		return this.sampler; 
+ 	}
+ 	
+ 	public void setSampler(final String sampler) {
+ 		this.sampler = sampler; 
+ 	}
+ 	
+ 	public int getNThreads() {
+ 		return this.nthreads; 
+ 	}
+ 	
+ 	public void setNThreads(final int nthreads) {
+ 		this.nthreads = nthreads; 
+ 	}
+ 	
+ 	public int getCheckpoint() {
+ 		return this.checkpoint; 
+ 	}
+ 	
+ 	public void setCheckpoint(final int checkpoint) {
+ 		this.checkpoint = checkpoint; 
+ 	}
+ 	
+ 	public int getLikelihood() {
+ 		return this.likelihood; 
+ 	}
+ 	
+ 	public void setLikelihood(final int likelihood) {
+ 		this.likelihood = likelihood; 
+ 	}
+ 	
+ 	public double getConvergence() {
+ 		return this.convergence; 
+ 	}
+ 	
+ 	public void setConvergence(final double convergence) {
+ 		this.convergence = convergence; 
+ 	}
+ 	
+ 	public int getOptimize() {
+ 		return this.optimize; 
+ 	}
+ 	
+ 	public void setOptimize(final int optimize) {
+ 		this.optimize = optimize; 
+ 	}
+ 	
+ 	public int getOptBurnin() {
+ 		return this.optburnin; 
+ 	}
+ 	
+ 	public void setOptBurnin(final int optburnin) {
+ 		this.optburnin = optburnin; 
+ 	}
 	
 	private void loadConfigure(final Properties properties) {
 		K = Integer.parseInt(properties.getProperty("ntopics", Integer.toString(NTOPICS_DEFAULT))); 
@@ -102,6 +183,13 @@ public class ATParameter {
 		beta = Double.parseDouble(properties.getProperty("beta", Double.toString(BETA_DEFAULT))); 
 		twords = Integer.parseInt(properties.getProperty("twords", Integer.toString(TWORDS_DEFAULT))); 
 		tauthors = Integer.parseInt(properties.getProperty("tauthors", Integer.toString(TAUTHORS_DEFAULT))); 
+		sampler = properties.getProperty("sampler", SAMPLER_DEFAULT).trim(); 
+		nthreads = Integer.parseInt(properties.getProperty("nthreads", Integer.toString(NTHREADS_DEFAULT))); 
+		checkpoint = Integer.parseInt(properties.getProperty("checkpoint", Integer.toString(CHECKPOINT_DEFAULT))); 
+		likelihood = Integer.parseInt(properties.getProperty("likelihood", Integer.toString(LIKELIHOOD_DEFAULT))); 
+		convergence = Double.parseDouble(properties.getProperty("convergence", Double.toString(CONVERGENCE_DEFAULT))); 
+		optimize = Integer.parseInt(properties.getProperty("optimize", Integer.toString(OPTIMIZE_DEFAULT))); 
+		optburnin = Integer.parseInt(properties.getProperty("optburnin", Integer.toString(OPTBURNIN_DEFAULT))); 
 	} 
 
 	private void check() {
@@ -124,11 +212,44 @@ public class ATParameter {
 		if (tauthors <= 0) {
 			tauthors = TAUTHORS_DEFAULT; 
 		}
+		
+		if (!SAMPLER_GIBBS.equals(sampler) && !SAMPLER_BLOCKED.equals(sampler) && 
+				!SAMPLER_SPARSE.equals(sampler)) {
+			sampler = SAMPLER_DEFAULT; 
+		}
+		
+		if (nthreads <= 0) {
+			nthreads = NTHREADS_DEFAULT; 
+		}
+		
+		if (checkpoint < 0) {
+			checkpoint = CHECKPOINT_DEFAULT; 
+		}
+		
+		if (likelihood < 0) {
+			likelihood = LIKELIHOOD_DEFAULT; 
+		}
+		
+		if (convergence < 0.0) {
+			convergence = CONVERGENCE_DEFAULT; 
+		}
+		
+		if (optimize < 0) {
+			optimize = OPTIMIZE_DEFAULT; 
+		}
+		
+		if (optburnin < 0) {
+			optburnin = OPTBURNIN_DEFAULT; 
+		}
  	}
 
 	@Override
 	public String toString() {
 		return "ATParameter [K=" + K + ", alpha=" + alpha + ", beta=" + beta + 
-				", twords=" + twords + ", tauthors=" + tauthors + "]";
+				", twords=" + twords + ", tauthors=" + tauthors + 
+				", sampler=" + sampler + ", nthreads=" + nthreads + 
+				", checkpoint=" + checkpoint + 
+				", likelihood=" + likelihood + ", convergence=" + convergence + 
+				", optimize=" + optimize + ", optburnin=" + optburnin + "]";
 	}
 }
@@ -10,12 +10,42 @@ public class LDAParameter {
 	private double beta;
 	private int twords;
 	private int tdocs; 
+	private String sampler; 
+	private int mhsteps; 
+	private int aliasrefresh; 
+	private int nthreads; 
+	private String parallel; 
+	private int checkpoint; 
+	private int likelihood; 
+	private double convergence; 
+	private int optimize; 
+	private int optburnin; 
+	private int queryiter; 
+	private double querytol; 
+	
+	public final static String SAMPLER_GIBBS = "gibbs"; 
+	public final static String SAMPLER_SPARSE = "sparse"; 
+	public final static String SAMPLER_ALIAS = "alias"; 
+	public final static String PARALLEL_ADLDA = "adlda"; 
+	public final static String PARALLEL_DIAGONAL = "diagonal"; 
 	
 	private final static int NTOPICS_DEFAULT = 100; 
 	private final static double ALPHA_DEFAULT = 0.5; 
 	private final static double BETA_DEFAULT = 0.01;  
 	private final static int TWORDS_DEFAULT = 20; 
 	private final static int TDOCS_DEFAULT = 20; 
+	private final static String SAMPLER_DEFAULT = SAMPLER_GIBBS; 
+	private final static int MHSTEPS_DEFAULT = 2; 
+	private final static int ALIASREFRESH_DEFAULT = 0; // 0: after K draws
+	private final static int NTHREADS_DEFAULT = 1; 
+	private final static String PARALLEL_DEFAULT = PARALLEL_ADLDA; 
+	private final static int CHECKPOINT_DEFAULT = 0; 
+	private final static int LIKELIHOOD_DEFAULT = 0; // 0: never
+	private final static double CONVERGENCE_DEFAULT = 0.0; // 0: never stop early
+	private final static int OPTIMIZE_DEFAULT = 0; // 0: keep alpha and beta fixed
+	private final static int OPTBURNIN_DEFAULT = 0; 
+	private final static int QUERYITER_DEFAULT = 50; 
+	private final static double QUERYTOL_DEFAULT = 0.0; // 0: always run queryiter iterations
 	
 	public LDAParameter(final int K, final double alpha, final double beta, final int twords, final int tdocs) {
 		
@@ -24,6 +54,18 @@ public class LDAParameter {
 		this.beta = beta; 
 		this.twords = twords; 
 		this.tdocs = tdocs; 
+		this.sampler = SAMPLER_DEFAULT; 
+		this.mhsteps = MHSTEPS_DEFAULT; 
+		this.aliasrefresh = ALIASREFRESH_DEFAULT; 
+		this.nthreads = NTHREADS_DEFAULT; 
+		this.parallel = PARALLEL_DEFAULT; 
+		this.checkpoint = CHECKPOINT_DEFAULT; 
+		this.likelihood = LIKELIHOOD_DEFAULT; 
+		this.convergence = CONVERGENCE_DEFAULT; 
+		this.optimize = OPTIMIZE_DEFAULT; 
+		this.optburnin = OPTBURNIN_DEFAULT; 
+		this.queryiter = QUERYITER_DEFAULT; 
+		this.querytol = QUERYTOL_DEFAULT; 
 		
 		check(); 
 	}
@@ -94,6 +136,102 @@ public class LDAParameter {
  	public void setTdocs(final int tdocs) {
  		this.tdocs = tdocs; 
  	}
+ 	
+ 	public String getSampler() {
+ 		return this.sampler; 
+ 	}
+ 	
+ 	public void setSampler(final String sampler) {
+ 		this.sampler = sampler; 
+ 	}
+ 	
+ 	public int getMhSteps() {
+ 		return this.mhsteps; 
+ 	}
+ 	
+ 	public void setMhSteps(final int mhsteps) {
+ 		this.mhsteps = mhsteps; 
+ 	}
+ 	
+ 	public int getAliasRefresh() {
+ 		return this.aliasrefresh; 
+ 	}
+ 	
+ 	public void setAliasRefresh(final int aliasrefresh) {
+ 		this.aliasrefresh = aliasrefresh; 
+ 	}
+ 	
+ 	public int getNThreads() {
+ 		return this.nthreads; 
+ 	}
+ 	
+ 	public void setNThreads(final int nthreads) {
+ 		this.nthreads = nthreads; 
+ 	}
+ 	
+ 	public String getParallel() {
+ 		return this.parallel; 
+ 	}
+ 	
+ 	public void setParallel(final String parallel) {
+ 		this.parallel = parallel; 
+ 	}
+ 	
+ 	public int getCheckpoint() {
+ 		return this.checkpoint; 
+ 	}
+ 	
+ 	public void setCheckpoint(final int checkpoint) {
+ 		this.checkpoint = checkpoint; 
+ 	}
+ 	
+ 	public int getLikelihood() {
+ 		return this.likelihood; 
+ 	}
+ 	
+ 	public void setLikelihood(final int likelihood) {
+ 		this.likelihood = likelihood; 
+ 	}
+ 	
+ 	public double getConvergence() {
+ 		return this.convergence; 
+ 	}
+ 	
+ 	public void setConvergence(final double convergence) {
+ 		this.convergence = convergence; 
+ 	}
+ 	
+ 	public int getOptimize() {
+ 		return this.optimize; 
+ 	}
+ 	
+ 	public void setOptimize(final int optimize) {
+ 		this.optimize = optimize; 
+ 	}
+ 	
+ 	public int getOptBurnin() {
+ 		return this.optburnin; 
+ 	}
+ 	
+ 	public void setOptBurnin(final int optburnin) {
+ 		this.optburnin = optburnin; 
+ 	}
+ 	
+ 	public int getQueryIter() {
+ 		return this.queryiter; 
+ 	}
+ 	
+ 	public void setQueryIter(final int queryiter) {
+ 		this.queryiter = queryiter; 
+ 	}
+ 	
+ 	public double getQueryTol() {
+ 		return this.querytol; 
+ 	}
+ 	
+ 	public void setQueryTol(final double querytol) {
+ 		this.querytol = querytol; 
+ 	}
 	
 	private void loadConfigure(final Properties properties) {
 		K = Integer.parseInt(properties.getProperty("ntopics", Integer.toString(NTOPICS_DEFAULT))); 
@@ -101,6 +239,18 @@ public class LDAParameter {
 		beta = Double.parseDouble(properties.getProperty("beta", Double.toString(BETA_DEFAULT))); 
 		twords = Integer.parseInt(properties.getProperty("twords", Integer.toString(TWORDS_DEFAULT))); 
 		tdocs = Integer.parseInt(properties.getProperty("tdocs", Integer.toString(TDOCS_DEFAULT)));
+		sampler = properties.getProperty("sampler", SAMPLER_DEFAULT).trim(); 
+		mhsteps = Integer.parseInt(properties.getProperty("mhsteps", Integer.toString(MHSTEPS_DEFAULT))); 
+		aliasrefresh = Integer.parseInt(properties.getProperty("aliasrefresh", Integer.toString(ALIASREFRESH_DEFAULT))); 
+		nthreads = Integer.parseInt(properties.getProperty("nthreads", Integer.toString(NTHREADS_DEFAULT))); 
+		parallel = properties.getProperty("parallel", PARALLEL_DEFAULT).trim(); 
+		checkpoint = Integer.parseInt(properties.getProperty("checkpoint", Integer.toString(CHECKPOINT_DEFAULT))); 
+		likelihood = Integer.parseInt(properties.getProperty("likelihood", Integer.toString(LIKELIHOOD_DEFAULT))); 
+		convergence = Double.parseDouble(properties.getProperty("convergence", Double.toString(CONVERGENCE_DEFAULT))); 
+		optimize = Integer.parseInt(properties.getProperty("optimize", Integer.toString(OPTIMIZE_DEFAULT))); 
+		optburnin = Integer.parseInt(properties.getProperty("optburnin", Integer.toString(OPTBURNIN_DEFAULT))); 
+		queryiter = Integer.parseInt(properties.getProperty("queryiter", Integer.toString(QUERYITER_DEFAULT))); 
+		querytol = Double.parseDouble(properties.getProperty("querytol", Double.toString(QUERYTOL_DEFAULT))); 
 	} 
 
 	private void check() {
@@ -123,11 +273,73 @@ public class LDAParameter {
 		if (tdocs <= 0) {
 			tdocs = TDOCS_DEFAULT; 
 		}
+		
+		if (!SAMPLER_GIBBS.equals(sampler) && !SAMPLER_SPARSE.equals(sampler) && 
+				!SAMPLER_ALIAS.equals(sampler)) {
+			sampler = SAMPLER_DEFAULT; 
+		}
+		
+		if (mhsteps <= 0) {
+			mhsteps = MHSTEPS_DEFAULT; 
+		}
+		
+		if (aliasrefresh < 0) {
+			aliasrefresh = ALIASREFRESH_DEFAULT; 
+		}
+		
+		if (nthreads <= 0) {
+			nthreads = NTHREADS_DEFAULT; 
+		}
+		
+		// the sparse and alias samplers have no parallel sweep
+		if (nthreads > 1 && !SAMPLER_GIBBS.equals(sampler)) {
+			System.err.println("The " + sampler + " sampler is single-threaded, " + 
+					"nthreads=" + nthreads + " samples with " + SAMPLER_GIBBS + " instead."); 
+			sampler = SAMPLER_GIBBS; 
+		}
+		
+		if (!PARALLEL_ADLDA.equals(parallel) && !PARALLEL_DIAGONAL.equals(parallel)) {
+			parallel = PARALLEL_DEFAULT; 
+		}
+		
+		if (checkpoint < 0) {
+			checkpoint = CHECKPOINT_DEFAULT; 
+		}
+		
+		if (likelihood < 0) {
+			likelihood = LIKELIHOOD_DEFAULT; 
+		}
+		
+		if (convergence < 0.0) {
+			convergence = CONVERGENCE_DEFAULT; 
+		}
+		
+		if (optimize < 0) {
+			optimize = OPTIMIZE_DEFAULT; 
+		}
+		
+		if (optburnin < 0) {
+			optburnin = OPTBURNIN_DEFAULT; 
+		}
+		
+		if (queryiter <= 0) {
+			queryiter = QUERYITER_DEFAULT; 
+		}
+		
+		if (querytol < 0.0) {
+			querytol = QUERYTOL_DEFAULT; 
+		}
  	}
 
 	@Override
 	public String toString() {
 		return "LDACollocationParameter [K=" + K + ", alpha=" + alpha + ", beta=" + beta + 
-				", twords=" + twords + ", tdocs=" + tdocs + "]";
+				", twords=" + twords + ", tdocs=" + tdocs + ", sampler=" + sampler + 
+				", mhsteps=" + mhsteps + ", aliasrefresh=" + aliasrefresh + 
+				", nthreads=" + nthreads + ", parallel=" + parallel + 
+				", checkpoint=" + checkpoint + 
+				", likelihood=" + likelihood + ", convergence=" + convergence + 
+				", optimize=" + optimize + ", optburnin=" + optburnin + 
+				", queryiter=" + queryiter + ", querytol=" + querytol + "]";
 	}
 }
@@ -10,12 +10,29 @@ public class coATParameter {
 	private double beta;
 	private int twords;
 	private int tcoauthors; 
+	private String sampler; 
+	private int nthreads; 
+	private int checkpoint; 
+	private int likelihood; 
+	private double convergence; 
+	private int optimize; 
+	private int optburnin; 
+	
+	public final static String SAMPLER_BLOCKED = "blocked"; 
+	public final static String SAMPLER_LEGACY = "legacy"; 
 	
 	private final static int NTOPICS_DEFAULT = 100; 
 	private final static double ALPHA_DEFAULT = 0.5; 
 	private final static double BETA_DEFAULT = 0.01;  
 	private final static int TWORDS_DEFAULT = 20; 
 	private final static int TCOAUTHORS_DEFAULT = 20; 
+	private final static String SAMPLER_DEFAULT = SAMPLER_BLOCKED; 
+	private final static int NTHREADS_DEFAULT = 1; 
+	private final static int CHECKPOINT_DEFAULT = 0; 
+	private final static int LIKELIHOOD_DEFAULT = 0; // 0: never
+	private final static double CONVERGENCE_DEFAULT = 0.0; // 0: never stop early
+	private final static int OPTIMIZE_DEFAULT = 0; // 0: keep alpha and beta fixed
+	private final static int OPTBURNIN_DEFAULT = 0; 
 	
 	public coATParameter(final int K, final double alpha, final double beta, 
 			final int twords, final int tcoauthors) {
@@ -25,6 +42,13 @@ public class coATParameter {
 		this.beta = beta; 
 		this.twords = twords; 
 		this.tcoauthors = tcoauthors; 
+		this.sampler = SAMPLER_DEFAULT; 
+		this.nthreads = NTHREADS_DEFAULT; 
+		this.checkpoint = CHECKPOINT_DEFAULT; 
+		this.likelihood = LIKELIHOOD_DEFAULT; 
+		this.convergence = CONVERGENCE_DEFAULT; 
+		this.optimize = OPTIMIZE_DEFAULT; 
+		this.optburnin = OPTBURNIN_DEFAULT; 
 		
 		check(); 
 	}
@@ -95,6 +119,62 @@ public class coATParameter {
  	public void setTcoauthors(final int tcoauthors) {
  		this.tcoauthors = tcoauthors; 
  	}
+ 	
+ 	public String getSampler() {
+ 		return this.sampler; 
+ 	}
+ 	
+ 	public void setSampler(final String sampler) {
+ 		this.sampler = sampler; 
+ 	}
+ 	
+ 	public int getNThreads() {
+ 		return this.nthreads; 
+ 	}
+ 	
+ 	public void setNThreads(final int nthreads) {
+ 		this.nthreads = nthreads; 
+ 	}
+ 	
+ 	public int getCheckpoint() {
+ 		return this.checkpoint; 
+ 	}
+ 	
+ 	public void setCheckpoint(final int checkpoint) {
+ 		this.checkpoint = checkpoint; 
+ 	}
+ 	
+ 	public int getLikelihood() {
+ 		return this.likelihood; 
+ 	}
+ 	
+ 	public void setLikelihood(final int likelihood) {
+ 		this.likelihood = likelihood; 
+ 	}
+ 	
+ 	public double getConvergence() {
+ 		return this.convergence; 
+ 	}
+ 	
+ 	public void setConvergence(final double convergence) {
+ 		this.convergence = convergence; 
+ 	}
+ 	
+ 	public int getOptimize() {
+ 		return this.optimize; 
+ 	}
+ 	
+ 	public void setOptimize(final int optimize) {
+ 		this.optimize = optimize; 
+ 	}
+ 	
+ 	public int getOptBurnin() {
+ 		return this.optburnin; 
+ 	}
+ 	
+ 	public void setOptBurnin(final int optburnin) {
+ 		this.optburnin = optburnin; 
+ 	}
 	
 	private void loadConfigure(final Properties properties) {
 		K = Integer.parseInt(properties.getProperty("ntopics", Integer.toString(NTOPICS_DEFAULT))); 
@@ -102,6 +182,13 @@ public class coATParameter {
 		beta = Double.parseDouble(properties.getProperty("beta", Double.toString(BETA_DEFAULT))); 
 		twords = Integer.parseInt(properties.getProperty("twords", Integer.toString(TWORDS_DEFAULT))); 
 		tcoauthors = Integer.parseInt(properties.getProperty("tcoauthors", Integer.toString(TCOAUTHORS_DEFAULT))); 
+		sampler = properties.getProperty("sampler", SAMPLER_DEFAULT).trim(); 
+		nthreads = Integer.parseInt(properties.getProperty("nthreads", Integer.toString(NTHREADS_DEFAULT))); 
+		checkpoint = Integer.parseInt(properties.getProperty("checkpoint", Integer.toString(CHECKPOINT_DEFAULT))); 
+		likelihood = Integer.parseInt(properties.getProperty("likelihood", Integer.toString(LIKELIHOOD_DEFAULT))); 
+		convergence = Double.parseDouble(properties.getProperty("convergence", Double.toString(CONVERGENCE_DEFAULT))); 
+		optimize = Integer.parseInt(properties.getProperty("optimize", Integer.toString(OPTIMIZE_DEFAULT))); 
+		optburnin = Integer.parseInt(properties.getProperty("optburnin", Integer.toString(OPTBURNIN_DEFAULT))); 
 	} 
 
 	private void check() {
@@ -124,11 +211,43 @@ public class coATParameter {
 		if (tcoauthors <= 0) {
 			tcoauthors = TCOAUTHORS_DEFAULT; 
 		}
+		
+		if (!SAMPLER_BLOCKED.equals(sampler) && !SAMPLER_LEGACY.equals(sampler)) {
+			sampler = SAMPLER_DEFAULT; 
+		}
+		
+		if (nthreads <= 0) {
+			nthreads = NTHREADS_DEFAULT; 
+		}
+		
+		if (checkpoint < 0) {
+			checkpoint = CHECKPOINT_DEFAULT; 
+		}
+		
+		if (likelihood < 0) {
+			likelihood = LIKELIHOOD_DEFAULT; 
+		}
+		
+		if (convergence < 0.0) {
+			convergence = CONVERGENCE_DEFAULT; 
+		}
+		
+		if (optimize < 0) {
+			optimize = OPTIMIZE_DEFAULT; 
+		}
+		
+		if (optburnin < 0) {
+			optburnin = OPTBURNIN_DEFAULT; 
+		}
  	}
 
 	@Override
 	public String toString() {
 		return "coATParameter [K=" + K + ", alpha=" + alpha + ", beta=" + beta + 
-				", twords=" + twords + ", tcoauthors=" + tcoauthors + "]";
+				", twords=" + twords + ", tcoauthors=" + tcoauthors + 
+				", sampler=" + sampler + ", nthreads=" + nthreads + 
+				", checkpoint=" + checkpoint + 
+				", likelihood=" + likelihood + ", convergence=" + convergence + 
+				", optimize=" + optimize + ", optburnin=" + optburnin + "]";
 	}
 }
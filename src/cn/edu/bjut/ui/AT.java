@@ -27,8 +27,18 @@ public class AT {
 		final String filebase = "data/nips/nips"; 
 		
 		final ATEstimator estimator = new ATEstimator(filebase, 56567651L); 
-		estimator.init(); 
-		estimator.estimate(10); 
+		final int niter = 10; 
+		final File checkpoint = new File(filebase + ".AT.checkpoint"); 
+		int done = 0; 
+		if (estimator.canResume(checkpoint)) {
+			done = estimator.resume(checkpoint); 
+		} else {
+			if (checkpoint.exists()) {
+				System.err.println("Ignoring " + checkpoint + " of another model, corpus or number of topics."); 
+			}
+			estimator.init(); 
+		}
+		estimator.estimate(niter - done); 
 		estimator.printVartheta(new File(filebase + ".AT.vartheta"));
 		estimator.printVarphi(new File(filebase + ".AT.varphi"));
 		estimator.printAssign(new File(filebase + ".AT.assign")); 
@@ -26,8 +26,18 @@ public class LDA {
 		final String filebase = "data/nips/nips"; 
 		
 		final LDAEstimator estimator = new LDAEstimator(filebase, 56567651L); 
-		estimator.init(); 
-		estimator.estimate(20); 
+		final int niter = 20; 
+		final File checkpoint = new File(filebase + ".LDA.checkpoint"); 
+		int done = 0; 
+		if (estimator.canResume(checkpoint)) {
+			done = estimator.resume(checkpoint); 
+		} else {
+			if (checkpoint.exists()) {
+				System.err.println("Ignoring " + checkpoint + " of another model, corpus or number of topics."); 
+			}
+			estimator.init(); 
+		}
+		estimator.estimate(niter - done); 
 		estimator.printVartheta(new File(filebase + ".LDA.vartheta"));
 		estimator.printVarphi(new File(filebase + ".LDA.varphi"));
 		estimator.printAssign(new File(filebase + ".LDA.assign")); 
@@ -21,8 +21,18 @@ public class coAT {
 		final String filebase = "data/nips/nips"; 
 		
 		final coATEstimator estimator = new coATEstimator(filebase, 56567651L); 
-		estimator.init(); 
-		estimator.estimate(5); 
+		final int niter = 5; 
+		final File checkpoint = new File(filebase + ".coAT.checkpoint"); 
+		int done = 0; 
+		if (estimator.canResume(checkpoint)) {
+			done = estimator.resume(checkpoint); 
+		} else {
+			if (checkpoint.exists()) {
+				System.err.println("Ignoring " + checkpoint + " of another model, corpus or number of topics."); 
+			}
+			estimator.init(); 
+		}
+		estimator.estimate(niter - done); 
 		estimator.printVartheta(new File(filebase + ".coAT.vartheta"));
 		estimator.printVarphi(new File(filebase + ".coAT.varphi"));
 		estimator.printAssign(new File(filebase + ".coAT.assign")); 
@@ -0,0 +1,126 @@
+package cn.edu.bjut.utils;
+
+import java.util.Random;
+
+/**
+ * AliasTable draws from a fixed discrete distribution in constant time using
+ * Walker's alias method, built in linear time with Vose's algorithm. A table
+ * can be rebuilt in place as long as the new distribution fits its capacity.
+ *
+ * References:
+ * [1] Alastair J. Walker, 1977. An Efficient Method for Generating Discrete
+ * Random Variables with General Distributions. ACM Transactions on
+ * Mathematical Software, Vol. 3, No. 3, pp. 253-256.
+ * [2] Michael D. Vose, 1991. A Linear Algorithm for Generating Random Numbers
+ * with a Given Distribution. IEEE Transactions on Software Engineering, Vol.
+ * 17, No. 9, pp. 972-975.
+ *
+ * @author XU, Shuo (pzczxs@gmail.com)
+ */
+public class AliasTable {
+	private double[] prob;
+	private int[] alias;
+	// work lists of Vose's algorithm, kept so that a rebuild allocates nothing
+	private int[] small;
+	private int[] large;
+	private int size;
+	private double mass;
+
+	public AliasTable(final int capacity) {
+		this.prob = new double[capacity];
+		this.alias = new int[capacity];
+		this.small = new int[capacity];
+		this.large = new int[capacity];
+		this.size = 0;
+		this.mass = 0;
+	}
+
+	public AliasTable(final double[] weights) {
+		this(weights.length);
+
+		build(weights, weights.length);
+	}
+
+	/**
+	 * (re)build the table from the unnormalized weights[0..size), which 
+	 * allocates only if size exceeds the capacity of the table
+	 *
+	 * @param weights
+	 * @param size
+	 */
+	public void build(final double[] weights, final int size) {
+		if (size > prob.length) {
+			prob = new double[size];
+			alias = new int[size];
+			small = new int[size];
+			large = new int[size];
+		}
+
+		this.size = size;
+		this.mass = 0;
+		for (int i = 0; i < size; i++) {
+			mass += weights[i];
+		}
+		if (size == 0) {
+			return;
+		}
+
+		int ns = 0, nl = 0;
+		for (int i = 0; i < size; i++) {
+			prob[i] = weights[i] * size / mass;
+			alias[i] = i;
+			if (prob[i] < 1.0) {
+				small[ns++] = i;
+			} else {
+				large[nl++] = i;
+			}
+		}
+
+		while (ns > 0 && nl > 0) {
+			final int s = small[--ns];
+			final int l = large[--nl];
+			alias[s] = l;
+			prob[l] += prob[s] - 1.0;
+			if (prob[l] < 1.0) {
+				small[ns++] = l;
+			} else {
+				large[nl++] = l;
+			}
+		}
+
+		// the remaining columns are full up to rounding errors
+		while (nl > 0) {
+			prob[large[--nl]] = 1.0;
+		}
+		while (ns > 0) {
+			prob[small[--ns]] = 1.0;
+		}
+	}
+
+	/**
+	 * draw an index in [0, size) with a single uniform variate
+	 *
+	 * @param rand
+	 * @return
+	 */
+	public int sample(final Random rand) {
+		final double u = rand.nextDouble() * size;
+		final int i = Math.min((int) u, size - 1);
+
+		return (u - i < prob[i]) ? i : alias[i];
+	}
+
+	/**
+	 * @return the number of outcomes
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * @return the sum of the weights the table was built from
+	 */
+	public double getMass() {
+		return this.mass;
+	}
+}
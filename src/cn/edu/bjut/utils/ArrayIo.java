@@ -32,6 +32,7 @@ import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.text.DecimalFormat;
 import java.text.DecimalFormatSymbols;
 import java.text.NumberFormat;
@@ -62,6 +63,11 @@ import java.util.zip.ZipOutputStream;
  */
 public class ArrayIo {
 
+    /**
+     * number of elements converted at a time by the bulk vector methods
+     */
+    private static final int CHUNK = 8192;
+
     /**
      * Loads an integer matrix from a binary file, optionally a zip file. The
      * method actually reads a float matrix.
@@ -239,12 +245,65 @@ public class ArrayIo {
     public static int[] readIntVector(DataInputStream bw) throws IOException {
         int length = bw.readInt();
         int[] vector = new int[length];
-        for (int i = 0; i < length; i++) {
-            vector[i] = bw.readInt();
+        readInts(bw, vector, length);
+        return vector;
+    }
+
+    /**
+     * Read length ints into vector[0..length) in bulk, without a size prefix.
+     * 
+     * @param bw
+     * @param vector
+     * @param length
+     * @throws IOException
+     */
+    public static void readInts(DataInputStream bw, int[] vector, int length)
+        throws IOException {
+        byte[] buf = new byte[4 * Math.min(length, CHUNK)];
+        ByteBuffer bb = ByteBuffer.wrap(buf);
+        for (int i = 0; i < length; i += CHUNK) {
+            int n = Math.min(CHUNK, length - i);
+            bw.readFully(buf, 0, 4 * n);
+            bb.clear();
+            bb.asIntBuffer().get(vector, i, n);
         }
+    }
+
+    /**
+     * Read vector from file.
+     * 
+     * @param bw
+     * @return
+     * @throws IOException
+     */
+    public static long[] readLongVector(DataInputStream bw) throws IOException {
+        int length = bw.readInt();
+        long[] vector = new long[length];
+        readLongs(bw, vector, length);
         return vector;
     }
 
+    /**
+     * Read length longs into vector[0..length) in bulk, without a size
+     * prefix.
+     * 
+     * @param bw
+     * @param vector
+     * @param length
+     * @throws IOException
+     */
+    public static void readLongs(DataInputStream bw, long[] vector, int length)
+        throws IOException {
+        byte[] buf = new byte[8 * Math.min(length, CHUNK)];
+        ByteBuffer bb = ByteBuffer.wrap(buf);
+        for (int i = 0; i < length; i += CHUNK) {
+            int n = Math.min(CHUNK, length - i);
+            bw.readFully(buf, 0, 8 * n);
+            bb.clear();
+            bb.asLongBuffer().get(vector, i, n);
+        }
+    }
+
     public static double[][][] readDoubleTensor(DataInputStream bw)
         throws IOException {
         int slices = bw.readInt();
@@ -377,8 +436,59 @@ public class ArrayIo {
     public static void writeIntVector(DataOutputStream bw, int[] vector)
         throws IOException {
         bw.writeInt(vector.length);
-        for (int i = 0; i < vector.length; i++) {
-            bw.writeInt(vector[i]);
+        writeInts(bw, vector, vector.length);
+    }
+
+    /**
+     * Writes vector[0..length) in bulk, without a size prefix.
+     * 
+     * @param bw
+     * @param vector
+     * @param length
+     * @throws IOException
+     */
+    public static void writeInts(DataOutputStream bw, int[] vector, int length)
+        throws IOException {
+        byte[] buf = new byte[4 * Math.min(length, CHUNK)];
+        ByteBuffer bb = ByteBuffer.wrap(buf);
+        for (int i = 0; i < length; i += CHUNK) {
+            int n = Math.min(CHUNK, length - i);
+            bb.clear();
+            bb.asIntBuffer().put(vector, i, n);
+            bw.write(buf, 0, 4 * n);
+        }
+    }
+
+    /**
+     * Writes a long vector in the format size,v1,v2,...
+     * 
+     * @param bw
+     * @param vector
+     * @throws IOException
+     */
+    public static void writeLongVector(DataOutputStream bw, long[] vector)
+        throws IOException {
+        bw.writeInt(vector.length);
+        writeLongs(bw, vector, vector.length);
+    }
+
+    /**
+     * Writes vector[0..length) in bulk, without a size prefix.
+     * 
+     * @param bw
+     * @param vector
+     * @param length
+     * @throws IOException
+     */
+    public static void writeLongs(DataOutputStream bw, long[] vector, int length)
+        throws IOException {
+        byte[] buf = new byte[8 * Math.min(length, CHUNK)];
+        ByteBuffer bb = ByteBuffer.wrap(buf);
+        for (int i = 0; i < length; i += CHUNK) {
+            int n = Math.min(CHUNK, length - i);
+            bb.clear();
+            bb.asLongBuffer().put(vector, i, n);
+            bw.write(buf, 0, 8 * n);
         }
     }
 
@@ -578,6 +688,24 @@ public class ArrayIo {
         return dos;
     }
 
+    /**
+     * Replace file to by file from. File.renameTo replaces the target
+     * atomically on POSIX file systems; where it cannot overwrite an existing
+     * file, the target is deleted first.
+     * 
+     * @param from
+     * @param to
+     * @throws IOException
+     */
+    public static void replaceFile(File from, File to) throws IOException {
+        if (!from.renameTo(to)) {
+            to.delete();
+            if (!from.renameTo(to)) {
+                throw new IOException("Cannot rename " + from + " to " + to);
+            }
+        }
+    }
+
     /**
      * Close the data output, which results in flushing the write buffer and
      * closing the file.
@@ -292,7 +292,7 @@ public class CokusRandom extends Random {
     public double lastRand;
 
     @Override
-    public synchronized double nextGaussian() {
+    public double nextGaussian() {
         if (haveNextNextGaussian) {
             haveNextNextGaussian = false;
             return nextNextGaussian;
@@ -352,7 +352,7 @@ public class CokusRandom extends Random {
 	 * from that range. The mean of this distribution is 0.5. The variance is
 	 * 1/12.
 	 */
-	public synchronized double nextUniform() {
+	public double nextUniform() {
 		long l = ((long) (next(26)) << 27) + next(27);
 		return l / (double) (1L << 53);
 	}
@@ -362,12 +362,12 @@ public class CokusRandom extends Random {
 	 * from that range. The mean of this distribution is (b-a)/2. The variance
 	 * is (b-a)^2/12
 	 */
-	public synchronized double nextUniform(double a, double b) {
+	public double nextUniform(double a, double b) {
 		return a + (b - a) * nextUniform();
 	}
 
 	/** Draw a single sample from multinomial "a". */
-	public synchronized int nextDiscrete(double[] a) {
+	public int nextDiscrete(double[] a) {
 		double b = 0, r = nextUniform();
 		for (int i = 0; i < a.length; i++) {
 			b += a[i];
@@ -383,7 +383,7 @@ public class CokusRandom extends Random {
 	 * draw a single sample from (unnormalized) multinomial "a", with
 	 * normalizing factor "sum".
 	 */
-	public synchronized int nextDiscrete(double[] a, double sum) {
+	public int nextDiscrete(double[] a, double sum) {
 		double b = 0, r = nextUniform() * sum;
 		for (int i = 0; i < a.length; i++) {
 			b += a[i];
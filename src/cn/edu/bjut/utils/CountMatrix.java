@@ -0,0 +1,221 @@
+package cn.edu.bjut.utils;
+
+/**
+ * CountMatrix stores a rows x cols matrix of counts in row-major order in
+ * blocks of 2^shift rows, each one contiguous int[] of at most 2^30 cells, so
+ * that row r occupies getData(r)[offset(r), offset(r)+cols). A matrix of up to
+ * 2^30 cells, e.g., V=1M words x K=1000 topics, is a single block; larger ones
+ * such as V=5M x K=1000 are split by rows instead of overflowing the int index
+ * of a single array. The estimators keep their topic-word counts word-major
+ * (V x K), which makes the topic counts of a word one contiguous stripe for
+ * the sampling loops, and their document/author-topic counts as (M x K) or
+ * (A x K).
+ *
+ * The hot loops read and write the backing arrays directly through
+ * getData(r) and offset(r); all other code goes through get(), inc() and
+ * dec().
+ *
+ * @author XU, Shuo (pzczxs@gmail.com)
+ */
+public class CountMatrix {
+	private final static int BLOCK_CELLS = 1 << 30;
+
+	private final int rows;
+	private final int cols;
+	private final int shift; // rows per block: 2^shift
+	private final int mask;
+	private final int[][] blocks;
+
+	public CountMatrix(final int rows, final int cols) {
+		this(rows, cols, BLOCK_CELLS);
+	}
+
+	/**
+	 * split into blocks of at most blockCells cells instead of 2^30, e.g., to
+	 * exercise several blocks on a small matrix
+	 *
+	 * @param rows
+	 * @param cols
+	 * @param blockCells
+	 */
+	CountMatrix(final int rows, final int cols, final int blockCells) {
+		if (cols > blockCells) {
+			throw new IllegalArgumentException("The count matrix of size " + rows + " x " + cols + " has too many columns.");
+		}
+
+		final int shift = blockShift(rows, cols, blockCells);
+		this.rows = rows;
+		this.cols = cols;
+		this.shift = shift;
+		this.mask = (1 << shift) - 1;
+		this.blocks = new int[(int) (((long) rows + mask) >>> shift)][];
+		for (int b = 0; b < blocks.length; b++) {
+			final long first = (long) b << shift;
+			blocks[b] = new int[(int) Math.min(1L << shift, rows - first) * cols];
+		}
+	}
+
+	/**
+	 * @return log2 of the number of rows per block: the smallest power of two
+	 *         that covers all rows, or the largest one whose rows of cols
+	 *         cells fit into blockCells
+	 */
+	static int blockShift(final int rows, final int cols, final int blockCells) {
+		int shift = 0;
+		while (shift < 30 && (1L << shift) < rows && (2L << shift) * cols <= blockCells) {
+			shift++;
+		}
+
+		return shift;
+	}
+
+	public int getRows() {
+		return this.rows;
+	}
+
+	public int getCols() {
+		return this.cols;
+	}
+
+	/**
+	 * @return the backing array of the block of row r, row r starts at
+	 *         offset(r)
+	 */
+	public int[] getData(final int r) {
+		return this.blocks[r >>> shift];
+	}
+
+	/**
+	 * @return the offset of row r in getData(r)
+	 */
+	public int offset(final int r) {
+		return (r & mask) * cols;
+	}
+
+	public int get(final int r, final int c) {
+		return blocks[r >>> shift][(r & mask) * cols + c];
+	}
+
+	public void set(final int r, final int c, final int value) {
+		blocks[r >>> shift][(r & mask) * cols + c] = value;
+	}
+
+	public int inc(final int r, final int c) {
+		return ++blocks[r >>> shift][(r & mask) * cols + c];
+	}
+
+	public int dec(final int r, final int c) {
+		return --blocks[r >>> shift][(r & mask) * cols + c];
+	}
+
+	/**
+	 * copy row r into dst[0..cols)
+	 *
+	 * @param r
+	 * @param dst
+	 */
+	public void getRow(final int r, final int[] dst) {
+		System.arraycopy(blocks[r >>> shift], (r & mask) * cols, dst, 0, cols);
+	}
+
+	/**
+	 * @return hist[n] = number of cells with count n &gt; 0, the sufficient
+	 *         statistics of a symmetric DirichletEstimation.estimateAlphaHist
+	 */
+	public int[] histogram() {
+		int max = 0;
+		for (int[] data : blocks) {
+			for (int i = 0; i < data.length; i++) {
+				max = Math.max(max, data[i]);
+			}
+		}
+
+		final int[] hist = new int[max + 1];
+		for (int[] data : blocks) {
+			for (int i = 0; i < data.length; i++) {
+				hist[data[i]]++;
+			}
+		}
+		hist[0] = 0;
+
+		return hist;
+	}
+
+	/**
+	 * @param sums
+	 *            e.g., the topic totals of the columns
+	 * @return hist[n] = number of entries of sums equal to n
+	 */
+	public static int[] histogram(final int[] sums) {
+		int max = 0;
+		for (int i = 0; i < sums.length; i++) {
+			max = Math.max(max, sums[i]);
+		}
+
+		final int[] hist = new int[max + 1];
+		for (int i = 0; i < sums.length; i++) {
+			hist[sums[i]]++;
+		}
+
+		return hist;
+	}
+
+	/**
+	 * overwrite this matrix with the contents of src of the same size
+	 *
+	 * @param src
+	 */
+	public void copyFrom(final CountMatrix src) {
+		for (int b = 0; b < blocks.length; b++) {
+			System.arraycopy(src.blocks[b], 0, blocks[b], 0, blocks[b].length);
+		}
+	}
+
+	/**
+	 * add the changes that the copies made relative to this matrix to rows
+	 * [from, to), i.e., x += sum_p (copies[p] - x)
+	 *
+	 * @param copies
+	 * @param from
+	 * @param to
+	 */
+	public void merge(final CountMatrix[] copies, final int from, final int to) {
+		merge(copies, from, to, null);
+	}
+
+	/**
+	 * merge as above, and if cache is not null, also sum lgamma(n + a) -
+	 * lgamma(n' + a) over the changed cells, where n' and n are the count
+	 * before and after, e.g., to track a log-likelihood, see LogLikelihood
+	 *
+	 * @param copies
+	 * @param from
+	 * @param to
+	 * @param cache
+	 *            the lgamma values, or null
+	 * @return the sum over the changed cells, 0 if cache is null
+	 */
+	public double merge(final CountMatrix[] copies, final int from, final int to, final LgammaCache cache) {
+		double delta = 0;
+		for (int r = from; r < to;) {
+			// the rows [r, next) lie in the same block
+			final int b = r >>> shift;
+			final int next = (int) Math.min(to, (long) (b + 1) << shift);
+			final int[] data = blocks[b];
+			final int end = offset(next - 1) + cols;
+			for (int i = offset(r); i < end; i++) {
+				int sum = data[i];
+				for (int p = 0; p < copies.length; p++) {
+					sum += copies[p].blocks[b][i] - data[i];
+				}
+				if (cache != null && sum != data[i]) {
+					delta += cache.get(sum) - cache.get(data[i]);
+				}
+				data[i] = sum;
+			}
+			r = next;
+		}
+
+		return delta;
+	}
+}
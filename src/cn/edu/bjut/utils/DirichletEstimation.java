@@ -27,6 +27,9 @@ import static cn.edu.bjut.utils.Gamma.invdigamma;
 import static cn.edu.bjut.utils.Gamma.lgamma;
 import static cn.edu.bjut.utils.Gamma.trigamma;
 
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
 /**
  * DirichletEstimation provides a number of methods to estimate parameters of a
  * Dirichlet distribution and the Dirichlet-multinomial (Polya) distribution.
@@ -788,6 +791,342 @@ public class DirichletEstimation {
 		return alpha;
 	}
 
+	/**
+	 * estimateAlphaHist with the Gamma(1.001, 1) prior and the 200 iterations
+	 * that MALLET uses to optimize the alpha of its topic models
+	 * 
+	 * @param countHist
+	 * @param lengthHist
+	 * @param alpha
+	 *            [in/out]
+	 * @param nthreads
+	 *            number of threads over the topics
+	 * @return number of iterations
+	 */
+	public static int estimateAlphaHist(int[][] countHist, int[] lengthHist,
+			double[] alpha, int nthreads) {
+		return estimateAlphaHist(countHist, lengthHist, alpha, 1.001, 1.0,
+				200, nthreads);
+	}
+
+	/**
+	 * estimateAlphaHist(countHist, lengthHist, alpha, nthreads) on the given
+	 * thread pool, e.g., the one of an estimator that optimizes alpha after
+	 * every few sweeps
+	 * 
+	 * @param countHist
+	 * @param lengthHist
+	 * @param alpha
+	 *            [in/out]
+	 * @param nthreads
+	 * @param pool
+	 *            with at least nthreads threads, or null
+	 * @return number of iterations
+	 */
+	public static int estimateAlphaHist(int[][] countHist, int[] lengthHist,
+			double[] alpha, int nthreads, ExecutorService pool) {
+		return estimateAlphaHist(countHist, lengthHist, alpha, 1.001, 1.0,
+				200, nthreads, pool);
+	}
+
+	/**
+	 * ML estimate of a symmetric alpha by estimateAlphaHist
+	 * 
+	 * @param countHist
+	 * @param lengthHist
+	 * @param dim
+	 * @param alpha
+	 * @return the new alpha
+	 */
+	public static double estimateAlphaHist(int[] countHist, int[] lengthHist,
+			int dim, double alpha) {
+		return estimateAlphaHist(countHist, lengthHist, dim, alpha, 0,
+				Double.POSITIVE_INFINITY, 200);
+	}
+
+	/**
+	 * fixpoint iteration on an asymmetric alpha from histograms of the counts
+	 * instead of the counts themselves (Eq. 55 in Minka (2003)). The sums
+	 * over rows of digamma(n + alpha) - digamma(alpha) only depend on how many
+	 * rows have a count n, and the difference is accumulated by the recurrence
+	 * digamma(x + n) = digamma(x + n - 1) + 1 / (x + n - 1), so an iteration
+	 * costs O(K * maxcount) instead of O(M * K) digamma evaluations. The
+	 * update includes a Gamma(shape, scale) prior on every alpha_k as in
+	 * MALLET; shape = 0 and scale = infinity give the ML estimate.
+	 * 
+	 * With nthreads &gt; 1, the topics of every iteration are updated in
+	 * parallel; the result does not depend on the number of threads.
+	 * 
+	 * Reference: Hanna M. Wallach, 2008. Structured Topic Models for Language.
+	 * PhD Thesis, University of Cambridge, Section 2.4.
+	 * 
+	 * @param countHist
+	 *            countHist[k][n] = number of rows with count n &gt; 0 in column k
+	 * @param lengthHist
+	 *            lengthHist[n] = number of rows with total count n
+	 * @param alpha
+	 *            [in/out]
+	 * @param shape
+	 * @param scale
+	 * @param maxiter
+	 * @param nthreads
+	 * @return number of iterations
+	 */
+	public static int estimateAlphaHist(int[][] countHist, int[] lengthHist,
+			double[] alpha, double shape, double scale, int maxiter,
+			int nthreads) {
+		if (nthreads <= 1) {
+			return estimateAlphaHist(countHist, lengthHist, alpha, shape,
+					scale, maxiter, 1, null);
+		}
+		ExecutorService pool = Executors.newFixedThreadPool(nthreads);
+		try {
+			return estimateAlphaHist(countHist, lengthHist, alpha, shape,
+					scale, maxiter, nthreads, pool);
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * estimateAlphaHist(countHist, lengthHist, alpha, shape, scale, maxiter,
+	 * nthreads) whose topics run on the given thread pool, which is left
+	 * running; without a pool the topics are updated serially
+	 * 
+	 * @param countHist
+	 * @param lengthHist
+	 * @param alpha
+	 *            [in/out]
+	 * @param shape
+	 * @param scale
+	 * @param maxiter
+	 * @param nthreads
+	 * @param pool
+	 *            with at least nthreads threads, or null
+	 * @return number of iterations
+	 */
+	public static int estimateAlphaHist(final int[][] countHist,
+			int[] lengthHist, final double[] alpha, final double shape,
+			final double scale, int maxiter, int nthreads, ExecutorService pool) {
+		int K = alpha.length;
+		double prec = 1e-5;
+		final double[] alphanew = new double[K];
+		final double[] denom = new double[1];
+
+		ParallelFor topics = null;
+		if (nthreads > 1 && pool != null) {
+			topics = new ParallelFor(nthreads, pool) {
+				@Override
+				public void process(int k, int thread) {
+					alphanew[k] = alphaHist(countHist[k], alpha[k], denom[0],
+							shape, scale);
+				}
+			};
+		}
+
+		for (int i = 0; i < maxiter; i++) {
+			denom[0] = digammaDiffHist(lengthHist, Vectors.sum(alpha));
+			if (topics == null) {
+				for (int k = 0; k < K; k++) {
+					alphanew[k] = alphaHist(countHist[k], alpha[k],
+							denom[0], shape, scale);
+				}
+			} else {
+				topics.loop(K);
+			}
+
+			double change = 0;
+			for (int k = 0; k < K; k++) {
+				change = Math.max(change, Math.abs(alphanew[k] - alpha[k])
+						/ alpha[k]);
+				alpha[k] = alphanew[k];
+			}
+			if (change < prec) {
+				return i + 1;
+			}
+		}
+		return maxiter;
+	}
+
+	/**
+	 * single-threaded estimateAlphaHist
+	 */
+	public static int estimateAlphaHist(int[][] countHist, int[] lengthHist,
+			double[] alpha, double shape, double scale, int maxiter) {
+		return estimateAlphaHist(countHist, lengthHist, alpha, shape, scale,
+				maxiter, 1);
+	}
+
+	/**
+	 * fixpoint iteration on a symmetric alpha of a dim-dimensional Dirichlet
+	 * from histograms of the counts, e.g., beta of the topic-word
+	 * distributions with dim = V, see estimateAlphaHist
+	 * 
+	 * @param countHist
+	 *            countHist[n] = number of cells with count n &gt; 0
+	 * @param lengthHist
+	 *            lengthHist[n] = number of rows with total count n
+	 * @param dim
+	 *            number of columns
+	 * @param alpha
+	 * @param shape
+	 * @param scale
+	 * @param maxiter
+	 * @return the new alpha
+	 */
+	public static double estimateAlphaHist(int[] countHist, int[] lengthHist,
+			int dim, double alpha, double shape, double scale, int maxiter) {
+		double prec = 1e-5;
+
+		for (int i = 0; i < maxiter; i++) {
+			double denom = dim * digammaDiffHist(lengthHist, dim * alpha);
+			double alphanew = alphaHist(countHist, alpha, denom, shape, scale);
+			if (Math.abs(alphanew - alpha) / alpha < prec) {
+				return alphanew;
+			}
+			alpha = alphanew;
+		}
+		return alpha;
+	}
+
+	/**
+	 * one fixpoint update of alpha_k given the denominator
+	 */
+	private static double alphaHist(int[] countHist, double alpha,
+			double denom, double shape, double scale) {
+		double num = digammaDiffHist(countHist, alpha);
+		return Math.max((alpha * num + shape) / (denom + 1 / scale), 1e-10);
+	}
+
+	/**
+	 * @param hist
+	 *            hist[n] = number of rows with count n
+	 * @param a
+	 * @return sum_n hist[n] * (digamma(a + n) - digamma(a))
+	 */
+	private static double digammaDiffHist(int[] hist, double a) {
+		double sum = 0;
+		double diff = 0;
+		for (int n = 1; n < hist.length; n++) {
+			diff += 1 / (a + n - 1);
+			sum += hist[n] * diff;
+		}
+		return sum;
+	}
+
+	/**
+	 * histograms of the columns of a count matrix, computed in parallel over
+	 * the columns with nthreads &gt; 1
+	 * 
+	 * @param nmk
+	 *            count data (documents in rows, topic associations in cols)
+	 * @param nthreads
+	 * @return hist[k][n] = number of rows with count n &gt; 0 in column k
+	 */
+	public static int[][] countHistograms(final int[][] nmk, int nthreads) {
+		final int K = nmk[0].length;
+		final int[][] hist = new int[K][];
+
+		if (nthreads <= 1) {
+			for (int k = 0; k < K; k++) {
+				hist[k] = columnHistogram(nmk, k);
+			}
+		} else {
+			ParallelFor columns = new ParallelFor(nthreads) {
+				@Override
+				public void process(int k, int thread) {
+					hist[k] = columnHistogram(nmk, k);
+				}
+			};
+			columns.loopOnce(K);
+		}
+		return hist;
+	}
+
+	private static int[] columnHistogram(int[][] nmk, int k) {
+		int max = 0;
+		for (int m = 0; m < nmk.length; m++) {
+			max = Math.max(max, nmk[m][k]);
+		}
+		int[] hist = new int[max + 1];
+		for (int m = 0; m < nmk.length; m++) {
+			hist[nmk[m][k]]++;
+		}
+		hist[0] = 0;
+		return hist;
+	}
+
+	/**
+	 * @param nm
+	 *            total counts across rows
+	 * @return hist[n] = number of rows with total count n
+	 */
+	public static int[] lengthHistogram(int[] nm) {
+		int[] hist = new int[Vectors.max(nm) + 1];
+		for (int m = 0; m < nm.length; m++) {
+			hist[nm[m]]++;
+		}
+		return hist;
+	}
+
+	/**
+	 * ML estimate of an asymmetric alpha from counts like estimateAlpha(nmk),
+	 * but by the Polya fixpoint on histograms of nmk, see estimateAlphaHist.
+	 * nmk is scanned once to build the histograms, every iteration then costs
+	 * O(K * maxcount).
+	 * 
+	 * @param nmk
+	 *            count data (documents in rows, topic associations in cols)
+	 * @param alpha
+	 *            [in/out] initial guess, e.g., guessAlpha(nmk)
+	 * @param nthreads
+	 *            number of threads over the topics
+	 * @return number of iterations
+	 */
+	public static int estimateAlpha(int[][] nmk, double[] alpha, int nthreads) {
+		int[] nm = new int[nmk.length];
+		for (int m = 0; m < nm.length; m++) {
+			nm[m] = Vectors.sum(nmk[m]);
+		}
+		return estimateAlphaHist(countHistograms(nmk, nthreads),
+				lengthHistogram(nm), alpha, 0, Double.POSITIVE_INFINITY, 200,
+				nthreads);
+	}
+
+	/**
+	 * estimateAlphaMap(nmk, nm, alpha, a, b) on histograms of the counts: the
+	 * histograms of all topics are pooled into one, after which the fixpoint
+	 * iteration is independent of M.
+	 * 
+	 * @param nmk
+	 *            count data (documents in rows, topic associations in cols)
+	 * @param nm
+	 *            total counts across rows
+	 * @param alpha
+	 * @param a
+	 * @param b
+	 * @param nthreads
+	 *            number of threads to build the histograms
+	 * @return MAP estimate of the symmetric alpha
+	 */
+	public static double estimateAlphaMap(int[][] nmk, int[] nm,
+			double alpha, double a, double b, int nthreads) {
+		int[][] hist = countHistograms(nmk, nthreads);
+		int max = 0;
+		for (int k = 0; k < hist.length; k++) {
+			max = Math.max(max, hist[k].length);
+		}
+		int[] pooled = new int[max];
+		for (int k = 0; k < hist.length; k++) {
+			for (int n = 1; n < hist[k].length; n++) {
+				pooled[n] += hist[k][n];
+			}
+		}
+		// shape a - 1 and rate b as in estimateAlphaMap
+		return estimateAlphaHist(pooled, lengthHistogram(nm), hist.length,
+				alpha, a - 1, 1 / b, 200);
+	}
+
 	// //////////////////////////////
 
 	/**
@@ -926,6 +1265,20 @@ public class DirichletEstimation {
 		double[] astart = Vectors.ones(K, 0.1);
 		System.out.println(Vectors.print(estimateAlphaMap(nmk, nm, astart, 0.5,
 				0.5)));
+
+		System.out
+				.println("estimated scalar alpha from count histograms via MAP estimator");
+		long start = System.nanoTime();
+		System.out.println(estimateAlphaMap(nmk, nm, 0.1, 0.5, 0.5, 2));
+		System.out.println((System.nanoTime() - start) / 1e6 + " ms");
+
+		System.out
+				.println("estimated vector alpha from count histograms (ML Polya)");
+		astart = Vectors.ones(K, 0.1);
+		start = System.nanoTime();
+		estimateAlpha(nmk, astart, 2);
+		System.out.println(Vectors.print(astart));
+		System.out.println((System.nanoTime() - start) / 1e6 + " ms");
 	}
 
 	public static void testDirichlet() {
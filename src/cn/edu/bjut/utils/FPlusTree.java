@@ -0,0 +1,117 @@
+package cn.edu.bjut.utils;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * FPlusTree keeps n non-negative weights in the leaves of a complete binary
+ * tree whose inner nodes hold the sums of their children, so that changing a
+ * weight and drawing an index proportional to the weights both take O(log n).
+ * It is the sampler of choice when a distribution changes in a few entries
+ * between consecutive draws, e.g., the smoothing weights alpha_k*beta/(nk+Vbeta)
+ * of the sparse samplers after one token has been reassigned.
+ *
+ * Reference: Hsiang-Fu Yu, Cho-Jui Hsieh, Hyokun Yun, S. V. N.
+ * Vishwanathan, and Inderjit S. Dhillon, 2015. A Scalable Asynchronous
+ * Distributed Algorithm for Topic Modeling. Proceedings of the 24th
+ * International Conference on World Wide Web, pp. 1340-1350.
+ *
+ * @author XU, Shuo (pzczxs@gmail.com)
+ */
+public class FPlusTree {
+	private final int leaves; // power of two, leaf i is node leaves + i
+	private final double[] tree; // tree[1] is the root
+	private int size;
+
+	public FPlusTree(final int capacity) {
+		int leaves = 1;
+		while (leaves < capacity) {
+			leaves <<= 1;
+		}
+
+		this.leaves = leaves;
+		this.tree = new double[leaves << 1];
+		this.size = 0;
+	}
+
+	public FPlusTree(final double[] weights) {
+		this(weights.length);
+
+		build(weights, weights.length);
+	}
+
+	/**
+	 * (re)build the tree from the weights[0..size) in O(size)
+	 *
+	 * @param weights
+	 * @param size
+	 */
+	public void build(final double[] weights, final int size) {
+		if (size > leaves) {
+			throw new IllegalArgumentException("The tree holds at most " + leaves + " weights.");
+		}
+
+		this.size = size;
+		Arrays.fill(tree, 0);
+		System.arraycopy(weights, 0, tree, leaves, size);
+		for (int i = leaves - 1; i > 0; i--) {
+			tree[i] = tree[i << 1] + tree[(i << 1) + 1];
+		}
+	}
+
+	public double get(final int i) {
+		return tree[leaves + i];
+	}
+
+	/**
+	 * set weight i to w and update the sums on the path to the root
+	 *
+	 * @param i
+	 * @param w
+	 */
+	public void set(final int i, final double w) {
+		int node = leaves + i;
+		final double delta = w - tree[node];
+		for (; node > 0; node >>= 1) {
+			tree[node] += delta;
+		}
+	}
+
+	/**
+	 * @param u
+	 *            value in [0, getMass())
+	 * @return the index i whose weight interval contains u
+	 */
+	public int sample(double u) {
+		int node = 1;
+		while (node < leaves) {
+			final int left = node << 1;
+			if (u < tree[left] || tree[left + 1] <= 0) {
+				node = left;
+			} else {
+				u -= tree[left];
+				node = left + 1;
+			}
+		}
+
+		return Math.min(node - leaves, size - 1);
+	}
+
+	public int sample(final Random rand) {
+		return sample(rand.nextDouble() * tree[1]);
+	}
+
+	/**
+	 * @return the number of weights
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * @return the sum of the weights
+	 */
+	public double getMass() {
+		return this.tree[1];
+	}
+}
@@ -0,0 +1,28 @@
+package cn.edu.bjut.utils;
+
+/**
+ * Read access to a ragged array of non-negative ints indexed by (m, n), such
+ * as the word ids of the tokens of a corpus, whether it is held in memory
+ * (PackedRaggedArray) or read from a memory-mapped file (MappedCorpus)
+ * 
+ * @author XU, Shuo (pzczxs@gmail.com)
+ */
+public interface IRaggedArray {
+    /**
+     * @return the number of rows
+     */
+    public int getNumRows();
+
+    /**
+     * @param m
+     * @return the length of row m
+     */
+    public int length(final int m);
+
+    /**
+     * @param m
+     * @param n
+     * @return element n of row m
+     */
+    public int get(final int m, final int n);
+}
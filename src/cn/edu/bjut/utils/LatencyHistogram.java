@@ -0,0 +1,115 @@
+package cn.edu.bjut.utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * LatencyHistogram records durations in nanoseconds into log-linear buckets:
+ * values below 64 ns have a bucket each, and every power of two above is split
+ * into 32 buckets, so a quantile is reported with a relative error of at most
+ * about 3%. Recording takes no lock and allocates nothing, so any number of
+ * threads can record into one histogram, e.g., the latency of every request
+ * of an online service, while another thread reads quantiles such as the p99.
+ *
+ * @author XU, Shuo (pzczxs@gmail.com)
+ */
+public class LatencyHistogram {
+	private final static int LINEAR = 64; // values [0, 64) are exact
+	private final static int SUB_BITS = 5; // 32 buckets per power of two
+	private final static int BUCKETS = LINEAR + (63 - 6) * (1 << SUB_BITS);
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong max = new AtomicLong();
+
+	/**
+	 * @param nanos
+	 *            a duration, e.g., the difference of two System.nanoTime()
+	 */
+	public void record(final long nanos) {
+		final long v = Math.max(nanos, 0);
+		counts.incrementAndGet(bucket(v));
+		count.incrementAndGet();
+
+		long m = max.get();
+		while (v > m && !max.compareAndSet(m, v)) {
+			m = max.get();
+		}
+	}
+
+	private static int bucket(final long v) {
+		if (v < LINEAR) {
+			return (int) v;
+		}
+
+		final int e = 63 - Long.numberOfLeadingZeros(v); // e >= 6
+		final int sub = (int) (v >>> (e - SUB_BITS)) & ((1 << SUB_BITS) - 1);
+		return LINEAR + (e - 6) * (1 << SUB_BITS) + sub;
+	}
+
+	/*
+	 * the largest value that falls into bucket i
+	 * */
+	private static long upper(final int i) {
+		if (i < LINEAR) {
+			return i;
+		}
+
+		final int e = (i - LINEAR) / (1 << SUB_BITS) + 6;
+		final int sub = (i - LINEAR) % (1 << SUB_BITS);
+		return (((long) (1 << SUB_BITS) + sub + 1) << (e - SUB_BITS)) - 1;
+	}
+
+	/**
+	 * @param q
+	 *            quantile in [0, 1], e.g., 0.99 for the p99
+	 * @return the q-quantile of the recorded durations in nanoseconds, 0 if
+	 *         nothing has been recorded
+	 */
+	public long quantile(final double q) {
+		final long n = count.get();
+		if (n == 0) {
+			return 0;
+		}
+
+		final long rank = Math.max(1, (long) Math.ceil(q * n));
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += counts.get(i);
+			if (seen >= rank) {
+				return Math.min(upper(i), max.get());
+			}
+		}
+
+		return max.get();
+	}
+
+	public long getCount() {
+		return this.count.get();
+	}
+
+	public long getMax() {
+		return this.max.get();
+	}
+
+	public void reset() {
+		for (int i = 0; i < BUCKETS; i++) {
+			counts.set(i, 0);
+		}
+		count.set(0);
+		max.set(0);
+	}
+
+	/**
+	 * @return e.g. "n=1000, p50=0.412 ms, p90=0.655 ms, p99=1.210 ms, max=2.034 ms"
+	 */
+	@Override
+	public String toString() {
+		return "n=" + getCount() + ", p50=" + millis(quantile(0.5)) + ", p90=" + millis(quantile(0.9))
+				+ ", p99=" + millis(quantile(0.99)) + ", max=" + millis(getMax());
+	}
+
+	private static String millis(final long nanos) {
+		return String.format("%.3f ms", nanos / 1e6);
+	}
+}
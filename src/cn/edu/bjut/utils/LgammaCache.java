@@ -0,0 +1,42 @@
+package cn.edu.bjut.utils;
+
+/**
+ * LgammaCache tabulates lgamma(n + a) for the integer counts n = 0, ...,
+ * size-1 and a fixed a, e.g., a Dirichlet hyperparameter. Counts in the
+ * likelihood of a topic model are mostly small, so nearly every evaluation is
+ * a table lookup instead of a Lanczos series; larger counts fall back to
+ * Gamma.lgamma.
+ *
+ * @author XU, Shuo (pzczxs@gmail.com)
+ */
+public class LgammaCache {
+	public final static int DEFAULT_SIZE = 1 << 12;
+
+	private final double a;
+	private final double[] table;
+
+	public LgammaCache(final double a) {
+		this(a, DEFAULT_SIZE);
+	}
+
+	public LgammaCache(final double a, final int size) {
+		this.a = a;
+		this.table = new double[size];
+		for (int n = 0; n < size; n++) {
+			table[n] = Gamma.lgamma(n + a);
+		}
+	}
+
+	/**
+	 * @param n
+	 *            non-negative count
+	 * @return lgamma(n + a)
+	 */
+	public double get(final int n) {
+		return (n < table.length) ? table[n] : Gamma.lgamma(n + a);
+	}
+
+	public double getA() {
+		return this.a;
+	}
+}
@@ -0,0 +1,224 @@
+package cn.edu.bjut.utils;
+
+/**
+ * LogLikelihood evaluates the two Dirichlet-multinomial factors of the log
+ * joint likelihood log p(w, z) of a topic model from its count matrices:
+ * <pre>
+ * words:  log p(w|z) = sum_k [lgamma(V beta) - lgamma(n_k + V beta)
+ *                             + sum_t (lgamma(n_tk + beta) - lgamma(beta))]
+ * topics: log p(z)   = sum_r [lgamma(K alpha) - lgamma(n_r + K alpha)
+ *                             + sum_k (lgamma(n_rk + alpha) - lgamma(alpha))]
+ * </pre>
+ * where r runs over the documents (LDA), authors (AT) or co-author pairs
+ * (coAT). A zero count contributes nothing to the inner sums, so only the
+ * non-zero cells are evaluated, and their lgamma values come from an
+ * LgammaCache that is rebuilt only when the hyperparameter changes (an
+ * asymmetric alpha, see topics(nrk, double[]), is evaluated directly). The
+ * sparse row-topic counts are evaluated over their non-zero entries.
+ *
+ * The dense V x K cells of the word factor are evaluated only once: from then
+ * on, the word-topic part sum_tk (lgamma(n_tk + beta) - lgamma(beta)) is
+ * tracked by the deltas of the samplers (see moved() and add()), and later
+ * evaluations of log p(w|z) cost O(K). A changed beta starts over, and an
+ * estimator drops its LogLikelihood whenever it rebuilds its counts.
+ *
+ * Reference: Thomas L. Griffiths and Mark Steyvers, 2004. Finding Scientific
+ * Topics. Proceedings of the National Academy of Sciences of the United
+ * States of America, Vol. 101, No. Suppl, pp. 5228-5235.
+ *
+ * @author XU, Shuo (pzczxs@gmail.com)
+ */
+public class LogLikelihood {
+	private LgammaCache betaCache;
+	private LgammaCache alphaCache;
+	private int[] idx;
+
+	private boolean tracking; // cells is up to date
+	private int V;
+	private double cells; // sum_tk (lgamma(n_tk + beta) - lgamma(beta))
+
+	/**
+	 * log p(w|z), from the tracked word-topic part in O(K) if possible;
+	 * otherwise ntk is evaluated in O(V K) and tracking starts
+	 *
+	 * @param ntk
+	 *            word-topic counts, V x K
+	 * @param nk
+	 *            topic totals, K
+	 * @param beta
+	 * @return log p(w|z)
+	 */
+	public double words(final CountMatrix ntk, final int[] nk, final double beta) {
+		if (!isTracking(beta)) {
+			track(ntk, beta);
+		}
+
+		return words(nk, beta);
+	}
+
+	/*
+	 * log p(w|z) from the tracked word-topic part and nk
+	 * */
+	private double words(final int[] nk, final double beta) {
+		final int K = nk.length;
+		final double Vbeta = V * beta;
+		final double lgammaVbeta = Gamma.lgamma(Vbeta);
+		double loglik = cells;
+		for (int k = 0; k < K; k++) {
+			loglik += lgammaVbeta - Gamma.lgamma(nk[k] + Vbeta);
+		}
+
+		return loglik;
+	}
+
+	/*
+	 * evaluate the word-topic part of ntk over its non-zero cells and start
+	 * tracking it
+	 * */
+	private void track(final CountMatrix ntk, final double beta) {
+		final int K = ntk.getCols();
+		this.V = ntk.getRows();
+		if (betaCache == null || betaCache.getA() != beta) {
+			betaCache = new LgammaCache(beta);
+		}
+
+		final double lgammaBeta = betaCache.get(0);
+		double sum = 0;
+		for (int t = 0; t < V; t++) {
+			final int[] counts = ntk.getData(t);
+			final int end = ntk.offset(t) + K;
+			for (int i = ntk.offset(t); i < end; i++) {
+				if (counts[i] != 0) {
+					sum += betaCache.get(counts[i]) - lgammaBeta;
+				}
+			}
+		}
+		this.cells = sum;
+		this.tracking = true;
+	}
+
+	/**
+	 * @return true if the word-topic part with beta is being tracked
+	 */
+	public boolean isTracking(final double beta) {
+		return tracking && betaCache.getA() == beta;
+	}
+
+	/**
+	 * @return the cache of lgamma(n + beta) of the tracked word-topic part,
+	 *         null while nothing is tracked
+	 */
+	public LgammaCache getTrackedCache() {
+		return tracking ? betaCache : null;
+	}
+
+	/**
+	 * the change of the word-topic part when a token of word t has moved from
+	 * topic k to topic kk, i.e., lgamma(to + beta) - lgamma(to - 1 + beta) -
+	 * lgamma(from + 1 + beta) + lgamma(from + beta), 0 while nothing is tracked
+	 *
+	 * @param from
+	 *            n_tk after the move
+	 * @param to
+	 *            n_tkk after the move
+	 * @return the delta to add()
+	 */
+	public double moved(final int from, final int to) {
+		if (!tracking) {
+			return 0;
+		}
+
+		return betaCache.get(to) - betaCache.get(to - 1) - betaCache.get(from + 1) + betaCache.get(from);
+	}
+
+	/**
+	 * add the deltas of moved() collected by a sampler
+	 *
+	 * @param delta
+	 */
+	public void add(final double delta) {
+		this.cells += delta;
+	}
+
+	/**
+	 * @param nrk
+	 *            row-topic counts, e.g., document-topic or author-topic
+	 * @param alpha
+	 * @return log p(z)
+	 */
+	public double topics(final SparseCountMatrix nrk, final double alpha) {
+		final int R = nrk.getRows();
+		final int K = nrk.getCols();
+		if (alphaCache == null || alphaCache.getA() != alpha) {
+			alphaCache = new LgammaCache(alpha);
+		}
+		if (idx == null || idx.length < K) {
+			idx = new int[K];
+		}
+
+		final double lgammaAlpha = alphaCache.get(0);
+		final double Kalpha = K * alpha;
+		final double lgammaKalpha = Gamma.lgamma(Kalpha);
+		double loglik = 0;
+		for (int r = 0; r < R; r++) {
+			final int nnz = nrk.nonZeros(r, idx);
+			int nr = 0;
+			for (int i = 0; i < nnz; i++) {
+				final int count = nrk.get(r, idx[i]);
+				loglik += alphaCache.get(count) - lgammaAlpha;
+				nr += count;
+			}
+			loglik += lgammaKalpha - Gamma.lgamma(nr + Kalpha);
+		}
+
+		return loglik;
+	}
+
+	/**
+	 * log p(z) with an asymmetric alpha, i.e., lgamma(alpha) and K alpha above
+	 * become lgamma(alpha_k) and sum_k alpha_k; a symmetric alpha is passed on
+	 * to the cached evaluation
+	 *
+	 * @param nrk
+	 *            row-topic counts, e.g., document-topic or author-topic
+	 * @param alpha
+	 *            size: K
+	 * @return log p(z)
+	 */
+	public double topics(final SparseCountMatrix nrk, final double[] alpha) {
+		final int R = nrk.getRows();
+		final int K = nrk.getCols();
+		boolean symmetric = true;
+		for (int k = 1; k < K; k++) {
+			symmetric &= alpha[k] == alpha[0];
+		}
+		if (symmetric) {
+			return topics(nrk, alpha[0]);
+		}
+		if (idx == null || idx.length < K) {
+			idx = new int[K];
+		}
+
+		final double[] lgammaAlpha = new double[K];
+		double Kalpha = 0;
+		for (int k = 0; k < K; k++) {
+			lgammaAlpha[k] = Gamma.lgamma(alpha[k]);
+			Kalpha += alpha[k];
+		}
+		final double lgammaKalpha = Gamma.lgamma(Kalpha);
+		double loglik = 0;
+		for (int r = 0; r < R; r++) {
+			final int nnz = nrk.nonZeros(r, idx);
+			int nr = 0;
+			for (int i = 0; i < nnz; i++) {
+				final int k = idx[i];
+				final int count = nrk.get(r, k);
+				loglik += Gamma.lgamma(count + alpha[k]) - lgammaAlpha[k];
+				nr += count;
+			}
+			loglik += lgammaKalpha - Gamma.lgamma(nr + Kalpha);
+		}
+
+		return loglik;
+	}
+}
@@ -0,0 +1,135 @@
+package cn.edu.bjut.utils;
+
+import java.util.Arrays;
+
+/**
+ * LongIntHashMap maps non-negative long keys to int values without boxing,
+ * e.g., pairs of ids packed into a long by key(a, b).
+ *
+ * The keys and values are stored in two parallel arrays as an open-addressing
+ * hash table with linear probing, at most half full; -1 marks an empty slot.
+ * Entries cannot be removed.
+ *
+ * @author XU, Shuo (pzczxs@gmail.com)
+ */
+public class LongIntHashMap {
+	private final static long EMPTY = -1L;
+	private final static int MIN_SLOTS = 16;
+
+	private long[] keys;
+	private int[] values;
+	private int size;
+
+	public LongIntHashMap() {
+		this(MIN_SLOTS / 2);
+	}
+
+	/**
+	 * @param expected
+	 *            number of entries that fit without growing the table
+	 */
+	public LongIntHashMap(final int expected) {
+		int slots = MIN_SLOTS;
+		while (slots < (long) expected << 1) {
+			slots <<= 1;
+		}
+		this.keys = new long[slots];
+		this.values = new int[slots];
+		Arrays.fill(keys, EMPTY);
+	}
+
+	/**
+	 * @return the key of the unordered pair of non-negative ids a and b
+	 */
+	public static long key(final int a, final int b) {
+		return a < b ? ((long) a << 32) | b : ((long) b << 32) | a;
+	}
+
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * @param key
+	 * @param missing
+	 * @return the value of key, or missing if there is none
+	 */
+	public int get(final long key, final int missing) {
+		final int mask = keys.length - 1;
+		for (int i = hash(key, mask);; i = (i + 1) & mask) {
+			if (keys[i] == key) {
+				return values[i];
+			}
+			if (keys[i] == EMPTY) {
+				return missing;
+			}
+		}
+	}
+
+	public boolean containsKey(final long key) {
+		final int mask = keys.length - 1;
+		for (int i = hash(key, mask);; i = (i + 1) & mask) {
+			if (keys[i] == key) {
+				return true;
+			}
+			if (keys[i] == EMPTY) {
+				return false;
+			}
+		}
+	}
+
+	/**
+	 * @param key
+	 *            a non-negative key
+	 * @param value
+	 */
+	public void put(final long key, final int value) {
+		if (key < 0) {
+			throw new IllegalArgumentException("negative key: " + key);
+		}
+
+		int mask = keys.length - 1;
+		int i = hash(key, mask);
+		for (; keys[i] != EMPTY; i = (i + 1) & mask) {
+			if (keys[i] == key) {
+				values[i] = value;
+				return;
+			}
+		}
+
+		if ((size + 1) << 1 > keys.length) {
+			grow();
+			mask = keys.length - 1;
+			for (i = hash(key, mask); keys[i] != EMPTY; i = (i + 1) & mask)
+				;
+		}
+		keys[i] = key;
+		values[i] = value;
+		size++;
+	}
+
+	private void grow() {
+		final long[] oldKeys = keys;
+		final int[] oldValues = values;
+		keys = new long[oldKeys.length << 1];
+		values = new int[oldKeys.length << 1];
+		Arrays.fill(keys, EMPTY);
+
+		final int mask = keys.length - 1;
+		for (int j = 0; j < oldKeys.length; j++) {
+			if (oldKeys[j] != EMPTY) {
+				int i = hash(oldKeys[j], mask);
+				while (keys[i] != EMPTY) {
+					i = (i + 1) & mask;
+				}
+				keys[i] = oldKeys[j];
+				values[i] = oldValues[j];
+			}
+		}
+	}
+
+	private static int hash(final long key, final int mask) {
+		final long h = key * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32)) & mask;
+	}
+}
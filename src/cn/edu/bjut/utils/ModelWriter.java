@@ -0,0 +1,284 @@
+package cn.edu.bjut.utils;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * ModelWriter is the single writer behind printVartheta, printVarphi and
+ * printAssign of the estimators and inferencers. Text lines are assembled in
+ * one reusable StringBuilder and handed to the underlying Writer in large
+ * chunks, so writing a cell allocates nothing.
+ *
+ * The output format follows the file name: a name containing ".bin" selects
+ * the binary format, and a trailing ".gz" or ".zip" adds gzip or zip (deflate)
+ * compression, e.g. nips.LDA.varphi.bin.gz. The text format is the one the
+ * print methods have always written. The binary format (big-endian) is
+ * <pre>
+ * triplets:    int magic ("GTMT"), int version, int rows, int cols, then for
+ *              every non-zero cell: int row, int col, int count, int total,
+ *              double value
+ * assignments: int magic ("GTMA"), int version, int docs, int fields, then for
+ *              every document: int Nm, followed by Nm x fields ints
+ * </pre>
+ *
+ * @author XU, Shuo (pzczxs@gmail.com)
+ */
+public class ModelWriter {
+	public final static int MAGIC_TRIPLETS = 0x47544D54; // "GTMT"
+	public final static int MAGIC_ASSIGN = 0x47544D41; // "GTMA"
+	public final static int VERSION = 1;
+
+	private final static int BUFFER = 1 << 16;
+
+	private final Writer writer;
+	private final DataOutputStream os;
+	private final StringBuilder sb;
+	private final char[] chars;
+
+	/**
+	 * write the text format to writer
+	 *
+	 * @param writer
+	 */
+	public ModelWriter(final Writer writer) {
+		this.writer = writer;
+		this.os = null;
+		this.sb = new StringBuilder(BUFFER + 256);
+		this.chars = new char[BUFFER + 256];
+	}
+
+	/**
+	 * write the binary format to os
+	 *
+	 * @param os
+	 */
+	public ModelWriter(final DataOutputStream os) {
+		this.writer = null;
+		this.os = os;
+		this.sb = null;
+		this.chars = null;
+	}
+
+	/**
+	 * open f in the format and with the compression given by its name
+	 *
+	 * @param f
+	 * @return
+	 * @throws IOException
+	 */
+	public static ModelWriter open(final File f) throws IOException {
+		final String name = f.getName();
+
+		final FileOutputStream fos = new FileOutputStream(f);
+		try {
+			OutputStream out = fos;
+			if (name.endsWith(".gz")) {
+				out = new GZIPOutputStream(out, BUFFER);
+			} else if (name.endsWith(".zip")) {
+				final ZipOutputStream zos = new ZipOutputStream(out);
+				zos.putNextEntry(new ZipEntry(name.substring(0, name.length() - 4)));
+				out = zos;
+			}
+			out = new BufferedOutputStream(out, BUFFER);
+
+			if (name.contains(".bin")) {
+				return new ModelWriter(new DataOutputStream(out));
+			}
+			return new ModelWriter(new OutputStreamWriter(out));
+		} catch (IOException e) {
+			// e.g., the gzip header or the zip entry could not be written
+			fos.close();
+			throw e;
+		} catch (RuntimeException e) {
+			fos.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * run job on a new background thread, e.g., printing a snapshot of an
+	 * estimator while the estimator keeps sampling
+	 *
+	 * @param job
+	 * @return the future of job, get() waits for the output and throws an
+	 *         ExecutionException holding the failure of job, if any
+	 */
+	public static <T> Future<T> inBackground(final Callable<T> job) {
+		final FutureTask<T> task = new FutureTask<T>(job);
+		final Thread thread = new Thread(task, "ModelWriter");
+		thread.start();
+
+		return task;
+	}
+
+	public boolean isBinary() {
+		return this.os != null;
+	}
+
+	/**
+	 * start a sparse matrix of the given size, e.g., vartheta or varphi
+	 *
+	 * @param rows
+	 * @param cols
+	 * @throws IOException
+	 */
+	public void beginTriplets(final int rows, final int cols) throws IOException {
+		if (isBinary()) {
+			os.writeInt(MAGIC_TRIPLETS);
+			os.writeInt(VERSION);
+			os.writeInt(rows);
+			os.writeInt(cols);
+		}
+	}
+
+	/**
+	 * write the non-zero cell (row, col) with its count, the total count of
+	 * its row and the estimated probability
+	 *
+	 * @throws IOException
+	 */
+	public void triplet(final int row, final int col, final int count, final int total, final double value)
+			throws IOException {
+		if (isBinary()) {
+			os.writeInt(row);
+			os.writeInt(col);
+			os.writeInt(count);
+			os.writeInt(total);
+			os.writeDouble(value);
+		} else {
+			sb.append(row).append(' ').append(col).append(' ').append(count).append(' ')
+					.append(total).append(' ').append(value).append('\n');
+			drain(false);
+		}
+	}
+
+	/**
+	 * start the assignments of docs documents with fields ints per token
+	 *
+	 * @param docs
+	 * @param fields
+	 * @throws IOException
+	 */
+	public void beginAssign(final int docs, final int fields) throws IOException {
+		if (isBinary()) {
+			os.writeInt(MAGIC_ASSIGN);
+			os.writeInt(VERSION);
+			os.writeInt(docs);
+			os.writeInt(fields);
+		}
+	}
+
+	public void beginDoc(final int length) throws IOException {
+		if (isBinary()) {
+			os.writeInt(length);
+		}
+	}
+
+	public void endDoc() throws IOException {
+		if (!isBinary()) {
+			sb.append('\n');
+			drain(false);
+		}
+	}
+
+	/**
+	 * token with word w and topic z, written as "w:z "
+	 *
+	 * @throws IOException
+	 */
+	public void token(final int w, final int z) throws IOException {
+		if (isBinary()) {
+			os.writeInt(w);
+			os.writeInt(z);
+		} else {
+			sb.append(w).append(':').append(z).append(' ');
+			drain(false);
+		}
+	}
+
+	/**
+	 * token with word w, topic z and author x, written as "w:z:x "
+	 *
+	 * @throws IOException
+	 */
+	public void token(final int w, final int z, final int x) throws IOException {
+		if (isBinary()) {
+			os.writeInt(w);
+			os.writeInt(z);
+			os.writeInt(x);
+		} else {
+			sb.append(w).append(':').append(z).append(':').append(x).append(' ');
+			drain(false);
+		}
+	}
+
+	/**
+	 * token with word w, topic z and the coauthor pair (first, second),
+	 * written as "w:z:(first,second) "
+	 *
+	 * @throws IOException
+	 */
+	public void token(final int w, final int z, final int first, final int second) throws IOException {
+		if (isBinary()) {
+			os.writeInt(w);
+			os.writeInt(z);
+			os.writeInt(first);
+			os.writeInt(second);
+		} else {
+			sb.append(w).append(':').append(z).append(":(").append(first).append(',').append(second)
+					.append(")").append(' ');
+			drain(false);
+		}
+	}
+
+	/**
+	 * flush the buffered output without closing the underlying stream
+	 *
+	 * @throws IOException
+	 */
+	public void flush() throws IOException {
+		if (isBinary()) {
+			os.flush();
+		} else {
+			drain(true);
+			writer.flush();
+		}
+	}
+
+	public void close() throws IOException {
+		if (isBinary()) {
+			os.close();
+		} else {
+			drain(true);
+			writer.close();
+		}
+	}
+
+	/*
+	 * hand the assembled text to the writer once a chunk is full
+	 * */
+	private void drain(final boolean force) throws IOException {
+		final int len = sb.length();
+		if (len >= BUFFER || (force && len > 0)) {
+			if (len > chars.length) {
+				writer.append(sb);
+			} else {
+				sb.getChars(0, len, chars, 0);
+				writer.write(chars, 0, len);
+			}
+			sb.setLength(0);
+		}
+	}
+}
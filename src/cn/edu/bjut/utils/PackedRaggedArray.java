@@ -0,0 +1,200 @@
+package cn.edu.bjut.utils;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * PackedRaggedArray stores a ragged array of non-negative ints, such as the
+ * words or the topic assignments of the tokens of a corpus, in one contiguous
+ * long[] buffer with ceil(log2(maxValue+1)) bits per element. Row m starts at
+ * the 64-bit word offset(m), so every row is aligned to a word of its own and
+ * different rows can be written by different threads without interference.
+ *
+ * @author XU, Shuo (pzczxs@gmail.com)
+ */
+public class PackedRaggedArray implements IRaggedArray {
+	private final int bits;
+	private final long mask;
+	private final int[] lengths;
+	private final int[] offsets;
+	private final long[] data;
+
+	/**
+	 * allocate rows of the given lengths for values in [0, maxValue]
+	 *
+	 * @param lengths
+	 * @param maxValue
+	 */
+	public PackedRaggedArray(final int[] lengths, final int maxValue) {
+		this.bits = bitsFor(maxValue);
+		this.mask = (1L << bits) - 1;
+		this.lengths = lengths.clone();
+		this.offsets = new int[lengths.length + 1];
+
+		long words = 0;
+		for (int m = 0; m < lengths.length; m++) {
+			offsets[m] = (int) words;
+			words += ((long) lengths[m] * bits + 63) >>> 6;
+			if (words > Integer.MAX_VALUE) {
+				throw new IllegalArgumentException("The packed array of " + lengths.length + " rows is too large.");
+			}
+		}
+		offsets[lengths.length] = (int) words;
+		this.data = new long[(int) words];
+	}
+
+	/**
+	 * allocate rows of the same lengths as those of shape for values in [0,
+	 * maxValue]
+	 *
+	 * @param shape
+	 * @param maxValue
+	 */
+	public PackedRaggedArray(final IRaggedArray shape, final int maxValue) {
+		this(lengthsOf(shape), maxValue);
+	}
+
+	/**
+	 * pack the given ragged array, whose values are all in [0, maxValue]
+	 *
+	 * @param values
+	 * @param maxValue
+	 */
+	public PackedRaggedArray(final int[][] values, final int maxValue) {
+		this(lengthsOf(values), maxValue);
+
+		for (int m = 0; m < values.length; m++) {
+			for (int n = 0; n < values[m].length; n++) {
+				set(m, n, values[m][n]);
+			}
+		}
+	}
+
+	/**
+	 * @param maxValue
+	 * @return the number of bits needed to store the values [0, maxValue]
+	 */
+	public static int bitsFor(final int maxValue) {
+		return Math.max(1, 32 - Integer.numberOfLeadingZeros(maxValue));
+	}
+
+	public int getBits() {
+		return this.bits;
+	}
+
+	@Override
+	public int getNumRows() {
+		return this.lengths.length;
+	}
+
+	@Override
+	public int length(final int m) {
+		return this.lengths[m];
+	}
+
+	@Override
+	public int get(final int m, final int n) {
+		final long pos = ((long) offsets[m] << 6) + (long) n * bits;
+		final int i = (int) (pos >>> 6);
+		final int shift = (int) (pos & 63);
+
+		long value = data[i] >>> shift;
+		if (shift + bits > 64) {
+			value |= data[i + 1] << (64 - shift);
+		}
+
+		return (int) (value & mask);
+	}
+
+	public void set(final int m, final int n, final int value) {
+		final long pos = ((long) offsets[m] << 6) + (long) n * bits;
+		final int i = (int) (pos >>> 6);
+		final int shift = (int) (pos & 63);
+		final long v = value & mask;
+
+		data[i] = (data[i] & ~(mask << shift)) | (v << shift);
+		if (shift + bits > 64) {
+			final int rest = 64 - shift;
+			data[i + 1] = (data[i + 1] & ~(mask >>> rest)) | (v >>> rest);
+		}
+	}
+
+	/**
+	 * unpack row m into dst[0..length(m))
+	 *
+	 * @param m
+	 * @param dst
+	 */
+	public void getRow(final int m, final int[] dst) {
+		for (int n = 0; n < lengths[m]; n++) {
+			dst[n] = get(m, n);
+		}
+	}
+
+	/**
+	 * @param m
+	 * @return a newly allocated copy of row m
+	 */
+	public int[] getRow(final int m) {
+		final int[] row = new int[lengths[m]];
+		getRow(m, row);
+
+		return row;
+	}
+
+	/**
+	 * overwrite the contents with those of src of the same shape and bit width
+	 *
+	 * @param src
+	 */
+	public void copyFrom(final PackedRaggedArray src) {
+		System.arraycopy(src.data, 0, data, 0, data.length);
+	}
+
+	/**
+	 * write the bit width, the row lengths and the packed buffer
+	 *
+	 * @param os
+	 * @throws IOException
+	 */
+	public void write(final DataOutputStream os) throws IOException {
+		os.writeInt(bits);
+		ArrayIo.writeIntVector(os, lengths);
+		ArrayIo.writeLongVector(os, data);
+	}
+
+	/**
+	 * overwrite the contents with those written by write() from an array of
+	 * the same shape and bit width
+	 *
+	 * @param is
+	 * @throws IOException
+	 */
+	public void read(final DataInputStream is) throws IOException {
+		if (is.readInt() != bits || !Arrays.equals(ArrayIo.readIntVector(is), lengths)
+				|| is.readInt() != data.length) {
+			throw new IOException("The packed array does not match the shape of this one.");
+		}
+		ArrayIo.readLongs(is, data, data.length);
+	}
+
+	private static int[] lengthsOf(final IRaggedArray shape) {
+		final int[] lengths = new int[shape.getNumRows()];
+		for (int m = 0; m < lengths.length; m++) {
+			lengths[m] = shape.length(m);
+		}
+
+		return lengths;
+	}
+
+	private static int[] lengthsOf(final int[][] values) {
+		final int[] lengths = new int[values.length];
+		for (int m = 0; m < values.length; m++) {
+			lengths[m] = values[m].length;
+		}
+
+		return lengths;
+	}
+}
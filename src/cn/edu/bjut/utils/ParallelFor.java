@@ -15,7 +15,9 @@ import java.util.concurrent.TimeUnit;
  * running. Execution can be stopped using stop(), which completes the
  * iterations currently running. After the last usage of the class, it should be
  * shut down properly using function shutdown() or the hard way using
- * System.exit();
+ * System.exit(); instances that run on a shared thread pool leave it to its
+ * owner. An exception thrown by process() stops the loop and is rethrown by
+ * loop() once all workers have returned.
  * 
  * @author gregor
  */
@@ -33,19 +35,29 @@ public abstract class ParallelFor {
         }
 
         public void run() {
-            while (!isStopping) {
-                int i = 0;
+            try {
+                while (!isStopping) {
+                    int i = 0;
+                    synchronized (ParallelFor.this) {
+                        i = iter++;
+                    }
+                    if (i >= niter) {
+                        break;
+                    }
+                    process(i, id);
+                }
+            } catch (Throwable t) {
                 synchronized (ParallelFor.this) {
-                    i = iter++;
+                    if (failure == null) {
+                        failure = t;
+                    }
                 }
-                if (i >= niter) {
-                    break;
+                isStopping = true;
+            } finally {
+                synchronized (ParallelFor.this) {
+                    ParallelFor.this.activeWorkers--;
+                    ParallelFor.this.notifyAll();
                 }
-                process(i, id);
-            }
-            synchronized (ParallelFor.this) {
-                ParallelFor.this.activeWorkers--;
-                ParallelFor.this.notifyAll();
             }
         }
     }
@@ -60,6 +72,17 @@ public abstract class ParallelFor {
      */
     protected ExecutorService threadpool;
 
+    /**
+     * whether threadpool belongs to the caller, see ParallelFor(int,
+     * ExecutorService)
+     */
+    protected boolean shared;
+
+    /**
+     * first exception thrown by process() in the current loop
+     */
+    protected Throwable failure;
+
     /**
      * current iteration (synchronized access)
      */
@@ -75,7 +98,7 @@ public abstract class ParallelFor {
     /**
      * stop flag
      */
-    protected boolean isStopping;
+    protected volatile boolean isStopping;
 
     /**
      * loop iterations
@@ -109,14 +132,35 @@ public abstract class ParallelFor {
         }
     }
 
+    /**
+     * instantiate a parallel for implementation whose nthreads workers run on
+     * the given pool, e.g., one pool for all loops of an estimator, so that
+     * no thread is created per instance; shutdown() leaves the pool running
+     * 
+     * @param nthreads
+     * @param threadpool with at least nthreads threads
+     */
+    public ParallelFor(int nthreads, ExecutorService threadpool) {
+        this.nthreads = nthreads;
+        this.threadpool = threadpool;
+        this.shared = true;
+        workers = new Worker[nthreads];
+        for (int i = 0; i < nthreads; i++) {
+            workers[i] = new Worker(i);
+        }
+    }
+
     /**
      * Start worker threads and loop through the iterations. Should never be
      * called while the loop instance is still running.
      * 
      * @param N
+     * @throws RuntimeException
+     *             or Error thrown by process() in any of the workers
      */
     public void loop(int N) {
         isStopping = false;
+        failure = null;
         niter = N;
         iter = 0;
 
@@ -138,6 +182,12 @@ public abstract class ParallelFor {
                 }
             }
         }
+
+        if (failure instanceof RuntimeException) {
+            throw (RuntimeException) failure;
+        } else if (failure instanceof Error) {
+            throw (Error) failure;
+        }
     }
 
     /**
@@ -146,8 +196,11 @@ public abstract class ParallelFor {
      * @param N
      */
     public void loopOnce(int N) {
-        loop(N);
-        shutdown();
+        try {
+            loop(N);
+        } finally {
+            shutdown();
+        }
     }
 
     /**
@@ -166,9 +219,12 @@ public abstract class ParallelFor {
     }
 
     /**
-     * shut down the thread pool after final usage
+     * shut down the thread pool after final usage, unless it is shared
      */
     public void shutdown() {
+        if (shared) {
+            return;
+        }
         // immediately terminate threadpool
         try {
             threadpool.shutdown();
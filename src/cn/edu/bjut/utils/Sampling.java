@@ -0,0 +1,95 @@
+package cn.edu.bjut.utils;
+
+import java.util.Random;
+
+/**
+ * Sampling collects the discrete samplers used by the estimators and
+ * inferencers. A Gibbs update computes all K (or |a_m| x K) weights anyway, so
+ * the samplers accumulate them into prefix sums while computing them and then
+ * draw by binary search with sample(), i.e., in O(log K) instead of a second
+ * linear scan. Distributions that are drawn from many times between changes
+ * use an AliasTable (O(1) per draw), and distributions that change in a few
+ * entries at a time use an FPlusTree (O(log K) per update and draw).
+ *
+ * @author XU, Shuo (pzczxs@gmail.com)
+ */
+public final class Sampling {
+	private Sampling() {
+	}
+
+	/**
+	 * turn the weights w[0..len) into prefix sums in place
+	 *
+	 * @param w
+	 * @param len
+	 * @return the total weight
+	 */
+	public static double cumulate(final double[] w, final int len) {
+		double sum = 0;
+		for (int i = 0; i < len; i++) {
+			sum += w[i];
+			w[i] = sum;
+		}
+
+		return sum;
+	}
+
+	/**
+	 * @param cdf
+	 *            non-decreasing prefix sums
+	 * @param len
+	 * @param u
+	 *            value in [0, cdf[len-1])
+	 * @return the smallest index i with cdf[i] > u, or len-1 if u is out of
+	 *         range due to rounding errors
+	 */
+	public static int search(final double[] cdf, final int len, final double u) {
+		int lo = 0, hi = len - 1;
+		while (lo < hi) {
+			final int mid = (lo + hi) >>> 1;
+			if (cdf[mid] > u) {
+				hi = mid;
+			} else {
+				lo = mid + 1;
+			}
+		}
+
+		return lo;
+	}
+
+	/**
+	 * draw an index from the distribution given by the prefix sums
+	 * cdf[0..len)
+	 *
+	 * @param cdf
+	 * @param len
+	 * @param rand
+	 * @return
+	 */
+	public static int sample(final double[] cdf, final int len, final Random rand) {
+		return search(cdf, len, rand.nextDouble() * cdf[len - 1]);
+	}
+
+	/**
+	 * draw an index from the unnormalized weights w[0..len) with total sum
+	 * by a linear scan, which is the cheapest choice for a handful of weights
+	 *
+	 * @param w
+	 * @param len
+	 * @param sum
+	 * @param rand
+	 * @return
+	 */
+	public static int sampleLinear(final double[] w, final int len, final double sum, final Random rand) {
+		final double u = rand.nextDouble() * sum;
+		double b = 0;
+		for (int i = 0; i < len; i++) {
+			b += w[i];
+			if (b > u) {
+				return i;
+			}
+		}
+
+		return len - 1;
+	}
+}
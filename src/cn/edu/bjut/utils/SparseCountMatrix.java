@@ -0,0 +1,558 @@
+package cn.edu.bjut.utils;
+
+import java.util.Arrays;
+
+/**
+ * SparseCountMatrix stores a rows x cols matrix of non-negative counts in
+ * which every row holds only its non-zero entries, so that the memory of the
+ * document-topic and author-topic counts scales with the number of tokens
+ * instead of rows*cols.
+ *
+ * Every row is an open-addressing hash table with linear probing and at most
+ * half of its slots in use. A slot i occupies row[2i] = column+1 (0 marks an
+ * empty slot) and row[2i+1] = count; entries whose count drops to zero are
+ * removed by backward-shift deletion, so no tombstones accumulate. Once a row
+ * would need as much memory as a dense row of length cols, it is stored
+ * densely instead.
+ *
+ * The samplers either read single entries with get(), inc() and dec(), or
+ * copy a row into a dense scratch array with getRow() and write it back with
+ * setRow() after the sweep over a document, or expand the rows of a document
+ * into a dense scratch array with addRowTo(), keep it in step with inc() and
+ * dec() and clear it again with clearRowIn(); nonZeros() lists the non-zero
+ * columns of a row.
+ *
+ * @author XU, Shuo (pzczxs@gmail.com)
+ */
+public class SparseCountMatrix {
+	private final static int MIN_SLOTS = 4;
+
+	private final int rows;
+	private final int cols;
+	private final int[][] data;
+	private final boolean[] dense;
+	private final int[] size;
+
+	public SparseCountMatrix(final int rows, final int cols) {
+		this.rows = rows;
+		this.cols = cols;
+		this.data = new int[rows][];
+		this.dense = new boolean[rows];
+		this.size = new int[rows];
+	}
+
+	public int getRows() {
+		return this.rows;
+	}
+
+	public int getCols() {
+		return this.cols;
+	}
+
+	/**
+	 * @param r
+	 * @return the number of non-zero entries of row r
+	 */
+	public int size(final int r) {
+		return this.size[r];
+	}
+
+	public int get(final int r, final int c) {
+		final int[] row = data[r];
+		if (row == null) {
+			return 0;
+		}
+		if (dense[r]) {
+			return row[c];
+		}
+
+		final int mask = (row.length >> 1) - 1;
+		for (int i = hash(c, mask);; i = (i + 1) & mask) {
+			final int key = row[i << 1];
+			if (key == 0) {
+				return 0;
+			}
+			if (key == c + 1) {
+				return row[(i << 1) + 1];
+			}
+		}
+	}
+
+	public int inc(final int r, final int c) {
+		return add(r, c, 1);
+	}
+
+	public int dec(final int r, final int c) {
+		return add(r, c, -1);
+	}
+
+	/**
+	 * add delta to entry (r, c)
+	 *
+	 * @param r
+	 * @param c
+	 * @param delta
+	 * @return the new count
+	 */
+	public int add(final int r, final int c, final int delta) {
+		if (delta == 0) {
+			return get(r, c);
+		}
+		if (data[r] == null) {
+			data[r] = new int[MIN_SLOTS << 1];
+		}
+
+		int[] row = data[r];
+		if (dense[r]) {
+			final int old = row[c];
+			row[c] += delta;
+			if (old == 0) {
+				size[r]++;
+			} else if (row[c] == 0) {
+				size[r]--;
+			}
+			return row[c];
+		}
+
+		int mask = (row.length >> 1) - 1;
+		int i = hash(c, mask);
+		for (;; i = (i + 1) & mask) {
+			final int key = row[i << 1];
+			if (key == 0) {
+				break;
+			}
+			if (key == c + 1) {
+				final int value = (row[(i << 1) + 1] += delta);
+				if (value == 0) {
+					remove(row, i, mask);
+					size[r]--;
+				}
+				return value;
+			}
+		}
+
+		// insert a new entry, growing the table if it becomes half full
+		if ((size[r] + 1) << 1 > mask + 1) {
+			grow(r);
+			if (dense[r]) {
+				data[r][c] = delta;
+				size[r]++;
+				return delta;
+			}
+			row = data[r];
+			mask = (row.length >> 1) - 1;
+			for (i = hash(c, mask); row[i << 1] != 0; i = (i + 1) & mask)
+				;
+		}
+		row[i << 1] = c + 1;
+		row[(i << 1) + 1] = delta;
+		size[r]++;
+
+		return delta;
+	}
+
+	/**
+	 * copy row r into dst[0..cols)
+	 *
+	 * @param r
+	 * @param dst
+	 */
+	public void getRow(final int r, final int[] dst) {
+		Arrays.fill(dst, 0, cols, 0);
+		addRowTo(r, dst);
+	}
+
+	/**
+	 * replace row r by the dense counts src[0..cols)
+	 *
+	 * @param r
+	 * @param src
+	 */
+	public void setRow(final int r, final int[] src) {
+		int nnz = 0;
+		for (int c = 0; c < cols; c++) {
+			if (src[c] != 0) {
+				nnz++;
+			}
+		}
+		size[r] = nnz;
+		if (nnz == 0) {
+			data[r] = null;
+			dense[r] = false;
+			return;
+		}
+
+		final int slots = slots(nnz);
+		if (slots << 1 >= cols) {
+			if (!dense[r] || data[r] == null) {
+				data[r] = new int[cols];
+				dense[r] = true;
+			}
+			System.arraycopy(src, 0, data[r], 0, cols);
+			return;
+		}
+
+		// reuse the table of the row unless it is too small or oversized
+		int[] row = data[r];
+		if (dense[r] || row == null || row.length < slots << 1 || row.length > slots << 3) {
+			row = data[r] = new int[slots << 1];
+			dense[r] = false;
+		} else {
+			Arrays.fill(row, 0);
+		}
+		final int mask = (row.length >> 1) - 1;
+		for (int c = 0; c < cols; c++) {
+			if (src[c] != 0) {
+				int i = hash(c, mask);
+				while (row[i << 1] != 0) {
+					i = (i + 1) & mask;
+				}
+				row[i << 1] = c + 1;
+				row[(i << 1) + 1] = src[c];
+			}
+		}
+	}
+
+	/**
+	 * write the non-zero columns of row r into idx in no particular order
+	 *
+	 * @param r
+	 * @param idx
+	 *            array of at least size(r) elements
+	 * @return the number of non-zero columns
+	 */
+	public int nonZeros(final int r, final int[] idx) {
+		final int[] row = data[r];
+		if (row == null) {
+			return 0;
+		}
+
+		int n = 0;
+		if (dense[r]) {
+			for (int c = 0; c < cols; c++) {
+				if (row[c] != 0) {
+					idx[n++] = c;
+				}
+			}
+		} else {
+			for (int i = 0; i < row.length; i += 2) {
+				if (row[i] != 0) {
+					idx[n++] = row[i] - 1;
+				}
+			}
+		}
+
+		return n;
+	}
+
+	/**
+	 * histograms of the non-zero counts of every column, the sufficient
+	 * statistics of DirichletEstimation.estimateAlphaHist
+	 *
+	 * @return hist[c][n] = number of rows with count n &gt; 0 in column c, the
+	 *         length of hist[c] is one more than the maximal count of c
+	 */
+	public int[][] columnHistograms() {
+		final int[] max = new int[cols];
+		for (int r = 0; r < rows; r++) {
+			final int[] row = data[r];
+			if (row == null) {
+				continue;
+			}
+			if (dense[r]) {
+				for (int c = 0; c < cols; c++) {
+					max[c] = Math.max(max[c], row[c]);
+				}
+			} else {
+				for (int i = 0; i < row.length; i += 2) {
+					if (row[i] != 0) {
+						max[row[i] - 1] = Math.max(max[row[i] - 1], row[i + 1]);
+					}
+				}
+			}
+		}
+
+		final int[][] hist = new int[cols][];
+		for (int c = 0; c < cols; c++) {
+			hist[c] = new int[max[c] + 1];
+		}
+		for (int r = 0; r < rows; r++) {
+			final int[] row = data[r];
+			if (row == null) {
+				continue;
+			}
+			if (dense[r]) {
+				for (int c = 0; c < cols; c++) {
+					hist[c][row[c]]++;
+				}
+			} else {
+				for (int i = 0; i < row.length; i += 2) {
+					if (row[i] != 0) {
+						hist[row[i] - 1][row[i + 1]]++;
+					}
+				}
+			}
+		}
+		for (int c = 0; c < cols; c++) {
+			hist[c][0] = 0;
+		}
+
+		return hist;
+	}
+
+	/**
+	 * @return hist[n] = number of rows with a total count of n
+	 */
+	public int[] rowSumHistogram() {
+		final int[] sums = new int[rows];
+		int max = 0;
+		for (int r = 0; r < rows; r++) {
+			final int[] row = data[r];
+			if (row == null) {
+				continue;
+			}
+			if (dense[r]) {
+				for (int c = 0; c < cols; c++) {
+					sums[r] += row[c];
+				}
+			} else {
+				for (int i = 1; i < row.length; i += 2) {
+					sums[r] += row[i];
+				}
+			}
+			max = Math.max(max, sums[r]);
+		}
+
+		final int[] hist = new int[max + 1];
+		for (int r = 0; r < rows; r++) {
+			hist[sums[r]]++;
+		}
+
+		return hist;
+	}
+
+	/**
+	 * overwrite this matrix with the contents of src of the same size
+	 *
+	 * @param src
+	 */
+	public void copyFrom(final SparseCountMatrix src) {
+		for (int r = 0; r < rows; r++) {
+			final int[] row = src.data[r];
+			if (row == null) {
+				data[r] = null;
+			} else if (data[r] != null && data[r].length == row.length) {
+				System.arraycopy(row, 0, data[r], 0, row.length);
+			} else {
+				data[r] = row.clone();
+			}
+		}
+		System.arraycopy(src.dense, 0, dense, 0, rows);
+		System.arraycopy(src.size, 0, size, 0, rows);
+	}
+
+	/**
+	 * add the changes that the copies made relative to this matrix to rows
+	 * [from, to), i.e., x += sum_p (copies[p] - x)
+	 *
+	 * @param copies
+	 * @param from
+	 * @param to
+	 */
+	public void merge(final SparseCountMatrix[] copies, final int from, final int to) {
+		final int[] acc = new int[cols];
+		for (int r = from; r < to; r++) {
+			getRow(r, acc);
+			for (int c = 0; c < cols; c++) {
+				acc[c] *= 1 - copies.length;
+			}
+			for (int p = 0; p < copies.length; p++) {
+				copies[p].addRowTo(r, acc);
+			}
+			setRow(r, acc);
+		}
+	}
+
+	/**
+	 * overwrite the given rows of this matrix with those of src of the same
+	 * size
+	 *
+	 * @param src
+	 * @param rows
+	 */
+	public void copyRows(final SparseCountMatrix src, final int[] rows) {
+		for (int r : rows) {
+			copyRow(src, r);
+		}
+	}
+
+	private void copyRow(final SparseCountMatrix src, final int r) {
+		final int[] row = src.data[r];
+		if (row == null) {
+			data[r] = null;
+		} else if (data[r] != null && data[r].length == row.length) {
+			System.arraycopy(row, 0, data[r], 0, row.length);
+		} else {
+			data[r] = row.clone();
+		}
+		dense[r] = src.dense[r];
+		size[r] = src.size[r];
+	}
+
+	/**
+	 * merge rows [from, to) where only the copies
+	 * copies[parts[offsets[r]..offsets[r+1])] have changed row r: a row of a
+	 * single copy is taken over from it, the changes of several copies are
+	 * added up as in merge(copies, from, to)
+	 *
+	 * @param copies
+	 * @param offsets
+	 * @param parts
+	 * @param from
+	 * @param to
+	 */
+	public void merge(final SparseCountMatrix[] copies, final int[] offsets, final int[] parts,
+			final int from, final int to) {
+		final int[] acc = new int[cols];
+		for (int r = from; r < to; r++) {
+			final int n = offsets[r + 1] - offsets[r];
+			if (n == 1) {
+				copyRow(copies[parts[offsets[r]]], r);
+			} else if (n > 1) {
+				getRow(r, acc);
+				for (int c = 0; c < cols; c++) {
+					acc[c] *= 1 - n;
+				}
+				for (int i = offsets[r]; i < offsets[r + 1]; i++) {
+					copies[parts[i]].addRowTo(r, acc);
+				}
+				setRow(r, acc);
+			}
+		}
+	}
+
+	private void addRowTo(final int r, final int[] dst) {
+		addRowTo(r, dst, 0);
+	}
+
+	/**
+	 * add row r to dst[off..off+cols), e.g., to expand it into a dense scratch
+	 * array that is zero there
+	 *
+	 * @param r
+	 * @param dst
+	 * @param off
+	 */
+	public void addRowTo(final int r, final int[] dst, final int off) {
+		final int[] row = data[r];
+		if (row == null) {
+			return;
+		}
+
+		if (dense[r]) {
+			for (int c = 0; c < cols; c++) {
+				dst[off + c] += row[c];
+			}
+		} else {
+			for (int i = 0; i < row.length; i += 2) {
+				if (row[i] != 0) {
+					dst[off + row[i] - 1] += row[i + 1];
+				}
+			}
+		}
+	}
+
+	/**
+	 * zero dst[off+c] for the non-zero columns c of row r, i.e., clear a
+	 * scratch array that addRowTo() expanded and that has been kept equal to
+	 * row r, without touching its other entries
+	 *
+	 * @param r
+	 * @param dst
+	 * @param off
+	 */
+	public void clearRowIn(final int r, final int[] dst, final int off) {
+		final int[] row = data[r];
+		if (row == null) {
+			return;
+		}
+
+		if (dense[r]) {
+			Arrays.fill(dst, off, off + cols, 0);
+		} else {
+			for (int i = 0; i < row.length; i += 2) {
+				if (row[i] != 0) {
+					dst[off + row[i] - 1] = 0;
+				}
+			}
+		}
+	}
+
+	/*
+	 * double the table of row r, or switch to a dense row once the table
+	 * would be at least as large
+	 * */
+	private void grow(final int r) {
+		final int[] old = data[r];
+		final int slots = old.length;
+		if (slots << 1 >= cols) {
+			final int[] row = new int[cols];
+			for (int i = 0; i < old.length; i += 2) {
+				if (old[i] != 0) {
+					row[old[i] - 1] = old[i + 1];
+				}
+			}
+			data[r] = row;
+			dense[r] = true;
+			return;
+		}
+
+		final int[] row = new int[slots << 1];
+		final int mask = slots - 1;
+		for (int i = 0; i < old.length; i += 2) {
+			if (old[i] != 0) {
+				int j = hash(old[i] - 1, mask);
+				while (row[j << 1] != 0) {
+					j = (j + 1) & mask;
+				}
+				row[j << 1] = old[i];
+				row[(j << 1) + 1] = old[i + 1];
+			}
+		}
+		data[r] = row;
+	}
+
+	/*
+	 * backward-shift deletion of slot i
+	 * */
+	private static void remove(final int[] row, int i, final int mask) {
+		for (int j = (i + 1) & mask; row[j << 1] != 0; j = (j + 1) & mask) {
+			final int h = hash(row[j << 1] - 1, mask);
+			// move the entry at j into the hole at i unless its home slot lies
+			// cyclically in (i, j]
+			if (((j - h) & mask) >= ((j - i) & mask)) {
+				row[i << 1] = row[j << 1];
+				row[(i << 1) + 1] = row[(j << 1) + 1];
+				i = j;
+			}
+		}
+		row[i << 1] = 0;
+		row[(i << 1) + 1] = 0;
+	}
+
+	/*
+	 * smallest power of two that holds nnz entries at most half full
+	 * */
+	private static int slots(final int nnz) {
+		int slots = MIN_SLOTS;
+		while (slots < nnz << 1) {
+			slots <<= 1;
+		}
+		return slots;
+	}
+
+	private static int hash(final int c, final int mask) {
+		final int h = c * 0x9E3779B9;
+		return (h ^ (h >>> 16)) & mask;
+	}
+}
@@ -158,6 +158,33 @@ public class Vectors {
         return prod;
     }
 
+    /**
+     * dot product of x[off..off+len) and y[0..len), e.g., of the stripe of a
+     * word in a word-major varphi and a topic mixture. Four independent
+     * partial sums break the dependency chain of the additions, so the loop
+     * is not bound by the latency of a single accumulator.
+     *
+     * @param x
+     * @param off
+     * @param y
+     * @param len
+     * @return
+     */
+    public static double dot(final float[] x, final int off, final double[] y, final int len) {
+        double s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+        int i = 0;
+        for (; i + 3 < len; i += 4) {
+            s0 += x[off + i] * y[i];
+            s1 += x[off + i + 1] * y[i + 1];
+            s2 += x[off + i + 2] * y[i + 2];
+            s3 += x[off + i + 3] * y[i + 3];
+        }
+        for (; i < len; i++) {
+            s0 += x[off + i] * y[i];
+        }
+        return (s0 + s1) + (s2 + s3);
+    }
+
     /**
      * sum the elements of vec
      * 
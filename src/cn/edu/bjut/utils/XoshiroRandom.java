@@ -0,0 +1,265 @@
+package cn.edu.bjut.utils;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * XoshiroRandom is the xoshiro256** generator of Blackman and Vigna as a
+ * Random subclass. The 256-bit state is seeded from a single long by
+ * SplitMix64, and jump() advances it by 2^128 steps, so split() hands out
+ * non-overlapping streams: every worker of a parallel sampler gets a stream of
+ * its own that is derived deterministically from the seed, which keeps the
+ * results reproducible for a given seed and number of threads.
+ *
+ * Unlike java.util.Random, no method takes a lock or touches an atomic
+ * variable; an instance must therefore be used by one thread at a time.
+ *
+ * Reference: David Blackman and Sebastiano Vigna, 2021. Scrambled Linear
+ * Pseudorandom Number Generators. ACM Transactions on Mathematical Software,
+ * Vol. 47, No. 4, pp. 1-32.
+ *
+ * @author XU, Shuo (pzczxs@gmail.com)
+ */
+public class XoshiroRandom extends Random {
+	private static final long serialVersionUID = -3650380734574722463L;
+
+	private final static long[] JUMP = { 0x180ec6d33cfd0abaL, 0xd5a61266f0c9392cL, 0xa9582618e03fc9aaL,
+			0x39abdc4529b1661cL };
+
+	// no initializers: Random(long) calls setSeed() before they would run
+	private long s0, s1, s2, s3;
+	private boolean haveNextNextGaussian;
+	private double nextNextGaussian;
+
+	public XoshiroRandom(final long seed) {
+		super(seed);
+	}
+
+	public XoshiroRandom() {
+		this(System.nanoTime());
+	}
+
+	private XoshiroRandom(final XoshiroRandom src) {
+		super(0);
+		this.s0 = src.s0;
+		this.s1 = src.s1;
+		this.s2 = src.s2;
+		this.s3 = src.s3;
+	}
+
+	/**
+	 * @param seed
+	 * @param index
+	 * @return the generator of stream index under seed, e.g., one stream per
+	 *         document, so that the numbers drawn for an item do not depend on
+	 *         which thread processes it or in which order
+	 */
+	public static XoshiroRandom forStream(final long seed, final long index) {
+		return new XoshiroRandom(splitMix64(seed ^ splitMix64((index + 1) * 0x9e3779b97f4a7c15L)));
+	}
+
+	@Override
+	public void setSeed(final long seed) {
+		long x = seed;
+		s0 = splitMix64(x += 0x9e3779b97f4a7c15L);
+		s1 = splitMix64(x += 0x9e3779b97f4a7c15L);
+		s2 = splitMix64(x += 0x9e3779b97f4a7c15L);
+		s3 = splitMix64(x += 0x9e3779b97f4a7c15L);
+		haveNextNextGaussian = false;
+	}
+
+	private static long splitMix64(long z) {
+		z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+		z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+		return z ^ (z >>> 31);
+	}
+
+	@Override
+	public long nextLong() {
+		final long result = Long.rotateLeft(s1 * 5, 7) * 9;
+		final long t = s1 << 17;
+
+		s2 ^= s0;
+		s3 ^= s1;
+		s1 ^= s2;
+		s0 ^= s3;
+		s2 ^= t;
+		s3 = Long.rotateLeft(s3, 45);
+
+		return result;
+	}
+
+	@Override
+	protected int next(final int bits) {
+		return (int) (nextLong() >>> (64 - bits));
+	}
+
+	@Override
+	public int nextInt() {
+		return (int) (nextLong() >>> 32);
+	}
+
+	/**
+	 * uniform int in [0, n) without bias by Lemire's multiply-and-reject
+	 * method, which needs a division only in rare cases
+	 */
+	@Override
+	public int nextInt(final int n) {
+		if (n <= 0) {
+			throw new IllegalArgumentException("n must be positive: " + n);
+		}
+
+		long m = (nextLong() >>> 32) * n;
+		long l = m & 0xffffffffL;
+		if (l < n) {
+			final long t = (0x100000000L - n) % n;
+			while (l < t) {
+				m = (nextLong() >>> 32) * n;
+				l = m & 0xffffffffL;
+			}
+		}
+
+		return (int) (m >>> 32);
+	}
+
+	/**
+	 * uniform double in [0, 1) from the upper 53 bits of one draw
+	 */
+	@Override
+	public double nextDouble() {
+		return (nextLong() >>> 11) * 0x1.0p-53;
+	}
+
+	@Override
+	public float nextFloat() {
+		return (nextLong() >>> 40) * 0x1.0p-24f;
+	}
+
+	@Override
+	public boolean nextBoolean() {
+		return nextLong() < 0;
+	}
+
+	@Override
+	public double nextGaussian() {
+		if (haveNextNextGaussian) {
+			haveNextNextGaussian = false;
+			return nextNextGaussian;
+		}
+
+		double v1, v2, s;
+		do {
+			v1 = 2 * nextDouble() - 1;
+			v2 = 2 * nextDouble() - 1;
+			s = v1 * v1 + v2 * v2;
+		} while (s >= 1 || s == 0);
+		final double multiplier = Math.sqrt(-2 * Math.log(s) / s);
+		nextNextGaussian = v2 * multiplier;
+		haveNextNextGaussian = true;
+
+		return v1 * multiplier;
+	}
+
+	public double nextUniform() {
+		return nextDouble();
+	}
+
+	public double nextUniform(final double a, final double b) {
+		return a + (b - a) * nextDouble();
+	}
+
+	/**
+	 * draw a single sample from (unnormalized) multinomial "a", with
+	 * normalizing factor "sum".
+	 */
+	public int nextDiscrete(final double[] a, final double sum) {
+		double b = 0;
+		final double r = nextDouble() * sum;
+		for (int i = 0; i < a.length; i++) {
+			b += a[i];
+			if (b > r) {
+				return i;
+			}
+		}
+
+		return a.length - 1;
+	}
+
+	/**
+	 * advance the state by 2^128 draws
+	 */
+	public void jump() {
+		long t0 = 0, t1 = 0, t2 = 0, t3 = 0;
+		for (int i = 0; i < JUMP.length; i++) {
+			for (int b = 0; b < 64; b++) {
+				if ((JUMP[i] & (1L << b)) != 0) {
+					t0 ^= s0;
+					t1 ^= s1;
+					t2 ^= s2;
+					t3 ^= s3;
+				}
+				nextLong();
+			}
+		}
+		s0 = t0;
+		s1 = t1;
+		s2 = t2;
+		s3 = t3;
+	}
+
+	/**
+	 * @return a new generator that continues the current stream, while this
+	 *         generator jumps 2^128 draws ahead, so that the two never overlap
+	 */
+	public XoshiroRandom split() {
+		final XoshiroRandom stream = new XoshiroRandom(this);
+		jump();
+
+		return stream;
+	}
+
+	/**
+	 * @param P
+	 * @return P independent streams split off this generator, one per thread
+	 */
+	public XoshiroRandom[] split(final int P) {
+		final XoshiroRandom[] streams = new XoshiroRandom[P];
+		for (int p = 0; p < P; p++) {
+			streams[p] = split();
+		}
+
+		return streams;
+	}
+
+	/**
+	 * write the generator state, e.g., for a checkpoint
+	 *
+	 * @param os
+	 * @throws IOException
+	 */
+	public void writeState(final DataOutputStream os) throws IOException {
+		os.writeLong(s0);
+		os.writeLong(s1);
+		os.writeLong(s2);
+		os.writeLong(s3);
+		os.writeBoolean(haveNextNextGaussian);
+		os.writeDouble(nextNextGaussian);
+	}
+
+	/**
+	 * restore a generator state written by writeState
+	 *
+	 * @param is
+	 * @throws IOException
+	 */
+	public void readState(final DataInputStream is) throws IOException {
+		s0 = is.readLong();
+		s1 = is.readLong();
+		s2 = is.readLong();
+		s3 = is.readLong();
+		haveNextNextGaussian = is.readBoolean();
+		nextNextGaussian = is.readDouble();
+	}
+}
@@ -0,0 +1,167 @@
+package cn.edu.bjut.estimators;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.Properties;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import cn.edu.bjut.parameters.ATParameter;
+import cn.edu.bjut.parameters.LDAParameter;
+import cn.edu.bjut.parameters.coATParameter;
+
+/**
+ * An estimator resumed from a checkpoint continues exactly like the one that
+ * wrote it: same log-likelihood and same assignments, with the serial and the
+ * parallel samplers and with the optimization of the hyperparameters.
+ */
+public class CheckpointTest {
+	private final static int NITER = 8;
+	private final static int STOP = 3;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private String filebase;
+	private PrintStream stdout;
+
+	@Before
+	public void setUp() throws IOException {
+		// a small corpus with empty documents and documents of a single author
+		final Random rand = new Random(1);
+		final int M = 60, V = 40, A = 12;
+		final PrintWriter corpus = new PrintWriter(folder.newFile("tiny.corpus"));
+		final PrintWriter authors = new PrintWriter(folder.newFile("tiny.authors"));
+		for (int m = 0; m < M; m++) {
+			final int N = (m % 10 == 0) ? 0 : 5 + rand.nextInt(25);
+			final StringBuilder words = new StringBuilder();
+			for (int n = 0; n < N; n++) {
+				words.append((n > 0) ? " " : "").append((m % 3 == 0) ? rand.nextInt(V / 2) : V / 2 + rand.nextInt(V / 2));
+			}
+			corpus.println(words);
+
+			final int Am = 1 + rand.nextInt(3);
+			final StringBuilder line = new StringBuilder();
+			for (int a = 0, first = rand.nextInt(A); a < Am; a++) {
+				line.append((a > 0) ? " " : "").append((first + a) % A);
+			}
+			authors.println(line);
+		}
+		corpus.close();
+		authors.close();
+		filebase = new File(folder.getRoot(), "tiny").getPath();
+
+		stdout = System.out;
+		System.setOut(new PrintStream(new ByteArrayOutputStream()));
+	}
+
+	@After
+	public void tearDown() {
+		System.setOut(stdout);
+	}
+
+	@Test
+	public void lda() throws IOException {
+		check("lda", "nthreads=1");
+		check("lda", "nthreads=1", "sampler=sparse");
+		check("lda", "nthreads=1", "sampler=alias");
+		check("lda", "nthreads=2");
+		check("lda", "nthreads=3", "parallel=diagonal");
+		check("lda", "nthreads=2", "optimize=2", "optburnin=0");
+	}
+
+	@Test
+	public void at() throws IOException {
+		check("at", "nthreads=1");
+		check("at", "nthreads=1", "sampler=sparse");
+		check("at", "nthreads=2");
+		check("at", "nthreads=2", "sampler=sparse", "optimize=2", "optburnin=0");
+	}
+
+	@Test
+	public void coat() throws IOException {
+		check("coat", "nthreads=1");
+		check("coat", "nthreads=2");
+		check("coat", "nthreads=2", "optimize=2", "optburnin=0");
+	}
+
+	@Test
+	public void otherModel() throws IOException {
+		final Properties p = new Properties();
+		p.setProperty("ntopics", "4");
+		p.setProperty("checkpoint", "0");
+		final IEstimator lda = create("lda", p, 1L);
+		lda.init();
+		final File f = folder.newFile();
+		lda.checkpoint(f);
+
+		assertFalse(create("at", p, 1L).canResume(f));
+		p.setProperty("ntopics", "5");
+		assertFalse(create("lda", p, 1L).canResume(f));
+	}
+
+	private void check(final String model, final String... settings) throws IOException {
+		final Properties p = new Properties();
+		p.setProperty("ntopics", "4");
+		p.setProperty("checkpoint", "0");
+		for (String setting : settings) {
+			final String[] kv = setting.split("=");
+			p.setProperty(kv[0], kv[1]);
+		}
+
+		// stopped at the same iteration, as the alias sampler keeps its stale
+		// tables only within a call of estimate()
+		final IEstimator straight = create(model, p, 42L);
+		straight.init();
+		straight.estimate(STOP);
+		straight.estimate(NITER - STOP);
+
+		final IEstimator stopped = create(model, p, 42L);
+		stopped.init();
+		stopped.estimate(STOP);
+		final File f = folder.newFile();
+		stopped.checkpoint(f);
+
+		// the seed of the resumed estimator is overwritten by the checkpoint
+		final IEstimator resumed = create(model, p, 7L);
+		assertTrue(resumed.canResume(f));
+		assertEquals(STOP, resumed.resume(f));
+		resumed.estimate(NITER - STOP);
+
+		final String name = model + " " + p;
+		assertEquals(name, straight.loglik(), resumed.loglik(), 0);
+		assertEquals(name, assignments(straight), assignments(resumed));
+	}
+
+	private IEstimator create(final String model, final Properties p, final long seed) {
+		if ("lda".equals(model)) {
+			return new LDAEstimator(filebase, seed, new LDAParameter(p));
+		} else if ("at".equals(model)) {
+			return new ATEstimator(filebase, seed, new ATParameter(p));
+		} else {
+			return new coATEstimator(filebase, seed, new coATParameter(p));
+		}
+	}
+
+	private static String assignments(final IEstimator estimator) {
+		final StringWriter s = new StringWriter();
+		final PrintWriter pw = new PrintWriter(s);
+		estimator.printAssign(pw);
+		pw.flush();
+
+		return s.toString();
+	}
+}
@@ -0,0 +1,92 @@
+package cn.edu.bjut.utils;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * AliasTable: the distribution of a table is read off exactly by feeding
+ * sample() a fine grid of uniform variates instead of random ones.
+ */
+public class AliasTableTest {
+	private final static int GRID = 1 << 20;
+
+	/**
+	 * returns the midpoints of GRID equal cells of [0, 1) in turn
+	 */
+	private static class GridRandom extends Random {
+		private static final long serialVersionUID = 1L;
+		private int i = 0;
+
+		@Override
+		public double nextDouble() {
+			return (i++ % GRID + 0.5) / GRID;
+		}
+	}
+
+	@Test
+	public void distributions() {
+		check(new double[] { 1 });
+		check(new double[] { 1, 1, 1, 1 });
+		check(new double[] { 0.1, 0, 0.6, 0.3 });
+		check(new double[] { 0, 0, 5, 0 });
+		check(new double[] { 1e-6, 1, 1e6, 3 });
+
+		final Random rand = new Random(1);
+		final double[] w = new double[100];
+		for (int i = 0; i < w.length; i++) {
+			w[i] = (i % 3 == 0) ? 0 : rand.nextDouble() * 10;
+		}
+		check(w);
+	}
+
+	@Test
+	public void rebuild() {
+		final Random rand = new Random(2);
+		final AliasTable table = new AliasTable(4);
+		assertEquals(0, table.size());
+		assertEquals(0, table.getMass(), 0);
+
+		// smaller and larger than the capacity of the table, back and forth
+		for (int n : new int[] { 4, 2, 17, 3, 17, 40, 1 }) {
+			final double[] w = new double[n + 5];
+			for (int i = 0; i < w.length; i++) {
+				w[i] = rand.nextDouble();
+			}
+			table.build(w, n);
+			assertEquals(n, table.size());
+			check(table, w, n);
+		}
+
+		table.build(new double[0], 0);
+		assertEquals(0, table.size());
+		assertEquals(0, table.getMass(), 0);
+	}
+
+	private static void check(final double[] w) {
+		check(new AliasTable(w), w, w.length);
+	}
+
+	private static void check(final AliasTable table, final double[] w, final int n) {
+		double mass = 0;
+		for (int i = 0; i < n; i++) {
+			mass += w[i];
+		}
+		assertEquals(mass, table.getMass(), 1e-9 * mass);
+
+		final int[] counts = new int[n];
+		final GridRandom grid = new GridRandom();
+		for (int i = 0; i < GRID; i++) {
+			counts[table.sample(grid)]++;
+		}
+		for (int i = 0; i < n; i++) {
+			// every column of the table may be off by a grid cell or two
+			assertEquals(w[i] / mass, counts[i] / (double) GRID, 2.0 * n / GRID);
+			if (w[i] == 0) {
+				assertEquals(0, counts[i]);
+			}
+		}
+	}
+}
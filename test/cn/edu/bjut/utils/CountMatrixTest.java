@@ -0,0 +1,142 @@
+package cn.edu.bjut.utils;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * CountMatrix split into blocks: the block sizes of matrices past 2^30 cells,
+ * and the accessors and merges across block boundaries on small blocks.
+ */
+public class CountMatrixTest {
+	private final static int BLOCK_CELLS = 1 << 30;
+
+	@Test
+	public void blockShift() {
+		// up to 2^30 cells are a single block of all rows
+		assertEquals(0, CountMatrix.blockShift(1, 1000, BLOCK_CELLS));
+		assertEquals(20, CountMatrix.blockShift(1000000, 1000, BLOCK_CELLS));
+		assertEquals(20, CountMatrix.blockShift(1 << 20, 1024, BLOCK_CELLS));
+		// V = 5M words x K = 1000 topics are 5 blocks of 2^20 rows
+		assertEquals(20, CountMatrix.blockShift(5000000, 1000, BLOCK_CELLS));
+		assertEquals(19, CountMatrix.blockShift(5000000, 1025, BLOCK_CELLS));
+		assertEquals(0, CountMatrix.blockShift(3, BLOCK_CELLS, BLOCK_CELLS));
+		assertEquals(30, CountMatrix.blockShift(Integer.MAX_VALUE, 1, BLOCK_CELLS));
+
+		final Random rand = new Random(1);
+		for (int i = 0; i < 10000; i++) {
+			final int rows = 1 + rand.nextInt(Integer.MAX_VALUE);
+			final int cols = 1 + rand.nextInt(1 << (1 + rand.nextInt(30)));
+			final int shift = CountMatrix.blockShift(rows, cols, BLOCK_CELLS);
+			assertTrue((1L << shift) * cols <= BLOCK_CELLS);
+			// blocks are as large as allowed
+			assertTrue((1L << shift) >= rows || (2L << shift) * cols > BLOCK_CELLS || shift == 30);
+		}
+	}
+
+	@Test
+	public void tooManyColumns() {
+		try {
+			new CountMatrix(2, 17, 16);
+			fail("a row larger than a block");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void accessAcrossBlocks() {
+		// blocks of 2 rows of 5 columns, the last block holds a single row
+		final int rows = 37, cols = 5;
+		final CountMatrix x = new CountMatrix(rows, cols, 16);
+		assertEquals(rows, x.getRows());
+		assertEquals(cols, x.getCols());
+		assertSame(x.getData(0), x.getData(1));
+		assertNotSame(x.getData(1), x.getData(2));
+		assertEquals(cols, x.getData(rows - 1).length);
+
+		for (int r = 0; r < rows; r++) {
+			for (int c = 0; c < cols; c++) {
+				x.set(r, c, r * cols + c);
+			}
+		}
+		final int[] row = new int[cols];
+		for (int r = 0; r < rows; r++) {
+			x.getRow(r, row);
+			for (int c = 0; c < cols; c++) {
+				assertEquals(r * cols + c, x.get(r, c));
+				assertEquals(r * cols + c, x.getData(r)[x.offset(r) + c]);
+				assertEquals(r * cols + c, row[c]);
+			}
+		}
+
+		assertEquals(rows * cols, x.inc(rows - 1, cols - 1));
+		assertEquals(rows * cols - 1, x.dec(rows - 1, cols - 1));
+
+		final CountMatrix y = new CountMatrix(rows, cols, 16);
+		y.copyFrom(x);
+		for (int r = 0; r < rows; r++) {
+			for (int c = 0; c < cols; c++) {
+				assertEquals(x.get(r, c), y.get(r, c));
+			}
+		}
+	}
+
+	@Test
+	public void histogram() {
+		final CountMatrix x = new CountMatrix(9, 3, 8);
+		x.set(0, 0, 2);
+		x.set(4, 1, 2);
+		x.set(8, 2, 5);
+		x.set(7, 0, 1);
+		assertArrayEquals(new int[] { 0, 1, 2, 0, 0, 1 }, x.histogram());
+		assertArrayEquals(new int[] { 1, 0, 2, 1 }, CountMatrix.histogram(new int[] { 2, 3, 0, 2 }));
+	}
+
+	@Test
+	public void mergeAcrossBlocks() {
+		final Random rand = new Random(2);
+		final int rows = 23, cols = 4, P = 3;
+		final CountMatrix x = new CountMatrix(rows, cols, 12);
+		final int[][] ref = new int[rows][cols];
+		for (int r = 0; r < rows; r++) {
+			for (int c = 0; c < cols; c++) {
+				ref[r][c] = rand.nextInt(5);
+				x.set(r, c, ref[r][c]);
+			}
+		}
+
+		final CountMatrix[] copies = new CountMatrix[P];
+		final int[][] expected = new int[rows][];
+		for (int r = 0; r < rows; r++) {
+			expected[r] = ref[r].clone();
+		}
+		for (int p = 0; p < P; p++) {
+			copies[p] = new CountMatrix(rows, cols, 12);
+			copies[p].copyFrom(x);
+			for (int i = 0; i < 30; i++) {
+				final int r = rand.nextInt(rows), c = rand.nextInt(cols);
+				copies[p].inc(r, c);
+				expected[r][c]++;
+			}
+		}
+
+		// ranges that start and end inside blocks of 2 rows
+		final int[] bounds = { 0, 1, 5, 6, 13, 23 };
+		for (int i = 0; i + 1 < bounds.length; i++) {
+			x.merge(copies, bounds[i], bounds[i + 1]);
+		}
+		for (int r = 0; r < rows; r++) {
+			for (int c = 0; c < cols; c++) {
+				assertEquals(expected[r][c], x.get(r, c));
+			}
+		}
+	}
+}
@@ -0,0 +1,98 @@
+package cn.edu.bjut.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * FPlusTree: the sums along updates and the intervals that sample() maps to
+ * every weight, including zero weights and sizes that are no power of two.
+ */
+public class FPlusTreeTest {
+	private final static double EPS = 1e-12;
+
+	@Test
+	public void intervals() {
+		final FPlusTree tree = new FPlusTree(new double[] { 1, 0, 2, 3, 0 });
+		assertEquals(5, tree.size());
+		assertEquals(6, tree.getMass(), EPS);
+
+		assertEquals(0, tree.sample(0.0));
+		assertEquals(0, tree.sample(0.999));
+		assertEquals(2, tree.sample(1.0));
+		assertEquals(2, tree.sample(2.999));
+		assertEquals(3, tree.sample(3.0));
+		assertEquals(3, tree.sample(5.999));
+		// rounding may push u up to the mass, which still is a valid index
+		assertEquals(3, tree.sample(6.0));
+	}
+
+	@Test
+	public void updates() {
+		final Random rand = new Random(1);
+		final int n = 13;
+		final double[] w = new double[n];
+		final FPlusTree tree = new FPlusTree(n);
+		tree.build(w, n);
+		assertEquals(0, tree.getMass(), EPS);
+
+		for (int i = 0; i < 1000; i++) {
+			final int k = rand.nextInt(n);
+			w[k] = (rand.nextInt(4) == 0) ? 0 : rand.nextDouble();
+			tree.set(k, w[k]);
+
+			double mass = 0;
+			for (int j = 0; j < n; j++) {
+				assertEquals(w[j], tree.get(j), EPS);
+				mass += w[j];
+			}
+			assertEquals(mass, tree.getMass(), 1e-9);
+
+			// the left end of every non-empty interval maps to its index
+			double left = 0;
+			for (int j = 0; j < n; j++) {
+				if (w[j] > 1e-9) {
+					assertEquals(j, tree.sample(left + 1e-10));
+				}
+				left += w[j];
+			}
+		}
+	}
+
+	@Test
+	public void frequencies() {
+		final double[] w = { 0.5, 0, 0.25, 2, 1.25 };
+		final FPlusTree tree = new FPlusTree(w);
+		final Random rand = new Random(2);
+		final int[] counts = new int[w.length];
+		final int N = 200000;
+		for (int i = 0; i < N; i++) {
+			counts[tree.sample(rand)]++;
+		}
+		assertEquals(0, counts[1]);
+		for (int i = 0; i < w.length; i++) {
+			assertEquals(w[i] / 4, counts[i] / (double) N, 0.005);
+		}
+	}
+
+	@Test
+	public void rebuild() {
+		final FPlusTree tree = new FPlusTree(new double[] { 5, 5, 5, 5, 5, 5 });
+		tree.build(new double[] { 0, 1 }, 2);
+		assertEquals(2, tree.size());
+		assertEquals(1, tree.getMass(), EPS);
+		for (double u = 0; u < 1; u += 0.1) {
+			assertEquals(1, tree.sample(u));
+		}
+
+		try {
+			tree.build(new double[9], 9);
+			fail("more weights than leaves");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+}
@@ -0,0 +1,81 @@
+package cn.edu.bjut.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * LongIntHashMap against a HashMap while the table grows from its smallest
+ * size.
+ */
+public class LongIntHashMapTest {
+
+	@Test
+	public void growth() {
+		final Random rand = new Random(1);
+		final LongIntHashMap map = new LongIntHashMap();
+		final Map<Long, Integer> ref = new HashMap<Long, Integer>();
+		for (int i = 0; i < 100000; i++) {
+			// keys of pairs of small ids collide in the low bits
+			final long key = (i % 2 == 0) ? LongIntHashMap.key(rand.nextInt(300), rand.nextInt(300))
+					: rand.nextLong() >>> 1;
+			final int value = rand.nextInt();
+			map.put(key, value);
+			ref.put(key, value);
+			assertEquals(ref.size(), map.size());
+		}
+
+		for (Map.Entry<Long, Integer> e : ref.entrySet()) {
+			assertEquals(e.getValue().intValue(), map.get(e.getKey(), -1));
+			assertTrue(map.containsKey(e.getKey()));
+		}
+		for (int i = 0; i < 1000; i++) {
+			final long key = rand.nextLong() >>> 1;
+			if (!ref.containsKey(key)) {
+				assertEquals(-7, map.get(key, -7));
+				assertFalse(map.containsKey(key));
+			}
+		}
+	}
+
+	@Test
+	public void overwrite() {
+		final LongIntHashMap map = new LongIntHashMap(1000);
+		map.put(0L, 1);
+		map.put(Long.MAX_VALUE, 2);
+		map.put(0L, 3);
+		assertEquals(2, map.size());
+		assertEquals(3, map.get(0L, -1));
+		assertEquals(2, map.get(Long.MAX_VALUE, -1));
+		assertEquals(-1, map.get(1L, -1));
+	}
+
+	@Test
+	public void pairKeys() {
+		assertEquals(LongIntHashMap.key(3, 5), LongIntHashMap.key(5, 3));
+		assertEquals(0L, LongIntHashMap.key(0, 0));
+		assertTrue(LongIntHashMap.key(Integer.MAX_VALUE, Integer.MAX_VALUE) > 0);
+		assertTrue(LongIntHashMap.key(1, 2) != LongIntHashMap.key(0, 3));
+
+		final LongIntHashMap map = new LongIntHashMap();
+		map.put(LongIntHashMap.key(7, 2), 9);
+		assertEquals(9, map.get(LongIntHashMap.key(2, 7), -1));
+	}
+
+	@Test
+	public void negativeKey() {
+		try {
+			new LongIntHashMap().put(-1L, 0);
+			fail("negative key");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+}
@@ -0,0 +1,137 @@
+package cn.edu.bjut.utils;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * PackedRaggedArray with every bit width, values that straddle two 64-bit
+ * words, empty rows and the stream round trip.
+ */
+public class PackedRaggedArrayTest {
+
+	@Test
+	public void bitsFor() {
+		assertEquals(1, PackedRaggedArray.bitsFor(0));
+		assertEquals(1, PackedRaggedArray.bitsFor(1));
+		assertEquals(31, PackedRaggedArray.bitsFor(Integer.MAX_VALUE));
+		// K = 2^b topics need b bits for the assignments 0..K-1, one more above
+		for (int b = 1; b < 31; b++) {
+			assertEquals(b, PackedRaggedArray.bitsFor((1 << b) - 1));
+			assertEquals(b + 1, PackedRaggedArray.bitsFor(1 << b));
+		}
+	}
+
+	@Test
+	public void roundTripEveryWidth() {
+		final Random rand = new Random(1);
+		for (int b = 1; b <= 31; b++) {
+			final int maxValue = (int) ((1L << b) - 1);
+			final int[][] values = randomRows(rand, maxValue);
+			final PackedRaggedArray x = new PackedRaggedArray(values, maxValue);
+			assertEquals(b, x.getBits());
+			check(x, values);
+		}
+	}
+
+	@Test
+	public void rowBoundaries() {
+		// rows of odd lengths whose last value ends in the middle of a word and
+		// whose neighbours hold all ones: rewriting a row must not touch them
+		for (int b : new int[] { 3, 7, 13, 31 }) {
+			final int maxValue = (int) ((1L << b) - 1);
+			final int[] lengths = { 0, 65, 0, 1, 64, 0, 129 };
+			final PackedRaggedArray x = new PackedRaggedArray(lengths, maxValue);
+			final int[][] values = new int[lengths.length][];
+			for (int m = 0; m < lengths.length; m++) {
+				values[m] = new int[lengths[m]];
+				for (int n = 0; n < lengths[m]; n++) {
+					x.set(m, n, maxValue);
+					values[m][n] = maxValue;
+				}
+			}
+
+			for (int m = 0; m < lengths.length; m++) {
+				for (int n = 0; n < lengths[m]; n++) {
+					x.set(m, n, n % 2);
+					values[m][n] = n % 2;
+				}
+				check(x, values);
+			}
+		}
+	}
+
+	@Test
+	public void emptyRows() {
+		final PackedRaggedArray x = new PackedRaggedArray(new int[] { 0, 0, 0 }, 5);
+		assertEquals(3, x.getNumRows());
+		for (int m = 0; m < 3; m++) {
+			assertEquals(0, x.length(m));
+			assertEquals(0, x.getRow(m).length);
+		}
+
+		final PackedRaggedArray y = new PackedRaggedArray(new int[0][], 0);
+		assertEquals(0, y.getNumRows());
+	}
+
+	@Test
+	public void writeAndRead() throws IOException {
+		final Random rand = new Random(2);
+		final int maxValue = 1023;
+		final int[][] values = randomRows(rand, maxValue);
+		final PackedRaggedArray x = new PackedRaggedArray(values, maxValue);
+
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		final DataOutputStream os = new DataOutputStream(bytes);
+		x.write(os);
+		os.flush();
+
+		final PackedRaggedArray y = new PackedRaggedArray(x, maxValue);
+		y.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+		check(y, values);
+
+		final PackedRaggedArray z = new PackedRaggedArray(x, 2 * maxValue + 1);
+		try {
+			z.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+			fail("read into a different bit width");
+		} catch (IOException e) {
+			// expected
+		}
+
+		final PackedRaggedArray copy = new PackedRaggedArray(x, maxValue);
+		copy.copyFrom(x);
+		check(copy, values);
+	}
+
+	private static int[][] randomRows(final Random rand, final int maxValue) {
+		final int[][] values = new int[50][];
+		for (int m = 0; m < values.length; m++) {
+			values[m] = new int[(m % 7 == 0) ? 0 : rand.nextInt(100)];
+			for (int n = 0; n < values[m].length; n++) {
+				values[m][n] = (n % 5 == 0) ? maxValue : rand.nextInt(maxValue) + 1;
+			}
+		}
+
+		return values;
+	}
+
+	private static void check(final PackedRaggedArray x, final int[][] values) {
+		assertEquals(values.length, x.getNumRows());
+		for (int m = 0; m < values.length; m++) {
+			assertEquals(values[m].length, x.length(m));
+			assertArrayEquals(values[m], x.getRow(m));
+			for (int n = 0; n < values[m].length; n++) {
+				assertEquals(values[m][n], x.get(m, n));
+			}
+		}
+	}
+}
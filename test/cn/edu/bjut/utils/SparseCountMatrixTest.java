@@ -0,0 +1,235 @@
+package cn.edu.bjut.utils;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * SparseCountMatrix against a dense reference, across the insertions and
+ * backward-shift deletions of the hashed rows and their switch to dense rows.
+ */
+public class SparseCountMatrixTest {
+
+	@Test
+	public void emptyRows() {
+		final SparseCountMatrix x = new SparseCountMatrix(3, 10);
+		final int[] row = new int[10];
+		Arrays.fill(row, 7);
+
+		x.getRow(1, row);
+		assertArrayEquals(new int[10], row);
+		assertEquals(0, x.get(1, 4));
+		assertEquals(0, x.size(1));
+		assertEquals(0, x.nonZeros(1, new int[10]));
+		assertArrayEquals(new int[] { 3 }, x.rowSumHistogram());
+	}
+
+	@Test
+	public void deleteInEveryOrder() {
+		// 7 entries fill a table of 16 slots, so clusters and wrap-arounds are
+		// bound to occur among the many column sets
+		final Random rand = new Random(1);
+		final int cols = 1000;
+		for (int trial = 0; trial < 2000; trial++) {
+			final SparseCountMatrix x = new SparseCountMatrix(1, cols);
+			final int[] ref = new int[cols];
+			final int[] cs = new int[7];
+			for (int i = 0; i < cs.length; i++) {
+				do {
+					cs[i] = rand.nextInt(cols);
+				} while (ref[cs[i]] != 0);
+				ref[cs[i]] = 1 + rand.nextInt(3);
+				x.add(0, cs[i], ref[cs[i]]);
+			}
+
+			// remove the columns one by one in a random order
+			for (int i = cs.length - 1; i > 0; i--) {
+				final int j = rand.nextInt(i + 1);
+				final int t = cs[i];
+				cs[i] = cs[j];
+				cs[j] = t;
+			}
+			for (int i = 0; i < cs.length; i++) {
+				while (ref[cs[i]] > 0) {
+					assertEquals(--ref[cs[i]], x.dec(0, cs[i]));
+				}
+				assertEquals(cs.length - i - 1, x.size(0));
+				for (int j = 0; j < cs.length; j++) {
+					assertEquals(ref[cs[j]], x.get(0, cs[j]));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void denseSwitchover() {
+		final int cols = 16;
+		final SparseCountMatrix x = new SparseCountMatrix(1, cols);
+		final int[] ref = new int[cols];
+		final int[] row = new int[cols];
+
+		// fill every column, which ends in a dense row, then empty it again
+		for (int c = 0; c < cols; c++) {
+			ref[c] = c + 1;
+			x.add(0, c, c + 1);
+			assertEquals(c + 1, x.size(0));
+			x.getRow(0, row);
+			assertArrayEquals(ref, row);
+		}
+		for (int c = cols - 1; c >= 0; c--) {
+			assertEquals(0, x.add(0, c, -(c + 1)));
+			ref[c] = 0;
+			assertEquals(c, x.size(0));
+			x.getRow(0, row);
+			assertArrayEquals(ref, row);
+		}
+
+		// setRow picks the layout by the number of non-zeros
+		Arrays.fill(ref, 1);
+		x.setRow(0, ref);
+		assertEquals(cols, x.size(0));
+		Arrays.fill(ref, 0);
+		ref[3] = 5;
+		x.setRow(0, ref);
+		assertEquals(1, x.size(0));
+		assertEquals(5, x.get(0, 3));
+		assertEquals(1, x.inc(0, 9));
+		x.getRow(0, row);
+		ref[9] = 1;
+		assertArrayEquals(ref, row);
+		x.setRow(0, new int[cols]);
+		assertEquals(0, x.size(0));
+		assertEquals(0, x.get(0, 3));
+	}
+
+	@Test
+	public void randomOperations() {
+		final Random rand = new Random(2);
+		for (int cols : new int[] { 1, 2, 8, 17, 64, 300 }) {
+			final int rows = 20;
+			final SparseCountMatrix x = new SparseCountMatrix(rows, cols);
+			final int[][] ref = new int[rows][cols];
+			for (int i = 0; i < 20000; i++) {
+				final int r = rand.nextInt(rows);
+				// few columns per row, biased to the front, so that rows
+				// stay sparse, grow and shrink
+				final int c = Math.min(cols - 1, (int) Math.abs(rand.nextGaussian() * cols / 8));
+				if (ref[r][c] > 0 && rand.nextInt(2) == 0) {
+					assertEquals(--ref[r][c], x.dec(r, c));
+				} else {
+					assertEquals(++ref[r][c], x.inc(r, c));
+				}
+			}
+			check(x, ref);
+
+			final SparseCountMatrix y = new SparseCountMatrix(rows, cols);
+			y.copyFrom(x);
+			check(y, ref);
+		}
+	}
+
+	@Test
+	public void expandAndClear() {
+		final Random rand = new Random(3);
+		final int cols = 40;
+		final SparseCountMatrix x = new SparseCountMatrix(2, cols);
+		for (int i = 0; i < 30; i++) {
+			x.inc(1, rand.nextInt(cols));
+		}
+
+		final int[] scratch = new int[3 * cols];
+		Arrays.fill(scratch, 0, cols, -1);
+		Arrays.fill(scratch, 2 * cols, 3 * cols, -1);
+		x.addRowTo(1, scratch, cols);
+		final int[] row = new int[cols];
+		x.getRow(1, row);
+		assertArrayEquals(row, Arrays.copyOfRange(scratch, cols, 2 * cols));
+
+		x.clearRowIn(1, scratch, cols);
+		assertArrayEquals(new int[cols], Arrays.copyOfRange(scratch, cols, 2 * cols));
+		assertEquals(-1, scratch[cols - 1]);
+		assertEquals(-1, scratch[2 * cols]);
+	}
+
+	@Test
+	public void merge() {
+		final Random rand = new Random(4);
+		final int rows = 10, cols = 12, P = 3;
+		final SparseCountMatrix x = new SparseCountMatrix(rows, cols);
+		final int[][] ref = new int[rows][cols];
+		for (int i = 0; i < 200; i++) {
+			final int r = rand.nextInt(rows), c = rand.nextInt(cols);
+			x.inc(r, c);
+			ref[r][c]++;
+		}
+
+		final SparseCountMatrix[] copies = new SparseCountMatrix[P];
+		for (int p = 0; p < P; p++) {
+			copies[p] = new SparseCountMatrix(rows, cols);
+			copies[p].copyFrom(x);
+			for (int i = 0; i < 50; i++) {
+				final int r = rand.nextInt(rows), c = rand.nextInt(cols);
+				if (ref[r][c] > 0 && copies[p].get(r, c) > 0 && rand.nextInt(2) == 0) {
+					copies[p].dec(r, c);
+					ref[r][c]--;
+				} else {
+					copies[p].inc(r, c);
+					ref[r][c]++;
+				}
+			}
+		}
+		x.merge(copies, 0, rows);
+		check(x, ref);
+	}
+
+	private static void check(final SparseCountMatrix x, final int[][] ref) {
+		final int cols = x.getCols();
+		final int[] row = new int[cols];
+		final int[] idx = new int[cols];
+		int max = 0;
+		for (int r = 0; r < ref.length; r++) {
+			int nnz = 0, sum = 0;
+			for (int c = 0; c < cols; c++) {
+				assertEquals(ref[r][c], x.get(r, c));
+				nnz += (ref[r][c] != 0) ? 1 : 0;
+				sum += ref[r][c];
+			}
+			assertEquals(nnz, x.size(r));
+			x.getRow(r, row);
+			assertArrayEquals(ref[r], row);
+
+			final int n = x.nonZeros(r, idx);
+			assertEquals(nnz, n);
+			for (int i = 0; i < n; i++) {
+				assertTrue(ref[r][idx[i]] != 0);
+			}
+			max = Math.max(max, sum);
+		}
+
+		final int[] hist = new int[max + 1];
+		for (int r = 0; r < ref.length; r++) {
+			hist[Vectors.sum(ref[r])]++;
+		}
+		assertArrayEquals(hist, x.rowSumHistogram());
+
+		final int[][] columns = x.columnHistograms();
+		for (int c = 0; c < cols; c++) {
+			int maxc = 0;
+			for (int r = 0; r < ref.length; r++) {
+				maxc = Math.max(maxc, ref[r][c]);
+			}
+			final int[] h = new int[maxc + 1];
+			for (int r = 0; r < ref.length; r++) {
+				if (ref[r][c] > 0) {
+					h[ref[r][c]]++;
+				}
+			}
+			assertArrayEquals(h, columns[c]);
+		}
+	}
+}